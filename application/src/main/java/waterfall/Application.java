@@ -1,5 +1,7 @@
 package waterfall;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +12,7 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import waterfall.onewire.BusMasterRegistry;
 import waterfall.onewire.DSAddress;
+import waterfall.onewire.DeviceLocationSnapshot;
 import waterfall.onewire.HA7SBusMasterManager;
 import waterfall.onewire.busmasters.HA7S.HA7S;
 
@@ -59,4 +62,20 @@ public class Application {
     return new BusMasterRegistry();
   }
 
+  /**
+   * Where the devices were last found, loaded before any BusMaster is started so the devices can be
+   * bound as soon as their bus is. A snapshot which can not be read is only a slower start.
+   */
+  @Bean
+  public static DeviceLocationSnapshot makeDeviceLocationSnapshotBean(
+      @Value("${devicelocationsnapshot.path}") String snapshotPath) {
+    try {
+      return DeviceLocationSnapshot.load(Paths.get(snapshotPath));
+    } catch (IOException e) {
+      LoggerFactory.getLogger(Application.class)
+          .warn("DeviceLocationSnapshot {} not loaded: {}", snapshotPath, e.toString());
+      return new DeviceLocationSnapshot();
+    }
+  }
+
 }
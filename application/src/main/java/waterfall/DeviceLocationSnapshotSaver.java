@@ -0,0 +1,73 @@
+package waterfall;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import waterfall.onewire.DeviceLocationSnapshot;
+
+/**
+ * Saves the DeviceLocationSnapshot every savesec seconds when it has changed, and once more at
+ * shutdown. A save which fails leaves it changed, so it is tried again the next time.
+ */
+@Component
+public class DeviceLocationSnapshotSaver implements Runnable {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  @Autowired
+  private DeviceLocationSnapshot snapshot;
+
+  @Value("${devicelocationsnapshot.path}")
+  private String snapshotPath;
+
+  @Value("${devicelocationsnapshot.savesec:60}")
+  private int saveSec;
+
+  private Path path;
+  private Thread saveThread;
+
+  @PostConstruct
+  void start() {
+    path = Paths.get(snapshotPath);
+    saveThread = new Thread(this, "DeviceLocationSnapshotSaver");
+    saveThread.setDaemon(true);
+    saveThread.start();
+  }
+
+  @PreDestroy
+  void stop() {
+    saveThread.interrupt();
+    saveIfChanged();
+  }
+
+  public void run() {
+    try {
+      for (; ; ) {
+        Thread.sleep(TimeUnit.SECONDS.toMillis(saveSec));
+        saveIfChanged();
+      }
+    } catch (InterruptedException e) {
+      ;
+    }
+  }
+
+  private synchronized void saveIfChanged() {
+    if (!snapshot.isChanged()) {
+      return;
+    }
+    try {
+      snapshot.save(path);
+    } catch (IOException e) {
+      logger.warn("DeviceLocationSnapshot {} not saved: {}", path, e.toString());
+    }
+  }
+
+}
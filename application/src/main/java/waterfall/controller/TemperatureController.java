@@ -15,6 +15,7 @@ import waterfall.config.TemperatureConfig;
 import waterfall.config.TemperatureConfig.Temperature;
 import waterfall.onewire.BusMasterRegistry;
 import waterfall.onewire.DSAddress;
+import waterfall.onewire.DeviceLocationSnapshot;
 import waterfall.onewire.Temp18B20;
 import waterfall.onewire.Temp18B20.Reading;
 import waterfall.onewire.Temp18B20.ReadingError;
@@ -30,6 +31,9 @@ public class TemperatureController {
   @Autowired
   BusMasterRegistry bmRegistry;
 
+  @Autowired
+  DeviceLocationSnapshot snapshot;
+
   @Autowired
   TemperatureConfig config;
 
@@ -107,7 +111,7 @@ public class TemperatureController {
       Temp18B20 temp18B20 = new Temp18B20(dsAddress, resolution,
           DS18B20Scratchpad.DEFAULT_HALARM,
           DS18B20Scratchpad.DEFAULT_LALARM)
-          .setBusMasterRegistry(bmRegistry);
+          .setBusMasterRegistry(bmRegistry, snapshot);
 
       deviceMap.put(location, temp18B20);
     }
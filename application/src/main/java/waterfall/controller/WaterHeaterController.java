@@ -8,6 +8,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import waterfall.db.entities.WaterHeaterBurnEntity;
 import waterfall.onewire.BusMasterRegistry;
+import waterfall.onewire.DeviceLocationSnapshot;
 import waterfall.onewire.waterheater.State;
 import waterfall.onewire.waterheater.StateChangeNotifier;
 import waterfall.onewire.waterheater.WaterHeater;
@@ -23,6 +24,9 @@ public class WaterHeaterController extends StateChangeNotifier {
   @Autowired
   BusMasterRegistry busMasterRegistry;
 
+  @Autowired
+  DeviceLocationSnapshot snapshot;
+
   @Autowired
   waterfall.config.WaterHeaterConfig config;
 
@@ -38,7 +42,7 @@ public class WaterHeaterController extends StateChangeNotifier {
 
   @PostConstruct
   void start() {
-    waterHeater = new WaterHeater(busMasterRegistry, config.getTriggerTemp(),
+    waterHeater = new WaterHeater(busMasterRegistry, snapshot, config.getTriggerTemp(),
         config.getSampleTimeSec(), config.getWindowSize(), config.getDsAddress(), this);
   }
 
@@ -0,0 +1,30 @@
+package waterfall.onewire.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, always adding the gc profiler so that
+ * gc.alloc.rate.norm (bytes allocated per op) is reported next to the throughput.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar [regexp] [jmh options]
+ */
+public class BenchmarkMain {
+
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+    CommandLineOptions cmdLine = new CommandLineOptions(args);
+
+    Options options = new OptionsBuilder()
+        .parent(cmdLine)
+        .addProfiler(GCProfiler.class)
+        .build();
+
+    new Runner(options).run();
+  }
+
+}
@@ -0,0 +1,47 @@
+package waterfall.onewire.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import waterfall.onewire.Convert;
+import waterfall.onewire.device.DS18B20Scratchpad;
+
+/**
+ * The hex codec every cmd goes through, sized as a DS18B20 scratchpad.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConvertBenchmark {
+
+  private final byte[] data = new DS18B20Scratchpad().setTempC((float) 21.5).getRawBytes();
+  private final byte[] hex = Convert.byteToHex(data);
+  private final byte[] toData = new byte[data.length];
+
+  @Benchmark
+  public byte[] byteToHex() {
+    return Convert.byteToHex(data);
+  }
+
+  @Benchmark
+  public byte[] hexToByte() {
+    return Convert.hexToByte(hex);
+  }
+
+  @Benchmark
+  public byte[] hexToByteInto() {
+    Convert.hexToByte(hex, 0, hex.length, toData, 0);
+    return toData;
+  }
+
+}
@@ -0,0 +1,62 @@
+package waterfall.onewire.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import waterfall.onewire.Convert;
+import waterfall.onewire.device.DS18B20Scratchpad;
+import waterfall.onewire.device.DS18B20ScratchpadView;
+
+/**
+ * Decoding a reading, both by wrapping the result in a new DS18B20Scratchpad and through a reused
+ * DS18B20ScratchpadView over the raw bytes or the hex the bus returned.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DS18B20ScratchpadBenchmark {
+
+  private final byte[] data = new DS18B20Scratchpad().setTempC((float) 21.5).getRawBytes();
+  private final byte[] hex = Convert.byteToHex(data);
+  private final DS18B20Scratchpad scratchpad = new DS18B20Scratchpad(data);
+  private final DS18B20ScratchpadView view = new DS18B20ScratchpadView();
+
+  @Benchmark
+  public float getTempC() {
+    return scratchpad.getTempC();
+  }
+
+  @Benchmark
+  public boolean checkValid() {
+    return scratchpad.checkValid();
+  }
+
+  @Benchmark
+  public float newScratchpadReading() {
+    DS18B20Scratchpad s = new DS18B20Scratchpad(data);
+    return (s.checkValid() ? s.getTempC() : Float.NaN);
+  }
+
+  @Benchmark
+  public float viewReading() {
+    view.wrap(data);
+    return (view.checkValid() ? view.getTempC() : Float.NaN);
+  }
+
+  @Benchmark
+  public float viewHexReading() {
+    view.wrapHex(hex, 0);
+    return (view.checkValid() ? view.getTempC() : Float.NaN);
+  }
+
+}
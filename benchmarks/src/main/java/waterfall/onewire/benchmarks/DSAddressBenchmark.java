@@ -0,0 +1,83 @@
+package waterfall.onewire.benchmarks;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.DSAddressMap;
+
+/**
+ * Building DSAddresses from what the bus returns, and looking them up in a directory the size of a
+ * large installation, in a HashMap and in a DSAddressMap.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DSAddressBenchmark {
+
+  private final String hexString = DSAddress._EE0000065BC0AE28;
+  private final byte[] hexBytes = hexString.getBytes();
+  private final DSAddress dsAddress = DSAddress.fromUncheckedHex(hexString);
+
+  private static final int DIRECTORY_SIZE = 500;
+  private final DSAddress[] probes = new DSAddress[DIRECTORY_SIZE];
+  private final HashMap<DSAddress, Integer> hashMap = new HashMap<>();
+  private final DSAddressMap<Integer> addressMap = new DSAddressMap<>();
+  private int probeIndex = 0;
+
+  @Setup
+  public void setup() {
+    for (int i = 0; i < DIRECTORY_SIZE; i++) {
+      hashMap.put(Devices.address(i), i);
+      addressMap.put(Devices.address(i), i);
+      // looked up with equal instances, as the addresses from a search would be
+      probes[i] = Devices.address(i);
+    }
+  }
+
+  @Benchmark
+  public DSAddress fromUncheckedHex() {
+    return DSAddress.fromUncheckedHex(hexString);
+  }
+
+  @Benchmark
+  public DSAddress takeUnCRCCheckedHex() {
+    // the address only reads the hex bytes, so handing it the same array each time is fine here
+    return DSAddress.takeUnCRCCheckedHex(hexBytes);
+  }
+
+  @Benchmark
+  public int hashCodeOf() {
+    return dsAddress.hashCode();
+  }
+
+  @Benchmark
+  public Integer hashMapGet() {
+    return hashMap.get(nextProbe());
+  }
+
+  @Benchmark
+  public Integer addressMapGet() {
+    return addressMap.get(nextProbe());
+  }
+
+  private DSAddress nextProbe() {
+    if (++probeIndex == DIRECTORY_SIZE) {
+      probeIndex = 0;
+    }
+    return probes[probeIndex];
+  }
+
+}
@@ -0,0 +1,29 @@
+package waterfall.onewire.benchmarks;
+
+import com.dalsemi.onewire.utils.CRC8;
+import waterfall.onewire.DSAddress;
+
+/**
+ * Made up DS18B20 addresses for the benchmarks.
+ */
+class Devices {
+
+  static final byte DS18B20_FAMILY = 0x28;
+
+  /**
+   * @return a DS18B20 address with a good CRC, different for every index.
+   */
+  static DSAddress address(int index) {
+    byte[] addr = new byte[8];
+    addr[0] = DS18B20_FAMILY;
+    addr[1] = (byte) index;
+    addr[2] = (byte) (index >> 8);
+    addr[3] = (byte) 0xC0;
+    addr[4] = (byte) 0x5B;
+    addr[5] = 0x06;
+    addr[6] = 0x00;
+    addr[7] = (byte) CRC8.compute(addr, 0, 7);
+    return DSAddress.takeChecked(addr);
+  }
+
+}
@@ -0,0 +1,101 @@
+package waterfall.onewire.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmaster.ConvertTCmd;
+import waterfall.onewire.busmaster.ReadScratchpadCmd;
+import waterfall.onewire.busmaster.SearchBusCmd;
+import waterfall.onewire.busmasters.HA7S.HA7S;
+import waterfall.onewire.busmasters.HA7S.HA7SSerialDummy;
+import waterfall.onewire.busmasters.HA7S.part.DS18B20;
+import waterfall.onewire.device.DS18B20Scratchpad;
+
+/**
+ * Whole HA7S cmds, from execute() through the frames, the checks and the result, against an
+ * HA7SSerialDummy with DS18B20s on it. The dummy waits for the millisecond clock to tick before it
+ * answers each call, so the throughput here is mostly the dummy. The number to watch is
+ * gc.alloc.rate.norm, the bytes each cmd allocates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HA7SCmdBenchmark {
+
+  @Param({"8"})
+  public int deviceCount;
+
+  private HA7SSerialDummy serial;
+  private HA7S ha7s;
+  private DSAddress dsAddress;
+
+  private ConvertTCmd convertTCmd;
+  private ReadScratchpadCmd readScratchpadCmd;
+  private SearchBusCmd searchBusCmd;
+
+  @Setup
+  public void setup() {
+    serial = new HA7SSerialDummy("benchmark");
+    for (int i = 0; i < deviceCount; i++) {
+      serial.addDevice(new DS18B20(Devices.address(i)).setScratchPadData(new byte[][]{
+          new DS18B20Scratchpad().setTempC((float) (20 + i)).getRawBytes()}));
+    }
+    serial.start();
+    ha7s = new HA7S(serial);
+
+    dsAddress = Devices.address(0);
+    convertTCmd = ha7s.queryConvertTCmd(dsAddress);
+    readScratchpadCmd = ha7s.queryReadScratchpadCmd(dsAddress, (short) 9);
+    searchBusCmd = ha7s.querySearchBusCmd();
+  }
+
+  @TearDown
+  public void tearDown() {
+    ha7s.stopBus();
+    serial.stop();
+  }
+
+  @Benchmark
+  public ConvertTCmd.Result convertT() {
+    return check(convertTCmd.execute(), ConvertTCmd.Result.success);
+  }
+
+  @Benchmark
+  public ReadScratchpadCmd.Result readScratchpad() {
+    return check(readScratchpadCmd.execute(), ReadScratchpadCmd.Result.success);
+  }
+
+  @Benchmark
+  public ReadScratchpadCmd.Result queryAndReadScratchpad() {
+    ReadScratchpadCmd cmd = ha7s.queryReadScratchpadCmd(dsAddress, (short) 9);
+    return check(cmd.execute(), ReadScratchpadCmd.Result.success);
+  }
+
+  @Benchmark
+  public SearchBusCmd.Result searchBus() {
+    return check(searchBusCmd.execute(), SearchBusCmd.Result.success);
+  }
+
+  // A failing cmd would be measuring the wrong thing.
+  private static <R> R check(R result, R expected) {
+    if (result != expected) {
+      throw new IllegalStateException("unexpected result:" + result);
+    }
+    return result;
+  }
+
+}
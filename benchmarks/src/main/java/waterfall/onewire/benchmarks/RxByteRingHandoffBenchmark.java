@@ -0,0 +1,144 @@
+package waterfall.onewire.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import waterfall.onewire.busmasters.HA7S.RxByteRing;
+
+/**
+ * The receive handoff between the serial event thread and the caller waiting on a response, the
+ * RxByteRing/LockSupport handoff JSSC uses against the monitor wait/notify handoff it replaced.
+ * There is no serial port involved, a "device" thread spins waiting for each request and then
+ * delivers a short CR terminated response the way the jSSC listener would, so what is measured is
+ * only the cost of getting the response to the caller and the caller running again. Sampled, so the
+ * percentiles of the handoff are reported as well as the mean.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RxByteRingHandoffBenchmark {
+
+  private static final byte[] response = {'4', '4', '\r'};
+
+  @Benchmark
+  public void monitor(MonitorHandoff handoff) throws InterruptedException {
+    handoff.request();
+  }
+
+  @Benchmark
+  public void ring(RingHandoff handoff) throws InterruptedException {
+    handoff.request();
+  }
+
+  public static abstract class Handoff {
+
+    // Bumped by the caller for every request, the device thread answers each one.
+    protected volatile long requestSeq = 0;
+    private volatile boolean done = false;
+    private Thread device;
+
+    protected abstract void deliver();
+
+    protected abstract void request() throws InterruptedException;
+
+    @Setup
+    public void startDevice() {
+      done = false;
+      device = new Thread(() -> {
+        long seen = requestSeq;
+        while (!done) {
+          long seq = requestSeq;
+          if (seq != seen) {
+            seen = seq;
+            deliver();
+          }
+        }
+      }, "device");
+      device.setDaemon(true);
+      device.start();
+    }
+
+    @TearDown
+    public void stopDevice() throws InterruptedException {
+      done = true;
+      device.join();
+    }
+  }
+
+  // The design JSSC used before, the listener fills the caller's buffer under the monitor and
+  // notifies it.
+  @State(Scope.Thread)
+  public static class MonitorHandoff extends Handoff {
+
+    private final Object lock = new Object();
+    private final byte[] readBuffer = new byte[16];
+    private int readCount;
+    private boolean readComplete;
+
+    @Override
+    protected void deliver() {
+      synchronized (lock) {
+        for (byte b : response) {
+          if (b == '\r') {
+            readComplete = true;
+            lock.notify();
+            break;
+          }
+          readBuffer[readCount++] = b;
+        }
+      }
+    }
+
+    @Override
+    protected void request() throws InterruptedException {
+      synchronized (lock) {
+        readCount = 0;
+        readComplete = false;
+        requestSeq++;
+        while (!readComplete) {
+          lock.wait();
+        }
+      }
+    }
+  }
+
+  // The current design, the listener only publishes into the ring and the caller parks on it.
+  @State(Scope.Thread)
+  public static class RingHandoff extends Handoff {
+
+    private final RxByteRing ring = new RxByteRing(1024);
+    private final byte[] chunk = new byte[1024];
+
+    @Override
+    protected void deliver() {
+      ring.offer(response, 0, response.length);
+    }
+
+    @Override
+    protected void request() throws InterruptedException {
+      requestSeq++;
+      final long deadlineNanos = RxByteRing.deadlineNanosFromNow(1000);
+      int count = 0;
+      while ((count == 0) || (chunk[count - 1] != '\r')) {
+        final int taken = ring.take(chunk, count, (chunk.length - count), deadlineNanos);
+        if (taken == 0) {
+          // past the deadline, the device thread is gone
+          throw new IllegalStateException("no response");
+        }
+        count += taken;
+      }
+    }
+  }
+
+}
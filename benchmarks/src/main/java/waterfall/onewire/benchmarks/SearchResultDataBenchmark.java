@@ -0,0 +1,49 @@
+package waterfall.onewire.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmaster.SearchBusCmd;
+
+/**
+ * Building the result of a search, which CRC32s the whole list so pushes can tell when it changed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchResultDataBenchmark {
+
+  @Param({"1", "8", "32"})
+  public int deviceCount;
+
+  private List<DSAddress> list;
+
+  @Setup
+  public void setup() {
+    list = new ArrayList<>(deviceCount);
+    for (int i = 0; i < deviceCount; i++) {
+      list.add(Devices.address(i));
+    }
+  }
+
+  @Benchmark
+  public SearchBusCmd.ResultData newResultData() {
+    return new SearchBusCmd.ResultData(list, 1L);
+  }
+
+}
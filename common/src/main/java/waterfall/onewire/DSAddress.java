@@ -1,10 +1,13 @@
 package waterfall.onewire;
 
 import com.dalsemi.onewire.utils.CRC8;
-import java.util.Arrays;
 
 /**
  * Created by dwaterfa on 6/15/16.
+ *
+ * The 64 bit ROM id is kept in a single long, raw byte 0 (the family code) in the low 8 bits and
+ * the CRC8 in the high 8 bits. Printed as hex it reads MSB to LSB, so the hex is the long in
+ * %016X.
  */
 public class DSAddress extends Object {
 
@@ -27,8 +30,7 @@ public class DSAddress extends Object {
   public static String _30000000C369CC12 = "30000000C369CC12";
   public static String _7B0000063B759F27 = "7B0000063B759F27";
 
-  private final byte[] addr;
-  private byte[] hexBytes = null;
+  private final long value;
 
   /**
    * Construct from a String of unchecked data. Must be 16 upper case hex characters in MSB to LSB
@@ -48,17 +50,17 @@ public class DSAddress extends Object {
     if (uncheckedHexAddr.length() != 16) {
       throw new IllegalArgumentException("uncheckedHexAddr bad length");
     }
-    byte[] addr = new byte[8];
+    long value = 0;
     for (int i = 0; i < 8; i++) {
       int hexCharIndex = ((7 - i) * 2);
       byte msb = checkUpperCaseHex((byte) uncheckedHexAddr.charAt(hexCharIndex), notHexMsg);
       byte lsb = checkUpperCaseHex((byte) uncheckedHexAddr.charAt(hexCharIndex + 1), notHexMsg);
-      addr[i] = (byte) Convert.hexTo8bits(msb, lsb);
+      value |= ((long) Convert.hexTo8bits(msb, lsb) << (8 * i));
     }
-    if (CRC8.compute(addr) != 0) {
+    if (crc8(value) != 0) {
       throw new IllegalArgumentException("uncheckedHexAddr bad CRC8 " + uncheckedHexAddr);
     }
-    return new DSAddress(addr);
+    return new DSAddress(value);
   }
 
   /**
@@ -77,16 +79,11 @@ public class DSAddress extends Object {
     if (takeUnCRCCheckedHexAddr.length != 16) {
       throw new IllegalArgumentException("takeUnCRCCheckedHexAddr bad length");
     }
-    byte[] addr = new byte[8];
-    for (int i = 0; i < 8; i++) {
-      int hexCharIndex = ((7 - i) * 2);
-      addr[i] = (byte) Convert.hexTo8bits(takeUnCRCCheckedHexAddr[hexCharIndex],
-          takeUnCRCCheckedHexAddr[hexCharIndex + 1]);
-    }
-    if (CRC8.compute(addr) != 0) {
+    final long value = hexToLong(takeUnCRCCheckedHexAddr, 0);
+    if (crc8(value) != 0) {
       throw new IllegalArgumentException("takeUnCRCCheckedHexAddr bad CRC8");
     }
-    return new DSAddress(addr);
+    return new DSAddress(value);
   }
 
   /**
@@ -104,7 +101,31 @@ public class DSAddress extends Object {
     if (checkedAddrToTake.length != 8) {
       throw new IllegalArgumentException("checkedAddrToTake bad length");
     }
-    return new DSAddress(checkedAddrToTake);
+    long value = 0;
+    for (int i = 0; i < 8; i++) {
+      value |= (((long) checkedAddrToTake[i] & 0xff) << (8 * i));
+    }
+    return new DSAddress(value);
+  }
+
+  /**
+   * Construct from the long form returned by toLong().
+   *
+   * @return DSAddress
+   * @throws IllegalArgumentException for failed CRC check
+   */
+  public static DSAddress fromLong(long value) {
+    if (crc8(value) != 0) {
+      throw new IllegalArgumentException("value bad CRC8");
+    }
+    return new DSAddress(value);
+  }
+
+  /**
+   * Same as fromLong() for values already known to be good, such as those kept by a DSAddressMap.
+   */
+  static DSAddress fromCheckedLong(long value) {
+    return new DSAddress(value);
   }
 
   /**
@@ -114,7 +135,14 @@ public class DSAddress extends Object {
    * @return the family code
    */
   public short getFamilyCode() {
-    return (short) addr[0];
+    return (short) (byte) value;
+  }
+
+  /**
+   * @return the 8 raw bytes in one long, byte 0 in the low 8 bits.
+   */
+  public long toLong() {
+    return value;
   }
 
   /**
@@ -126,7 +154,7 @@ public class DSAddress extends Object {
    */
   public byte[] copyRawBytesTo(byte[] to, int index) {
     for (int i = 0; i < 8; i++) {
-      to[index + i] = addr[i];
+      to[index + i] = (byte) (value >>> (8 * i));
     }
     return to;
   }
@@ -139,9 +167,8 @@ public class DSAddress extends Object {
    * @return the array passed in
    */
   public byte[] copyHexBytesTo(byte[] to, int index) {
-    byte[] t = getHexBytes();
-    for (int i = 0; i < t.length; i++) {
-      to[index + i] = t[i];
+    for (int i = 0; i < 16; i++) {
+      to[index + i] = Convert.fourBitsToHex((int) (value >>> (60 - (4 * i))) & 0xf);
     }
     return to;
   }
@@ -151,35 +178,43 @@ public class DSAddress extends Object {
    */
   @Override
   public String toString() {
-    return new String(getHexBytes());
+    return new String(copyHexBytesTo(new byte[16], 0));
   }
 
   @Override
   public boolean equals(Object other) {
     return ((other instanceof DSAddress) &&
-        ((other == this) || (Arrays.equals(addr, ((DSAddress) other).addr))));
+        ((other == this) || (value == ((DSAddress) other).value)));
   }
 
   @Override
   public int hashCode() {
-    return Arrays.hashCode(addr);
+    return Long.hashCode(value);
+  }
+
+  private DSAddress(long value) {
+    this.value = value;
   }
 
-  private DSAddress(byte[] checkedAddrToTake) {
-    this.addr = checkedAddrToTake;
+  // CRC8 over the raw bytes in order, zero if the CRC byte is right.
+  static int crc8(long value) {
+    int crc = 0;
+    for (int i = 0; i < 8; i++) {
+      crc = CRC8.compute((int) (value >>> (8 * i)) & 0xff, crc);
+    }
+    return crc;
   }
 
-  private byte[] getHexBytes() {
-    if (hexBytes == null) {
-      byte[] new_hexBytes = new byte[16];
-      int hexDataIndex = 0;
-      for (int i = 7; i >= 0; i--) {
-        new_hexBytes[hexDataIndex++] = Convert.fourBitsToHex(((int) addr[i] & 0xff) >> 4);
-        new_hexBytes[hexDataIndex++] = Convert.fourBitsToHex(((int) addr[i] & 0xff) & 0xf);
-      }
-      hexBytes = new_hexBytes;
+  // 16 upper case hex chars from offset, MSB to LSB, into the long form. Neither the chars nor the
+  // CRC8 are checked.
+  static long hexToLong(byte[] hexBuf, int offset) {
+    long value = 0;
+    for (int i = 0; i < 8; i++) {
+      int hexCharIndex = offset + ((7 - i) * 2);
+      value |= ((long) Convert.hexTo8bits(hexBuf[hexCharIndex], hexBuf[hexCharIndex + 1])
+          << (8 * i));
     }
-    return hexBytes;
+    return value;
   }
 
   private static byte checkUpperCaseHex(byte b, String message) {
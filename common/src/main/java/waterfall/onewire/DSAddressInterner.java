@@ -0,0 +1,85 @@
+package waterfall.onewire;
+
+/**
+ * Hands back one canonical DSAddress for each address seen, so a bus master searching the same
+ * devices over and over builds each DSAddress once instead of once per device per search. The
+ * canonical instances also let a search compare its result to the previous one by identity.
+ *
+ * The addresses are looked up by the long the hex response decodes to, so nothing is allocated for
+ * an address already interned. Devices which leave the bus are not tracked, instead everything is
+ * dropped once maxSize addresses have been interned and the bus is learned again.
+ *
+ * Not thread safe, a bus master only uses it with its bus held.
+ */
+public class DSAddressInterner {
+
+  public static final int DEFAULT_MAX_SIZE = 1024;
+
+  private final int maxSize;
+  private final DSAddressMap<DSAddress> canonical;
+
+  public DSAddressInterner() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * @param maxSize number of addresses to intern before starting over.
+   */
+  public DSAddressInterner(int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    this.maxSize = maxSize;
+    this.canonical = new DSAddressMap<>(Math.min(maxSize, 64));
+  }
+
+  /**
+   * @param hexBuf holding 16 upper case hex chars from offset in MSB to LSB order, which the caller
+   * has already checked are hex. Not kept, so the caller may reuse it.
+   * @return the canonical DSAddress
+   * @throws IllegalArgumentException for failed CRC check
+   */
+  public DSAddress internHex(byte[] hexBuf, int offset) {
+    if (hexBuf == null) {
+      throw new NullPointerException("hexBuf");
+    }
+    if ((offset < 0) || ((offset + 16) > hexBuf.length)) {
+      throw new IllegalArgumentException("hexBuf must hold 16 hex chars from offset");
+    }
+
+    final long value = DSAddress.hexToLong(hexBuf, offset);
+    DSAddress dsAddress = canonical.get(value);
+    if (dsAddress == null) {
+      if (DSAddress.crc8(value) != 0) {
+        throw new IllegalArgumentException("hexBuf bad CRC8");
+      }
+      dsAddress = DSAddress.fromCheckedLong(value);
+      add(dsAddress);
+    }
+    return dsAddress;
+  }
+
+  /**
+   * @return the canonical DSAddress equal to dsAddress, which becomes canonical if there was none.
+   */
+  public DSAddress intern(DSAddress dsAddress) {
+    final DSAddress existing = canonical.get(dsAddress);
+    if (existing != null) {
+      return existing;
+    }
+    add(dsAddress);
+    return dsAddress;
+  }
+
+  public int size() {
+    return canonical.size();
+  }
+
+  private void add(DSAddress dsAddress) {
+    if (canonical.size() >= maxSize) {
+      canonical.clear();
+    }
+    canonical.put(dsAddress, dsAddress);
+  }
+
+}
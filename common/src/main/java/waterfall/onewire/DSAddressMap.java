@@ -0,0 +1,200 @@
+package waterfall.onewire;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Map from DSAddress to a value, keyed by the long form of the address so nothing is boxed and a
+ * lookup is a hash and a short probe through two arrays. Linear probing with backward shift
+ * deletion, so there are no tombstones to build up as devices come and go.
+ *
+ * Null values are not allowed, a null in the value array marks an empty slot. Not thread safe, the
+ * same as HashMap.
+ */
+public class DSAddressMap<V> {
+
+  private static final int MIN_CAPACITY = 8;
+
+  private long[] keys;
+  private Object[] values;
+  private int mask;
+  private int size = 0;
+
+  public DSAddressMap() {
+    this(MIN_CAPACITY);
+  }
+
+  /**
+   * @param expectedSize number of addresses to hold without growing.
+   */
+  public DSAddressMap(int expectedSize) {
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException("expectedSize must not be negative");
+    }
+    allocate(capacityFor(expectedSize));
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return (size == 0);
+  }
+
+  public V get(DSAddress dsAddress) {
+    return get(dsAddress.toLong());
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(long address) {
+    int i = slot(address);
+    Object v;
+    while ((v = values[i]) != null) {
+      if (keys[i] == address) {
+        return (V) v;
+      }
+      i = ((i + 1) & mask);
+    }
+    return null;
+  }
+
+  public boolean containsKey(DSAddress dsAddress) {
+    return (get(dsAddress.toLong()) != null);
+  }
+
+  /**
+   * @return the value replaced, or null if there was none.
+   */
+  public V put(DSAddress dsAddress, V value) {
+    return put(dsAddress.toLong(), value);
+  }
+
+  @SuppressWarnings("unchecked")
+  public V put(long address, V value) {
+    if (value == null) {
+      throw new IllegalArgumentException("value must be non-null");
+    }
+
+    int i = slot(address);
+    Object v;
+    while ((v = values[i]) != null) {
+      if (keys[i] == address) {
+        values[i] = value;
+        return (V) v;
+      }
+      i = ((i + 1) & mask);
+    }
+
+    keys[i] = address;
+    values[i] = value;
+    if (++size > maxSize()) {
+      rehash(values.length * 2);
+    }
+    return null;
+  }
+
+  /**
+   * @return the value removed, or null if there was none.
+   */
+  public V remove(DSAddress dsAddress) {
+    return remove(dsAddress.toLong());
+  }
+
+  @SuppressWarnings("unchecked")
+  public V remove(long address) {
+    int i = slot(address);
+    Object v;
+    while ((v = values[i]) != null) {
+      if (keys[i] == address) {
+        shiftBack(i);
+        size--;
+        return (V) v;
+      }
+      i = ((i + 1) & mask);
+    }
+    return null;
+  }
+
+  public void clear() {
+    Arrays.fill(values, null);
+    size = 0;
+  }
+
+  /**
+   * Calls the consumer with every entry, in no particular order. The map must not be changed from
+   * the consumer.
+   */
+  @SuppressWarnings("unchecked")
+  public void forEach(BiConsumer<DSAddress, ? super V> consumer) {
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] != null) {
+        consumer.accept(DSAddress.fromCheckedLong(keys[i]), (V) values[i]);
+      }
+    }
+  }
+
+  // Close the gap at i by moving back any entry further along the run which would no longer be
+  // found past the gap.
+  private void shiftBack(int gap) {
+    int i = gap;
+    while (true) {
+      i = ((i + 1) & mask);
+      if (values[i] == null) {
+        break;
+      }
+      final int home = slot(keys[i]);
+      // the entry at i may move to the gap unless its home lies cyclically in (gap, i]
+      final boolean homeAfterGap = (gap <= i) ? ((gap < home) && (home <= i))
+          : ((gap < home) || (home <= i));
+      if (!homeAfterGap) {
+        keys[gap] = keys[i];
+        values[gap] = values[i];
+        gap = i;
+      }
+    }
+    values[gap] = null;
+  }
+
+  private int slot(long address) {
+    // the family code is the same for most addresses on a bus, so mix all of the bits in
+    long h = address * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+
+  private int maxSize() {
+    // keep the load at or under 3/4
+    return ((values.length >> 2) * 3);
+  }
+
+  private static int capacityFor(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (((capacity >> 2) * 3) < expectedSize) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new Object[capacity];
+    mask = (capacity - 1);
+  }
+
+  private void rehash(int capacity) {
+    final long[] oldKeys = keys;
+    final Object[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != null) {
+        int j = slot(oldKeys[i]);
+        while (values[j] != null) {
+          j = ((j + 1) & mask);
+        }
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+
+}
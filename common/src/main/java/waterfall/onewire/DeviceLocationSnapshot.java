@@ -0,0 +1,251 @@
+package waterfall.onewire;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Which bus each device was last found on, by the name of its BusMaster, and the configuration it
+ * was last known to have. Kept across restarts so that a device can be bound to its BusMaster as
+ * soon as that is started rather than after a search has found it. What it says may be out of date
+ * and is only a place to start, the device still has to be found where it is said to be.
+ *
+ * The file is small and binary. The names of the buses are written once and each device refers to
+ * its bus by index:
+ *
+ * <pre>
+ *   int MAGIC, int nameCount, nameCount x UTF name,
+ *   int deviceCount, deviceCount x (long address, short nameIndex, byte configLength, config)
+ * </pre>
+ *
+ * Thread safe.
+ */
+public class DeviceLocationSnapshot {
+
+  static final int MAGIC = 0x444C5331; // "DLS1"
+  static final int MAX_CONFIG = 127;
+
+  // Guarded by this.
+  private final DSAddressMap<Location> locations = new DSAddressMap<>();
+  // Counts the changes, and the count when it was last written out without an error.
+  private long changeCount = 0;
+  private long writtenChangeCount = 0;
+
+  /**
+   * @return the snapshot in the file, or an empty one if there is no file yet.
+   * @throws IOException if the file could not be read or is not a snapshot.
+   */
+  public static DeviceLocationSnapshot load(Path path) throws IOException {
+    if (path == null) {
+      throw new IllegalArgumentException("path");
+    }
+    try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+      return read(is);
+    } catch (NoSuchFileException e) {
+      return new DeviceLocationSnapshot();
+    }
+  }
+
+  public static DeviceLocationSnapshot read(InputStream is) throws IOException {
+    DataInputStream dis = new DataInputStream(is);
+    if (dis.readInt() != MAGIC) {
+      throw new IOException("not a DeviceLocationSnapshot");
+    }
+
+    final int nameCount = dis.readInt();
+    if ((nameCount < 0) || (nameCount > Short.MAX_VALUE)) {
+      throw new IOException("bad nameCount " + nameCount);
+    }
+    final String[] names = new String[nameCount];
+    for (int i = 0; i < nameCount; i++) {
+      names[i] = dis.readUTF();
+    }
+
+    final int deviceCount = dis.readInt();
+    if (deviceCount < 0) {
+      throw new IOException("bad deviceCount " + deviceCount);
+    }
+    DeviceLocationSnapshot snapshot = new DeviceLocationSnapshot();
+    for (int i = 0; i < deviceCount; i++) {
+      final long address = dis.readLong();
+      final int nameIndex = dis.readShort();
+      final int configLength = dis.readByte();
+      if ((nameIndex < 0) || (nameIndex >= nameCount) || (configLength < 0)) {
+        throw new IOException("bad device " + i);
+      }
+      final byte[] config = new byte[configLength];
+      dis.readFully(config);
+
+      final DSAddress dsAddress;
+      try {
+        dsAddress = DSAddress.fromLong(address);
+      } catch (IllegalArgumentException e) {
+        throw new IOException("bad address " + Long.toHexString(address));
+      }
+      snapshot.locations.put(dsAddress, new Location(names[nameIndex], config));
+    }
+    return snapshot;
+  }
+
+  /**
+   * Write the snapshot to a file next to the path and then move it over the path, so a crash part
+   * way through leaves the last one there.
+   */
+  public void save(Path path) throws IOException {
+    if (path == null) {
+      throw new IllegalArgumentException("path");
+    }
+    final Path absolute = path.toAbsolutePath();
+    final Path tmp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+    final long count;
+    try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+      count = writeTo(os);
+    }
+    Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    written(count);
+  }
+
+  public void write(OutputStream os) throws IOException {
+    written(writeTo(os));
+  }
+
+  // Returns the change count which was written, which is not the current one if it has changed
+  // since.
+  private long writeTo(OutputStream os) throws IOException {
+    final long count;
+    final List<String> names = new ArrayList<>();
+    final HashMap<String, Integer> nameIndexes = new HashMap<>();
+    final List<DSAddress> dsAddresses = new ArrayList<>();
+    final List<Location> deviceLocations = new ArrayList<>();
+
+    synchronized (this) {
+      locations.forEach((dsAddress, location) -> {
+        if (!nameIndexes.containsKey(location.busName)) {
+          nameIndexes.put(location.busName, names.size());
+          names.add(location.busName);
+        }
+        dsAddresses.add(dsAddress);
+        deviceLocations.add(location);
+      });
+      count = changeCount;
+    }
+    if (names.size() > Short.MAX_VALUE) {
+      throw new IOException("too many bus names " + names.size());
+    }
+
+    DataOutputStream dos = new DataOutputStream(os);
+    dos.writeInt(MAGIC);
+    dos.writeInt(names.size());
+    for (String name : names) {
+      dos.writeUTF(name);
+    }
+    dos.writeInt(dsAddresses.size());
+    for (int i = 0; i < dsAddresses.size(); i++) {
+      final Location location = deviceLocations.get(i);
+      dos.writeLong(dsAddresses.get(i).toLong());
+      dos.writeShort(nameIndexes.get(location.busName));
+      dos.writeByte(location.config.length);
+      dos.write(location.config);
+    }
+    dos.flush();
+    return count;
+  }
+
+  private synchronized void written(long count) {
+    writtenChangeCount = count;
+  }
+
+  /**
+   * @return the name of the BusMaster the device was last found on, or null if it is not known.
+   */
+  public synchronized String getBusName(DSAddress dsAddress) {
+    final Location location = locations.get(dsAddress);
+    return ((location != null) ? location.busName : null);
+  }
+
+  /**
+   * @return a copy of the configuration the device was last known to have, or null if it is not
+   * known. What the bytes are is up to the class looking after the device.
+   */
+  public synchronized byte[] getConfig(DSAddress dsAddress) {
+    final Location location = locations.get(dsAddress);
+    return ((location != null) ? location.config.clone() : null);
+  }
+
+  /**
+   * Record where a device was found and the configuration it has.
+   *
+   * @param config up to MAX_CONFIG bytes, copied.
+   * @return true if that was not what the snapshot already had.
+   */
+  public synchronized boolean put(DSAddress dsAddress, String busName, byte[] config) {
+    if (dsAddress == null) {
+      throw new IllegalArgumentException("dsAddress");
+    }
+    if (busName == null) {
+      throw new IllegalArgumentException("busName");
+    }
+    if ((config == null) || (config.length > MAX_CONFIG)) {
+      throw new IllegalArgumentException("config");
+    }
+    final Location current = locations.get(dsAddress);
+    if ((current != null) && (current.busName.equals(busName)) &&
+        (Arrays.equals(current.config, config))) {
+      return false;
+    }
+    locations.put(dsAddress, new Location(busName, config.clone()));
+    changeCount++;
+    return true;
+  }
+
+  /**
+   * Forget a device, such as one which is no longer where the snapshot said it was.
+   *
+   * @return true if it was known.
+   */
+  public synchronized boolean remove(DSAddress dsAddress) {
+    if (locations.remove(dsAddress) != null) {
+      changeCount++;
+      return true;
+    }
+    return false;
+  }
+
+  public synchronized int size() {
+    return locations.size();
+  }
+
+  /**
+   * @return true if there have been changes since the snapshot was last written or saved without
+   * an error, so a caller which saves it from time to time need only do so when there is
+   * something new, and tries again after a save which failed.
+   */
+  public synchronized boolean isChanged() {
+    return (changeCount != writtenChangeCount);
+  }
+
+  private static class Location {
+
+    private final String busName;
+    private final byte[] config;
+
+    private Location(String busName, byte[] config) {
+      this.busName = busName;
+      this.config = config;
+    }
+  }
+
+}
@@ -4,14 +4,15 @@
 package waterfall.onewire;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import waterfall.onewire.busmaster.BusMaster;
-import waterfall.onewire.busmaster.NotifySearchBusCmdResult;
+import waterfall.onewire.busmaster.NotifySearchBusDeltaResult;
 import waterfall.onewire.busmaster.SearchBusCmd;
+import waterfall.onewire.busmaster.SearchDelta;
 
 /**
  * Implements the waiting for Address scheme. There will be one instance of this for a specified
@@ -19,13 +20,16 @@ import waterfall.onewire.busmaster.SearchBusCmd;
  * get notified of new bus masters AND removed busmasters so it can scheduled and stop scheduling
  * searches as required.
  */
-public class WaitForDeviceByAddress implements Observer, NotifySearchBusCmdResult {
+public class WaitForDeviceByAddress implements Observer, NotifySearchBusDeltaResult {
 
   private final BusMasterRegistry bmRegistry;
   private final boolean typeByAlarm;
   private final long bmSearchPeriodMSec;
   private final ArrayList<BusMaster> bmScheduledList;
-  private final HashMap<DSAddress, WaitForDeviceByAddressCallback> waitMap;
+  private final DSAddressMap<WaitForDeviceByAddressCallback> waitMap;
+  // BusMasters scheduled before addresses were last added, whose devices may already be on the bus
+  // and so will not show up in a delta.
+  private final ArrayList<BusMaster> bmNeedFullList;
   private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
   public WaitForDeviceByAddress(BusMasterRegistry bmRegistry, boolean typeByAlarm,
@@ -40,7 +44,8 @@ public class WaitForDeviceByAddress implements Observer, NotifySearchBusCmdResul
     this.typeByAlarm = typeByAlarm;
     this.bmSearchPeriodMSec = bmSearchPeriodMSec;
     this.bmScheduledList = new ArrayList<>();
-    this.waitMap = new HashMap<>();
+    this.bmNeedFullList = new ArrayList<>();
+    this.waitMap = new DSAddressMap<>();
   }
 
   // We are called from the BusMasterRegistry with a BusMaster and we will schedule a search on it.
@@ -62,6 +67,7 @@ public class WaitForDeviceByAddress implements Observer, NotifySearchBusCmdResul
           bm = ((BusMasterRegistry.BusMasterRemoved) arg).getBusMaster();
           if (bmScheduledList.contains(bm)) {
             bmScheduledList.remove(bm);
+            bmNeedFullList.remove(bm);
             removed = true;
           }
         }
@@ -88,7 +94,24 @@ public class WaitForDeviceByAddress implements Observer, NotifySearchBusCmdResul
   @Override // NotifySearchBusCmdResult
   public synchronized void notify(BusMaster bm, boolean byAlarm,
       SearchBusCmd.ResultData searchResultData) {
-    for (DSAddress addr : searchResultData.getList()) {
+    bmNeedFullList.remove(bm);
+    lookFor(bm, searchResultData.getList());
+  }
+
+  // Called from NotifySearchBusDeltaResult when the bus changes, so only the devices which have
+  // just appeared need to be looked at.
+  @Override // NotifySearchBusDeltaResult
+  public synchronized void notifyDelta(BusMaster bm, boolean byAlarm,
+      SearchBusCmd.ResultData searchResultData, SearchDelta delta) {
+    if (bmNeedFullList.contains(bm)) {
+      notify(bm, byAlarm, searchResultData);
+    } else {
+      lookFor(bm, delta.getAdded());
+    }
+  }
+
+  private void lookFor(BusMaster bm, List<DSAddress> dsAddresses) {
+    for (DSAddress addr : dsAddresses) {
       if (waitMap.isEmpty()) {
         break;
       }
@@ -119,6 +142,11 @@ public class WaitForDeviceByAddress implements Observer, NotifySearchBusCmdResul
 
     synchronized (this) {
       mapWasEmpty = waitMap.isEmpty();
+      for (BusMaster bm : bmScheduledList) {
+        if (!bmNeedFullList.contains(bm)) {
+          bmNeedFullList.add(bm);
+        }
+      }
 
       for (DSAddress dsAddress : dsAddresses) {
         if (waitMap.containsKey(dsAddress)) {
@@ -162,6 +190,7 @@ public class WaitForDeviceByAddress implements Observer, NotifySearchBusCmdResul
           t_bm.cancelScheduledNotifySearchBusCmd(this, typeByAlarm);
         }
         bmScheduledList.clear();
+        bmNeedFullList.clear();
       }
     }
   }
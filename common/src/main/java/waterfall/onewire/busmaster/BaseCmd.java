@@ -1,11 +1,16 @@
 package waterfall.onewire.busmaster;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Created by dwaterfa on 7/7/16.
+ *
+ * @param <R> the Result of the cmd.
  */
-public class BaseCmd {
+public abstract class BaseCmd<R> {
 
   protected final BusMaster busMaster;
+  private volatile CmdPriority priority = CmdPriority.INTERACTIVE;
 
   public BaseCmd(BusMaster busMaster) {
     if (busMaster == null) {
@@ -21,5 +26,51 @@ public class BaseCmd {
     return busMaster;
   }
 
+  /**
+   * The class of work this cmd is. A BusMaster uses it to order the cmds waiting for the bus.
+   */
+  public CmdPriority getPriority() {
+    return priority;
+  }
+
+  public void setPriority(CmdPriority priority) {
+    if (priority == null) {
+      throw new IllegalArgumentException("priority");
+    }
+    this.priority = priority;
+  }
+
+  /**
+   * Execute the cmd on the bus, blocking the caller until it is done.
+   */
+  public abstract R execute();
+
+  /**
+   * The part of the cmd which talks to the bus, called by BusCmdScheduler.run() once the cmd has
+   * the bus. Only a cmd which is run that way need override it.
+   */
+  protected R execute_scheduled() {
+    throw new UnsupportedOperationException("execute_scheduled");
+  }
+
+  /**
+   * Same as execute() except that the cmd is queued on the BusMaster and the caller is not blocked
+   * while it runs. The future completes with the Result, or exceptionally with the NoResultException
+   * itself, not wrapped in a CompletionException, if the cmd was already busy when it came off the
+   * queue.
+   */
+  public CompletableFuture<R> executeAsync() {
+    final CompletableFuture<R> future = new CompletableFuture<>();
+    busMaster.getAsyncCmdExecutor().execute(() -> {
+      try {
+        future.complete(execute());
+      } catch (RuntimeException e) {
+        // as is, supplyAsync() would have wrapped it in a CompletionException
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
 }
 
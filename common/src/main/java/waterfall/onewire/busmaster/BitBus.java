@@ -0,0 +1,62 @@
+package waterfall.onewire.busmaster;
+
+/**
+ * The bit level operations on a 1-Wire bus which a RomSearch needs. Bus masters which only offer
+ * whole searches in firmware, such as the HA7S, cannot provide this. Those which drive the bus a
+ * time slot at a time, or which have a triplet operation like the DS2482, can.
+ *
+ * A BitBus is used by one thread at a time, with the bus held by the caller.
+ */
+public interface BitBus {
+
+  /**
+   * The id bit read by triplet().
+   */
+  public static final int TRIPLET_ID_BIT = 0x1;
+
+  /**
+   * The complement id bit read by triplet().
+   */
+  public static final int TRIPLET_CMP_ID_BIT = 0x2;
+
+  /**
+   * The direction written by triplet().
+   */
+  public static final int TRIPLET_DIRECTION = 0x4;
+
+  /**
+   * @return true if a presence pulse was seen after the reset.
+   */
+  public boolean reset();
+
+  public void writeBit(boolean bit);
+
+  public boolean readBit();
+
+  /**
+   * Write a byte, LSB first.
+   */
+  public default void writeByte(int b) {
+    for (int i = 0; i < 8; i++) {
+      writeBit(((b >> i) & 0x1) != 0);
+    }
+  }
+
+  /**
+   * One step of a ROM search. Read the id bit and its complement, then write the direction to
+   * take: the id bit if the devices still in the search agree on it, otherwise the direction asked
+   * for.
+   *
+   * @param direction to take if there is a discrepancy.
+   * @return TRIPLET_ID_BIT, TRIPLET_CMP_ID_BIT and TRIPLET_DIRECTION or'ed together.
+   */
+  public default int triplet(boolean direction) {
+    final boolean idBit = readBit();
+    final boolean cmpIdBit = readBit();
+    final boolean taken = ((idBit == cmpIdBit) ? (idBit || direction) : idBit);
+    writeBit(taken);
+    return ((idBit ? TRIPLET_ID_BIT : 0) | (cmpIdBit ? TRIPLET_CMP_ID_BIT : 0) |
+        (taken ? TRIPLET_DIRECTION : 0));
+  }
+
+}
@@ -0,0 +1,103 @@
+package waterfall.onewire.busmaster;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The queue a BusMaster drains the executeAsync() cmds through. The cmds are run one at a time, in
+ * the order they were queued, on a single daemon thread which is only started once the first cmd
+ * is queued. Since a bus can only do one thing at a time there is nothing to gain from more
+ * threads, and callers waiting on several buses need no thread of their own.
+ */
+public class BusCmdExecutor implements Executor {
+
+  private static final Runnable stopMarker = () -> {
+  };
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+  private final String name;
+  private final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+  private Thread thread = null;
+  private boolean shutdown = false;
+
+  public BusCmdExecutor(String name) {
+    if (name == null) {
+      throw new IllegalArgumentException("name");
+    }
+    this.name = name;
+  }
+
+  /**
+   * Queue a cmd to be run. Once shutdown() has been called the cmd is instead run immediately on
+   * the calling thread, which for a stopped bus will return a fault without blocking.
+   */
+  @Override
+  public void execute(Runnable cmd) {
+    if (cmd == null) {
+      throw new IllegalArgumentException("cmd");
+    }
+
+    synchronized (this) {
+      if (!shutdown) {
+        queue.add(cmd);
+        if (thread == null) {
+          thread = new Thread(this::drain, "BusCmdExecutor " + name);
+          thread.setDaemon(true);
+          thread.start();
+        }
+        return;
+      }
+    }
+
+    cmd.run();
+  }
+
+  /**
+   * @return the number of cmds waiting to be run, not counting one which is running.
+   */
+  public synchronized int getQueueDepth() {
+    // the stop marker is not a cmd
+    return Math.max(0, (queue.size() - ((shutdown && (thread != null)) ? 1 : 0)));
+  }
+
+  /**
+   * Stop taking new cmds on the queue. Those already queued will still be run, and then the thread
+   * will exit.
+   */
+  public synchronized void shutdown() {
+    if (!shutdown) {
+      shutdown = true;
+      if (thread != null) {
+        queue.add(stopMarker);
+      }
+    }
+  }
+
+  public synchronized boolean isShutdown() {
+    return shutdown;
+  }
+
+  private void drain() {
+    while (true) {
+      Runnable cmd;
+      try {
+        cmd = queue.take();
+      } catch (InterruptedException e) {
+        continue;
+      }
+
+      if (cmd == stopMarker) {
+        return;
+      }
+
+      try {
+        cmd.run();
+      } catch (Throwable t) {
+        logger.error(name + " cmd threw", t);
+      }
+    }
+  }
+
+}
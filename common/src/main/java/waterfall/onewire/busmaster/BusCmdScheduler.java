@@ -0,0 +1,219 @@
+package waterfall.onewire.busmaster;
+
+import java.util.ArrayDeque;
+
+/**
+ * Decides which cmd gets the bus next. A BusMaster implementation calls acquire() before it starts
+ * talking to the bus for a cmd and release() when it is done. While the bus is busy the waiting
+ * cmds are queued by their CmdPriority and when the bus is released it goes to the longest waiting
+ * cmd of the most urgent class. A cmd which has the bus is never interrupted, so the most an
+ * INTERACTIVE cmd will wait on a BACKGROUND one is the one which is already running.
+ */
+public class BusCmdScheduler {
+
+  private static final CmdPriority[] priorities = CmdPriority.values();
+
+  private final ArrayDeque<Waiter>[] waiting;
+  private final Stats[] stats;
+  private boolean busy;
+
+  @SuppressWarnings("unchecked")
+  public BusCmdScheduler() {
+    waiting = new ArrayDeque[priorities.length];
+    stats = new Stats[priorities.length];
+    for (int i = 0; i < priorities.length; i++) {
+      waiting[i] = new ArrayDeque<>();
+      stats[i] = new Stats();
+    }
+    busy = false;
+  }
+
+  /**
+   * Wait until the bus is given to the caller. Interrupts do not end the wait, the interrupt status
+   * is left set for the caller to deal with once it returns.
+   *
+   * @param priority the class of cmd the caller is running
+   */
+  public void acquire(CmdPriority priority) {
+    if (priority == null) {
+      throw new IllegalArgumentException("priority");
+    }
+
+    final int p = priority.ordinal();
+    final long startNanos = System.nanoTime();
+
+    synchronized (this) {
+      if (!busy) {
+        busy = true;
+        stats[p].granted(0);
+        return;
+      }
+
+      Waiter waiter = new Waiter();
+      waiting[p].addLast(waiter);
+      stats[p].queued(waiting[p].size());
+
+      boolean interrupted = false;
+      while (!waiter.granted) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+
+      stats[p].granted(System.nanoTime() - startNanos);
+
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Give up the bus, handing it to the next waiting cmd if there is one.
+   */
+  public synchronized void release() {
+    if (!busy) {
+      throw new IllegalArgumentException("release() without acquire()");
+    }
+
+    for (int i = 0; i < priorities.length; i++) {
+      Waiter next = waiting[i].pollFirst();
+      if (next != null) {
+        // busy stays true, it now belongs to next
+        next.granted = true;
+        notifyAll();
+        return;
+      }
+    }
+
+    busy = false;
+  }
+
+  /**
+   * Run the cmd's execute_scheduled() with the bus, acquiring it at the cmd's priority first and
+   * releasing it however the cmd finishes. The cmd itself is called back, so nothing is allocated.
+   *
+   * @return what the cmd returned
+   */
+  public <R> R run(BaseCmd<R> cmd) {
+    acquire(cmd.getPriority());
+    try {
+      return cmd.execute_scheduled();
+    } finally {
+      release();
+    }
+  }
+
+  /**
+   * @return the number of cmds of the class currently waiting for the bus
+   */
+  public synchronized int getQueueDepth(CmdPriority priority) {
+    return waiting[priority.ordinal()].size();
+  }
+
+  /**
+   * @return a snapshot of the statistics for the class of cmd
+   */
+  public synchronized Stats getStats(CmdPriority priority) {
+    return stats[priority.ordinal()].copy(waiting[priority.ordinal()].size());
+  }
+
+  private static class Waiter {
+
+    boolean granted = false;
+  }
+
+  /**
+   * Counts for one class of cmd. The wait time is how long a cmd waited in acquire() for the bus.
+   */
+  public static class Stats {
+
+    private long grantedCount;
+    private long waitedCount;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+    private int queueDepth;
+    private int maxQueueDepth;
+
+    private Stats() {
+    }
+
+    private void queued(int depth) {
+      if (depth > maxQueueDepth) {
+        maxQueueDepth = depth;
+      }
+    }
+
+    private void granted(long waitNanos) {
+      grantedCount++;
+      if (waitNanos > 0) {
+        waitedCount++;
+        totalWaitNanos += waitNanos;
+        if (waitNanos > maxWaitNanos) {
+          maxWaitNanos = waitNanos;
+        }
+      }
+    }
+
+    private Stats copy(int queueDepth) {
+      Stats copy = new Stats();
+      copy.grantedCount = grantedCount;
+      copy.waitedCount = waitedCount;
+      copy.totalWaitNanos = totalWaitNanos;
+      copy.maxWaitNanos = maxWaitNanos;
+      copy.queueDepth = queueDepth;
+      copy.maxQueueDepth = maxQueueDepth;
+      return copy;
+    }
+
+    /**
+     * @return number of cmds which have been given the bus
+     */
+    public long getGrantedCount() {
+      return grantedCount;
+    }
+
+    /**
+     * @return number of those cmds which found the bus busy and had to wait
+     */
+    public long getWaitedCount() {
+      return waitedCount;
+    }
+
+    public long getTotalWaitNanos() {
+      return totalWaitNanos;
+    }
+
+    public long getMaxWaitNanos() {
+      return maxWaitNanos;
+    }
+
+    /**
+     * @return average wait over all the cmds given the bus, including those which did not wait
+     */
+    public long getAverageWaitNanos() {
+      return ((grantedCount == 0) ? 0 : (totalWaitNanos / grantedCount));
+    }
+
+    /**
+     * @return number of cmds waiting when the snapshot was taken
+     */
+    public int getQueueDepth() {
+      return queueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+      return maxQueueDepth;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("granted:%d waited:%d avgWait:%dus maxWait:%dus depth:%d maxDepth:%d",
+          grantedCount, waitedCount, (getAverageWaitNanos() / 1000), (maxWaitNanos / 1000),
+          queueDepth, maxQueueDepth);
+    }
+  }
+
+}
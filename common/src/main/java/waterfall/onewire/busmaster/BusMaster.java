@@ -1,5 +1,6 @@
 package waterfall.onewire.busmaster;
 
+import java.util.concurrent.Executor;
 import waterfall.onewire.DSAddress;
 
 /**
@@ -25,6 +26,15 @@ public interface BusMaster {
    */
   public long getCurrentTimeMillis();
 
+  /**
+   * The queue which the executeAsync() method of the cmds from this busmaster are run through. Each
+   * BusMaster has its own, so the cmds for one bus run one at a time and in the order they were
+   * queued, while cmds for different buses run independently.
+   *
+   * @return Executor for the cmds of this busmaster
+   */
+  public Executor getAsyncCmdExecutor();
+
   /**
    * Get a searchBusCmd for this busmaster.
    *
@@ -97,6 +107,14 @@ public interface BusMaster {
    */
   public ConvertTCmd queryConvertTCmd(final DSAddress dsAddr);
 
+  /**
+   * Get a ConvertTAllCmd from this busmaster which starts a temperature conversion on every device
+   * on the bus with a single Skip ROM broadcast.
+   *
+   * @return ConvertTAllCmd
+   */
+  public ConvertTAllCmd queryConvertTAllCmd();
+
   /**
    * Get a ReadPowerSupplyCmd for the specified DSAddress from this busmaster.
    *
@@ -0,0 +1,23 @@
+package waterfall.onewire.busmaster;
+
+/**
+ * The class of work a cmd belongs to, which decides the order cmds waiting on the same bus are
+ * given the bus. Declared from most to least urgent.
+ */
+public enum CmdPriority {
+  /**
+   * Someone is waiting on the answer, for example a REST request reading a temperature. This is the
+   * default for every cmd.
+   */
+  INTERACTIVE,
+
+  /**
+   * Regular sampling which has to happen but where nobody is waiting on the individual answer.
+   */
+  PERIODIC,
+
+  /**
+   * Housekeeping such as the scheduled bus searches, which can always wait.
+   */
+  BACKGROUND
+}
@@ -5,7 +5,7 @@ import waterfall.onewire.DSAddress;
 /**
  * Created by dwaterfa on 6/9/16.
  */
-public abstract class ConvertTCmd extends DeviceBaseCmd {
+public abstract class ConvertTCmd extends DeviceBaseCmd<ConvertTCmd.Result> {
 
   protected Result result = null;
 
@@ -4,8 +4,10 @@ import waterfall.onewire.DSAddress;
 
 /**
  * Created by dwaterfa on 7/24/16.
+ *
+ * @param <R> the Result of the cmd.
  */
-public abstract class DeviceBaseCmd extends BaseCmd {
+public abstract class DeviceBaseCmd<R> extends BaseCmd<R> {
 
   protected DSAddress dsAddr;
   /**
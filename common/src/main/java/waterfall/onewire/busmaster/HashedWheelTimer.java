@@ -0,0 +1,352 @@
+package waterfall.onewire.busmaster;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timing wheel which all of the SearchPushers share, rather than each having a Timer and
+ * so a thread of its own. A single daemon thread advances the wheel one tick at a time and hands
+ * whatever has expired to an executor, so a push which blocks on a slow bus does not hold up the
+ * others. Everything in a tick which is past its deadline goes out together, and a periodic
+ * Timeout which expires while its task is still running from the last time is coalesced into that
+ * run rather than started again.
+ *
+ * A periodic Timeout is rescheduled from when its task starts, like the fixed delay of
+ * Timer.schedule(), so runs are never closer together than the period. The period and delay can
+ * be changed in place with reschedule().
+ *
+ * The thread is only started once something is scheduled, and it waits without ticking while
+ * nothing is.
+ */
+public class HashedWheelTimer {
+
+  public static final long DEFAULT_TICK_MSEC = 5;
+  public static final int DEFAULT_WHEEL_SIZE = 512;
+
+  private static final AtomicInteger sharedThreadCount = new AtomicInteger();
+  private static HashedWheelTimer shared = null;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+  private final String name;
+  private final long tickNanos;
+  private final int mask;
+  private final Executor executor;
+
+  // Guarded by this.
+  private final Timeout[] wheel;
+  private final long startNanos = System.nanoTime();
+  private long tick = 0;
+  // Set while the bucket for tick is being scanned.
+  private boolean scanning = false;
+  private int timeoutCount = 0;
+  private Thread thread = null;
+  private long firedCount = 0;
+  private long coalescedCount = 0;
+
+  /**
+   * @param tickMSec how far apart the ticks are, the wheel turns over wheelSize of them.
+   * @param wheelSize the number of buckets, rounded up to a power of two.
+   * @param executor runs the tasks which have expired.
+   */
+  public HashedWheelTimer(String name, long tickMSec, int wheelSize, Executor executor) {
+    if (name == null) {
+      throw new IllegalArgumentException("name");
+    }
+    if (tickMSec < 1) {
+      throw new IllegalArgumentException("tickMSec");
+    }
+    if ((wheelSize < 1) || (wheelSize > (1 << 20))) {
+      throw new IllegalArgumentException("wheelSize");
+    }
+    if (executor == null) {
+      throw new IllegalArgumentException("executor");
+    }
+    this.name = name;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMSec);
+    int size = 1;
+    while (size < wheelSize) {
+      size <<= 1;
+    }
+    this.wheel = new Timeout[size];
+    this.mask = (size - 1);
+    this.executor = executor;
+  }
+
+  /**
+   * @return the timer the SearchPushers share unless they are given one. The pushes are run on a
+   * pool of daemon threads which are kept around between them.
+   */
+  public static synchronized HashedWheelTimer getShared() {
+    if (shared == null) {
+      final ThreadFactory threadFactory = (r) -> {
+        Thread t = new Thread(r, "SearchPusher-" + sharedThreadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      };
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+          new SynchronousQueue<>(), threadFactory);
+      shared = new HashedWheelTimer("SearchPushers", DEFAULT_TICK_MSEC, DEFAULT_WHEEL_SIZE, pool);
+    }
+    return shared;
+  }
+
+  /**
+   * @param task to run each time the Timeout expires
+   * @param delayMSec until the first run, 0 for the next tick
+   * @param periodMSec between the start of one run and the next, or 0 to only run once
+   */
+  public Timeout schedule(Runnable task, long delayMSec, long periodMSec) {
+    if (task == null) {
+      throw new IllegalArgumentException("task");
+    }
+    Timeout timeout = new Timeout(task);
+    timeout.reschedule(delayMSec, periodMSec);
+    return timeout;
+  }
+
+  /**
+   * @return the Timeouts waiting to expire.
+   */
+  public synchronized int getTimeoutCount() {
+    return timeoutCount;
+  }
+
+  /**
+   * @return the tasks which have been handed to the executor.
+   */
+  public synchronized long getFiredCount() {
+    return firedCount;
+  }
+
+  /**
+   * @return the expiries which were folded into a run of the task which had not yet finished.
+   */
+  public synchronized long getCoalescedCount() {
+    return coalescedCount;
+  }
+
+  //
+  // Private, all with this held.
+  //
+
+  private void add(Timeout timeout, long deadlineNanos) {
+    if ((timeoutCount == 0) && !scanning) {
+      // nothing is on the wheel so it can be moved up to now rather than tick through the gap
+      tick = Math.max(tick, ((System.nanoTime() - startNanos) / tickNanos));
+    }
+    // The tick the deadline falls in, never one which has already gone. One added from the scan,
+    // a periodic or rejected Timeout put back by expire(), goes no sooner than the next tick since
+    // the scan would not see it and the end of the tick would take its rounds below 0.
+    final long index = Math.max((scanning ? (tick + 1) : tick),
+        ((deadlineNanos - startNanos) / tickNanos));
+    timeout.deadlineNanos = deadlineNanos;
+    timeout.rounds = ((index - tick) >> Integer.numberOfTrailingZeros(wheel.length));
+    timeout.bucket = (int) (index & mask);
+
+    timeout.prev = null;
+    timeout.next = wheel[timeout.bucket];
+    if (timeout.next != null) {
+      timeout.next.prev = timeout;
+    }
+    wheel[timeout.bucket] = timeout;
+
+    if (timeoutCount++ == 0) {
+      if (thread == null) {
+        thread = new Thread(this::run, "HashedWheelTimer " + name);
+        thread.setDaemon(true);
+        thread.start();
+      } else {
+        notifyAll();
+      }
+    }
+  }
+
+  private void remove(Timeout timeout) {
+    if (timeout.prev != null) {
+      timeout.prev.next = timeout.next;
+    } else {
+      wheel[timeout.bucket] = timeout.next;
+    }
+    if (timeout.next != null) {
+      timeout.next.prev = timeout.prev;
+    }
+    timeout.prev = null;
+    timeout.next = null;
+    timeout.bucket = -1;
+    timeoutCount--;
+  }
+
+  private synchronized void run() {
+    for (; ; ) {
+      try {
+        if (timeoutCount == 0) {
+          wait();
+          continue;
+        }
+        long now = System.nanoTime();
+        final long tickStartNanos = (startNanos + (tick * tickNanos));
+        if (now < tickStartNanos) {
+          TimeUnit.NANOSECONDS.timedWait(this, (tickStartNanos - now));
+          continue;
+        }
+
+        // Everything due in this tick and already past its deadline goes out together. The rest of
+        // the tick is waited out to the next deadline in it, rather than rounded up to the next
+        // tick, so that a Timeout is never more than the wait late.
+        long earliestNanos = Long.MAX_VALUE;
+        Timeout timeout = wheel[(int) (tick & mask)];
+        scanning = true;
+        try {
+          while (timeout != null) {
+            final Timeout next = timeout.next;
+            if (timeout.rounds == 0) {
+              if ((timeout.deadlineNanos - now) <= 0) {
+                remove(timeout);
+                expire(timeout);
+              } else {
+                earliestNanos = Math.min(earliestNanos, timeout.deadlineNanos);
+              }
+            }
+            timeout = next;
+          }
+        } finally {
+          scanning = false;
+        }
+        if (earliestNanos != Long.MAX_VALUE) {
+          TimeUnit.NANOSECONDS.timedWait(this, (earliestNanos - now));
+          continue;
+        }
+      } catch (InterruptedException e) {
+        continue;
+      }
+
+      // and those a turn or more away are now a turn closer
+      for (Timeout timeout = wheel[(int) (tick & mask)]; timeout != null;
+          timeout = timeout.next) {
+        timeout.rounds--;
+      }
+      tick++;
+    }
+  }
+
+  private void expire(Timeout timeout) {
+    if (timeout.running) {
+      coalescedCount++;
+      if (timeout.periodNanos > 0) {
+        add(timeout, (System.nanoTime() + timeout.periodNanos));
+      } else {
+        // a one shot goes back on the wheel once the run it was folded into has finished
+        timeout.expiredWhileRunning = true;
+      }
+      return;
+    }
+
+    timeout.running = true;
+    firedCount++;
+    try {
+      executor.execute(timeout::run);
+    } catch (RuntimeException e) {
+      timeout.running = false;
+      logger.error("{}: executor rejected a Timeout", name, e);
+      if (timeout.periodNanos > 0) {
+        add(timeout, (System.nanoTime() + timeout.periodNanos));
+      }
+    }
+  }
+
+  public class Timeout {
+
+    private final Runnable task;
+
+    // Guarded by the HashedWheelTimer.
+    private long periodNanos;
+    private boolean cancelled = false;
+    private boolean running = false;
+    private boolean expiredWhileRunning = false;
+    private int bucket = -1;
+    private long deadlineNanos;
+    private long rounds;
+    private Timeout prev;
+    private Timeout next;
+
+    private Timeout(Runnable task) {
+      this.task = task;
+    }
+
+    /**
+     * Change when the Timeout next expires and its period, in place. It is taken off the wheel if
+     * it was on it and put back at the new delay.
+     */
+    public void reschedule(long delayMSec, long periodMSec) {
+      if (delayMSec < 0) {
+        throw new IllegalArgumentException("delayMSec");
+      }
+      if (periodMSec < 0) {
+        throw new IllegalArgumentException("periodMSec");
+      }
+      synchronized (HashedWheelTimer.this) {
+        if (cancelled) {
+          throw new IllegalArgumentException("cancelled");
+        }
+        periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMSec);
+        expiredWhileRunning = false;
+        if (bucket >= 0) {
+          remove(this);
+        }
+        add(this, (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMSec)));
+      }
+    }
+
+    /**
+     * Take the Timeout off the wheel. A run which has already started will finish.
+     */
+    public void cancel() {
+      synchronized (HashedWheelTimer.this) {
+        if (!cancelled) {
+          cancelled = true;
+          if (bucket >= 0) {
+            remove(this);
+          }
+        }
+      }
+    }
+
+    public boolean isCancelled() {
+      synchronized (HashedWheelTimer.this) {
+        return cancelled;
+      }
+    }
+
+    private void run() {
+      synchronized (HashedWheelTimer.this) {
+        // the next run is timed from this one starting, unless reschedule() has already done it
+        if (!cancelled && (periodNanos > 0) && (bucket < 0)) {
+          add(this, (System.nanoTime() + periodNanos));
+        }
+      }
+
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        logger.error("{}: Timeout task", name, e);
+      } finally {
+        synchronized (HashedWheelTimer.this) {
+          running = false;
+          if (expiredWhileRunning) {
+            expiredWhileRunning = false;
+            if (!cancelled && (bucket < 0)) {
+              add(this, System.nanoTime());
+            }
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,307 @@
+package waterfall.onewire.busmaster;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import waterfall.onewire.DSAddress;
+
+/**
+ * Calls the NotifySearchBusCmdResults with the searches the NotifySearchBusCmdHelpers hand it, on
+ * a shared executor rather than a thread of their own. Each subscriber has its own queue which at
+ * most one task at a time works through, so a subscriber hears about the searches in the order
+ * they were done and never from two threads at once, while a slow one only holds up itself.
+ *
+ * A subscriber may be on several bus masters, and on both the general and alarm searches of each,
+ * so what is waiting for it is bounded for each bus master and search type. Once a subscriber has
+ * fallen that far behind on one of them what is waiting from it is coalesced into one
+ * notification, which never mixes the searches of different bus masters or types. For a
+ * NotifySearchBusCmdResult that is just the latest search since it has the whole bus, and for a
+ * NotifySearchBusDeltaResult it is the delta from the list the oldest waiting delta was worked out
+ * from to the latest list. The bus master never waits.
+ */
+public class NotifyDispatcher {
+
+  public static final int DEFAULT_MAX_QUEUED = 16;
+
+  private static final AtomicInteger sharedThreadCount = new AtomicInteger();
+  private static NotifyDispatcher shared = null;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+  private final Executor executor;
+  private final int maxQueued;
+  // Guarded by this, only the subscribers with something waiting or being delivered.
+  private final HashMap<Object, SubscriberQueue> queues = new HashMap<>();
+
+  private final AtomicLong dispatchedCount = new AtomicLong();
+  private final AtomicLong coalescedCount = new AtomicLong();
+  private final AtomicLong failedCount = new AtomicLong();
+  private final AtomicLong totalLatencyNanos = new AtomicLong();
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+  /**
+   * @param executor runs the deliveries, at most one at a time for each subscriber.
+   * @param maxQueued how many notifications from one bus master and search type may wait for a
+   * subscriber before they are coalesced.
+   */
+  public NotifyDispatcher(Executor executor, int maxQueued) {
+    if (executor == null) {
+      throw new IllegalArgumentException("executor");
+    }
+    if (maxQueued < 1) {
+      throw new IllegalArgumentException("maxQueued");
+    }
+    this.executor = executor;
+    this.maxQueued = maxQueued;
+  }
+
+  /**
+   * @return the dispatcher the bus masters share unless they are given one, on a pool of daemon
+   * threads, one per processor.
+   */
+  public static synchronized NotifyDispatcher getShared() {
+    if (shared == null) {
+      final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+      final ThreadFactory threadFactory = (r) -> {
+        Thread t = new Thread(r, "NotifyDispatcher-" + sharedThreadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      };
+      // each subscriber has at most one task on the queue, so it is bounded by them
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), threadFactory);
+      pool.allowCoreThreadTimeOut(true);
+      shared = new NotifyDispatcher(pool, DEFAULT_MAX_QUEUED);
+    }
+    return shared;
+  }
+
+  /**
+   * Queue a search for a subscriber.
+   *
+   * @param obj a NotifySearchBusCmdResult, or NotifySearchBusDeltaResult when delta is non-null.
+   * @param previous the list the delta was worked out from, null if it is the whole bus.
+   * @param delta what changed, or null to call notify() rather than notifyDelta().
+   */
+  public void dispatch(BusMaster bm, boolean isAlarmSearch, Object obj,
+      SearchBusCmd.ResultData searchResultData, List<DSAddress> previous, SearchDelta delta) {
+    if ((obj == null) || (searchResultData == null)) {
+      throw new IllegalArgumentException("obj and searchResultData must be non-null");
+    }
+
+    final Pending pending = new Pending(bm, isAlarmSearch, searchResultData, previous, delta,
+        System.nanoTime());
+    final SubscriberQueue queue;
+
+    synchronized (this) {
+      SubscriberQueue q = queues.get(obj);
+      if (q == null) {
+        q = new SubscriberQueue(obj);
+        queues.put(obj, q);
+      }
+
+      Pending oldest = null;
+      int sameCount = 0;
+      for (Pending p : q.pending) {
+        if (p.isSameSearch(pending)) {
+          if (oldest == null) {
+            oldest = p;
+          }
+          sameCount++;
+        }
+      }
+
+      if (sameCount >= maxQueued) {
+        // only those from the same bus master and search type, the others keep their place
+        final Pending coalesced = coalesce(oldest, pending);
+        q.pending.removeIf((p) -> p.isSameSearch(pending));
+        coalescedCount.addAndGet(sameCount);
+        if (coalesced != null) {
+          q.pending.add(coalesced);
+        }
+      } else {
+        q.pending.add(pending);
+      }
+
+      if (q.scheduled || q.pending.isEmpty()) {
+        return;
+      }
+      q.scheduled = true;
+      queue = q;
+    }
+
+    schedule(queue);
+  }
+
+  /**
+   * @return the notifications waiting for their subscribers, not counting those being delivered.
+   */
+  public synchronized int getPendingCount() {
+    int count = 0;
+    for (SubscriberQueue q : queues.values()) {
+      count += q.pending.size();
+    }
+    return count;
+  }
+
+  /**
+   * @return the notifications delivered, including those which threw.
+   */
+  public long getDispatchedCount() {
+    return dispatchedCount.get();
+  }
+
+  /**
+   * @return the notifications folded into a later one because the subscriber was behind.
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /**
+   * @return the notifications where the subscriber threw, or which could not be delivered.
+   */
+  public long getFailedCount() {
+    return failedCount.get();
+  }
+
+  /**
+   * @return the mean time from dispatch() to the subscriber being called.
+   */
+  public long getMeanDispatchLatencyNanos() {
+    final long count = dispatchedCount.get();
+    return ((count == 0) ? 0 : (totalLatencyNanos.get() / count));
+  }
+
+  /**
+   * @return the longest time from dispatch() to the subscriber being called.
+   */
+  public long getMaxDispatchLatencyNanos() {
+    return maxLatencyNanos.get();
+  }
+
+  //
+  // Private
+  //
+
+  // Folds everything waiting from the same search into the latest, timed from the oldest. Null if
+  // there is then nothing to say to a NotifySearchBusDeltaResult.
+  private static Pending coalesce(Pending oldest, Pending latest) {
+    if (latest.delta == null) {
+      return new Pending(latest.bm, latest.isAlarmSearch, latest.searchResultData, null, null,
+          oldest.enqueuedNanos);
+    }
+
+    final SearchDelta delta = SearchDelta.between(oldest.previous,
+        latest.searchResultData.getList());
+    if (delta.isEmpty() && (oldest.previous != null)) {
+      return null;
+    }
+    return new Pending(latest.bm, latest.isAlarmSearch, latest.searchResultData, oldest.previous,
+        delta, oldest.enqueuedNanos);
+  }
+
+  // One notification, and then back on the executor if there is more, so that a subscriber with a
+  // lot waiting does not keep the others from their turn.
+  private void deliverNext(SubscriberQueue queue) {
+    final Pending pending;
+    synchronized (this) {
+      pending = queue.pending.pollFirst();
+      if (pending == null) {
+        queue.scheduled = false;
+        queues.remove(queue.obj);
+        return;
+      }
+    }
+
+    final long latency = (System.nanoTime() - pending.enqueuedNanos);
+    dispatchedCount.incrementAndGet();
+    totalLatencyNanos.addAndGet(latency);
+    maxLatencyNanos.accumulateAndGet(latency, Math::max);
+
+    try {
+      if (pending.delta != null) {
+        NotifySearchBusDeltaResult.class.cast(queue.obj)
+            .notifyDelta(pending.bm, pending.isAlarmSearch, pending.searchResultData,
+                pending.delta);
+      } else {
+        NotifySearchBusCmdResult.class.cast(queue.obj)
+            .notify(pending.bm, pending.isAlarmSearch, pending.searchResultData);
+      }
+    } catch (Exception e) {
+      failedCount.incrementAndGet();
+      logger.error("{}: notify {}", ((pending.bm != null) ? pending.bm.getName() : null),
+          queue.obj.getClass().getName(), e);
+    }
+
+    synchronized (this) {
+      if (queue.pending.isEmpty()) {
+        queue.scheduled = false;
+        queues.remove(queue.obj);
+        return;
+      }
+    }
+    schedule(queue);
+  }
+
+  private void schedule(SubscriberQueue queue) {
+    try {
+      executor.execute(() -> deliverNext(queue));
+    } catch (RejectedExecutionException e) {
+      // the executor has been shut down, so what is waiting will never be delivered
+      synchronized (this) {
+        failedCount.addAndGet(queue.pending.size());
+        queue.pending.clear();
+        queue.scheduled = false;
+        queues.remove(queue.obj);
+      }
+      logger.error("notify {} rejected", queue.obj.getClass().getName(), e);
+    }
+  }
+
+  private static class SubscriberQueue {
+
+    private final Object obj;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    // true while a deliverNext() for this queue is on the executor or running
+    private boolean scheduled = false;
+
+    private SubscriberQueue(Object obj) {
+      this.obj = obj;
+    }
+  }
+
+  private static class Pending {
+
+    private final BusMaster bm;
+    private final boolean isAlarmSearch;
+    private final SearchBusCmd.ResultData searchResultData;
+    private final List<DSAddress> previous;
+    private final SearchDelta delta;
+    private final long enqueuedNanos;
+
+    private Pending(BusMaster bm, boolean isAlarmSearch, SearchBusCmd.ResultData searchResultData,
+        List<DSAddress> previous, SearchDelta delta, long enqueuedNanos) {
+      this.bm = bm;
+      this.isAlarmSearch = isAlarmSearch;
+      this.searchResultData = searchResultData;
+      this.previous = previous;
+      this.delta = delta;
+      this.enqueuedNanos = enqueuedNanos;
+    }
+
+    private boolean isSameSearch(Pending other) {
+      return ((bm == other.bm) && (isAlarmSearch == other.isAlarmSearch));
+    }
+  }
+
+}
@@ -1,19 +1,50 @@
 package waterfall.onewire.busmaster;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import waterfall.onewire.DSAddress;
 
 /**
  * Created by dwaterfa on 11/30/16.
+ *
+ * The subscriptions are indexed so that there can be thousands of them without slowing down the
+ * searches. The periods are kept counted in order, so the min period is found in O(log n) on each
+ * schedule, update and cancel, and the search thread works from a copy of the subscribers which is
+ * only made again when one comes or goes. It holds the monitor just long enough to swap the last
+ * search and to take that copy, and dispatches outside of it. A subscriber cancelled while that is
+ * going on may still hear about the search, as it could already from the NotifyDispatcher.
  */
 public class NotifySearchBusCmdHelper {
 
+  private static final Object[] NO_SUBSCRIBERS = new Object[0];
+
   private final SearchPusher searchPusher;
   private final BusMaster bm;
-  private final HashMap<Object, Long> notifyMap;
+  private final NotifyDispatcher dispatcher;
+  private final HashMap<Object, Subscription> notifyMap;
+  // The count of the subscribers at each period, the lowest first.
+  private final TreeMap<Long, Integer> periodCounts;
+  // Replaced rather than changed, so the search thread can go through it without the monitor.
+  private volatile Object[] subscribers;
+  // Only one search is dispatched at a time, so each subscriber hears about them in order.
+  private final Object notifyLock = new Object();
   private SearchBusCmd.ResultData lastNotifySearchResultData;
+  // What the last search found, which the next search is compared against for the delta.
+  private List<DSAddress> lastSearchList;
+  // NotifySearchBusDeltaResults which have not yet been told about the whole bus.
+  private HashSet<Object> deltaNeedsFull;
 
   public NotifySearchBusCmdHelper(SearchPusher searchPusher, BusMaster bm) {
+    this(searchPusher, bm, NotifyDispatcher.getShared());
+  }
+
+  public NotifySearchBusCmdHelper(SearchPusher searchPusher, BusMaster bm,
+      NotifyDispatcher dispatcher) {
     if (searchPusher == null) {
       throw new IllegalArgumentException("searchPusher");
     }
@@ -22,8 +53,16 @@ public class NotifySearchBusCmdHelper {
       throw new IllegalArgumentException("bm");
     }
     this.bm = bm;
-    notifyMap = new HashMap<Object, Long>();
+    if (dispatcher == null) {
+      throw new IllegalArgumentException("dispatcher");
+    }
+    this.dispatcher = dispatcher;
+    notifyMap = new HashMap<Object, Subscription>();
+    periodCounts = new TreeMap<>();
+    subscribers = NO_SUBSCRIBERS;
     lastNotifySearchResultData = null;
+    lastSearchList = null;
+    deltaNeedsFull = new HashSet<>();
   }
 
   /**
@@ -57,9 +96,14 @@ public class NotifySearchBusCmdHelper {
       throw new IllegalArgumentException("SNSBCR_NotifyObjAlreadyScheduled");
     }
 
-    notifyMap.put(obj, new Long(minPeriodMSec));
+    notifyMap.put(obj, new Subscription(minPeriodMSec));
+    addPeriod(minPeriodMSec);
+    subscribers = notifyMap.keySet().toArray();
+    if (obj instanceof NotifySearchBusDeltaResult) {
+      deltaNeedsFull.add(obj);
+    }
 
-    boolean pushStarted = searchPusher.adjustPeriod(calculateMinPeriodMSecFromMap(notifyMap));
+    boolean pushStarted = searchPusher.adjustPeriod(getMinPeriodMSec());
 
     // A push might start immediately, or one might already be in progress, if the last time we pushed exceeded the
     // desired period.
@@ -79,9 +123,14 @@ public class NotifySearchBusCmdHelper {
       lastNotifySearchResultData = null;
     } else if ((lastNotifySearchResultData != null) &&
         ((bm.getCurrentTimeMillis() - lastNotifySearchResultData.getWriteCTM()) <= minPeriodMSec)) {
-      // this will occur on a new thread
-      NotifyHelper notifyHelper = new NotifyHelper(bm, obj, lastNotifySearchResultData,
-          searchPusher.isAlarmSearch());
+      // a NotifySearchBusDeltaResult is told about the whole bus now rather than by the next search
+      SearchDelta delta = null;
+      if (obj instanceof NotifySearchBusDeltaResult) {
+        deltaNeedsFull.remove(obj);
+        delta = SearchDelta.between(null, lastNotifySearchResultData.getList());
+      }
+      dispatcher.dispatch(bm, searchPusher.isAlarmSearch(), obj, lastNotifySearchResultData,
+          null, delta);
     }
   }
 
@@ -99,14 +148,16 @@ public class NotifySearchBusCmdHelper {
       throw new IllegalArgumentException("USNSBC_MinPeriodInvalid");
     }
 
-    Long currentMinPeriodMSec = notifyMap.get(obj);
-    if (currentMinPeriodMSec == minPeriodMSec) {
+    Subscription subscription = notifyMap.get(obj);
+    if (subscription.periodMSec == minPeriodMSec) {
       throw new IllegalArgumentException("USNSBC_MinPeriodUnchanged");
     }
 
-    notifyMap.put(obj, minPeriodMSec);
+    removePeriod(subscription.periodMSec);
+    subscription.periodMSec = minPeriodMSec;
+    addPeriod(minPeriodMSec);
 
-    searchPusher.adjustPeriod(calculateMinPeriodMSecFromMap(notifyMap));
+    searchPusher.adjustPeriod(getMinPeriodMSec());
   }
 
   /**
@@ -119,13 +170,15 @@ public class NotifySearchBusCmdHelper {
       throw new IllegalArgumentException("CSNSBC_NotifyObjNotAlreadyScheduled");
     }
 
-    notifyMap.remove(obj);
+    removePeriod(notifyMap.remove(obj).periodMSec);
+    subscribers = ((notifyMap.size() == 0) ? NO_SUBSCRIBERS : notifyMap.keySet().toArray());
+    deltaNeedsFull.remove(obj);
 
     if (notifyMap.size() == 0) {
       // We are the last one out.
       searchPusher.adjustPeriod(Long.MAX_VALUE);
     } else {
-      searchPusher.adjustPeriod(calculateMinPeriodMSecFromMap(notifyMap));
+      searchPusher.adjustPeriod(getMinPeriodMSec());
     }
   }
 
@@ -137,6 +190,9 @@ public class NotifySearchBusCmdHelper {
   public synchronized boolean cancelAllScheduledSearchNotifyFor() {
     if ((notifyMap != null) && (notifyMap.size() > 0)) {
       notifyMap.clear();
+      periodCounts.clear();
+      subscribers = NO_SUBSCRIBERS;
+      deltaNeedsFull.clear();
       searchPusher.adjustPeriod(Long.MAX_VALUE);
       return true;
     }
@@ -146,70 +202,94 @@ public class NotifySearchBusCmdHelper {
   /**
    * This method is called from the owning BusMaster when the SearchCmd successfully completes.
    */
-  public synchronized void notifySearchResult(final SearchBusCmd.ResultData searchResultData) {
+  public void notifySearchResult(final SearchBusCmd.ResultData searchResultData) {
     if (searchResultData == null) {
       throw new IllegalArgumentException("searchResultData null");
     }
 
-    boolean crc32Changed = ((lastNotifySearchResultData == null) ||
-        (searchResultData.getListCRC32() != lastNotifySearchResultData.getListCRC32()));
+    synchronized (notifyLock) {
+      final boolean crc32Changed;
+      final List<DSAddress> previousSearchList;
+      final Object[] snapshot;
+      final Set<Object> needsFull;
 
-    lastNotifySearchResultData = searchResultData;
+      synchronized (this) {
+        crc32Changed = ((lastNotifySearchResultData == null) ||
+            (searchResultData.getListCRC32() != lastNotifySearchResultData.getListCRC32()));
 
-    if ((notifyMap.size() > 0) && (crc32Changed)) {
-      // this will occur on a new thread
-      NotifyHelper notifyHelper = new NotifyHelper(bm, notifyMap, searchResultData,
-          searchPusher.isAlarmSearch());
-    }
-  }
+        lastNotifySearchResultData = searchResultData;
 
-  /**
-   * This private class does the dirty work of calling back by a different thread the registered
-   * Objects with the result of a search
-   */
-  private class NotifyHelper implements Runnable {
-
-    private final BusMaster bm;
-    private final Object[] objs;
-    private final SearchBusCmd.ResultData searchResultData;
-    private final boolean isAlarmSearch;
-    private final Thread thread;
-
-    public NotifyHelper(final BusMaster bm, final Object obj,
-        final SearchBusCmd.ResultData searchResultData, boolean isAlarmSearch) {
-      this.bm = bm;
-      this.objs = new Object[]{obj};
-      this.searchResultData = searchResultData;
-      this.isAlarmSearch = isAlarmSearch;
-      this.thread = new Thread(this);
-      this.thread.setDaemon(true);
-      this.thread.start();
-    }
-
-    public NotifyHelper(final BusMaster bm, final Map<Object, Long> notifyMap,
-        final SearchBusCmd.ResultData searchResultData, boolean isAlarmSearch) {
-      this.bm = bm;
-      this.objs = new Object[notifyMap.size()];
-      int i = 0;
-      for (Object obj : notifyMap.keySet()) {
-        objs[i++] = obj;
+        previousSearchList = lastSearchList;
+        lastSearchList = searchResultData.getList();
+
+        snapshot = subscribers;
+        if ((snapshot.length == 0) || ((!crc32Changed) && (deltaNeedsFull.isEmpty()))) {
+          return;
+        }
+
+        // those waiting for the whole bus get it from this search, and any scheduled from now on
+        // are added to a new set
+        if (deltaNeedsFull.isEmpty()) {
+          needsFull = Collections.emptySet();
+        } else {
+          needsFull = deltaNeedsFull;
+          deltaNeedsFull = new HashSet<>();
+        }
       }
-      this.searchResultData = searchResultData;
-      this.isAlarmSearch = isAlarmSearch;
-      this.thread = new Thread(this);
-      this.thread.setDaemon(true);
-      this.thread.start();
-    }
-
-    public void run() {
-      for (Object obj : objs) {
-        try {
-          NotifySearchBusCmdResult.class.cast(obj).notify(bm, isAlarmSearch, searchResultData);
-        } catch (Exception e) {
-          ;
+
+      // The delta is worked out once here for all of the NotifySearchBusDeltaResults, each of
+      // which is only called if it has something to hear about.
+      final List<DSAddress> searchList = searchResultData.getList();
+      SearchDelta delta = null;
+      SearchDelta full = null;
+      final boolean isAlarmSearch = searchPusher.isAlarmSearch();
+
+      for (Object obj : snapshot) {
+        if (obj instanceof NotifySearchBusDeltaResult) {
+          if (needsFull.contains(obj)) {
+            if (full == null) {
+              full = SearchDelta.between(null, searchList);
+            }
+            dispatcher.dispatch(bm, isAlarmSearch, obj, searchResultData, null, full);
+          } else if (crc32Changed) {
+            if (delta == null) {
+              delta = SearchDelta.between(previousSearchList, searchList);
+            }
+            if (!delta.isEmpty()) {
+              dispatcher.dispatch(bm, isAlarmSearch, obj, searchResultData, previousSearchList,
+                  delta);
+            }
+          }
+        } else if (crc32Changed) {
+          dispatcher.dispatch(bm, isAlarmSearch, obj, searchResultData, null, null);
         }
       }
     }
   }
 
+  //
+  // Private, all with this held.
+  //
+
+  private void addPeriod(long periodMSec) {
+    periodCounts.merge(periodMSec, 1, Integer::sum);
+  }
+
+  private void removePeriod(long periodMSec) {
+    periodCounts.computeIfPresent(periodMSec, (k, count) -> ((count == 1) ? null : (count - 1)));
+  }
+
+  private long getMinPeriodMSec() {
+    return (periodCounts.isEmpty() ? Long.MAX_VALUE : periodCounts.firstKey());
+  }
+
+  private static class Subscription {
+
+    private long periodMSec;
+
+    private Subscription(long periodMSec) {
+      this.periodMSec = periodMSec;
+    }
+  }
+
 }
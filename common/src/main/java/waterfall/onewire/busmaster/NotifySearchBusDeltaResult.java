@@ -0,0 +1,35 @@
+package waterfall.onewire.busmaster;
+
+/**
+ * A NotifySearchBusCmdResult which is told what changed on the bus rather than being handed the
+ * whole search result to rescan. Scheduled the same way, with scheduleNotifySearchBusCmd().
+ *
+ * The first call after being scheduled has every device on the bus as added. After that a call is
+ * only made when a search finds the bus has changed.
+ */
+public interface NotifySearchBusDeltaResult extends NotifySearchBusCmdResult {
+
+  /**
+   * Notify of a successful SearchBusCmd which changed the bus. Only general and alarm searches are
+   * scheduled, so there is no family search to be told about.
+   *
+   * @param byAlarm true if by the SearchBusCmd was by Alarm, false if it was a general search.
+   * @param searchResultData the whole result, for those who need it.
+   * @param delta the devices added and removed since the previous call.
+   */
+  public void notifyDelta(final BusMaster bm, final boolean byAlarm,
+      final SearchBusCmd.ResultData searchResultData, final SearchDelta delta);
+
+  /**
+   * The NotifySearchBusCmdHelper calls notifyDelta() for every notification, the first with the
+   * whole bus. For callers which only know the plain interface every device in the result is
+   * passed on as added.
+   */
+  @Override
+  default void notify(final BusMaster bm, final boolean byAlarm,
+      final SearchBusCmd.ResultData searchResultData) {
+    notifyDelta(bm, byAlarm, searchResultData, SearchDelta.between(null,
+        searchResultData.getList()));
+  }
+
+}
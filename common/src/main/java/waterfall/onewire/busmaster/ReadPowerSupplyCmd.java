@@ -5,7 +5,7 @@ import waterfall.onewire.DSAddress;
 /**
  * Created by dwaterfa on 6/9/16.
  */
-public abstract class ReadPowerSupplyCmd extends DeviceBaseCmd {
+public abstract class ReadPowerSupplyCmd extends DeviceBaseCmd<ReadPowerSupplyCmd.Result> {
 
   protected Result result = null;
 
@@ -5,12 +5,14 @@ import waterfall.onewire.DSAddress;
 /**
  * Created by dwaterfa on 6/9/16.
  */
-public abstract class ReadScratchpadCmd extends DeviceBaseCmd {
+public abstract class ReadScratchpadCmd extends DeviceBaseCmd<ReadScratchpadCmd.Result> {
 
   protected short requestByteCount;
   protected Result result = null;
   protected byte[] resultData;
   protected byte[] resultHexData;
+  protected byte[] resultHexBuf;
+  protected int resultHexOffset;
 
   protected ReadScratchpadCmd(BusMaster busMaster, DSAddress dsAddr, short requestByteCount) {
     super(busMaster, dsAddr);
@@ -39,6 +41,8 @@ public abstract class ReadScratchpadCmd extends DeviceBaseCmd {
       result = Result.cmdBusy;
       resultData = null;
       resultHexData = null;
+      resultHexBuf = null;
+      resultHexOffset = 0;
       resultWriteCTM = 0;
     }
 
@@ -62,6 +66,9 @@ public abstract class ReadScratchpadCmd extends DeviceBaseCmd {
   }
 
   /**
+   * The array may belong to the cmd and be refilled by the next execute(), so copy it if it is
+   * needed for longer than that.
+   *
    * @return the bytes requested from the scratchpad.
    * @throws NoResultException if the current result is not done.
    */
@@ -77,6 +84,8 @@ public abstract class ReadScratchpadCmd extends DeviceBaseCmd {
   }
 
   /**
+   * Like getResultData() the array may be refilled by the next execute().
+   *
    * @return the bytes requested from the scratchpad encoded as two hex byte chars 0-9A-F.
    * @throws NoResultException if the current result is not done.
    */
@@ -91,6 +100,33 @@ public abstract class ReadScratchpadCmd extends DeviceBaseCmd {
     return resultHexData;
   }
 
+  /**
+   * The buffer the bus master read the bytes into as hex, which is not copied or decoded and so
+   * can be handed straight to DS18B20ScratchpadView.wrapHex(). Like getResultData() it is refilled
+   * by the next execute().
+   *
+   * @return a buffer holding the requested bytes as two hex byte chars each starting at
+   * getResultHexOffset(), or null if the bus master does not read them as hex.
+   * @throws NoResultException if the current result is not done.
+   */
+  public byte[] getResultHexBuf() throws NoResultException, NoResultDataException {
+    if ((result == null) || (result == Result.cmdBusy)) {
+      throw new NoResultException();
+    }
+    if (result != Result.success) {
+      throw new NoResultDataException();
+    }
+
+    return resultHexBuf;
+  }
+
+  /**
+   * @return where the hex starts in getResultHexBuf().
+   */
+  public int getResultHexOffset() {
+    return resultHexOffset;
+  }
+
   /**
    * This the closest value for System.getCurrentTimeMillis() on the physical bus controlling the
    * device when the write for the bus command was executed.
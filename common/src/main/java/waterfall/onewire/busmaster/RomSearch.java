@@ -0,0 +1,257 @@
+package waterfall.onewire.busmaster;
+
+import java.util.ArrayList;
+import java.util.List;
+import waterfall.onewire.DSAddress;
+
+/**
+ * The 1-Wire ROM search run a bit at a time over a BitBus, following Maxim application note 187.
+ * Each of the 64 bits of the address takes one triplet (two reads and a write), and the search
+ * remembers where it last had a choice to make so the next search takes the other branch there.
+ *
+ * Because that position is kept it can do more than enumerate the whole bus:
+ * <ul>
+ * <li>verify() confirms one known address is on the bus with a single pass of 64 triplets.</li>
+ * <li>targetFamily() starts the search at a family code and stops at the end of that family.</li>
+ * <li>skipFamily() moves past the rest of the family just found.</li>
+ * <li>getLastDiscrepancy() and resumeFrom() let a search be picked up again where it left off.</li>
+ * </ul>
+ *
+ * Not thread safe, the caller must hold the bus for each call.
+ */
+public class RomSearch {
+
+  public static final int SEARCH_ROM = 0xF0;
+  public static final int ALARM_SEARCH = 0xEC;
+
+  private final BitBus bus;
+  private final boolean byAlarm;
+
+  private long romNo = 0;
+  private int lastDiscrepancy = 0;
+  private int lastFamilyDiscrepancy = 0;
+  private boolean lastDeviceFlag = false;
+  // -1 for any family
+  private int targetFamily = -1;
+
+  /**
+   * @param byAlarm true to only find devices in an alarm state.
+   */
+  public RomSearch(BitBus bus, boolean byAlarm) {
+    if (bus == null) {
+      throw new IllegalArgumentException("bus");
+    }
+    this.bus = bus;
+    this.byAlarm = byAlarm;
+  }
+
+  public boolean isByAlarm() {
+    return byAlarm;
+  }
+
+  /**
+   * Start again from the beginning of the bus, for any family.
+   */
+  public RomSearch restart() {
+    romNo = 0;
+    lastDiscrepancy = 0;
+    lastFamilyDiscrepancy = 0;
+    lastDeviceFlag = false;
+    targetFamily = -1;
+    return this;
+  }
+
+  /**
+   * Start again from the first device of the family, and stop after the last one.
+   */
+  public RomSearch targetFamily(short familyCode) {
+    if ((familyCode < 0) || (familyCode > 255)) {
+      throw new IllegalArgumentException("familyCode");
+    }
+    restart();
+    romNo = familyCode;
+    lastDiscrepancy = 64;
+    targetFamily = familyCode;
+    return this;
+  }
+
+  /**
+   * Move past the rest of the family of the device last found, so next() returns the first device
+   * of the following family.
+   */
+  public RomSearch skipFamily() {
+    lastDiscrepancy = lastFamilyDiscrepancy;
+    lastFamilyDiscrepancy = 0;
+    if (lastDiscrepancy == 0) {
+      lastDeviceFlag = true;
+    }
+    return this;
+  }
+
+  /**
+   * @return the bit, 1 to 64, of the last choice the search made, 0 if there were none left and
+   * the search is done.
+   */
+  public int getLastDiscrepancy() {
+    return lastDiscrepancy;
+  }
+
+  /**
+   * Pick up a search where it left off, after the device lastFound with the lastDiscrepancy it
+   * reported.
+   */
+  public RomSearch resumeFrom(DSAddress lastFound, int lastDiscrepancy) {
+    if (lastFound == null) {
+      throw new IllegalArgumentException("lastFound");
+    }
+    if ((lastDiscrepancy < 0) || (lastDiscrepancy > 64)) {
+      throw new IllegalArgumentException("lastDiscrepancy");
+    }
+    restart();
+    this.romNo = lastFound.toLong();
+    this.lastDiscrepancy = lastDiscrepancy;
+    this.lastDeviceFlag = (lastDiscrepancy == 0);
+    return this;
+  }
+
+  /**
+   * @return the next device, or null once the search is done or no device answered the reset.
+   * @throws SearchFailedException if the bits read during the search did not hold together.
+   */
+  public DSAddress next() {
+    final DSAddress found = search();
+    // the family code is a signed byte widened to a short, the target is 0-255
+    if ((found != null) && (targetFamily >= 0) &&
+        ((found.getFamilyCode() & 0xff) != targetFamily)) {
+      lastDeviceFlag = true;
+      return null;
+    }
+    return found;
+  }
+
+  /**
+   * @return every device from where the search is now until it is done.
+   * @throws SearchFailedException if the bits read during the search did not hold together.
+   */
+  public List<DSAddress> nextAll() {
+    List<DSAddress> list = new ArrayList<>();
+    DSAddress dsAddress;
+    while ((dsAddress = next()) != null) {
+      list.add(dsAddress);
+    }
+    return list;
+  }
+
+  /**
+   * Search for exactly this address, by taking its bit at every choice. The search position is left
+   * as it was.
+   *
+   * @return true if the device is on the bus.
+   */
+  public boolean verify(DSAddress dsAddress) {
+    if (dsAddress == null) {
+      throw new IllegalArgumentException("dsAddress");
+    }
+
+    final long saveRomNo = romNo;
+    final int saveLastDiscrepancy = lastDiscrepancy;
+    final int saveLastFamilyDiscrepancy = lastFamilyDiscrepancy;
+    final boolean saveLastDeviceFlag = lastDeviceFlag;
+    final int saveTargetFamily = targetFamily;
+
+    try {
+      romNo = dsAddress.toLong();
+      lastDiscrepancy = 64;
+      lastDeviceFlag = false;
+      return dsAddress.equals(search());
+    } catch (SearchFailedException e) {
+      return false;
+    } finally {
+      romNo = saveRomNo;
+      lastDiscrepancy = saveLastDiscrepancy;
+      lastFamilyDiscrepancy = saveLastFamilyDiscrepancy;
+      lastDeviceFlag = saveLastDeviceFlag;
+      targetFamily = saveTargetFamily;
+    }
+  }
+
+  // One pass of the search, also leaving the address found in romNo.
+  private DSAddress search() {
+    if (lastDeviceFlag) {
+      return null;
+    }
+
+    if (!bus.reset()) {
+      restart();
+      return null;
+    }
+    bus.writeByte(byAlarm ? ALARM_SEARCH : SEARCH_ROM);
+
+    int lastZero = 0;
+    for (int idBitNumber = 1; idBitNumber <= 64; idBitNumber++) {
+      final long mask = (1L << (idBitNumber - 1));
+
+      final boolean direction;
+      if (idBitNumber < lastDiscrepancy) {
+        direction = ((romNo & mask) != 0);
+      } else {
+        direction = (idBitNumber == lastDiscrepancy);
+      }
+
+      final int triplet = bus.triplet(direction);
+      final boolean idBit = ((triplet & BitBus.TRIPLET_ID_BIT) != 0);
+      final boolean cmpIdBit = ((triplet & BitBus.TRIPLET_CMP_ID_BIT) != 0);
+      final boolean taken = ((triplet & BitBus.TRIPLET_DIRECTION) != 0);
+
+      if (idBit && cmpIdBit) {
+        // nobody is left in the search
+        if (idBitNumber == 1) {
+          // which at the first bit just means no device is in an alarm state, or none is there
+          restart();
+          return null;
+        }
+        restart();
+        throw new SearchFailedException("no device at bit " + idBitNumber);
+      }
+
+      if (!idBit && !cmpIdBit && !taken) {
+        lastZero = idBitNumber;
+        if (lastZero < 9) {
+          lastFamilyDiscrepancy = lastZero;
+        }
+      }
+
+      if (taken) {
+        romNo |= mask;
+      } else {
+        romNo &= ~mask;
+      }
+    }
+
+    final DSAddress found;
+    try {
+      found = DSAddress.fromLong(romNo);
+    } catch (IllegalArgumentException e) {
+      restart();
+      throw new SearchFailedException("bad CRC8");
+    }
+
+    lastDiscrepancy = lastZero;
+    if (lastDiscrepancy == 0) {
+      lastDeviceFlag = true;
+    }
+    return found;
+  }
+
+  /**
+   * The bits read during a search did not hold together, such as when a device drops off the bus
+   * part way through. The search starts over from the beginning of the bus on the next call.
+   */
+  public static class SearchFailedException extends RuntimeException {
+
+    public SearchFailedException(String message) {
+      super(message);
+    }
+  }
+
+}
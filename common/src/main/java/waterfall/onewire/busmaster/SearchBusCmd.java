@@ -7,7 +7,7 @@ import waterfall.onewire.DSAddress;
 /**
  * Created by dwaterfa on 6/9/16.
  */
-public abstract class SearchBusCmd extends BaseCmd {
+public abstract class SearchBusCmd extends BaseCmd<SearchBusCmd.Result> {
 
   protected final Short familyCode;
   protected final Boolean byAlarm;
@@ -169,6 +169,25 @@ public abstract class SearchBusCmd extends BaseCmd {
       this.listCRC32 = crc.getValue();
     }
 
+    private ResultData(final List<DSAddress> list, final long listCRC32, final long writeCTM) {
+      this.list = list;
+      this.listCRC32 = listCRC32;
+      this.writeCTM = writeCTM;
+    }
+
+    /**
+     * The same devices found again by a later search. The list and its CRC32 are shared rather than
+     * built again.
+     *
+     * @param writeCTM of the later search.
+     */
+    public ResultData foundAgainAt(final long writeCTM) {
+      if (writeCTM <= 0) {
+        throw new IllegalArgumentException("writeCTM");
+      }
+      return new ResultData(list, listCRC32, writeCTM);
+    }
+
     /**
      * Return list of devices Addresses.
      */
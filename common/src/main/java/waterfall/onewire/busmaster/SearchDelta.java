@@ -0,0 +1,94 @@
+package waterfall.onewire.busmaster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.DSAddressMap;
+
+/**
+ * The devices which appeared on and disappeared from a bus between one search and the next. It is
+ * worked out once per search by the NotifySearchBusCmdHelper and handed to every
+ * NotifySearchBusDeltaResult, so they only look at what changed rather than the whole bus.
+ */
+public class SearchDelta {
+
+  public static final SearchDelta NONE = new SearchDelta(Collections.emptyList(),
+      Collections.emptyList());
+
+  private final List<DSAddress> added;
+  private final List<DSAddress> removed;
+
+  private SearchDelta(List<DSAddress> added, List<DSAddress> removed) {
+    this.added = added;
+    this.removed = removed;
+  }
+
+  /**
+   * @param previous devices found by the previous search, or null if there was none.
+   * @param current devices found by this search.
+   * @return what changed, NONE if nothing did.
+   */
+  public static SearchDelta between(List<DSAddress> previous, List<DSAddress> current) {
+    if (current == null) {
+      throw new IllegalArgumentException("current");
+    }
+    if ((previous == null) || previous.isEmpty()) {
+      return (current.isEmpty() ? NONE : new SearchDelta(
+          Collections.unmodifiableList(new ArrayList<>(current)), Collections.emptyList()));
+    }
+
+    final DSAddressMap<DSAddress> previousMap = new DSAddressMap<>(previous.size());
+    for (DSAddress dsAddress : previous) {
+      previousMap.put(dsAddress, dsAddress);
+    }
+
+    final DSAddressMap<DSAddress> currentMap = new DSAddressMap<>(current.size());
+    List<DSAddress> added = null;
+    for (DSAddress dsAddress : current) {
+      currentMap.put(dsAddress, dsAddress);
+      if (!previousMap.containsKey(dsAddress)) {
+        if (added == null) {
+          added = new ArrayList<>();
+        }
+        added.add(dsAddress);
+      }
+    }
+
+    List<DSAddress> removed = null;
+    for (DSAddress dsAddress : previous) {
+      if (!currentMap.containsKey(dsAddress)) {
+        if (removed == null) {
+          removed = new ArrayList<>();
+        }
+        removed.add(dsAddress);
+      }
+    }
+
+    if ((added == null) && (removed == null)) {
+      return NONE;
+    }
+    return new SearchDelta(
+        ((added == null) ? Collections.emptyList() : Collections.unmodifiableList(added)),
+        ((removed == null) ? Collections.emptyList() : Collections.unmodifiableList(removed)));
+  }
+
+  /**
+   * @return devices found by this search which the previous one did not find.
+   */
+  public List<DSAddress> getAdded() {
+    return added;
+  }
+
+  /**
+   * @return devices found by the previous search which this one did not find.
+   */
+  public List<DSAddress> getRemoved() {
+    return removed;
+  }
+
+  public boolean isEmpty() {
+    return (added.isEmpty() && removed.isEmpty());
+  }
+
+}
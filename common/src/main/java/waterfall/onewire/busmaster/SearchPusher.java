@@ -1,8 +1,5 @@
 package waterfall.onewire.busmaster;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 /**
  * This nested abstract class is responsible for pushing search requests to the bus though an
  * appropriate means and thus triggering a resulting callback on BusMaster.searchBusCmdExecuteCallback()
@@ -18,11 +15,20 @@ public abstract class SearchPusher {
   private final boolean isAlarmSearch;
   protected long currentPeriodMSec;
   protected long lastPushTimeMSec;
-  private Timer timer;
+  private final HashedWheelTimer wheelTimer;
+  private HashedWheelTimer.Timeout timeout;
 
   protected SearchPusher(boolean isAlarmSearch) {
+    this(isAlarmSearch, HashedWheelTimer.getShared());
+  }
+
+  protected SearchPusher(boolean isAlarmSearch, HashedWheelTimer wheelTimer) {
+    if (wheelTimer == null) {
+      throw new IllegalArgumentException("wheelTimer");
+    }
     this.isAlarmSearch = isAlarmSearch;
-    this.timer = null;
+    this.wheelTimer = wheelTimer;
+    this.timeout = null;
     this.currentPeriodMSec = Long.MAX_VALUE;
     this.lastPushTimeMSec = 0;
   }
@@ -54,35 +60,34 @@ public abstract class SearchPusher {
 
     if (minPeriodMSec == Long.MAX_VALUE) {
       // shutting down
-      if (timer != null) {
-        timer.cancel();
-        timer = null;
+      if (timeout != null) {
+        timeout.cancel();
+        timeout = null;
         currentPeriodMSec = Long.MAX_VALUE;
       }
       return false;
     }
 
-    // new period is different than current so we'll need to start a new timer.
+    // new period is different than current, which the Timeout takes on in place
     currentPeriodMSec = minPeriodMSec;
 
-    if (timer != null) {
-      timer.cancel();
-    }
-    timer = new Timer(true);
-
     // if it has been a long time then the data is stale and we need to get on with it.
     long delay = minPeriodMSec - (System.currentTimeMillis() - lastPushTimeMSec);
     if (delay < 0) {
       delay = 0;
     }
 
-    timer.schedule(new PushTimerTask(), delay, currentPeriodMSec);
+    if (timeout == null) {
+      timeout = wheelTimer.schedule(new PushTask(), delay, currentPeriodMSec);
+    } else {
+      timeout.reschedule(delay, currentPeriodMSec);
+    }
 
     return (delay == 0);
   }
 
   /**
-   * This method is called by the PushTimerTask when it is time to launch a new search
+   * This method is called by the PushTask when it is time to launch a new search
    */
   protected abstract void push();
 
@@ -91,13 +96,13 @@ public abstract class SearchPusher {
    * @return
    */
   protected boolean isTimerActive() {
-    return (timer != null);
+    return (timeout != null);
   }
 
   /**
    *
    */
-  protected class PushTimerTask extends TimerTask {
+  protected class PushTask implements Runnable {
 
     public void run() {
       synchronized (SearchPusher.this) {
@@ -1,8 +1,8 @@
 package waterfall.onewire.busmaster;
 
 /**
- * This class implements the SearchPusher through a Timer and a call to a conventional SearchBusCmd
- * on the BusMaster.
+ * This class implements the SearchPusher through the HashedWheelTimer and a call to a conventional
+ * SearchBusCmd on the BusMaster.
  */
 public class SearchPusherByBusCmd extends SearchPusher {
 
@@ -33,6 +33,8 @@ public class SearchPusherByBusCmd extends SearchPusher {
     try {
       if (searchBusCmd == null) {
         searchBusCmd = (isAlarmSearch ? bm.querySearchBusByAlarmCmd() : bm.querySearchBusCmd());
+        // nobody is waiting on these, so they should not hold up anyone who is
+        searchBusCmd.setPriority(CmdPriority.BACKGROUND);
       }
 
       // The command will internally call back to this class when it is successful, so
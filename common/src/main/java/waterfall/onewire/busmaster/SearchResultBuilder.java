@@ -0,0 +1,99 @@
+package waterfall.onewire.busmaster;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.DSAddressInterner;
+import waterfall.onewire.busmaster.SearchBusCmd.ResultData;
+
+/**
+ * Builds the ResultData for one kind of search, one address at a time as the bus returns them.
+ * Addresses are interned so repeated searches hand back the same DSAddress instances. When a search
+ * finds exactly the devices the previous one did, in the same order, the previous list and CRC32
+ * are reused and only the writeCTM is new, which is the common case for a periodic search of a
+ * bus nobody is changing.
+ *
+ * The lists handed out are unmodifiable, as they may be shared between results. Not thread safe, a
+ * bus master only uses it with its bus held.
+ */
+public class SearchResultBuilder {
+
+  private final DSAddressInterner interner;
+
+  private DSAddress[] found = new DSAddress[8];
+  private int count = 0;
+  private ResultData previous = null;
+
+  /**
+   * @param interner may be shared by the builders for the different kinds of search on a bus.
+   */
+  public SearchResultBuilder(DSAddressInterner interner) {
+    if (interner == null) {
+      throw new IllegalArgumentException("interner");
+    }
+    this.interner = interner;
+  }
+
+  /**
+   * Start on a new search, forgetting any addresses added since the last build().
+   */
+  public SearchResultBuilder begin() {
+    Arrays.fill(found, 0, count, null);
+    count = 0;
+    return this;
+  }
+
+  /**
+   * @param hexBuf holding 16 upper case hex chars from offset, already checked to be hex. Not kept.
+   * @throws IllegalArgumentException for failed CRC check
+   */
+  public SearchResultBuilder addHex(byte[] hexBuf, int offset) {
+    return add(interner.internHex(hexBuf, offset));
+  }
+
+  public SearchResultBuilder add(DSAddress dsAddress) {
+    if (count == found.length) {
+      found = Arrays.copyOf(found, count * 2);
+    }
+    found[count++] = interner.intern(dsAddress);
+    return this;
+  }
+
+  /**
+   * @param writeCTM when the search was written to the bus.
+   * @return the ResultData of the search, sharing the list of the previous one if nothing changed.
+   */
+  public ResultData build(long writeCTM) {
+    final ResultData resultData;
+    if (sameAsPrevious()) {
+      resultData = previous.foundAgainAt(writeCTM);
+    } else {
+      List<DSAddress> list = Collections.unmodifiableList(
+          Arrays.asList(Arrays.copyOf(found, count)));
+      resultData = new ResultData(list, writeCTM);
+    }
+    previous = resultData;
+    begin();
+    return resultData;
+  }
+
+  // The addresses are interned so an identity compare is enough, and exact where a CRC32 compare
+  // would not be.
+  private boolean sameAsPrevious() {
+    if (previous == null) {
+      return false;
+    }
+    final List<DSAddress> previousList = previous.getList();
+    if (previousList.size() != count) {
+      return false;
+    }
+    for (int i = 0; i < count; i++) {
+      if (previousList.get(i) != found[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -5,7 +5,7 @@ import waterfall.onewire.DSAddress;
 /**
  * Created by dwaterfa on 12/30/17.
  */
-public abstract class WriteScratchpadCmd extends DeviceBaseCmd {
+public abstract class WriteScratchpadCmd extends DeviceBaseCmd<WriteScratchpadCmd.Result> {
 
   protected Result result = null;
   protected byte[] writeData = null;
@@ -58,9 +58,15 @@ public class DS18B20Scratchpad {
   }
 
   public float getTempC() {
+    return toTempC(data[0], data[1], getResolution());
+  }
+
+  /**
+   * Shared with DS18B20ScratchpadView.
+   */
+  static float toTempC(byte lsb, byte msb, byte resolution) {
     // mask out the undefined bits based on resolution
-    byte lsb = data[0];
-    switch (getResolution()) {
+    switch (resolution) {
       case 0: // 9
         lsb &= 0xf8;    // 1 fractional bit
         break;
@@ -76,8 +82,6 @@ public class DS18B20Scratchpad {
         ;
     }
 
-    byte msb = data[1];
-
     return (float)((((int)(msb << 4) | ((lsb >> 4) & 0xf)) << 4) | (lsb & 0xf)) / (float)16.0;
   }
 
@@ -0,0 +1,138 @@
+package waterfall.onewire.device;
+
+import com.dalsemi.onewire.utils.CRC8;
+import waterfall.onewire.Convert;
+
+/**
+ * Read only view of a DS18B20 scratchpad over a buffer someone else owns, either the 9 raw bytes
+ * or the 18 hex chars the bus returned them as. Nothing is copied or decoded until it is asked
+ * for, and the same view is pointed at each new reading with wrap() or wrapHex(), so a reader
+ * sampling over and over allocates nothing.
+ *
+ * The view is only as good as the buffer under it, once the owner reuses the buffer the view shows
+ * the new contents.
+ */
+public class DS18B20ScratchpadView {
+
+  public static final int SIZE = 9;
+
+  private byte[] buf = null;
+  private int offset = 0;
+  private boolean hex = false;
+
+  /**
+   * @param data 9 raw scratchpad bytes.
+   */
+  public DS18B20ScratchpadView wrap(byte[] data) {
+    if (data == null) {
+      throw new NullPointerException("data");
+    }
+    if (data.length != SIZE) {
+      throw new IllegalArgumentException("data must be 9 bytes");
+    }
+    // We intentionally do NOT check for validity here.
+    this.buf = data;
+    this.offset = 0;
+    this.hex = false;
+    return this;
+  }
+
+  /**
+   * @param hexBuf holding the scratchpad as 18 upper case hex chars starting at offset.
+   */
+  public DS18B20ScratchpadView wrapHex(byte[] hexBuf, int offset) {
+    if (hexBuf == null) {
+      throw new NullPointerException("hexBuf");
+    }
+    if ((offset < 0) || ((offset + (SIZE * 2)) > hexBuf.length)) {
+      throw new IllegalArgumentException("hexBuf must hold 18 hex chars from offset");
+    }
+    // We intentionally do NOT check for validity here.
+    this.buf = hexBuf;
+    this.offset = offset;
+    this.hex = true;
+    return this;
+  }
+
+  /**
+   * @param index 0 to 8
+   * @return the scratchpad byte, decoded from hex if need be.
+   */
+  public byte get(int index) {
+    if (buf == null) {
+      throw new IllegalStateException("nothing wrapped");
+    }
+    if ((index < 0) || (index >= SIZE)) {
+      throw new ArrayIndexOutOfBoundsException("index not good");
+    }
+    if (!hex) {
+      return buf[offset + index];
+    }
+    final int i = offset + (index * 2);
+    return (byte) Convert.hexTo8bits(buf[i], buf[i + 1]);
+  }
+
+  public float getTempC() {
+    return DS18B20Scratchpad.toTempC(get(0), get(1), getResolution());
+  }
+
+  public byte getTempHAlarm() {
+    return get(2);
+  }
+
+  public byte getTempLAlarm() {
+    return get(3);
+  }
+
+  /**
+   * 0 = 9 1 = 10 2 = 11 3 = 12
+   */
+  public byte getResolution() {
+    return (byte) ((get(4) >> 5) & 0x3);
+  }
+
+  public boolean checkAllFFs() {
+    if (hex) {
+      for (int i = offset; i < (offset + (SIZE * 2)); i++) {
+        if (buf[i] != 'F') {
+          return false;
+        }
+      }
+      return true;
+    }
+    for (int i = 0; i < SIZE; i++) {
+      if (get(i) != (byte) 0xff) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public boolean checkValid() {
+    if (hex && !checkHexChars()) {
+      return false;
+    }
+
+    int crc = 0;
+    for (int i = 0; i < SIZE; i++) {
+      crc = CRC8.compute((get(i) & 0xff), crc);
+    }
+
+    return ((crc == 0) &&
+        ((get(4) & 0x9f) == (int) DS18B20Scratchpad.MASK_BYTE_4) &&
+        (get(5) == (int) DS18B20Scratchpad.RESERVED_BYTE_5) &&
+        // [6] is also reserved but no constant is specified.
+        (get(7) == (int) DS18B20Scratchpad.RESERVED_BYTE_7));
+  }
+
+  private boolean checkHexChars() {
+    for (int i = offset; i < (offset + (SIZE * 2)); i++) {
+      final byte b = buf[i];
+      if (!(((b >= '0') && (b <= '9')) || ((b >= 'A') && (b <= 'F')))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
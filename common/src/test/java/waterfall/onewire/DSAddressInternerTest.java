@@ -0,0 +1,78 @@
+package waterfall.onewire;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class DSAddressInternerTest {
+
+  @Test
+  public void testInternHex() {
+    DSAddressInterner interner = new DSAddressInterner();
+    DSAddress expected = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+
+    byte[] hexBuf = expected.copyHexBytesTo(new byte[16], 0);
+    DSAddress first = interner.internHex(hexBuf, 0);
+    Assert.assertEquals(first, expected);
+
+    // the buffer is not kept, and the same instance comes back
+    DSAddress.fromUncheckedHex(DSAddress._090000065BD53528).copyHexBytesTo(hexBuf, 0);
+    Assert.assertNotSame(interner.internHex(hexBuf, 0), first);
+    expected.copyHexBytesTo(hexBuf, 0);
+    Assert.assertSame(interner.internHex(hexBuf, 0), first);
+    Assert.assertEquals(interner.size(), 2);
+  }
+
+  @Test
+  public void testInternHexOffset() {
+    DSAddressInterner interner = new DSAddressInterner();
+    DSAddress expected = DSAddress.fromUncheckedHex(DSAddress._5F0000065CCD1A28);
+
+    byte[] hexBuf = expected.copyHexBytesTo(new byte[20], 3);
+    Assert.assertEquals(interner.internHex(hexBuf, 3), expected);
+  }
+
+  @Test
+  public void testIntern() {
+    DSAddressInterner interner = new DSAddressInterner();
+    DSAddress first = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+    DSAddress second = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+
+    Assert.assertSame(interner.intern(first), first);
+    Assert.assertSame(interner.intern(second), first);
+    Assert.assertSame(interner.internHex(second.copyHexBytesTo(new byte[16], 0), 0), first);
+  }
+
+  @Test
+  public void testStartsOver() {
+    DSAddressInterner interner = new DSAddressInterner(2);
+    DSAddress a = interner.intern(DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28));
+    interner.intern(DSAddress.fromUncheckedHex(DSAddress._090000065BD53528));
+    Assert.assertEquals(interner.size(), 2);
+
+    interner.intern(DSAddress.fromUncheckedHex(DSAddress._5F0000065CCD1A28));
+    Assert.assertEquals(interner.size(), 1);
+
+    DSAddress again = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+    Assert.assertSame(interner.intern(again), again);
+    Assert.assertNotSame(again, a);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInternHexBadCRC() {
+    byte[] hexBuf = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28)
+        .copyHexBytesTo(new byte[16], 0);
+    hexBuf[0] = 'F';
+    new DSAddressInterner().internHex(hexBuf, 0);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInternHexShort() {
+    new DSAddressInterner().internHex(new byte[16], 1);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testBadMaxSize() {
+    new DSAddressInterner(0);
+  }
+
+}
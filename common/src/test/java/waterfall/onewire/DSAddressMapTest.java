@@ -0,0 +1,93 @@
+package waterfall.onewire;
+
+import com.dalsemi.onewire.utils.CRC8;
+import java.util.HashMap;
+import java.util.Random;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class DSAddressMapTest {
+
+  @Test
+  public void testPutGetRemove() {
+    DSAddressMap<String> map = new DSAddressMap<>();
+    DSAddress a = DSAddress.fromUncheckedHex(DSAddress._5F0000065CCD1A28);
+    DSAddress b = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+
+    Assert.assertTrue(map.isEmpty());
+    Assert.assertNull(map.put(a, "a"));
+    Assert.assertNull(map.put(b, "b"));
+    Assert.assertEquals(map.size(), 2);
+
+    // an equal address which is a different instance
+    Assert.assertEquals(map.get(DSAddress.fromUncheckedHex(DSAddress._5F0000065CCD1A28)), "a");
+    Assert.assertEquals(map.put(a, "a2"), "a");
+    Assert.assertEquals(map.size(), 2);
+
+    Assert.assertEquals(map.remove(a), "a2");
+    Assert.assertNull(map.remove(a));
+    Assert.assertFalse(map.containsKey(a));
+    Assert.assertTrue(map.containsKey(b));
+    Assert.assertEquals(map.size(), 1);
+
+    map.clear();
+    Assert.assertTrue(map.isEmpty());
+    Assert.assertNull(map.get(b));
+  }
+
+  @Test
+  public void testForEach() {
+    DSAddressMap<Integer> map = new DSAddressMap<>();
+    for (int i = 0; i < 20; i++) {
+      map.put(address(i), i);
+    }
+
+    HashMap<DSAddress, Integer> seen = new HashMap<>();
+    map.forEach(seen::put);
+    Assert.assertEquals(seen.size(), 20);
+    for (int i = 0; i < 20; i++) {
+      Assert.assertEquals(seen.get(address(i)), Integer.valueOf(i));
+    }
+  }
+
+  /**
+   * Mix puts and removes against a HashMap, enough to grow and to exercise the backward shift on
+   * remove.
+   */
+  @Test
+  public void testAgainstHashMap() {
+    DSAddressMap<Integer> map = new DSAddressMap<>(4);
+    HashMap<DSAddress, Integer> expected = new HashMap<>();
+    Random random = new Random(15);
+
+    for (int n = 0; n < 20000; n++) {
+      DSAddress dsAddress = address(random.nextInt(600));
+      if (random.nextInt(3) == 0) {
+        Assert.assertEquals(map.remove(dsAddress), expected.remove(dsAddress));
+      } else {
+        Assert.assertEquals(map.put(dsAddress, n), expected.put(dsAddress, n));
+      }
+      Assert.assertEquals(map.size(), expected.size());
+    }
+
+    for (int i = 0; i < 600; i++) {
+      Assert.assertEquals(map.get(address(i)), expected.get(address(i)));
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNullValue() {
+    new DSAddressMap<String>().put(DSAddress.fromUncheckedHex(DSAddress._5F0000065CCD1A28), null);
+  }
+
+  // DS18B20 addresses which differ only in the serial number, as they do on a real bus
+  private static DSAddress address(int serial) {
+    byte[] addr = new byte[8];
+    addr[0] = 0x28;
+    addr[1] = (byte) serial;
+    addr[2] = (byte) (serial >> 8);
+    addr[7] = (byte) CRC8.compute(addr, 0, 7);
+    return DSAddress.takeChecked(addr);
+  }
+
+}
@@ -207,4 +207,23 @@ public class DSAddressTest {
     Assert.assertFalse(v2.equals(v1));
   }
 
+  @Test
+  public void testLong() {
+    DSAddress dsAddress = DSAddress.fromUncheckedHex(DSAddress._5F0000065CCD1A28);
+    Assert.assertEquals(dsAddress.toLong(), 0x5F0000065CCD1A28L);
+    Assert.assertEquals(DSAddress.fromLong(dsAddress.toLong()), dsAddress);
+    Assert.assertEquals(DSAddress.fromLong(dsAddress.toLong()).hashCode(), dsAddress.hashCode());
+
+    // the high bit set
+    dsAddress = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+    Assert.assertEquals(dsAddress.toLong(), 0xEE0000065BC0AE28L);
+    Assert.assertEquals(dsAddress.getFamilyCode(), (short) 0x28);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class,
+      expectedExceptionsMessageRegExp = "value bad CRC8")
+  public void testFromLongBadCRC() {
+    DSAddress.fromLong(0x5E0000065CCD1A28L);
+  }
+
 }
@@ -0,0 +1,164 @@
+package waterfall.onewire;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class DeviceLocationSnapshotTest {
+
+  private static final DSAddress dev_A = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+  private static final DSAddress dev_B = DSAddress.fromUncheckedHex(DSAddress._090000065BD53528);
+  private static final DSAddress dev_C = DSAddress.fromUncheckedHex(DSAddress._5F0000065CCD1A28);
+
+  @Test
+  public void testPutGetRemove() {
+    DeviceLocationSnapshot snapshot = new DeviceLocationSnapshot();
+    Assert.assertNull(snapshot.getBusName(dev_A));
+    Assert.assertNull(snapshot.getConfig(dev_A));
+    Assert.assertFalse(snapshot.isChanged());
+
+    byte[] config = new byte[]{3, 125, -55};
+    Assert.assertTrue(snapshot.put(dev_A, "bus1", config));
+    Assert.assertTrue(snapshot.isChanged());
+    config[0] = 0;
+    Assert.assertEquals(snapshot.getConfig(dev_A), new byte[]{3, 125, -55});
+    Assert.assertEquals(snapshot.getBusName(dev_A), "bus1");
+
+    // the same again is no change, a different bus or config is
+    Assert.assertFalse(snapshot.put(dev_A, "bus1", new byte[]{3, 125, -55}));
+    Assert.assertTrue(snapshot.put(dev_A, "bus2", new byte[]{3, 125, -55}));
+    Assert.assertTrue(snapshot.put(dev_A, "bus2", new byte[]{2, 125, -55}));
+
+    Assert.assertTrue(snapshot.remove(dev_A));
+    Assert.assertFalse(snapshot.remove(dev_A));
+    Assert.assertEquals(snapshot.size(), 0);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testPutConfigTooLong() {
+    new DeviceLocationSnapshot()
+        .put(dev_A, "bus1", new byte[DeviceLocationSnapshot.MAX_CONFIG + 1]);
+  }
+
+  @Test
+  public void testWriteRead() throws IOException {
+    DeviceLocationSnapshot snapshot = new DeviceLocationSnapshot();
+    snapshot.put(dev_A, "bus1", new byte[]{3, 125, -55});
+    snapshot.put(dev_B, "bus2", new byte[0]);
+    snapshot.put(dev_C, "bus1", new byte[]{1});
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    snapshot.write(baos);
+    Assert.assertFalse(snapshot.isChanged());
+    // the names are only written once: header, two names, count and three devices
+    Assert.assertEquals(baos.size(), (4 + 4 + (2 * 6) + 4 + (3 * 11) + 3 + 0 + 1));
+
+    DeviceLocationSnapshot read = DeviceLocationSnapshot
+        .read(new ByteArrayInputStream(baos.toByteArray()));
+    Assert.assertEquals(read.size(), 3);
+    Assert.assertFalse(read.isChanged());
+    Assert.assertEquals(read.getBusName(dev_A), "bus1");
+    Assert.assertEquals(read.getConfig(dev_A), new byte[]{3, 125, -55});
+    Assert.assertEquals(read.getBusName(dev_B), "bus2");
+    Assert.assertEquals(read.getConfig(dev_B), new byte[0]);
+    Assert.assertEquals(read.getBusName(dev_C), "bus1");
+    Assert.assertEquals(read.getConfig(dev_C), new byte[]{1});
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testReadNotSnapshot() throws IOException {
+    DeviceLocationSnapshot.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testReadBadAddress() throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(baos);
+    dos.writeInt(DeviceLocationSnapshot.MAGIC);
+    dos.writeInt(1);
+    dos.writeUTF("bus1");
+    dos.writeInt(1);
+    dos.writeLong(dev_A.toLong() ^ 1);
+    dos.writeShort(0);
+    dos.writeByte(0);
+    DeviceLocationSnapshot.read(new ByteArrayInputStream(baos.toByteArray()));
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testReadTruncated() throws IOException {
+    DeviceLocationSnapshot snapshot = new DeviceLocationSnapshot();
+    snapshot.put(dev_A, "bus1", new byte[]{3, 125, -55});
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    snapshot.write(baos);
+    DeviceLocationSnapshot.read(new ByteArrayInputStream(baos.toByteArray(), 0, baos.size() - 1));
+  }
+
+  @Test
+  public void testSaveFails() throws IOException {
+    DeviceLocationSnapshot snapshot = new DeviceLocationSnapshot();
+    snapshot.put(dev_A, "bus1", new byte[]{3, 125, -55});
+
+    Path dir = Files.createTempDirectory("DeviceLocationSnapshotTest");
+    Path path = dir.resolve("snapshot");
+    try {
+      // there is no such directory to write to
+      try {
+        snapshot.save(dir.resolve("missing").resolve("snapshot"));
+        Assert.fail("save should have failed");
+      } catch (IOException e) {
+        Assert.assertTrue(snapshot.isChanged());
+      }
+
+      // nor is a stream which fails
+      try {
+        snapshot.write(new OutputStream() {
+          @Override
+          public void write(int b) throws IOException {
+            throw new IOException("thrown by the test");
+          }
+        });
+        Assert.fail("write should have failed");
+      } catch (IOException e) {
+        Assert.assertTrue(snapshot.isChanged());
+      }
+
+      snapshot.save(path);
+      Assert.assertFalse(snapshot.isChanged());
+      Assert.assertEquals(DeviceLocationSnapshot.load(path).getBusName(dev_A), "bus1");
+    } finally {
+      Files.deleteIfExists(path);
+      Files.deleteIfExists(dir);
+    }
+  }
+
+  @Test
+  public void testSaveLoad() throws IOException {
+    Path dir = Files.createTempDirectory("DeviceLocationSnapshotTest");
+    Path path = dir.resolve("snapshot");
+    try {
+      // nothing saved yet
+      Assert.assertEquals(DeviceLocationSnapshot.load(path).size(), 0);
+
+      DeviceLocationSnapshot snapshot = new DeviceLocationSnapshot();
+      snapshot.put(dev_A, "bus1", new byte[]{3, 125, -55});
+      snapshot.save(path);
+      snapshot.put(dev_B, "bus2", new byte[]{3, 125, -55});
+      snapshot.save(path);
+
+      DeviceLocationSnapshot loaded = DeviceLocationSnapshot.load(path);
+      Assert.assertEquals(loaded.size(), 2);
+      Assert.assertEquals(loaded.getBusName(dev_B), "bus2");
+      Assert.assertFalse(Files.exists(dir.resolve("snapshot.tmp")));
+    } finally {
+      Files.deleteIfExists(path);
+      Files.deleteIfExists(dir);
+    }
+  }
+
+}
@@ -0,0 +1,54 @@
+package waterfall.onewire.busmaster;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class BaseCmdTest {
+
+  @Test
+  public void testExecuteAsync() throws Exception {
+    BusMaster bm = makeBusMaster();
+
+    Assert.assertEquals(new AsyncCmd(bm, false).executeAsync().get(), "done");
+
+    CompletableFuture<String> busy = new AsyncCmd(bm, true).executeAsync();
+    Assert.assertTrue(busy.isCompletedExceptionally());
+    final AtomicReference<Throwable> seen = new AtomicReference<>();
+    busy.exceptionally((t) -> {
+      seen.set(t);
+      return null;
+    });
+    Assert.assertTrue(seen.get() instanceof NoResultException, "seen:" + seen.get());
+  }
+
+  // Runs the async cmds on the caller.
+  private static BusMaster makeBusMaster() {
+    final Executor executor = Runnable::run;
+    return (BusMaster) Proxy.newProxyInstance(BaseCmdTest.class.getClassLoader(),
+        new Class[]{BusMaster.class},
+        (proxy, method, args) -> method.getName().equals("getAsyncCmdExecutor") ? executor : null);
+  }
+
+  private static class AsyncCmd extends BaseCmd<String> {
+
+    private final boolean busy;
+
+    private AsyncCmd(BusMaster bm, boolean busy) {
+      super(bm);
+      this.busy = busy;
+    }
+
+    @Override
+    public String execute() {
+      if (busy) {
+        throw new NoResultException("busy");
+      }
+      return "done";
+    }
+  }
+
+}
@@ -0,0 +1,119 @@
+package waterfall.onewire.busmaster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class BusCmdExecutorTest {
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testConstructorNullName() {
+    new BusCmdExecutor(null);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testExecuteNull() {
+    new BusCmdExecutor("bus").execute(null);
+  }
+
+  @Test
+  public void testRunsInOrderOnOneThread() throws Exception {
+    BusCmdExecutor executor = new BusCmdExecutor("bus");
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+    final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch hold = new CountDownLatch(1);
+
+    // keep the first one running so the rest pile up behind it
+    final CountDownLatch running = new CountDownLatch(1);
+    executor.execute(() -> {
+      running.countDown();
+      try {
+        hold.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        ;
+      }
+    });
+    Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+
+    List<CompletableFuture<Integer>> futures = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      final int index = i;
+      futures.add(CompletableFuture.supplyAsync(() -> {
+        order.add(index);
+        threads.add(Thread.currentThread());
+        return index;
+      }, executor));
+    }
+
+    Assert.assertEquals(executor.getQueueDepth(), 20);
+    hold.countDown();
+
+    for (int i = 0; i < 20; i++) {
+      Assert.assertEquals(futures.get(i).get(5, TimeUnit.SECONDS).intValue(), i);
+    }
+
+    for (int i = 0; i < 20; i++) {
+      Assert.assertEquals(order.get(i).intValue(), i);
+      Assert.assertEquals(threads.get(i), threads.get(0));
+    }
+    Assert.assertNotEquals(threads.get(0), Thread.currentThread());
+
+    executor.shutdown();
+  }
+
+  @Test
+  public void testShutdown() throws Exception {
+    BusCmdExecutor executor = new BusCmdExecutor("bus");
+    final CountDownLatch hold = new CountDownLatch(1);
+
+    final CountDownLatch running = new CountDownLatch(1);
+    executor.execute(() -> {
+      running.countDown();
+      try {
+        hold.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        ;
+      }
+    });
+    Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+    CompletableFuture<Thread> queued = CompletableFuture
+        .supplyAsync(() -> Thread.currentThread(), executor);
+
+    executor.shutdown();
+    Assert.assertTrue(executor.isShutdown());
+    Assert.assertEquals(executor.getQueueDepth(), 1);
+
+    // once shutdown new cmds run on the caller
+    CompletableFuture<Thread> afterShutdown = CompletableFuture
+        .supplyAsync(() -> Thread.currentThread(), executor);
+    Assert.assertTrue(afterShutdown.isDone());
+    Assert.assertEquals(afterShutdown.get(), Thread.currentThread());
+
+    // but those queued before still run on the queue's thread
+    hold.countDown();
+    Assert.assertNotEquals(queued.get(5, TimeUnit.SECONDS), Thread.currentThread());
+
+    // second call makes no difference
+    executor.shutdown();
+  }
+
+  @Test
+  public void testCmdThrowing() throws Exception {
+    BusCmdExecutor executor = new BusCmdExecutor("bus");
+
+    executor.execute(() -> {
+      throw new RuntimeException("foo");
+    });
+
+    CompletableFuture<Boolean> after = CompletableFuture.supplyAsync(() -> true, executor);
+    Assert.assertTrue(after.get(5, TimeUnit.SECONDS));
+
+    executor.shutdown();
+  }
+
+}
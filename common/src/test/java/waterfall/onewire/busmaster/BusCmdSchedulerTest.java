@@ -0,0 +1,151 @@
+package waterfall.onewire.busmaster;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class BusCmdSchedulerTest {
+
+  @Test
+  public void testUncontended() {
+    BusCmdScheduler scheduler = new BusCmdScheduler();
+
+    scheduler.acquire(CmdPriority.INTERACTIVE);
+    scheduler.release();
+    scheduler.acquire(CmdPriority.INTERACTIVE);
+    scheduler.release();
+
+    BusCmdScheduler.Stats stats = scheduler.getStats(CmdPriority.INTERACTIVE);
+    Assert.assertEquals(stats.getGrantedCount(), 2);
+    Assert.assertEquals(stats.getWaitedCount(), 0);
+    Assert.assertEquals(stats.getTotalWaitNanos(), 0);
+    Assert.assertEquals(stats.getQueueDepth(), 0);
+    Assert.assertEquals(stats.getMaxQueueDepth(), 0);
+    Assert.assertEquals(scheduler.getStats(CmdPriority.BACKGROUND).getGrantedCount(), 0);
+  }
+
+  @Test
+  public void testRun() {
+    BusCmdScheduler scheduler = new BusCmdScheduler();
+    BusMaster bm = (BusMaster) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class[]{BusMaster.class}, (proxy, method, args) -> null);
+
+    ScheduledCmd done = new ScheduledCmd(bm, "done");
+    done.setPriority(CmdPriority.PERIODIC);
+    Assert.assertEquals(scheduler.run(done), "done");
+
+    ScheduledCmd throwing = new ScheduledCmd(bm, null);
+    throwing.setPriority(CmdPriority.PERIODIC);
+    try {
+      scheduler.run(throwing);
+      Assert.fail("expected exception");
+    } catch (IllegalStateException e) {
+      ;
+    }
+
+    // released both times, so it can be had again without waiting
+    scheduler.acquire(CmdPriority.INTERACTIVE);
+    scheduler.release();
+    Assert.assertEquals(scheduler.getStats(CmdPriority.PERIODIC).getGrantedCount(), 2);
+    Assert.assertEquals(scheduler.getStats(CmdPriority.INTERACTIVE).getWaitedCount(), 0);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testAcquireNullPriority() {
+    new BusCmdScheduler().acquire(null);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testReleaseWithoutAcquire() {
+    new BusCmdScheduler().release();
+  }
+
+  @Test
+  public void testOrderByPriority() throws Exception {
+    final BusCmdScheduler scheduler = new BusCmdScheduler();
+    final List<CmdPriority> order = Collections.synchronizedList(new ArrayList<>());
+
+    // hold the bus while the others queue up, least urgent first
+    scheduler.acquire(CmdPriority.INTERACTIVE);
+
+    List<Thread> threads = new ArrayList<>();
+    CmdPriority[] queueOrder = {CmdPriority.BACKGROUND, CmdPriority.PERIODIC,
+        CmdPriority.BACKGROUND, CmdPriority.INTERACTIVE};
+    for (CmdPriority priority : queueOrder) {
+      int depth = scheduler.getQueueDepth(priority);
+      Thread t = new Thread(() -> {
+        scheduler.acquire(priority);
+        order.add(priority);
+        scheduler.release();
+      });
+      t.start();
+      threads.add(t);
+      waitForQueueDepth(scheduler, priority, depth + 1);
+    }
+
+    Assert.assertEquals(scheduler.getStats(CmdPriority.BACKGROUND).getQueueDepth(), 2);
+    Assert.assertEquals(scheduler.getStats(CmdPriority.BACKGROUND).getMaxQueueDepth(), 2);
+
+    Thread.sleep(5);
+    scheduler.release();
+
+    for (Thread t : threads) {
+      t.join(5000);
+    }
+
+    Assert.assertEquals(order.size(), 4);
+    Assert.assertEquals(order.get(0), CmdPriority.INTERACTIVE);
+    Assert.assertEquals(order.get(1), CmdPriority.PERIODIC);
+    Assert.assertEquals(order.get(2), CmdPriority.BACKGROUND);
+    Assert.assertEquals(order.get(3), CmdPriority.BACKGROUND);
+
+    BusCmdScheduler.Stats stats = scheduler.getStats(CmdPriority.BACKGROUND);
+    Assert.assertEquals(stats.getGrantedCount(), 2);
+    Assert.assertEquals(stats.getWaitedCount(), 2);
+    Assert.assertEquals(stats.getQueueDepth(), 0);
+    Assert.assertTrue(stats.getMaxWaitNanos() >= stats.getAverageWaitNanos());
+    Assert.assertTrue(stats.getAverageWaitNanos() > 0);
+
+    // the one holding the bus did not wait, the one queued did
+    stats = scheduler.getStats(CmdPriority.INTERACTIVE);
+    Assert.assertEquals(stats.getGrantedCount(), 2);
+    Assert.assertEquals(stats.getWaitedCount(), 1);
+  }
+
+  private void waitForQueueDepth(BusCmdScheduler scheduler, CmdPriority priority, int depth)
+      throws InterruptedException {
+    long endMSec = System.currentTimeMillis() + 5000;
+    while (scheduler.getQueueDepth(priority) != depth) {
+      Assert.assertTrue(System.currentTimeMillis() < endMSec, "timed out waiting for queue");
+      Thread.sleep(1);
+    }
+  }
+
+  // Returns its result, or throws if it has none.
+  private static class ScheduledCmd extends BaseCmd<String> {
+
+    private final String result;
+
+    private ScheduledCmd(BusMaster bm, String result) {
+      super(bm);
+      this.result = result;
+    }
+
+    @Override
+    public String execute() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected String execute_scheduled() {
+      if (result == null) {
+        throw new IllegalStateException("thrown by the test");
+      }
+      return result;
+    }
+  }
+
+}
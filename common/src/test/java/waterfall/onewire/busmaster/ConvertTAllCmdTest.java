@@ -0,0 +1,113 @@
+package waterfall.onewire.busmaster;
+
+import static org.mockito.Mockito.mock;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class ConvertTAllCmdTest {
+
+  @Test
+  public void testConstructorDefaults() {
+    BusMaster mockBM = mock(BusMaster.class);
+
+    TestConvertTAllCmd cmd = new TestConvertTAllCmd(mockBM);
+    Assert.assertNull(cmd.getResult());
+    Assert.assertEquals(cmd.getBusMaster(), mockBM);
+
+    try {
+      long v = cmd.getResultWriteCTM();
+      Assert.fail("exception expected");
+    } catch (NoResultException e) {
+      ;
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testConstructorNullBusMaster() {
+    new TestConvertTAllCmd(null);
+  }
+
+  @Test(expectedExceptions = NoResultException.class)
+  public void testExecuteBusy() {
+    BusMaster mockBM = mock(BusMaster.class);
+
+    TestConvertTAllCmd cmd = new TestConvertTAllCmd(mockBM);
+    cmd.setResult(ConvertTAllCmd.Result.cmdBusy);
+    cmd.execute();
+
+    Assert.fail("should have thrown exception");
+  }
+
+  @Test
+  public void testExecuteInternalException() {
+    BusMaster mockBM = mock(BusMaster.class);
+
+    TestConvertTAllCmd cmd = new TestConvertTAllCmd(mockBM);
+    cmd.setExecuteException(new RuntimeException("foo"));
+    ConvertTAllCmd.Result r = cmd.execute();
+    Assert.assertEquals(r, ConvertTAllCmd.Result.deviceFault);
+  }
+
+  @Test(dataProvider = "createExecuteInternalResultData")
+  public void testExecuteInternalResult(ConvertTAllCmd.Result setResult, long setResultWriteCTM) {
+    BusMaster mockBM = mock(BusMaster.class);
+
+    TestConvertTAllCmd cmd = new TestConvertTAllCmd(mockBM);
+    cmd.setExecuteResult(setResult, setResultWriteCTM);
+    ConvertTAllCmd.Result r = cmd.execute();
+    Assert.assertEquals(r, setResult);
+    if (r == ConvertTAllCmd.Result.success) {
+      Assert.assertEquals(cmd.getResultWriteCTM(), setResultWriteCTM);
+    }
+  }
+
+  @DataProvider
+  public Object[][] createExecuteInternalResultData() {
+    return new Object[][]{
+        {ConvertTAllCmd.Result.busFault, -1},
+        {ConvertTAllCmd.Result.deviceFault, -1},
+        {ConvertTAllCmd.Result.success, 0},
+        {ConvertTAllCmd.Result.success, 1},
+    };
+  }
+
+  public static class TestConvertTAllCmd extends ConvertTAllCmd {
+
+    private Result execute_internal_result = null;
+    private long execute_internal_resultWriteCTM = 0;
+    private RuntimeException execute_internal_exception = null;
+
+    public TestConvertTAllCmd(BusMaster bm) {
+      super(bm);
+    }
+
+    protected Result execute_internal() {
+      if (execute_internal_exception != null) {
+        throw execute_internal_exception;
+      }
+      setResultData(execute_internal_resultWriteCTM);
+      return execute_internal_result;
+    }
+
+    protected void setResultData(long resultWriteCTM) {
+      this.resultWriteCTM = resultWriteCTM;
+    }
+
+    public void setResult(Result result) {
+      this.result = result;
+    }
+
+    public void setExecuteResult(Result result, long resultWriteCTM) {
+      this.execute_internal_result = result;
+      this.execute_internal_resultWriteCTM = resultWriteCTM;
+    }
+
+    public void setExecuteException(RuntimeException exception) {
+      this.execute_internal_exception = exception;
+    }
+
+  }
+
+}
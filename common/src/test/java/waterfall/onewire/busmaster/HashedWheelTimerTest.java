@@ -0,0 +1,158 @@
+package waterfall.onewire.busmaster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class HashedWheelTimerTest {
+
+  private ExecutorService executor;
+  private HashedWheelTimer timer;
+
+  @BeforeMethod
+  public void setUp() {
+    executor = Executors.newCachedThreadPool();
+    // a small wheel so that the periods go round it more than once
+    timer = new HashedWheelTimer("test", 5, 8, executor);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testConstructorBadTick() {
+    new HashedWheelTimer("test", 0, 8, executor);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testScheduleNull() {
+    timer.schedule(null, 0, 0);
+  }
+
+  @Test
+  public void testOneShot() throws InterruptedException {
+    final CountDownLatch ran = new CountDownLatch(1);
+    final long start = System.nanoTime();
+    timer.schedule(ran::countDown, 30, 0);
+    Assert.assertEquals(timer.getTimeoutCount(), 1);
+
+    Assert.assertTrue(ran.await(1, TimeUnit.SECONDS));
+    final long elapsedMSec = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    Assert.assertTrue((elapsedMSec >= 30) && (elapsedMSec < 100), "elapsed:" + elapsedMSec);
+    Assert.assertEquals(timer.getTimeoutCount(), 0);
+    Assert.assertEquals(timer.getFiredCount(), 1);
+  }
+
+  @Test
+  public void testPeriodic() throws InterruptedException {
+    final List<Long> times = Collections.synchronizedList(new ArrayList<>());
+    HashedWheelTimer.Timeout timeout = timer.schedule(() -> times.add(System.nanoTime()), 0, 50);
+
+    Thread.sleep(280);
+    timeout.cancel();
+    Assert.assertTrue(timeout.isCancelled());
+    Thread.sleep(60);
+
+    // 0, 50, ... 250 less the rounding up to the ticks
+    Assert.assertTrue((times.size() >= 5) && (times.size() <= 6), "runs:" + times.size());
+    for (int i = 1; i < times.size(); i++) {
+      final long diffMSec = TimeUnit.NANOSECONDS.toMillis(times.get(i) - times.get(i - 1));
+      Assert.assertTrue((diffMSec >= 49) && (diffMSec < 60), "diff:" + diffMSec);
+    }
+    Assert.assertEquals(timer.getTimeoutCount(), 0);
+  }
+
+  @Test
+  public void testRescheduleInPlace() throws InterruptedException {
+    final AtomicInteger runs = new AtomicInteger();
+    HashedWheelTimer.Timeout timeout = timer.schedule(runs::incrementAndGet, 1000, 1000);
+    Thread.sleep(20);
+    Assert.assertEquals(runs.get(), 0);
+
+    // the same Timeout, sooner and faster
+    timeout.reschedule(0, 20);
+    Assert.assertEquals(timer.getTimeoutCount(), 1);
+    Thread.sleep(110);
+    Assert.assertTrue(runs.get() >= 4, "runs:" + runs.get());
+
+    timeout.reschedule(1000, 1000);
+    final int before = runs.get();
+    Thread.sleep(60);
+    Assert.assertEquals(runs.get(), before);
+
+    timeout.cancel();
+    Assert.assertEquals(timer.getTimeoutCount(), 0);
+  }
+
+  @Test
+  public void testCoalesceWhileRunning() throws InterruptedException {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger overlapped = new AtomicInteger();
+    final AtomicInteger runs = new AtomicInteger();
+    HashedWheelTimer.Timeout timeout = timer.schedule(() -> {
+      if (running.incrementAndGet() > 1) {
+        overlapped.incrementAndGet();
+      }
+      runs.incrementAndGet();
+      try {
+        // much longer than the period
+        Thread.sleep(60);
+      } catch (InterruptedException e) {
+        ;
+      }
+      running.decrementAndGet();
+    }, 0, 10);
+
+    Thread.sleep(200);
+    timeout.cancel();
+    Thread.sleep(70);
+
+    Assert.assertEquals(overlapped.get(), 0);
+    Assert.assertTrue(runs.get() <= 4, "runs:" + runs.get());
+    Assert.assertTrue(timer.getCoalescedCount() > 0);
+  }
+
+  @Test
+  public void testCoalescePeriodShorterThanTick() throws InterruptedException {
+    final AtomicInteger runs = new AtomicInteger();
+    // expires again in the same tick it was coalesced in, while the task is still running
+    HashedWheelTimer.Timeout timeout = timer.schedule(() -> {
+      runs.incrementAndGet();
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        ;
+      }
+    }, 0, 1);
+
+    Thread.sleep(150);
+    timeout.cancel();
+
+    Assert.assertTrue(runs.get() >= 4, "runs:" + runs.get());
+    Assert.assertTrue(timer.getCoalescedCount() > 0);
+  }
+
+  @Test
+  public void testManyTimeoutsOneTick() throws InterruptedException {
+    final int count = 1000;
+    final CountDownLatch ran = new CountDownLatch(count);
+    for (int i = 0; i < count; i++) {
+      timer.schedule(ran::countDown, 20 + (i % 40), 0);
+    }
+    Assert.assertTrue(ran.await(1, TimeUnit.SECONDS));
+    Assert.assertEquals(timer.getFiredCount(), count);
+    Assert.assertEquals(timer.getTimeoutCount(), 0);
+  }
+
+}
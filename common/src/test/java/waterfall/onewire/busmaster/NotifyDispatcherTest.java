@@ -0,0 +1,229 @@
+package waterfall.onewire.busmaster;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import waterfall.onewire.DSAddress;
+
+public class NotifyDispatcherTest {
+
+  private static final DSAddress dev_A = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+  private static final DSAddress dev_B = DSAddress.fromUncheckedHex(DSAddress._090000065BD53528);
+  private static final DSAddress dev_C = DSAddress.fromUncheckedHex(DSAddress._5F0000065CCD1A28);
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testConstructorNullExecutor() {
+    new NotifyDispatcher(null, 1);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testConstructorBadMaxQueued() {
+    new NotifyDispatcher(Runnable::run, 0);
+  }
+
+  @Test
+  public void testInOrderOneAtATime() throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    NotifyDispatcher dispatcher = new NotifyDispatcher(executor, 1000);
+    BusMaster bm = mock(BusMaster.class);
+
+    List<Recorder> recorders = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      recorders.add(new Recorder());
+    }
+    for (long writeCTM = 1; writeCTM <= 200; writeCTM++) {
+      SearchBusCmd.ResultData data = new SearchBusCmd.ResultData(Arrays.asList(dev_A), writeCTM);
+      for (Recorder recorder : recorders) {
+        dispatcher.dispatch(bm, false, recorder, data, null, null);
+      }
+    }
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while ((dispatcher.getDispatchedCount() < 1000) && (System.currentTimeMillis() < deadline)) {
+      Thread.sleep(5);
+    }
+    executor.shutdown();
+
+    for (Recorder recorder : recorders) {
+      Assert.assertFalse(recorder.overlapped);
+      Assert.assertEquals(recorder.writeCTMs.size(), 200);
+      for (int i = 0; i < 200; i++) {
+        Assert.assertEquals(recorder.writeCTMs.get(i).longValue(), i + 1);
+      }
+    }
+    Assert.assertEquals(dispatcher.getDispatchedCount(), 1000);
+    Assert.assertEquals(dispatcher.getCoalescedCount(), 0);
+    Assert.assertEquals(dispatcher.getPendingCount(), 0);
+  }
+
+  @Test
+  public void testCoalesceResults() {
+    List<Runnable> tasks = new ArrayList<>();
+    NotifyDispatcher dispatcher = new NotifyDispatcher(tasks::add, 2);
+    BusMaster bm = mock(BusMaster.class);
+    Recorder recorder = new Recorder();
+
+    for (long writeCTM = 1; writeCTM <= 5; writeCTM++) {
+      dispatcher.dispatch(bm, false, recorder,
+          new SearchBusCmd.ResultData(Arrays.asList(dev_A), writeCTM), null, null);
+    }
+    // 1 and 2 wait, 3 folds them in, 4 waits and 5 folds in 3 and 4
+    Assert.assertEquals(tasks.size(), 1);
+    Assert.assertEquals(dispatcher.getPendingCount(), 1);
+    Assert.assertEquals(dispatcher.getCoalescedCount(), 4);
+
+    runAll(tasks);
+    Assert.assertEquals(recorder.writeCTMs, Collections.singletonList(5L));
+    Assert.assertEquals(dispatcher.getPendingCount(), 0);
+  }
+
+  @Test
+  public void testCoalesceDeltas() {
+    List<Runnable> tasks = new ArrayList<>();
+    NotifyDispatcher dispatcher = new NotifyDispatcher(tasks::add, 2);
+    BusMaster bm = mock(BusMaster.class);
+    Recorder recorder = new Recorder();
+
+    List<DSAddress> list0 = Arrays.asList(dev_A);
+    List<DSAddress> list1 = Arrays.asList(dev_A, dev_B);
+    List<DSAddress> list2 = Arrays.asList(dev_B);
+    List<DSAddress> list3 = Arrays.asList(dev_B, dev_C);
+
+    dispatchDelta(dispatcher, bm, recorder, list0, list1, 1);
+    dispatchDelta(dispatcher, bm, recorder, list1, list2, 2);
+    dispatchDelta(dispatcher, bm, recorder, list2, list3, 3);
+    Assert.assertEquals(dispatcher.getCoalescedCount(), 2);
+
+    runAll(tasks);
+    Assert.assertEquals(recorder.deltas.size(), 1);
+    Assert.assertEquals(recorder.deltas.get(0).getAdded(), Arrays.asList(dev_B, dev_C));
+    Assert.assertEquals(recorder.deltas.get(0).getRemoved(), Arrays.asList(dev_A));
+
+    // back where it started from, so there is nothing to say
+    dispatchDelta(dispatcher, bm, recorder, list3, list2, 4);
+    dispatchDelta(dispatcher, bm, recorder, list2, list3, 5);
+    dispatchDelta(dispatcher, bm, recorder, list3, list3, 6);
+    runAll(tasks);
+    Assert.assertEquals(recorder.deltas.size(), 1);
+    Assert.assertEquals(dispatcher.getPendingCount(), 0);
+  }
+
+  @Test
+  public void testCoalesceByBusMaster() {
+    List<Runnable> tasks = new ArrayList<>();
+    NotifyDispatcher dispatcher = new NotifyDispatcher(tasks::add, 2);
+    BusMaster bmA = mock(BusMaster.class);
+    BusMaster bmB = mock(BusMaster.class);
+    Recorder recorder = new Recorder();
+
+    List<DSAddress> empty = Collections.emptyList();
+    List<DSAddress> list0 = Arrays.asList(dev_A);
+    List<DSAddress> list1 = Arrays.asList(dev_A, dev_B);
+    List<DSAddress> list2 = Arrays.asList(dev_B);
+    List<DSAddress> list3 = Arrays.asList(dev_B, dev_C);
+
+    dispatchDelta(dispatcher, bmA, recorder, list0, list1, 1);
+    dispatchDelta(dispatcher, bmB, recorder, empty, list0, 2);
+    dispatchDelta(dispatcher, bmA, recorder, list1, list2, 3);
+    dispatchDelta(dispatcher, bmB, recorder, list0, empty, 4);
+    Assert.assertEquals(dispatcher.getCoalescedCount(), 0);
+
+    // only the two waiting from bmA are folded in, those from bmB are left alone
+    dispatchDelta(dispatcher, bmA, recorder, list2, list3, 5);
+    Assert.assertEquals(dispatcher.getCoalescedCount(), 2);
+    Assert.assertEquals(dispatcher.getPendingCount(), 3);
+
+    runAll(tasks);
+    Assert.assertEquals(recorder.bms, Arrays.asList(bmB, bmB, bmA));
+    Assert.assertEquals(recorder.deltas.get(0).getAdded(), list0);
+    Assert.assertEquals(recorder.deltas.get(1).getRemoved(), list0);
+    Assert.assertEquals(recorder.deltas.get(2).getAdded(), Arrays.asList(dev_B, dev_C));
+    Assert.assertEquals(recorder.deltas.get(2).getRemoved(), list0);
+
+    // nor are the general and alarm searches of the same bus master
+    Recorder recorder2 = new Recorder();
+    dispatcher.dispatch(bmA, false, recorder2, new SearchBusCmd.ResultData(list0, 6), null, null);
+    dispatcher.dispatch(bmA, false, recorder2, new SearchBusCmd.ResultData(list1, 7), null, null);
+    dispatcher.dispatch(bmA, true, recorder2, new SearchBusCmd.ResultData(list2, 8), null, null);
+    dispatcher.dispatch(bmB, false, recorder2, new SearchBusCmd.ResultData(list3, 9), null, null);
+    dispatcher.dispatch(bmA, false, recorder2, new SearchBusCmd.ResultData(list2, 10), null, null);
+    runAll(tasks);
+    Assert.assertEquals(recorder2.writeCTMs, Arrays.asList(8L, 9L, 10L));
+    Assert.assertEquals(recorder2.bms, Arrays.asList(bmA, bmB, bmA));
+  }
+
+  @Test
+  public void testExceptionAndLatency() throws InterruptedException {
+    List<Runnable> tasks = new ArrayList<>();
+    NotifyDispatcher dispatcher = new NotifyDispatcher(tasks::add, 10);
+    BusMaster bm = mock(BusMaster.class);
+    Recorder recorder = new Recorder();
+    recorder.throwOn = 1;
+
+    dispatcher.dispatch(bm, true, recorder,
+        new SearchBusCmd.ResultData(Arrays.asList(dev_A), 1), null, null);
+    dispatcher.dispatch(bm, true, recorder,
+        new SearchBusCmd.ResultData(Arrays.asList(dev_A), 2), null, null);
+    Thread.sleep(10);
+
+    runAll(tasks);
+    Assert.assertEquals(recorder.writeCTMs, Arrays.asList(1L, 2L));
+    Assert.assertEquals(dispatcher.getDispatchedCount(), 2);
+    Assert.assertEquals(dispatcher.getFailedCount(), 1);
+    Assert.assertTrue(
+        dispatcher.getMaxDispatchLatencyNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+    Assert.assertTrue(dispatcher.getMeanDispatchLatencyNanos() > 0);
+  }
+
+  private static void dispatchDelta(NotifyDispatcher dispatcher, BusMaster bm, Recorder recorder,
+      List<DSAddress> previous, List<DSAddress> current, long writeCTM) {
+    dispatcher.dispatch(bm, false, recorder, new SearchBusCmd.ResultData(current, writeCTM),
+        previous, SearchDelta.between(previous, current));
+  }
+
+  private static void runAll(List<Runnable> tasks) {
+    while (!tasks.isEmpty()) {
+      tasks.remove(0).run();
+    }
+  }
+
+  private static class Recorder implements NotifySearchBusDeltaResult {
+
+    private final List<Long> writeCTMs = Collections.synchronizedList(new ArrayList<>());
+    private final List<SearchDelta> deltas = new ArrayList<>();
+    private final List<BusMaster> bms = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile boolean overlapped = false;
+    private long throwOn = -1;
+
+    @Override
+    public void notify(BusMaster bm, boolean byAlarm, SearchBusCmd.ResultData searchResultData) {
+      if (active.incrementAndGet() != 1) {
+        overlapped = true;
+      }
+      writeCTMs.add(searchResultData.getWriteCTM());
+      bms.add(bm);
+      active.decrementAndGet();
+      if (searchResultData.getWriteCTM() == throwOn) {
+        throw new RuntimeException("thrown by the test");
+      }
+    }
+
+    @Override
+    public void notifyDelta(BusMaster bm, boolean byAlarm,
+        SearchBusCmd.ResultData searchResultData, SearchDelta delta) {
+      deltas.add(delta);
+      bms.add(bm);
+    }
+  }
+
+}
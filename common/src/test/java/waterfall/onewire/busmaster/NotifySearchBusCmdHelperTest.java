@@ -273,6 +273,41 @@ public class NotifySearchBusCmdHelperTest {
     }
   }
 
+  @Test
+  public void testSamePeriodSubscribers() {
+    BusMaster mockBM = mock(BusMaster.class);
+
+    SearchPusher mockSearchPusher = mock(SearchPusher.class);
+    when(mockSearchPusher.adjustPeriod(any(Long.class))).thenReturn(true);
+
+    NotifySearchBusCmdHelper nsbch = new NotifySearchBusCmdHelper(mockSearchPusher, mockBM);
+
+    // a period stays the min until the last subscriber with it goes
+    List<NotifySearchBusCmdResult> mocks = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      NotifySearchBusCmdResult mockNSBCR = mock(NotifySearchBusCmdResult.class);
+      nsbch.scheduleSearchNotifyFor(mockNSBCR, ((i % 2) == 0) ? 50 : 100);
+      mocks.add(mockNSBCR);
+    }
+    verify(mockSearchPusher, times(0)).adjustPeriod(eq(100L));
+    verify(mockSearchPusher, times(1000)).adjustPeriod(eq(50L));
+
+    reset(mockSearchPusher);
+    for (int i = 0; i < 998; i += 2) {
+      nsbch.cancelScheduledSearchNotifyFor(mocks.get(i));
+    }
+    verify(mockSearchPusher, times(499)).adjustPeriod(eq(50L));
+
+    nsbch.updateScheduledSearchNotifyFor(mocks.get(998), 200);
+    verify(mockSearchPusher, times(1)).adjustPeriod(eq(100L));
+
+    nsbch.updateScheduledSearchNotifyFor(mocks.get(1), 25);
+    verify(mockSearchPusher, times(1)).adjustPeriod(eq(25L));
+
+    Assert.assertTrue(nsbch.cancelAllScheduledSearchNotifyFor());
+    verify(mockSearchPusher, times(1)).adjustPeriod(eq(Long.MAX_VALUE));
+  }
+
   @Test
   public void testCancelAllScheduledSearchNotifyFor() {
     BusMaster mockBM = mock(BusMaster.class);
@@ -376,6 +411,106 @@ public class NotifySearchBusCmdHelperTest {
     }
   }
 
+  @Test
+  public void testNotifySearchDelta() {
+    BusMaster mockBM = mock(BusMaster.class);
+
+    SearchPusher mockSearchPusher = mock(SearchPusher.class);
+    when(mockSearchPusher.adjustPeriod(any(Long.class))).thenReturn(true);
+
+    NotifySearchBusCmdHelper nsbch = new NotifySearchBusCmdHelper(mockSearchPusher, mockBM);
+
+    boolean isByAlarm = false;
+    when(mockSearchPusher.isAlarmSearch()).thenReturn(isByAlarm);
+
+    DSAddress dev_A = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+    DSAddress dev_B = DSAddress.fromUncheckedHex(DSAddress._090000065BD53528);
+    DSAddress dev_C = DSAddress.fromUncheckedHex(DSAddress._5F0000065CCD1A28);
+
+    NotifySearchBusDeltaResult mockNSBDR = mock(NotifySearchBusDeltaResult.class);
+    nsbch.scheduleSearchNotifyFor(mockNSBDR, 100);
+
+    // the first search tells about the whole bus
+    List<DSAddress> firstList = new ArrayList<>();
+    firstList.add(dev_A);
+    firstList.add(dev_B);
+    nsbch.notifySearchResult(new SearchBusCmd.ResultData(firstList, 1));
+    delayForPush();
+    {
+      ArgumentCaptor<SearchDelta> deltaArgs = ArgumentCaptor.forClass(SearchDelta.class);
+      verify(mockNSBDR, times(1)).notifyDelta(eq(mockBM), eq(isByAlarm),
+          any(SearchBusCmd.ResultData.class), deltaArgs.capture());
+      Assert.assertEquals(deltaArgs.getValue().getAdded(), firstList);
+      Assert.assertTrue(deltaArgs.getValue().getRemoved().isEmpty());
+    }
+
+    // the same devices again, nothing to tell
+    List<DSAddress> sameList = new ArrayList<>(firstList);
+    nsbch.notifySearchResult(new SearchBusCmd.ResultData(sameList, 2));
+    delayForPush();
+    verify(mockNSBDR, times(1)).notifyDelta(any(BusMaster.class), any(Boolean.class),
+        any(SearchBusCmd.ResultData.class), any(SearchDelta.class));
+
+    // B goes, C comes
+    List<DSAddress> changedList = new ArrayList<>();
+    changedList.add(dev_A);
+    changedList.add(dev_C);
+    nsbch.notifySearchResult(new SearchBusCmd.ResultData(changedList, 3));
+    delayForPush();
+    {
+      ArgumentCaptor<SearchDelta> deltaArgs = ArgumentCaptor.forClass(SearchDelta.class);
+      verify(mockNSBDR, times(2)).notifyDelta(eq(mockBM), eq(isByAlarm),
+          any(SearchBusCmd.ResultData.class), deltaArgs.capture());
+      SearchDelta delta = deltaArgs.getAllValues().get(1);
+      Assert.assertEquals(delta.getAdded().size(), 1);
+      Assert.assertEquals(delta.getAdded().get(0), dev_C);
+      Assert.assertEquals(delta.getRemoved().size(), 1);
+      Assert.assertEquals(delta.getRemoved().get(0), dev_B);
+    }
+
+    // the plain notify is never used for a delta subscriber
+    verify(mockNSBDR, times(0))
+        .notify(any(BusMaster.class), any(Boolean.class), any(SearchBusCmd.ResultData.class));
+  }
+
+  @Test
+  public void testScheduleDeltaWithRecentResult() {
+    BusMaster mockBM = mock(BusMaster.class);
+    when(mockBM.getCurrentTimeMillis()).thenReturn(50L);
+
+    SearchPusher mockSearchPusher = mock(SearchPusher.class);
+    when(mockSearchPusher.adjustPeriod(any(Long.class))).thenReturn(false);
+
+    NotifySearchBusCmdHelper nsbch = new NotifySearchBusCmdHelper(mockSearchPusher, mockBM);
+
+    NotifySearchBusCmdResult mockNSBCR = mock(NotifySearchBusCmdResult.class);
+    nsbch.scheduleSearchNotifyFor(mockNSBCR, 100);
+
+    List<DSAddress> list = new ArrayList<>();
+    list.add(DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28));
+    nsbch.notifySearchResult(new SearchBusCmd.ResultData(list, 1));
+    delayForPush();
+
+    // scheduled with a result recent enough to pass on, which is the whole bus as a delta
+    NotifySearchBusDeltaResult mockNSBDR = mock(NotifySearchBusDeltaResult.class);
+    nsbch.scheduleSearchNotifyFor(mockNSBDR, 100);
+    delayForPush();
+    {
+      ArgumentCaptor<SearchDelta> deltaArgs = ArgumentCaptor.forClass(SearchDelta.class);
+      verify(mockNSBDR, times(1)).notifyDelta(eq(mockBM), any(Boolean.class),
+          any(SearchBusCmd.ResultData.class), deltaArgs.capture());
+      Assert.assertEquals(deltaArgs.getValue().getAdded(), list);
+    }
+    verify(mockNSBDR, times(0))
+        .notify(any(BusMaster.class), any(Boolean.class), any(SearchBusCmd.ResultData.class));
+
+    // and is not told about it again by the next search of the same bus
+    nsbch.notifySearchResult(new SearchBusCmd.ResultData(new ArrayList<>(list), 2));
+    delayForPush();
+    verify(mockNSBDR, times(1)).notifyDelta(any(BusMaster.class), any(Boolean.class),
+        any(SearchBusCmd.ResultData.class), any(SearchDelta.class));
+  }
+
   // TODO: calculateMinPeriodMSecForMap needs some tests.
 
   // this just lets the push thread get a chance to run
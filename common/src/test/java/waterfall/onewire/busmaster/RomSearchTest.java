@@ -0,0 +1,261 @@
+package waterfall.onewire.busmaster;
+
+import com.dalsemi.onewire.utils.CRC8;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import waterfall.onewire.DSAddress;
+
+public class RomSearchTest {
+
+  private static final DSAddress dev_A = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+  private static final DSAddress dev_B = DSAddress.fromUncheckedHex(DSAddress._090000065BD53528);
+  private static final DSAddress dev_C = DSAddress.fromUncheckedHex(DSAddress._5F0000065CCD1A28);
+  private static final DSAddress dev_D = DSAddress.fromUncheckedHex(DSAddress._410000063C088028);
+  private static final DSAddress dev_12 = DSAddress.fromUncheckedHex(DSAddress._30000000C369CC12);
+  private static final DSAddress dev_27 = DSAddress.fromUncheckedHex(DSAddress._7B0000063B759F27);
+
+  @Test
+  public void testFindAll() {
+    List<DSAddress> devices = Arrays.asList(dev_A, dev_B, dev_C, dev_D, dev_12, dev_27);
+    SimBus bus = new SimBus(devices);
+
+    List<DSAddress> found = new RomSearch(bus, false).nextAll();
+
+    // the search finds them in order of their bits, LSB first
+    Assert.assertEquals(found, inSearchOrder(devices));
+    Assert.assertEquals(bus.resetCount, devices.size());
+  }
+
+  @Test
+  public void testOneDevice() {
+    RomSearch romSearch = new RomSearch(new SimBus(Arrays.asList(dev_C)), false);
+    Assert.assertEquals(romSearch.next(), dev_C);
+    Assert.assertEquals(romSearch.getLastDiscrepancy(), 0);
+    Assert.assertNull(romSearch.next());
+  }
+
+  @Test
+  public void testNoDevices() {
+    SimBus bus = new SimBus(Collections.emptyList());
+    Assert.assertNull(new RomSearch(bus, false).next());
+
+    bus.presence = false;
+    Assert.assertNull(new RomSearch(bus, false).next());
+  }
+
+  @Test
+  public void testByAlarm() {
+    SimBus bus = new SimBus(Arrays.asList(dev_A, dev_B, dev_C));
+    RomSearch romSearch = new RomSearch(bus, true);
+    Assert.assertNull(romSearch.next());
+
+    bus.alarmed.add(dev_B);
+    bus.alarmed.add(dev_C);
+    Assert.assertEquals(romSearch.restart().nextAll(), inSearchOrder(Arrays.asList(dev_B, dev_C)));
+    Assert.assertEquals(bus.lastCommand, RomSearch.ALARM_SEARCH);
+  }
+
+  @Test
+  public void testTargetFamily() {
+    SimBus bus = new SimBus(Arrays.asList(dev_A, dev_12, dev_B, dev_27, dev_C));
+    RomSearch romSearch = new RomSearch(bus, false);
+
+    Assert.assertEquals(romSearch.targetFamily((short) 0x28).nextAll(),
+        inSearchOrder(Arrays.asList(dev_A, dev_B, dev_C)));
+    Assert.assertEquals(romSearch.targetFamily((short) 0x12).nextAll(), Arrays.asList(dev_12));
+    Assert.assertTrue(romSearch.targetFamily((short) 0x10).nextAll().isEmpty());
+  }
+
+  @Test
+  public void testTargetFamilyHighBit() {
+    DSAddress dev_FC_1 = address(0xFC, 1);
+    DSAddress dev_FC_2 = address(0xFC, 2);
+    DSAddress dev_FD = address(0xFD, 1);
+    SimBus bus = new SimBus(Arrays.asList(dev_A, dev_FC_1, dev_FD, dev_FC_2, dev_27));
+    RomSearch romSearch = new RomSearch(bus, false);
+
+    Assert.assertEquals(romSearch.targetFamily((short) 0xFC).nextAll(),
+        inSearchOrder(Arrays.asList(dev_FC_1, dev_FC_2)));
+    Assert.assertEquals(romSearch.targetFamily((short) 0xFD).nextAll(), Arrays.asList(dev_FD));
+  }
+
+  @Test
+  public void testSkipFamily() {
+    List<DSAddress> devices = Arrays.asList(dev_A, dev_B, dev_C, dev_12, dev_27);
+    RomSearch romSearch = new RomSearch(new SimBus(devices), false);
+
+    // one device from each family
+    List<Short> families = new ArrayList<>();
+    DSAddress dsAddress;
+    while ((dsAddress = romSearch.next()) != null) {
+      families.add(dsAddress.getFamilyCode());
+      romSearch.skipFamily();
+    }
+
+    Assert.assertEquals(families.size(), 3);
+    Assert.assertTrue(
+        families.containsAll(Arrays.asList((short) 0x28, (short) 0x12, (short) 0x27)));
+  }
+
+  @Test
+  public void testResume() {
+    List<DSAddress> devices = Arrays.asList(dev_A, dev_B, dev_C, dev_D);
+    SimBus bus = new SimBus(devices);
+    List<DSAddress> expected = inSearchOrder(devices);
+
+    RomSearch first = new RomSearch(bus, false);
+    Assert.assertEquals(first.next(), expected.get(0));
+    Assert.assertEquals(first.next(), expected.get(1));
+    int lastDiscrepancy = first.getLastDiscrepancy();
+
+    RomSearch resumed = new RomSearch(bus, false).resumeFrom(expected.get(1), lastDiscrepancy);
+    Assert.assertEquals(resumed.nextAll(), expected.subList(2, 4));
+  }
+
+  @Test
+  public void testVerify() {
+    SimBus bus = new SimBus(Arrays.asList(dev_A, dev_B, dev_C));
+    RomSearch romSearch = new RomSearch(bus, false);
+
+    bus.tripletCount = 0;
+    Assert.assertTrue(romSearch.verify(dev_B));
+    Assert.assertEquals(bus.tripletCount, 64);
+
+    Assert.assertFalse(romSearch.verify(dev_D));
+    Assert.assertFalse(romSearch.verify(dev_12));
+
+    // the enumeration is not disturbed
+    Assert.assertEquals(romSearch.nextAll(), inSearchOrder(Arrays.asList(dev_A, dev_B, dev_C)));
+  }
+
+  @Test
+  public void testVerifyMidSearch() {
+    List<DSAddress> devices = Arrays.asList(dev_A, dev_B, dev_C, dev_D);
+    RomSearch romSearch = new RomSearch(new SimBus(devices), false);
+    List<DSAddress> expected = inSearchOrder(devices);
+
+    Assert.assertEquals(romSearch.next(), expected.get(0));
+    Assert.assertTrue(romSearch.verify(expected.get(3)));
+    Assert.assertEquals(romSearch.nextAll(), expected.subList(1, 4));
+  }
+
+  @Test
+  public void testDeviceLeaves() {
+    SimBus bus = new SimBus(Arrays.asList(dev_A, dev_B));
+    bus.dropAtBit = 20;
+    try {
+      new RomSearch(bus, false).next();
+      Assert.fail("expected SearchFailedException");
+    } catch (RomSearch.SearchFailedException e) {
+      // expected
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNullBus() {
+    new RomSearch(null, false);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testBadFamily() {
+    new RomSearch(new SimBus(Collections.emptyList()), false).targetFamily((short) 256);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testBadResume() {
+    new RomSearch(new SimBus(Collections.emptyList()), false).resumeFrom(dev_A, 65);
+  }
+
+  // the search takes the 0 branch first at each bit, LSB first
+  private static DSAddress address(int familyCode, int serial) {
+    byte[] addr = new byte[8];
+    addr[0] = (byte) familyCode;
+    addr[1] = (byte) serial;
+    addr[7] = (byte) CRC8.compute(addr, 0, 7);
+    return DSAddress.takeChecked(addr);
+  }
+
+  private static List<DSAddress> inSearchOrder(List<DSAddress> devices) {
+    List<DSAddress> sorted = new ArrayList<>(devices);
+    sorted.sort(Comparator.comparingLong(d -> Long.reverse(d.toLong()) ^ Long.MIN_VALUE));
+    return sorted;
+  }
+
+  /**
+   * Wired-AND bus of devices which answer the search and alarm search commands a bit at a time.
+   */
+  private static class SimBus implements BitBus {
+
+    private final List<DSAddress> devices;
+    final List<DSAddress> alarmed = new ArrayList<>();
+    boolean presence = true;
+    // all devices stop answering from this bit, 0 for never
+    int dropAtBit = 0;
+    int resetCount = 0;
+    int tripletCount = 0;
+    int lastCommand = 0;
+
+    private List<DSAddress> inSearch = new ArrayList<>();
+    private int bitIndex;
+    private int commandBits;
+    private int readCount;
+
+    SimBus(List<DSAddress> devices) {
+      this.devices = devices;
+    }
+
+    @Override
+    public boolean reset() {
+      resetCount++;
+      commandBits = 0;
+      lastCommand = 0;
+      inSearch.clear();
+      return (presence && !devices.isEmpty());
+    }
+
+    @Override
+    public void writeBit(boolean bit) {
+      if (commandBits < 8) {
+        lastCommand |= ((bit ? 1 : 0) << commandBits);
+        if (++commandBits == 8) {
+          inSearch = new ArrayList<>(
+              (lastCommand == RomSearch.ALARM_SEARCH) ? alarmed : devices);
+          bitIndex = 0;
+          readCount = 0;
+        }
+        return;
+      }
+      // the direction, devices which do not match it drop out
+      final int index = bitIndex;
+      inSearch.removeIf(d -> (((d.toLong() >>> index) & 0x1) != 0) != bit);
+      bitIndex++;
+      readCount = 0;
+    }
+
+    @Override
+    public boolean readBit() {
+      if ((dropAtBit > 0) && (bitIndex >= (dropAtBit - 1))) {
+        inSearch.clear();
+      }
+      final boolean complement = (readCount++ == 1);
+      boolean line = true;
+      for (DSAddress d : inSearch) {
+        boolean bit = (((d.toLong() >>> bitIndex) & 0x1) != 0);
+        line &= (complement ? !bit : bit);
+      }
+      return line;
+    }
+
+    @Override
+    public int triplet(boolean direction) {
+      tripletCount++;
+      return BitBus.super.triplet(direction);
+    }
+  }
+
+}
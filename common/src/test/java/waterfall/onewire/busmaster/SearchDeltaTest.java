@@ -0,0 +1,73 @@
+package waterfall.onewire.busmaster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import waterfall.onewire.DSAddress;
+
+public class SearchDeltaTest {
+
+  private static final DSAddress dev_A = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+  private static final DSAddress dev_B = DSAddress.fromUncheckedHex(DSAddress._090000065BD53528);
+  private static final DSAddress dev_C = DSAddress.fromUncheckedHex(DSAddress._5F0000065CCD1A28);
+  private static final DSAddress dev_D = DSAddress.fromUncheckedHex(DSAddress._410000063C088028);
+
+  @Test
+  public void testFromNothing() {
+    List<DSAddress> current = Arrays.asList(dev_A, dev_B);
+
+    for (List<DSAddress> previous : Arrays.asList(null, Collections.<DSAddress>emptyList())) {
+      SearchDelta delta = SearchDelta.between(previous, current);
+      Assert.assertEquals(delta.getAdded(), current);
+      Assert.assertTrue(delta.getRemoved().isEmpty());
+      Assert.assertFalse(delta.isEmpty());
+    }
+
+    Assert.assertSame(SearchDelta.between(null, Collections.emptyList()), SearchDelta.NONE);
+  }
+
+  @Test
+  public void testNoChange() {
+    List<DSAddress> previous = Arrays.asList(dev_A, dev_B, dev_C);
+    // equal but not the same instances, and in another order
+    List<DSAddress> current = new ArrayList<>();
+    current.add(DSAddress.fromUncheckedHex(DSAddress._5F0000065CCD1A28));
+    current.add(DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28));
+    current.add(DSAddress.fromUncheckedHex(DSAddress._090000065BD53528));
+
+    Assert.assertSame(SearchDelta.between(previous, current), SearchDelta.NONE);
+    Assert.assertTrue(SearchDelta.NONE.isEmpty());
+  }
+
+  @Test
+  public void testAddedAndRemoved() {
+    SearchDelta delta = SearchDelta.between(Arrays.asList(dev_A, dev_B, dev_C),
+        Arrays.asList(dev_D, dev_B));
+
+    Assert.assertEquals(delta.getAdded(), Arrays.asList(dev_D));
+    Assert.assertEquals(delta.getRemoved(), Arrays.asList(dev_A, dev_C));
+  }
+
+  @Test
+  public void testAllGone() {
+    SearchDelta delta = SearchDelta.between(Arrays.asList(dev_A, dev_B),
+        Collections.emptyList());
+
+    Assert.assertTrue(delta.getAdded().isEmpty());
+    Assert.assertEquals(delta.getRemoved(), Arrays.asList(dev_A, dev_B));
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testUnmodifiable() {
+    SearchDelta.between(null, Arrays.asList(dev_A)).getAdded().add(dev_B);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNullCurrent() {
+    SearchDelta.between(Arrays.asList(dev_A), null);
+  }
+
+}
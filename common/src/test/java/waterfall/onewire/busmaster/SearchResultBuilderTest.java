@@ -0,0 +1,98 @@
+package waterfall.onewire.busmaster;
+
+import java.util.Arrays;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.DSAddressInterner;
+import waterfall.onewire.busmaster.SearchBusCmd.ResultData;
+
+public class SearchResultBuilderTest {
+
+  private static final DSAddress dev_A = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+  private static final DSAddress dev_B = DSAddress.fromUncheckedHex(DSAddress._090000065BD53528);
+  private static final DSAddress dev_C = DSAddress.fromUncheckedHex(DSAddress._5F0000065CCD1A28);
+
+  @Test
+  public void testSameSearchReused() {
+    SearchResultBuilder builder = new SearchResultBuilder(new DSAddressInterner());
+
+    ResultData first = search(builder, 5L, dev_A, dev_B);
+    Assert.assertEquals(first.getList(), Arrays.asList(dev_A, dev_B));
+    Assert.assertEquals(first.getListCRC32(),
+        new ResultData(Arrays.asList(dev_A, dev_B), 5L).getListCRC32());
+    Assert.assertEquals(first.getWriteCTM(), 5L);
+
+    ResultData second = search(builder, 6L, dev_A, dev_B);
+    Assert.assertNotSame(second, first);
+    Assert.assertSame(second.getList(), first.getList());
+    Assert.assertEquals(second.getListCRC32(), first.getListCRC32());
+    Assert.assertEquals(second.getWriteCTM(), 6L);
+  }
+
+  @Test
+  public void testChangedSearch() {
+    SearchResultBuilder builder = new SearchResultBuilder(new DSAddressInterner());
+
+    ResultData first = search(builder, 5L, dev_A, dev_B);
+
+    ResultData added = search(builder, 6L, dev_A, dev_B, dev_C);
+    Assert.assertNotSame(added.getList(), first.getList());
+    Assert.assertEquals(added.getList(), Arrays.asList(dev_A, dev_B, dev_C));
+    Assert.assertNotEquals(added.getListCRC32(), first.getListCRC32());
+    // the addresses themselves are the same instances
+    Assert.assertSame(added.getList().get(0), first.getList().get(0));
+
+    ResultData reordered = search(builder, 7L, dev_C, dev_B, dev_A);
+    Assert.assertNotSame(reordered.getList(), added.getList());
+
+    ResultData empty = search(builder, 8L);
+    Assert.assertTrue(empty.getList().isEmpty());
+    Assert.assertSame(search(builder, 9L).getList(), empty.getList());
+  }
+
+  @Test
+  public void testSharedInterner() {
+    DSAddressInterner interner = new DSAddressInterner();
+    SearchResultBuilder all = new SearchResultBuilder(interner);
+    SearchResultBuilder byAlarm = new SearchResultBuilder(interner);
+
+    ResultData allResult = search(all, 5L, dev_A, dev_B);
+    ResultData byAlarmResult = search(byAlarm, 6L, dev_B);
+    Assert.assertSame(byAlarmResult.getList().get(0), allResult.getList().get(1));
+
+    // a search of the other kind in between does not stop the list being reused
+    Assert.assertSame(search(all, 7L, dev_A, dev_B).getList(), allResult.getList());
+  }
+
+  @Test
+  public void testBeginForgets() {
+    SearchResultBuilder builder = new SearchResultBuilder(new DSAddressInterner());
+    builder.add(dev_A);
+
+    ResultData resultData = search(builder, 5L, dev_B);
+    Assert.assertEquals(resultData.getList(), Arrays.asList(dev_B));
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testListUnmodifiable() {
+    SearchResultBuilder builder = new SearchResultBuilder(new DSAddressInterner());
+    search(builder, 5L, dev_A).getList().add(dev_B);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNullInterner() {
+    new SearchResultBuilder(null);
+  }
+
+  private static ResultData search(SearchResultBuilder builder, long writeCTM,
+      DSAddress... found) {
+    builder.begin();
+    byte[] hexBuf = new byte[16];
+    for (DSAddress dsAddress : found) {
+      builder.addHex(dsAddress.copyHexBytesTo(hexBuf, 0), 0);
+    }
+    return builder.build(writeCTM);
+  }
+
+}
@@ -0,0 +1,98 @@
+package waterfall.onewire.device;
+
+import java.util.Arrays;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import waterfall.onewire.Convert;
+
+public class DS18B20ScratchpadViewTest {
+
+  @DataProvider
+  public Object[][] scratchpadCases() {
+    return new Object[][]{
+        {new DS18B20Scratchpad()},
+        {new DS18B20Scratchpad().setTempC((float) 77.125)},
+        {new DS18B20Scratchpad().setTempC((float) -10.5).setResolution((byte) 1)},
+        {new DS18B20Scratchpad().setTempHAlarm((byte) -5).setTempLAlarm((byte) -20)},
+    };
+  }
+
+  @Test(dataProvider = "scratchpadCases")
+  public void testSameAsScratchpad(DS18B20Scratchpad scratchpad) {
+    DS18B20ScratchpadView view = new DS18B20ScratchpadView();
+    byte[] hex = Convert.byteToHex(scratchpad.getRawBytes());
+
+    for (DS18B20ScratchpadView v : new DS18B20ScratchpadView[]{
+        view.wrap(scratchpad.getRawBytes()), new DS18B20ScratchpadView().wrapHex(hex, 0)}) {
+      Assert.assertEquals(v.getTempC(), scratchpad.getTempC());
+      Assert.assertEquals(v.getResolution(), scratchpad.getResolution());
+      Assert.assertEquals(v.getTempHAlarm(), scratchpad.getTempHAlarm());
+      Assert.assertEquals(v.getTempLAlarm(), scratchpad.getTempLAlarm());
+      Assert.assertTrue(v.checkValid());
+      Assert.assertFalse(v.checkAllFFs());
+    }
+  }
+
+  @Test
+  public void testViewFollowsBuffer() {
+    byte[] data = new DS18B20Scratchpad().setTempC((float) 20.0).getRawBytes();
+    DS18B20ScratchpadView view = new DS18B20ScratchpadView().wrap(data);
+    Assert.assertEquals(view.getTempC(), (float) 20.0);
+
+    // the owner refills the buffer, nothing was copied
+    System.arraycopy(new DS18B20Scratchpad().setTempC((float) 21.5).getRawBytes(), 0, data, 0, 9);
+    Assert.assertEquals(view.getTempC(), (float) 21.5);
+  }
+
+  @Test
+  public void testHexOffset() {
+    byte[] hex = Convert.byteToHex(new DS18B20Scratchpad().setTempC((float) 30.25).getRawBytes());
+    byte[] rBuf = new byte[2 + hex.length];
+    rBuf[0] = 'B';
+    rBuf[1] = 'E';
+    System.arraycopy(hex, 0, rBuf, 2, hex.length);
+
+    DS18B20ScratchpadView view = new DS18B20ScratchpadView().wrapHex(rBuf, 2);
+    Assert.assertEquals(view.getTempC(), (float) 30.25);
+    Assert.assertTrue(view.checkValid());
+  }
+
+  @Test
+  public void testNotValid() {
+    byte[] data = new DS18B20Scratchpad().getRawBytes();
+    data[0] = (byte) ~data[0];
+    Assert.assertFalse(new DS18B20ScratchpadView().wrap(data).checkValid());
+
+    byte[] hex = Convert.byteToHex(new DS18B20Scratchpad().getRawBytes());
+    hex[3] = 'x';
+    Assert.assertFalse(new DS18B20ScratchpadView().wrapHex(hex, 0).checkValid());
+  }
+
+  @Test
+  public void testAllFFs() {
+    byte[] data = new byte[9];
+    Arrays.fill(data, (byte) 0xff);
+    Assert.assertTrue(new DS18B20ScratchpadView().wrap(data).checkAllFFs());
+
+    byte[] hex = new byte[18];
+    Arrays.fill(hex, (byte) 'F');
+    Assert.assertTrue(new DS18B20ScratchpadView().wrapHex(hex, 0).checkAllFFs());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testWrapWrongLength() {
+    new DS18B20ScratchpadView().wrap(new byte[8]);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testWrapHexShort() {
+    new DS18B20ScratchpadView().wrapHex(new byte[20], 3);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testNothingWrapped() {
+    new DS18B20ScratchpadView().getTempC();
+  }
+
+}
@@ -0,0 +1,580 @@
+package waterfall.onewire.busmasters.DS2482;
+
+import java.util.concurrent.Executor;
+import waterfall.onewire.Convert;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.DSAddressInterner;
+import waterfall.onewire.busmaster.BusCmdExecutor;
+import waterfall.onewire.busmaster.BusCmdScheduler;
+import waterfall.onewire.busmaster.BusMaster;
+import waterfall.onewire.busmaster.Command;
+import waterfall.onewire.busmaster.NotifySearchBusCmdHelper;
+import waterfall.onewire.busmaster.NotifySearchBusCmdResult;
+import waterfall.onewire.busmaster.RomSearch;
+import waterfall.onewire.busmaster.SearchPusherByBusCmd;
+import waterfall.onewire.busmaster.SearchResultBuilder;
+
+/**
+ * A BusMaster over a DS2482-100 I2C to 1-Wire bridge. Unlike the HA7S every byte crosses the I2C
+ * bus as a byte rather than as two hex chars over a 9600 baud serial line, and the ROM search runs
+ * here a triplet at a time through RomSearch, so a whole cmd is a few milliseconds.
+ *
+ * Overdrive, when turned on, is used for the cmds addressed to a single device, which must then
+ * support overdrive (the DS18B20 does not). Strong pullup, when turned on, holds the bus up after a
+ * ConvertT until the next cmd so parasite powered devices have the current to convert.
+ */
+public class DS2482 implements BusMaster {
+
+  public static final int MIN_ADDRESS = 0x18;
+  public static final int MAX_ADDRESS = 0x1B;
+
+  static final byte OVERDRIVE_MATCH_ROM = (byte) 0x69;
+
+  private final String name;
+  // Cleared by stopBus() with this held, read by the cmds without it.
+  private volatile DS2482Driver driver = null;
+  private NotifySearchBusCmdHelper searchHelper = null;
+  private NotifySearchBusCmdHelper searchByAlarmHelper = null;
+  private BusCmdExecutor asyncCmdExecutor = null;
+  private final BusCmdScheduler cmdScheduler = new BusCmdScheduler();
+  private volatile boolean overdrive = false;
+  private volatile boolean strongPullup = false;
+
+  // Only used with the cmdScheduler held.
+  private final byte[] selectRom = new byte[8];
+  private final RomSearch romSearch;
+  private final RomSearch romSearchByAlarm;
+  private final DSAddressInterner searchInterner = new DSAddressInterner();
+  private final SearchResultBuilder searchResultBuilder = new SearchResultBuilder(searchInterner);
+  private final SearchResultBuilder searchByAlarmResultBuilder =
+      new SearchResultBuilder(searchInterner);
+  private final SearchResultBuilder searchByFamilyResultBuilder =
+      new SearchResultBuilder(searchInterner);
+
+  /**
+   * @param transport the I2C bus the DS2482 is on.
+   * @param address the I2C address of the DS2482, set by its AD0 and AD1 pins.
+   * @throws IllegalArgumentException if there is no DS2482 at the address.
+   */
+  public DS2482(I2CTransport transport, int address) {
+    if (transport == null) {
+      throw new IllegalArgumentException("transport must be non-null");
+    }
+    if ((address < MIN_ADDRESS) || (address > MAX_ADDRESS)) {
+      throw new IllegalArgumentException("address must be 0x18 to 0x1B");
+    }
+    this.name = String.format("DS2482 0x%02X on %s", address, transport.getName());
+
+    DS2482Driver driver = new DS2482Driver(transport, address);
+    try {
+      driver.deviceReset();
+    } catch (BusFaultException e) {
+      throw new IllegalArgumentException("no DS2482 at address:" + e.getMessage());
+    }
+
+    romSearch = new RomSearch(driver, false);
+    romSearchByAlarm = new RomSearch(driver, true);
+    searchHelper = new NotifySearchBusCmdHelper(new SearchPusherByBusCmd(this, false), this);
+    searchByAlarmHelper = new NotifySearchBusCmdHelper(new SearchPusherByBusCmd(this, true), this);
+    asyncCmdExecutor = new BusCmdExecutor(name);
+    this.driver = driver;
+  }
+
+  @Override
+  public String getName() {
+    if (driver != null) {
+      return name;
+    } else {
+      // must have been stopped.
+      return "DS2482 STOPPED";
+    }
+  }
+
+  @Override
+  public long getCurrentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  @Override
+  public Executor getAsyncCmdExecutor() {
+    return asyncCmdExecutor;
+  }
+
+  /**
+   * The scheduler which orders the cmds waiting for this bus, and keeps the statistics on how long
+   * each class of cmd has waited.
+   */
+  public BusCmdScheduler getCmdScheduler() {
+    return cmdScheduler;
+  }
+
+  /**
+   * @param overdrive true to address single devices with Overdrive Match ROM and talk to them at
+   * overdrive speed.
+   */
+  public void setOverdrive(boolean overdrive) {
+    this.overdrive = overdrive;
+  }
+
+  public boolean isOverdrive() {
+    return overdrive;
+  }
+
+  /**
+   * @param strongPullup true to hold a strong pullup after ConvertT and ConvertTAll.
+   */
+  public void setStrongPullup(boolean strongPullup) {
+    this.strongPullup = strongPullup;
+  }
+
+  public boolean isStrongPullup() {
+    return strongPullup;
+  }
+
+  @Override
+  public waterfall.onewire.busmaster.SearchBusCmd querySearchBusCmd() {
+    return new DS2482.SearchBusCmd(false);
+  }
+
+  @Override
+  public waterfall.onewire.busmaster.SearchBusCmd querySearchBusByFamilyCmd(short familyCode) {
+    return new DS2482.SearchBusCmd(familyCode);
+  }
+
+  @Override
+  public waterfall.onewire.busmaster.SearchBusCmd querySearchBusByAlarmCmd() {
+    return new DS2482.SearchBusCmd(true);
+  }
+
+  @Override
+  public void scheduleNotifySearchBusCmd(NotifySearchBusCmdResult obj,
+      boolean typeByAlarm, long minPeriodMSec) {
+    if (driver == null) {
+      throw new IllegalArgumentException("SNSBCR_BusMasterNotStarted");
+    }
+    if (!typeByAlarm) {
+      searchHelper.scheduleSearchNotifyFor(obj, minPeriodMSec);
+    } else {
+      searchByAlarmHelper.scheduleSearchNotifyFor(obj, minPeriodMSec);
+    }
+  }
+
+  @Override
+  public void updateScheduledNotifySearchBusCmd(NotifySearchBusCmdResult obj, boolean typeByAlarm,
+      long minPeriodMSec) {
+    if (driver == null) {
+      throw new IllegalArgumentException("USNSBC_BusMasterNotStarted");
+    }
+    if (!typeByAlarm) {
+      searchHelper.updateScheduledSearchNotifyFor(obj, minPeriodMSec);
+    } else {
+      searchByAlarmHelper.updateScheduledSearchNotifyFor(obj, minPeriodMSec);
+    }
+  }
+
+  @Override
+  public void cancelScheduledNotifySearchBusCmd(NotifySearchBusCmdResult obj, boolean typeByAlarm) {
+    if (driver == null) {
+      throw new IllegalArgumentException("CSNSBC_BusMasterNotStarted");
+    }
+    if (!typeByAlarm) {
+      searchHelper.cancelScheduledSearchNotifyFor(obj);
+    } else {
+      searchByAlarmHelper.cancelScheduledSearchNotifyFor(obj);
+    }
+  }
+
+  @Override
+  public waterfall.onewire.busmaster.ReadPowerSupplyCmd queryReadPowerSupplyCmd(
+      DSAddress dsAddr) {
+    return new DS2482.ReadPowerSupplyCmd(dsAddr);
+  }
+
+  @Override
+  public waterfall.onewire.busmaster.ConvertTCmd queryConvertTCmd(DSAddress dsAddr) {
+    return new DS2482.ConvertTCmd(dsAddr);
+  }
+
+  @Override
+  public waterfall.onewire.busmaster.ConvertTAllCmd queryConvertTAllCmd() {
+    return new DS2482.ConvertTAllCmd();
+  }
+
+  @Override
+  public waterfall.onewire.busmaster.ReadScratchpadCmd queryReadScratchpadCmd(DSAddress dsAddr,
+      short requestByteCount) {
+    return new DS2482.ReadScratchpadCmd(dsAddr, requestByteCount);
+  }
+
+  @Override
+  public waterfall.onewire.busmaster.WriteScratchpadCmd queryWriteScratchpadCmd(DSAddress dsAddr,
+      byte[] writeData) {
+    return new DS2482.WriteScratchpadCmd(dsAddr, writeData);
+  }
+
+  /**
+   * We stop our usage of the DS2482, and cancel all pushes. The I2CTransport is left for whoever
+   * created it to close.
+   */
+  public synchronized void stopBus() {
+    // may already be stopped
+    if (driver != null) {
+      searchHelper.cancelAllScheduledSearchNotifyFor();
+      searchByAlarmHelper.cancelAllScheduledSearchNotifyFor();
+
+      // anything already queued will run and find the bus stopped
+      asyncCmdExecutor.shutdown();
+
+      driver = null;
+      searchHelper = null;
+      searchByAlarmHelper = null;
+    }
+  }
+
+  //
+  // Private
+  //
+
+  private DS2482Driver getStartedDriver() {
+    final DS2482Driver d = driver;
+    if (d == null) {
+      throw new BusFaultException("bus was stopped");
+    }
+    return d;
+  }
+
+  // Reset at standard speed, which also brings any device left in overdrive back, and address the
+  // device. With overdrive on the rest of the cmd runs at overdrive speed.
+  private void select(DS2482Driver d, DSAddress dsAddr) {
+    d.setOverdrive(false);
+    if (!d.reset()) {
+      throw new BusFaultException("no presence");
+    }
+    dsAddr.copyRawBytesTo(selectRom, 0);
+    if (overdrive) {
+      d.writeByte(OVERDRIVE_MATCH_ROM);
+      d.setOverdrive(true);
+    } else {
+      d.writeByte(Command.MATCH_ROM);
+    }
+    for (int i = 0; i < selectRom.length; i++) {
+      d.writeByte(selectRom[i]);
+    }
+  }
+
+  private void skipRom(DS2482Driver d) {
+    d.setOverdrive(false);
+    if (!d.reset()) {
+      throw new BusFaultException("no presence");
+    }
+    d.writeByte(Command.SKIP_ROM);
+  }
+
+  // The ConvertT byte, which with strong pullup is left holding up the bus until the next cmd.
+  private void convertT(DS2482Driver d) {
+    if (strongPullup) {
+      d.armStrongPullup();
+      d.writeByte(Command.CONVERT_T);
+    } else {
+      d.writeByte(Command.CONVERT_T);
+      d.reset();
+    }
+  }
+
+  //
+  // Exceptions
+  //
+  static class BusFaultException extends RuntimeException {
+
+    public BusFaultException(String message) {
+      super(message);
+    }
+  }
+
+  //
+  // Class Command implementations
+  //
+  private class ConvertTCmd extends waterfall.onewire.busmaster.ConvertTCmd {
+
+    private ConvertTCmd(DSAddress dsAddr) {
+      super(DS2482.this, dsAddr);
+    }
+
+    protected ConvertTCmd.Result execute_internal() {
+      return cmdScheduler.run(this);
+    }
+
+    @Override
+    protected ConvertTCmd.Result execute_scheduled() {
+      assert (result == Result.cmdBusy);
+      assert (resultWriteCTM == 0);
+
+      try {
+        final DS2482Driver d = getStartedDriver();
+
+        select(d, dsAddr);
+        // We are interested in tracking the time the device started the temperature calculation
+        final long writeCTM = getCurrentTimeMillis();
+        convertT(d);
+
+        setResultData(writeCTM);
+
+        return ConvertTCmd.Result.success;
+      } catch (BusFaultException e) {
+        return Result.busFault;
+      }
+    }
+
+    public void setResultData(long resultWriteCTM) {
+      assert (result == Result.cmdBusy);
+      this.resultWriteCTM = resultWriteCTM;
+    }
+
+  }
+
+  private class ConvertTAllCmd extends waterfall.onewire.busmaster.ConvertTAllCmd {
+
+    private ConvertTAllCmd() {
+      super(DS2482.this);
+    }
+
+    protected ConvertTAllCmd.Result execute_internal() {
+      return cmdScheduler.run(this);
+    }
+
+    @Override
+    protected ConvertTAllCmd.Result execute_scheduled() {
+      assert (result == Result.cmdBusy);
+      assert (resultWriteCTM == 0);
+
+      try {
+        final DS2482Driver d = getStartedDriver();
+
+        skipRom(d);
+        // We are interested in tracking the time the devices started the temperature calculation
+        final long writeCTM = getCurrentTimeMillis();
+        convertT(d);
+
+        setResultData(writeCTM);
+
+        return ConvertTAllCmd.Result.success;
+      } catch (BusFaultException e) {
+        return Result.busFault;
+      }
+    }
+
+    public void setResultData(long resultWriteCTM) {
+      assert (result == Result.cmdBusy);
+      this.resultWriteCTM = resultWriteCTM;
+    }
+
+  }
+
+  private class ReadPowerSupplyCmd extends waterfall.onewire.busmaster.ReadPowerSupplyCmd {
+
+    public ReadPowerSupplyCmd(DSAddress dsAddr) {
+      super(DS2482.this, dsAddr);
+    }
+
+    @Override
+    protected ReadPowerSupplyCmd.Result execute_internal() {
+      return cmdScheduler.run(this);
+    }
+
+    @Override
+    protected ReadPowerSupplyCmd.Result execute_scheduled() {
+      assert (result == Result.cmdBusy);
+      assert (resultWriteCTM == 0);
+
+      try {
+        final DS2482Driver d = getStartedDriver();
+
+        select(d, dsAddr);
+        d.writeByte(Command.READ_POWER_SUPPLY);
+        final long writeCTM = getCurrentTimeMillis();
+        // parasitic powered devices will pull the bus low
+        final boolean isParasitic = !d.readBit();
+        d.reset();
+
+        setResultData(writeCTM, isParasitic);
+
+        return Result.success;
+      } catch (BusFaultException e) {
+        return Result.busFault;
+      }
+    }
+
+    @Override
+    public void setResultData(long resultWriteCTM, boolean isParasitic) {
+      assert (result == Result.cmdBusy);
+      this.resultWriteCTM = resultWriteCTM;
+      this.resultIsParasitic = isParasitic;
+    }
+
+  }
+
+  private class ReadScratchpadCmd extends waterfall.onewire.busmaster.ReadScratchpadCmd {
+
+    // Handed out as the result and refilled by every execute.
+    private final byte[] reusedResultData;
+    private final byte[] reusedResultHexData;
+
+    public ReadScratchpadCmd(DSAddress dsAddr, short requestByteCount) {
+      super(DS2482.this, dsAddr, requestByteCount);
+      reusedResultData = new byte[requestByteCount];
+      reusedResultHexData = new byte[requestByteCount * 2];
+    }
+
+    protected ReadScratchpadCmd.Result execute_internal() {
+      return cmdScheduler.run(this);
+    }
+
+    @Override
+    protected ReadScratchpadCmd.Result execute_scheduled() {
+      assert (result == Result.cmdBusy);
+      assert (resultData == null);
+      assert (resultWriteCTM == 0);
+
+      try {
+        final DS2482Driver d = getStartedDriver();
+
+        select(d, dsAddr);
+        d.writeByte(Command.READ_SCRATCHPAD);
+        final long writeCTM = getCurrentTimeMillis();
+        for (int i = 0; i < requestByteCount; i++) {
+          final int b = d.readByte();
+          reusedResultData[i] = (byte) b;
+          reusedResultHexData[(i * 2)] = Convert.fourBitsToHex(b >> 4);
+          reusedResultHexData[(i * 2) + 1] = Convert.fourBitsToHex(b & 0xf);
+        }
+
+        setResultData(writeCTM, reusedResultData, reusedResultHexData);
+        return Result.success;
+
+      } catch (BusFaultException e) {
+        return Result.busFault;
+      }
+    }
+
+    public void setResultData(long resultWriteCTM, byte[] resultData, byte[] resultHexData) {
+      assert (result == Result.cmdBusy);
+      this.resultWriteCTM = resultWriteCTM;
+      this.resultData = resultData;
+      this.resultHexData = resultHexData;
+    }
+
+  }
+
+  private class WriteScratchpadCmd extends waterfall.onewire.busmaster.WriteScratchpadCmd {
+
+    public WriteScratchpadCmd(DSAddress dsAddr, byte[] writeData) {
+      super(DS2482.this, dsAddr, writeData);
+    }
+
+    protected WriteScratchpadCmd.Result execute_internal() {
+      return cmdScheduler.run(this);
+    }
+
+    @Override
+    protected WriteScratchpadCmd.Result execute_scheduled() {
+      assert (result == Result.cmdBusy);
+      assert (resultWriteCTM == 0);
+
+      try {
+        final DS2482Driver d = getStartedDriver();
+
+        select(d, dsAddr);
+        d.writeByte(Command.WRITE_SCRATCHPAD);
+        final long writeCTM = getCurrentTimeMillis();
+        for (int i = 0; i < writeData.length; i++) {
+          d.writeByte(writeData[i]);
+        }
+
+        setResultData(writeCTM);
+        return Result.success;
+
+      } catch (BusFaultException e) {
+        return Result.busFault;
+      }
+    }
+
+    public void setResultData(long resultWriteCTM) {
+      assert (result == Result.cmdBusy);
+      this.resultWriteCTM = resultWriteCTM;
+    }
+
+  }
+
+  private class SearchBusCmd extends waterfall.onewire.busmaster.SearchBusCmd {
+
+    // All (so !Alarm)
+    public SearchBusCmd() {
+      super(DS2482.this, false);
+    }
+
+    // By familyCode
+    public SearchBusCmd(short familyCode) {
+      super(DS2482.this, familyCode);
+    }
+
+    // By Alarm
+    public SearchBusCmd(boolean byAlarm) {
+      super(DS2482.this, byAlarm);
+    }
+
+    protected Result execute_internal() {
+      return cmdScheduler.run(this);
+    }
+
+    @Override
+    protected Result execute_scheduled() {
+      assert (result == Result.busy);
+      assert (resultData == null);
+
+      final DS2482Driver d = getStartedDriver();
+      // searches always run at standard speed
+      d.setOverdrive(false);
+
+      RomSearch search = null;
+      SearchResultBuilder builder = null;
+
+      if (isByFamilyCode()) {
+        search = romSearch.targetFamily(familyCode);
+        builder = searchByFamilyResultBuilder;
+      } else if (isByAlarm()) {
+        search = romSearchByAlarm.restart();
+        builder = searchByAlarmResultBuilder;
+      } else {
+        search = romSearch.restart();
+        builder = searchResultBuilder;
+      }
+
+      builder.begin();
+      final long writeCTM = getCurrentTimeMillis();
+
+      DSAddress dsAddress;
+      while ((dsAddress = search.next()) != null) {
+        builder.add(dsAddress);
+      }
+
+      ResultData _resultData = builder.build(writeCTM);
+
+      if (isByAlarm()) {
+        searchByAlarmHelper.notifySearchResult(_resultData);
+      } else if (!isByFamilyCode()) {
+        searchHelper.notifySearchResult(_resultData);
+      }
+
+      setResultData(_resultData);
+
+      return Result.success;
+    }
+
+    public void setResultData(ResultData resultData) {
+      assert (result == SearchBusCmd.Result.busy);
+      this.resultData = resultData;
+    }
+
+  }
+
+}
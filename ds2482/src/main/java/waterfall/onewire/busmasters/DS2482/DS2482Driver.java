@@ -0,0 +1,183 @@
+package waterfall.onewire.busmasters.DS2482;
+
+import waterfall.onewire.busmaster.BitBus;
+import waterfall.onewire.busmasters.DS2482.DS2482.BusFaultException;
+
+/**
+ * The DS2482-100 function commands (see docs/DS2482-100.pdf) over an I2CTransport. Each 1-Wire
+ * operation is one I2C write of the command followed by reads of the status register until the
+ * 1-Wire busy bit clears, which at 100kHz I2C means the status is usually ready by the first read.
+ *
+ * The whole byte and triplet commands of the DS2482 are used rather than the BitBus defaults, so a
+ * ROM search bit is one I2C transaction instead of three.
+ *
+ * Not thread safe, the DS2482 only uses it with the cmdScheduler held.
+ */
+class DS2482Driver implements BitBus {
+
+  // Function commands
+  static final byte DEVICE_RESET = (byte) 0xF0;
+  static final byte SET_READ_POINTER = (byte) 0xE1;
+  static final byte WRITE_CONFIGURATION = (byte) 0xD2;
+  static final byte ONE_WIRE_RESET = (byte) 0xB4;
+  static final byte ONE_WIRE_SINGLE_BIT = (byte) 0x87;
+  static final byte ONE_WIRE_WRITE_BYTE = (byte) 0xA5;
+  static final byte ONE_WIRE_READ_BYTE = (byte) 0x96;
+  static final byte ONE_WIRE_TRIPLET = (byte) 0x78;
+
+  // Read pointer codes
+  static final byte STATUS_REGISTER = (byte) 0xF0;
+  static final byte READ_DATA_REGISTER = (byte) 0xE1;
+  static final byte CONFIGURATION_REGISTER = (byte) 0xC3;
+
+  // Status register bits
+  static final int STATUS_1WB = 0x01;
+  static final int STATUS_PPD = 0x02;
+  static final int STATUS_SD = 0x04;
+  static final int STATUS_LL = 0x08;
+  static final int STATUS_RST = 0x10;
+  static final int STATUS_SBR = 0x20;
+  static final int STATUS_TSB = 0x40;
+  static final int STATUS_DIR = 0x80;
+
+  // Configuration register bits
+  static final int CONFIG_APU = 0x01;
+  static final int CONFIG_SPU = 0x04;
+  static final int CONFIG_1WS = 0x08;
+
+  // A 1-Wire reset at standard speed is the longest operation at about 1.2ms, and each status read
+  // takes about 0.2ms at 100kHz.
+  static final int MAX_BUSY_POLLS = 32;
+
+  private final I2CTransport transport;
+  private final int address;
+  private final byte[] wBuf = new byte[2];
+  private final byte[] rBuf = new byte[1];
+  private int config = 0;
+
+  DS2482Driver(I2CTransport transport, int address) {
+    this.transport = transport;
+    this.address = address;
+  }
+
+  /**
+   * Reset the DS2482 itself, which also returns the configuration to its defaults, and then set the
+   * active pullup which any bus longer than a few meters needs.
+   */
+  void deviceReset() {
+    wBuf[0] = DEVICE_RESET;
+    transfer(1, 1);
+    if ((rBuf[0] & STATUS_RST) == 0) {
+      throw new BusFaultException("DS2482 did not reset");
+    }
+    config = 0;
+    writeConfig(CONFIG_APU);
+  }
+
+  boolean isOverdrive() {
+    return ((config & CONFIG_1WS) != 0);
+  }
+
+  /**
+   * Switch the speed of the 1-Wire time slots. A reset at standard speed returns every device on
+   * the bus to standard speed.
+   */
+  void setOverdrive(boolean overdrive) {
+    if (overdrive != isOverdrive()) {
+      writeConfig(overdrive ? (config | CONFIG_1WS) : (config & ~CONFIG_1WS));
+    }
+  }
+
+  /**
+   * Have the DS2482 hold the bus at a strong pullup after the next byte or bit, until the next
+   * 1-Wire command. This is how parasite powered devices are given the current for a conversion.
+   */
+  void armStrongPullup() {
+    writeConfig(config | CONFIG_SPU);
+    // the DS2482 clears SPU itself once the strong pullup ends
+    config &= ~CONFIG_SPU;
+  }
+
+  @Override
+  public boolean reset() {
+    wBuf[0] = ONE_WIRE_RESET;
+    final int status = command(1);
+    if ((status & STATUS_SD) != 0) {
+      throw new BusFaultException("1-Wire short");
+    }
+    return ((status & STATUS_PPD) != 0);
+  }
+
+  @Override
+  public void writeBit(boolean bit) {
+    touchBit(bit);
+  }
+
+  @Override
+  public boolean readBit() {
+    return touchBit(true);
+  }
+
+  @Override
+  public void writeByte(int b) {
+    wBuf[0] = ONE_WIRE_WRITE_BYTE;
+    wBuf[1] = (byte) b;
+    command(2);
+  }
+
+  int readByte() {
+    wBuf[0] = ONE_WIRE_READ_BYTE;
+    command(1);
+    wBuf[0] = SET_READ_POINTER;
+    wBuf[1] = READ_DATA_REGISTER;
+    transfer(2, 1);
+    return (rBuf[0] & 0xff);
+  }
+
+  @Override
+  public int triplet(boolean direction) {
+    wBuf[0] = ONE_WIRE_TRIPLET;
+    wBuf[1] = (byte) (direction ? 0x80 : 0x00);
+    final int status = command(2);
+    return (((status & STATUS_SBR) != 0) ? TRIPLET_ID_BIT : 0) |
+        (((status & STATUS_TSB) != 0) ? TRIPLET_CMP_ID_BIT : 0) |
+        (((status & STATUS_DIR) != 0) ? TRIPLET_DIRECTION : 0);
+  }
+
+  private boolean touchBit(boolean bit) {
+    wBuf[0] = ONE_WIRE_SINGLE_BIT;
+    wBuf[1] = (byte) (bit ? 0x80 : 0x00);
+    return ((command(2) & STATUS_SBR) != 0);
+  }
+
+  private void writeConfig(int newConfig) {
+    wBuf[0] = WRITE_CONFIGURATION;
+    wBuf[1] = (byte) (((~newConfig & 0xf) << 4) | (newConfig & 0xf));
+    // the read pointer is left on the configuration register, which reads back the low nibble
+    transfer(2, 1);
+    if ((rBuf[0] & 0xff) != (newConfig & 0xf)) {
+      throw new BusFaultException("configuration not written");
+    }
+    config = (newConfig & 0xf);
+  }
+
+  // Write a 1-Wire command and poll the status register, where the read pointer is left, until the
+  // 1-Wire busy bit clears.
+  private int command(int wLength) {
+    transfer(wLength, 1);
+    for (int i = 0; i < MAX_BUSY_POLLS; i++) {
+      if ((rBuf[0] & STATUS_1WB) == 0) {
+        return (rBuf[0] & 0xff);
+      }
+      transfer(0, 1);
+    }
+    throw new BusFaultException("1-Wire busy");
+  }
+
+  private void transfer(int wLength, int rLength) {
+    if (!transport.writeRead(address, wBuf, wLength, rBuf, rLength)) {
+      throw new BusFaultException("I2C no ack");
+    }
+  }
+
+}
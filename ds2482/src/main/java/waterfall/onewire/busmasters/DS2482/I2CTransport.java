@@ -0,0 +1,27 @@
+package waterfall.onewire.busmasters.DS2482;
+
+/**
+ * The I2C bus the DS2482 hangs off of, such as a Linux i2c-dev adapter. The DS2482 only needs
+ * plain writes and reads, one transaction per call.
+ */
+public interface I2CTransport {
+
+  /**
+   * Some human readable description of the I2C bus we are talking through.
+   */
+  public String getName();
+
+  /**
+   * Write to the device at address and then, if rLength is not zero, read from it with a repeated
+   * start.
+   *
+   * @param address 7 bit I2C address
+   * @param wBuf bytes to write, may be null if wLength is 0
+   * @param wLength number of bytes to write
+   * @param rBuf to place the bytes read into, may be null if rLength is 0
+   * @param rLength number of bytes to read
+   * @return false if the device did not acknowledge or the transfer otherwise failed.
+   */
+  public boolean writeRead(int address, byte[] wBuf, int wLength, byte[] rBuf, int rLength);
+
+}
@@ -0,0 +1,370 @@
+package waterfall.onewire.busmasters.DS2482;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmaster.Command;
+
+/**
+ * A stand in for a DS2482-100 and the 1-Wire bus hanging off of it, good enough to run the DS2482
+ * BusMaster against without any hardware. The registers, read pointer and configuration complement
+ * check follow the datasheet, and the bus is modeled a byte at a time at the ROM layer with the
+ * function layer handed to each SimDevice.
+ */
+class DS2482Sim implements I2CTransport {
+
+  /**
+   * A device on the simulated 1-Wire bus, which only sees the bytes after its ROM layer has
+   * selected it.
+   */
+  interface SimDevice {
+
+    DSAddress getDSAddress();
+
+    boolean hasAlarm();
+
+    boolean supportsOverdrive();
+
+    /**
+     * A 1-Wire reset, after which the next byte written is a function command.
+     */
+    void reset();
+
+    void writeByte(int b);
+
+    /**
+     * A read time slot, false to hold the bus low.
+     */
+    boolean readBit();
+  }
+
+  private enum BusState {idle, romCommand, matchRom, search, function}
+
+  private final int address;
+  private final List<SimDevice> devices = new ArrayList<>();
+
+  // Knobs for the tests
+  boolean ack = true;
+  boolean shorted = false;
+  // status reads which see 1WB set after each 1-Wire command
+  int busyPolls = 1;
+
+  // What the tests check
+  int transferCount = 0;
+  int strongPullupCount = 0;
+  int overdriveMatchCount = 0;
+  int resetCount = 0;
+
+  // DS2482 registers
+  private int status = DS2482Driver.STATUS_RST;
+  private int readData = 0;
+  private int config = 0;
+  private byte pointer = DS2482Driver.STATUS_REGISTER;
+  private int busyLeft = 0;
+
+  // 1-Wire bus
+  private BusState busState = BusState.idle;
+  private final Set<SimDevice> inOverdrive = new HashSet<>();
+  private final List<SimDevice> selected = new ArrayList<>();
+  private final byte[] matchBytes = new byte[8];
+  private int matchCount;
+  private int searchBit;
+
+  DS2482Sim(int address) {
+    this.address = address;
+  }
+
+  DS2482Sim add(SimDevice device) {
+    devices.add(device);
+    return this;
+  }
+
+  void remove(SimDevice device) {
+    devices.remove(device);
+  }
+
+  int getConfig() {
+    return config;
+  }
+
+  @Override
+  public String getName() {
+    return "DS2482Sim";
+  }
+
+  @Override
+  public synchronized boolean writeRead(int address, byte[] wBuf, int wLength, byte[] rBuf,
+      int rLength) {
+    if ((address != this.address) || !ack) {
+      return false;
+    }
+    transferCount++;
+
+    if (wLength > 0) {
+      if (!functionCommand(wBuf, wLength)) {
+        return false;
+      }
+    }
+
+    for (int i = 0; i < rLength; i++) {
+      rBuf[i] = (byte) readRegister();
+    }
+    return true;
+  }
+
+  private boolean functionCommand(byte[] wBuf, int wLength) {
+    final byte arg = ((wLength > 1) ? wBuf[1] : 0);
+
+    switch (wBuf[0]) {
+      case DS2482Driver.DEVICE_RESET:
+        status = DS2482Driver.STATUS_RST;
+        config = 0;
+        pointer = DS2482Driver.STATUS_REGISTER;
+        return true;
+
+      case DS2482Driver.SET_READ_POINTER:
+        if ((arg != DS2482Driver.STATUS_REGISTER) && (arg != DS2482Driver.READ_DATA_REGISTER) &&
+            (arg != DS2482Driver.CONFIGURATION_REGISTER)) {
+          return false;
+        }
+        pointer = arg;
+        return true;
+
+      case DS2482Driver.WRITE_CONFIGURATION:
+        if ((((~arg >> 4) ^ arg) & 0xf) != 0) {
+          // the upper nibble must be the complement of the lower, otherwise it is ignored
+          pointer = DS2482Driver.CONFIGURATION_REGISTER;
+          return true;
+        }
+        config = (arg & 0xf);
+        status &= ~DS2482Driver.STATUS_RST;
+        pointer = DS2482Driver.CONFIGURATION_REGISTER;
+        return true;
+
+      case DS2482Driver.ONE_WIRE_RESET:
+        oneWireReset();
+        break;
+
+      case DS2482Driver.ONE_WIRE_SINGLE_BIT:
+        setStatusBit(DS2482Driver.STATUS_SBR, touchBit((arg & 0x80) != 0));
+        endStrongPullup();
+        break;
+
+      case DS2482Driver.ONE_WIRE_WRITE_BYTE:
+        writeByte(arg & 0xff);
+        endStrongPullup();
+        break;
+
+      case DS2482Driver.ONE_WIRE_READ_BYTE:
+        readData = readByte();
+        break;
+
+      case DS2482Driver.ONE_WIRE_TRIPLET:
+        triplet((arg & 0x80) != 0);
+        break;
+
+      default:
+        return false;
+    }
+
+    // all of the 1-Wire commands leave the pointer on the status register, busy for a while
+    pointer = DS2482Driver.STATUS_REGISTER;
+    busyLeft = busyPolls;
+    return true;
+  }
+
+  private int readRegister() {
+    switch (pointer) {
+      case DS2482Driver.STATUS_REGISTER:
+        if (busyLeft > 0) {
+          busyLeft--;
+          return (status | DS2482Driver.STATUS_1WB);
+        }
+        return status;
+      case DS2482Driver.READ_DATA_REGISTER:
+        return readData;
+      default:
+        return config;
+    }
+  }
+
+  private void setStatusBit(int bit, boolean value) {
+    if (value) {
+      status |= bit;
+    } else {
+      status &= ~bit;
+    }
+  }
+
+  private boolean isOverdriveSpeed() {
+    return ((config & DS2482Driver.CONFIG_1WS) != 0);
+  }
+
+  private void endStrongPullup() {
+    if ((config & DS2482Driver.CONFIG_SPU) != 0) {
+      strongPullupCount++;
+      config &= ~DS2482Driver.CONFIG_SPU;
+    }
+  }
+
+  // A device only hears time slots at the speed it is at.
+  private boolean hears(SimDevice device) {
+    return (inOverdrive.contains(device) == isOverdriveSpeed());
+  }
+
+  //
+  // The 1-Wire bus
+  //
+
+  private void oneWireReset() {
+    resetCount++;
+    status &= ~(DS2482Driver.STATUS_RST | DS2482Driver.STATUS_SBR | DS2482Driver.STATUS_TSB |
+        DS2482Driver.STATUS_DIR | DS2482Driver.STATUS_PPD | DS2482Driver.STATUS_SD);
+    if (shorted) {
+      status |= DS2482Driver.STATUS_SD;
+      busState = BusState.idle;
+      return;
+    }
+    if (!isOverdriveSpeed()) {
+      // a standard speed reset brings everyone back to standard speed
+      inOverdrive.clear();
+    }
+
+    selected.clear();
+    boolean presence = false;
+    for (SimDevice device : devices) {
+      if (hears(device)) {
+        device.reset();
+        presence = true;
+      }
+    }
+    setStatusBit(DS2482Driver.STATUS_PPD, presence);
+    busState = (presence ? BusState.romCommand : BusState.idle);
+  }
+
+  private void writeByte(int b) {
+    switch (busState) {
+      case romCommand:
+        romCommand((byte) b);
+        break;
+
+      case matchRom:
+        matchBytes[matchCount++] = (byte) b;
+        if (matchCount == matchBytes.length) {
+          long match = 0;
+          for (int i = 0; i < matchBytes.length; i++) {
+            match |= ((long) (matchBytes[i] & 0xff)) << (8 * i);
+          }
+          for (SimDevice device : devices) {
+            if (hears(device) && (device.getDSAddress().toLong() == match)) {
+              selected.add(device);
+            }
+          }
+          busState = BusState.function;
+        }
+        break;
+
+      case function:
+        for (SimDevice device : selected) {
+          if (hears(device)) {
+            device.writeByte(b);
+          }
+        }
+        break;
+
+      default:
+        // nobody is listening
+        break;
+    }
+  }
+
+  private void romCommand(byte command) {
+    switch (command) {
+      case Command.MATCH_ROM:
+      case DS2482.OVERDRIVE_MATCH_ROM:
+        if (command == DS2482.OVERDRIVE_MATCH_ROM) {
+          // every device which can goes to overdrive speed to hear the ROM code
+          overdriveMatchCount++;
+          for (SimDevice device : devices) {
+            if (device.supportsOverdrive()) {
+              inOverdrive.add(device);
+            }
+          }
+        }
+        matchCount = 0;
+        busState = BusState.matchRom;
+        break;
+
+      case Command.SKIP_ROM:
+        for (SimDevice device : devices) {
+          if (hears(device)) {
+            selected.add(device);
+          }
+        }
+        busState = BusState.function;
+        break;
+
+      case Command.SEARCH_ROM:
+      case Command.ALARM_SEARCH:
+        for (SimDevice device : devices) {
+          if (hears(device) && ((command == Command.SEARCH_ROM) || device.hasAlarm())) {
+            selected.add(device);
+          }
+        }
+        searchBit = 0;
+        busState = BusState.search;
+        break;
+
+      default:
+        busState = BusState.idle;
+        break;
+    }
+  }
+
+  private int readByte() {
+    int b = 0;
+    for (int i = 0; i < 8; i++) {
+      if (touchBit(true)) {
+        b |= (1 << i);
+      }
+    }
+    return b;
+  }
+
+  // A read slot is a write of 1, which any device can hold low.
+  private boolean touchBit(boolean bit) {
+    if (!bit || (busState != BusState.function)) {
+      return bit;
+    }
+    boolean line = true;
+    for (SimDevice device : selected) {
+      if (hears(device)) {
+        line &= device.readBit();
+      }
+    }
+    return line;
+  }
+
+  private void triplet(boolean direction) {
+    boolean idBit = true;
+    boolean cmpIdBit = true;
+    if (busState == BusState.search) {
+      for (SimDevice device : selected) {
+        final boolean bit = (((device.getDSAddress().toLong() >>> searchBit) & 0x1) != 0);
+        idBit &= bit;
+        cmpIdBit &= !bit;
+      }
+    }
+    final boolean taken = ((idBit == cmpIdBit) ? (idBit || direction) : idBit);
+    if (busState == BusState.search) {
+      final int index = searchBit++;
+      selected.removeIf(d -> (((d.getDSAddress().toLong() >>> index) & 0x1) != 0) != taken);
+    }
+    setStatusBit(DS2482Driver.STATUS_SBR, idBit);
+    setStatusBit(DS2482Driver.STATUS_TSB, cmpIdBit);
+    setStatusBit(DS2482Driver.STATUS_DIR, taken);
+  }
+
+}
@@ -0,0 +1,284 @@
+package waterfall.onewire.busmasters.DS2482;
+
+import java.util.Arrays;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import waterfall.onewire.Convert;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmaster.ConvertTAllCmd;
+import waterfall.onewire.busmaster.ConvertTCmd;
+import waterfall.onewire.busmaster.ReadPowerSupplyCmd;
+import waterfall.onewire.busmaster.ReadScratchpadCmd;
+import waterfall.onewire.busmaster.SearchBusCmd;
+import waterfall.onewire.busmaster.WriteScratchpadCmd;
+import waterfall.onewire.device.DS18B20Scratchpad;
+
+public class DS2482Tests {
+
+  private static final int ADDRESS = 0x18;
+
+  private DS2482Sim sim;
+  private SimDS18B20 a;
+  private SimDS18B20 b;
+  private SimDS18B20 c;
+  private SimDS18B20 other;
+
+  private DS2482 create() {
+    sim = new DS2482Sim(ADDRESS);
+    a = new SimDS18B20(DSAddress._EE0000065BC0AE28);
+    b = new SimDS18B20(DSAddress._090000065BD53528);
+    c = new SimDS18B20(DSAddress._5F0000065CCD1A28);
+    other = new SimDS18B20(DSAddress._30000000C369CC12);
+    sim.add(a).add(b).add(c).add(other);
+    return new DS2482(sim, ADDRESS);
+  }
+
+  @DataProvider
+  public Object[][] badAddressCases() {
+    return new Object[][]{{0x17}, {0x1C}, {0}, {-1}};
+  }
+
+  @Test(dataProvider = "badAddressCases", expectedExceptions = IllegalArgumentException.class)
+  public void testBadAddress(int address) {
+    new DS2482(new DS2482Sim(address), address);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNullTransport() {
+    new DS2482(null, ADDRESS);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNotThere() {
+    new DS2482(new DS2482Sim(ADDRESS), ADDRESS + 1);
+  }
+
+  @Test
+  public void testName() {
+    DS2482 ds2482 = create();
+    Assert.assertEquals(ds2482.getName(), "DS2482 0x18 on DS2482Sim");
+    ds2482.stopBus();
+    Assert.assertEquals(ds2482.getName(), "DS2482 STOPPED");
+    // twice is fine
+    ds2482.stopBus();
+  }
+
+  @Test
+  public void testSearch() {
+    DS2482 ds2482 = create();
+
+    SearchBusCmd cmd = ds2482.querySearchBusCmd();
+    Assert.assertEquals(cmd.execute(), SearchBusCmd.Result.success);
+    List<DSAddress> list = cmd.getResultData().getList();
+    Assert.assertEquals(list.size(), 4);
+    Assert.assertTrue(list.containsAll(Arrays.asList(a.getDSAddress(), b.getDSAddress(),
+        c.getDSAddress(), other.getDSAddress())));
+
+    // unchanged, so the same list
+    Assert.assertEquals(cmd.execute(), SearchBusCmd.Result.success);
+    Assert.assertSame(cmd.getResultData().getList(), list);
+
+    sim.remove(b);
+    Assert.assertEquals(cmd.execute(), SearchBusCmd.Result.success);
+    Assert.assertEquals(cmd.getResultData().getList().size(), 3);
+    Assert.assertFalse(cmd.getResultData().getList().contains(b.getDSAddress()));
+  }
+
+  @Test
+  public void testSearchByAlarm() {
+    DS2482 ds2482 = create();
+
+    SearchBusCmd cmd = ds2482.querySearchBusByAlarmCmd();
+    Assert.assertEquals(cmd.execute(), SearchBusCmd.Result.success);
+    Assert.assertEquals(cmd.getResultData().getList().size(), 0);
+
+    c.alarm = true;
+    Assert.assertEquals(cmd.execute(), SearchBusCmd.Result.success);
+    Assert.assertEquals(cmd.getResultData().getList(), Arrays.asList(c.getDSAddress()));
+  }
+
+  @Test
+  public void testSearchByFamily() {
+    DS2482 ds2482 = create();
+
+    SearchBusCmd cmd = ds2482.querySearchBusByFamilyCmd((short) 0x12);
+    Assert.assertEquals(cmd.execute(), SearchBusCmd.Result.success);
+    Assert.assertEquals(cmd.getResultData().getList(), Arrays.asList(other.getDSAddress()));
+
+    cmd = ds2482.querySearchBusByFamilyCmd((short) 0x28);
+    Assert.assertEquals(cmd.execute(), SearchBusCmd.Result.success);
+    Assert.assertEquals(cmd.getResultData().getList().size(), 3);
+
+    cmd = ds2482.querySearchBusByFamilyCmd((short) 0x10);
+    Assert.assertEquals(cmd.execute(), SearchBusCmd.Result.success);
+    Assert.assertEquals(cmd.getResultData().getList().size(), 0);
+  }
+
+  @Test
+  public void testSearchStopped() {
+    DS2482 ds2482 = create();
+    SearchBusCmd cmd = ds2482.querySearchBusCmd();
+    ds2482.stopBus();
+    Assert.assertEquals(cmd.execute(), SearchBusCmd.Result.communication_error);
+  }
+
+  @Test
+  public void testConvertT() {
+    DS2482 ds2482 = create();
+
+    ConvertTCmd cmd = ds2482.queryConvertTCmd(b.getDSAddress());
+    Assert.assertEquals(cmd.execute(), ConvertTCmd.Result.success);
+    Assert.assertTrue(cmd.getResultWriteCTM() > 0);
+    Assert.assertEquals(a.convertTCount, 0);
+    Assert.assertEquals(b.convertTCount, 1);
+    Assert.assertEquals(sim.strongPullupCount, 0);
+
+    ds2482.stopBus();
+    Assert.assertEquals(cmd.execute(), ConvertTCmd.Result.busFault);
+  }
+
+  @Test
+  public void testConvertTAll() {
+    DS2482 ds2482 = create();
+
+    ConvertTAllCmd cmd = ds2482.queryConvertTAllCmd();
+    Assert.assertEquals(cmd.execute(), ConvertTAllCmd.Result.success);
+    Assert.assertEquals(a.convertTCount, 1);
+    Assert.assertEquals(b.convertTCount, 1);
+    Assert.assertEquals(c.convertTCount, 1);
+    Assert.assertEquals(other.convertTCount, 1);
+  }
+
+  @Test
+  public void testStrongPullup() {
+    DS2482 ds2482 = create();
+    ds2482.setStrongPullup(true);
+    Assert.assertTrue(ds2482.isStrongPullup());
+
+    Assert.assertEquals(ds2482.queryConvertTCmd(a.getDSAddress()).execute(),
+        ConvertTCmd.Result.success);
+    Assert.assertEquals(a.convertTCount, 1);
+    Assert.assertEquals(sim.strongPullupCount, 1);
+
+    Assert.assertEquals(ds2482.queryConvertTAllCmd().execute(), ConvertTAllCmd.Result.success);
+    Assert.assertEquals(a.convertTCount, 2);
+    Assert.assertEquals(sim.strongPullupCount, 2);
+
+    // the pullup is not left armed for the next cmd
+    Assert.assertEquals(sim.getConfig() & DS2482Driver.CONFIG_SPU, 0);
+  }
+
+  @Test
+  public void testReadPowerSupply() {
+    DS2482 ds2482 = create();
+    b.parasitic = true;
+
+    ReadPowerSupplyCmd cmd = ds2482.queryReadPowerSupplyCmd(a.getDSAddress());
+    Assert.assertEquals(cmd.execute(), ReadPowerSupplyCmd.Result.success);
+    Assert.assertFalse(cmd.getResultIsParasitic());
+
+    cmd = ds2482.queryReadPowerSupplyCmd(b.getDSAddress());
+    Assert.assertEquals(cmd.execute(), ReadPowerSupplyCmd.Result.success);
+    Assert.assertTrue(cmd.getResultIsParasitic());
+  }
+
+  @Test
+  public void testReadScratchpad() {
+    DS2482 ds2482 = create();
+    c.scratchpad.setTempC(21.5f);
+
+    ReadScratchpadCmd cmd = ds2482.queryReadScratchpadCmd(c.getDSAddress(), (short) 9);
+    Assert.assertEquals(cmd.execute(), ReadScratchpadCmd.Result.success);
+    Assert.assertEquals(cmd.getResultData(), c.scratchpad.getRawBytes());
+    Assert.assertEquals(cmd.getResultHexData(), Convert.byteToHex(c.scratchpad.getRawBytes()));
+    Assert.assertEquals(new DS18B20Scratchpad(cmd.getResultData()).getTempC(), 21.5f);
+
+    // nobody there reads back as all FFs
+    cmd = ds2482.queryReadScratchpadCmd(DSAddress.fromUncheckedHex(DSAddress._ED0000063BC00428),
+        (short) 9);
+    Assert.assertEquals(cmd.execute(), ReadScratchpadCmd.Result.success);
+    Assert.assertTrue(new DS18B20Scratchpad(cmd.getResultData()).checkAllFFs());
+  }
+
+  @Test
+  public void testWriteScratchpad() {
+    DS2482 ds2482 = create();
+
+    DS18B20Scratchpad written = new DS18B20Scratchpad()
+        .setTempHAlarm((byte) 30).setTempLAlarm((byte) 10)
+        .setResolution(DS18B20Scratchpad.RESOLUTION_10);
+    WriteScratchpadCmd cmd = ds2482
+        .queryWriteScratchpadCmd(a.getDSAddress(), written.getWriteScratchpadBytes());
+    Assert.assertEquals(cmd.execute(), WriteScratchpadCmd.Result.success);
+    Assert.assertEquals(a.scratchpad.getTempHAlarm(), 30);
+    Assert.assertEquals(a.scratchpad.getTempLAlarm(), 10);
+    Assert.assertEquals(a.scratchpad.getResolution(), DS18B20Scratchpad.RESOLUTION_10);
+    Assert.assertTrue(a.scratchpad.checkValid());
+    Assert.assertEquals(b.scratchpad.getResolution(), DS18B20Scratchpad.DEFAULT_RESOLUTION);
+  }
+
+  @Test
+  public void testOverdrive() {
+    DS2482 ds2482 = create();
+    a.overdrive = true;
+    a.scratchpad.setTempC(-5.0f);
+    ds2482.setOverdrive(true);
+    Assert.assertTrue(ds2482.isOverdrive());
+
+    ReadScratchpadCmd cmd = ds2482.queryReadScratchpadCmd(a.getDSAddress(), (short) 9);
+    Assert.assertEquals(cmd.execute(), ReadScratchpadCmd.Result.success);
+    Assert.assertEquals(new DS18B20Scratchpad(cmd.getResultData()).getTempC(), -5.0f);
+    Assert.assertEquals(sim.overdriveMatchCount, 1);
+
+    // a search afterwards runs at standard speed and brings the device back with it
+    SearchBusCmd searchCmd = ds2482.querySearchBusCmd();
+    Assert.assertEquals(searchCmd.execute(), SearchBusCmd.Result.success);
+    Assert.assertEquals(searchCmd.getResultData().getList().size(), 4);
+    Assert.assertEquals(sim.getConfig() & DS2482Driver.CONFIG_1WS, 0);
+
+    // a device without overdrive does not answer
+    cmd = ds2482.queryReadScratchpadCmd(b.getDSAddress(), (short) 9);
+    Assert.assertEquals(cmd.execute(), ReadScratchpadCmd.Result.success);
+    Assert.assertTrue(new DS18B20Scratchpad(cmd.getResultData()).checkAllFFs());
+  }
+
+  @Test
+  public void testNoPresence() {
+    DS2482 ds2482 = new DS2482(new DS2482Sim(ADDRESS), ADDRESS);
+
+    Assert.assertEquals(ds2482.queryConvertTAllCmd().execute(), ConvertTAllCmd.Result.busFault);
+
+    SearchBusCmd cmd = ds2482.querySearchBusCmd();
+    Assert.assertEquals(cmd.execute(), SearchBusCmd.Result.success);
+    Assert.assertEquals(cmd.getResultData().getList().size(), 0);
+  }
+
+  @Test
+  public void testBusFaults() {
+    DS2482 ds2482 = create();
+
+    sim.shorted = true;
+    Assert.assertEquals(ds2482.queryConvertTCmd(a.getDSAddress()).execute(),
+        ConvertTCmd.Result.busFault);
+    Assert.assertEquals(ds2482.querySearchBusCmd().execute(),
+        SearchBusCmd.Result.communication_error);
+    sim.shorted = false;
+
+    sim.ack = false;
+    Assert.assertEquals(ds2482.queryReadPowerSupplyCmd(a.getDSAddress()).execute(),
+        ReadPowerSupplyCmd.Result.busFault);
+    sim.ack = true;
+
+    sim.busyPolls = DS2482Driver.MAX_BUSY_POLLS + 1;
+    Assert.assertEquals(ds2482.queryWriteScratchpadCmd(a.getDSAddress(), new byte[3]).execute(),
+        WriteScratchpadCmd.Result.busFault);
+    sim.busyPolls = 1;
+
+    // and it all works again
+    Assert.assertEquals(ds2482.queryConvertTCmd(a.getDSAddress()).execute(),
+        ConvertTCmd.Result.success);
+  }
+
+}
@@ -0,0 +1,92 @@
+package waterfall.onewire.busmasters.DS2482;
+
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmaster.Command;
+import waterfall.onewire.busmasters.DS2482.DS2482Sim.SimDevice;
+import waterfall.onewire.device.DS18B20Scratchpad;
+
+/**
+ * The function layer of a DS18B20 for the DS2482Sim. Conversions complete immediately.
+ */
+class SimDS18B20 implements SimDevice {
+
+  private final DSAddress dsAddress;
+  final DS18B20Scratchpad scratchpad = new DS18B20Scratchpad();
+  boolean parasitic = false;
+  boolean alarm = false;
+  // the real DS18B20 has no overdrive, but other parts do
+  boolean overdrive = false;
+  int convertTCount = 0;
+
+  private int command = -1;
+  private int writeIndex;
+  private int readBitIndex;
+
+  SimDS18B20(DSAddress dsAddress) {
+    this.dsAddress = dsAddress;
+  }
+
+  SimDS18B20(String hexAddr) {
+    this(DSAddress.fromUncheckedHex(hexAddr));
+  }
+
+  @Override
+  public DSAddress getDSAddress() {
+    return dsAddress;
+  }
+
+  @Override
+  public boolean hasAlarm() {
+    return alarm;
+  }
+
+  @Override
+  public boolean supportsOverdrive() {
+    return overdrive;
+  }
+
+  @Override
+  public void reset() {
+    command = -1;
+  }
+
+  @Override
+  public void writeByte(int b) {
+    if (command < 0) {
+      command = b;
+      writeIndex = 0;
+      readBitIndex = 0;
+      if ((byte) command == Command.CONVERT_T) {
+        convertTCount++;
+      }
+      return;
+    }
+    if (((byte) command == Command.WRITE_SCRATCHPAD) && (writeIndex < 3)) {
+      // TH, TL and then the configuration
+      scratchpad.data[2 + writeIndex++] = (byte) b;
+      if (writeIndex == 3) {
+        scratchpad.setResolution(scratchpad.getResolution());
+      }
+    }
+  }
+
+  @Override
+  public boolean readBit() {
+    switch ((byte) command) {
+      case Command.READ_SCRATCHPAD:
+        if (readBitIndex >= (9 * 8)) {
+          return true;
+        }
+        final int i = readBitIndex++;
+        return (((scratchpad.data[i / 8] >> (i % 8)) & 0x1) != 0);
+
+      case Command.READ_POWER_SUPPLY:
+        return !parasitic;
+
+      default:
+        // conversions are done
+        return true;
+    }
+  }
+
+}
@@ -0,0 +1,171 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import waterfall.onewire.busmasters.HA7S.HA7S.BusDataException;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.ReadResult;
+
+/**
+ * Recovers a cmd from a garbled exchange with the HA7S instead of failing it. When the responses to
+ * a cmd do not check out the HA7S and the serial port are brought back into step by issuing resets
+ * until the HA7S answers them cleanly, which also drains whatever stale bytes were still on their
+ * way, and then the cmd is tried again. All of this has to fit in a latency budget measured from
+ * when the cmd first ran, once that is spent the cmd fails as a busFault the same as before.
+ *
+ * Only BusDataException is retried, which includes a reset in the cmd reading back stale bytes. A
+ * BusFaultException means the bus itself is in trouble, such as the bus being stopped, and trying
+ * again will not help.
+ */
+public class BusResync {
+
+  public static final long DEFAULT_BUDGET_MSEC = 250;
+  public static final int DEFAULT_MAX_RETRIES = 2;
+
+  // A stray CR can make a single reset look clean, so wait for two in a row.
+  static final int CLEAN_RESETS_NEEDED = 2;
+  static final int MAX_RESETS = 8;
+
+  private static final byte[] resetCmd = {'R'};
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private volatile long budgetMSec = DEFAULT_BUDGET_MSEC;
+  private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+
+  // Only used with the cmdScheduler held, so one cmd at a time.
+  private final byte[] resetRBuf = new byte[16];
+  private final ReadResult resetResult = new ReadResult();
+
+  private final AtomicLong retryCount = new AtomicLong();
+  private final AtomicLong recoveredCount = new AtomicLong();
+  private final AtomicLong failedCount = new AtomicLong();
+
+  /**
+   * @param budgetMSec the most time a cmd may spend, from its first attempt, resyncing and trying
+   * again. Zero turns retrying off.
+   */
+  public void setBudgetMSec(long budgetMSec) {
+    if (budgetMSec < 0) {
+      throw new IllegalArgumentException("budgetMSec must not be negative");
+    }
+    this.budgetMSec = budgetMSec;
+  }
+
+  public long getBudgetMSec() {
+    return budgetMSec;
+  }
+
+  public void setMaxRetries(int maxRetries) {
+    if (maxRetries < 0) {
+      throw new IllegalArgumentException("maxRetries must not be negative");
+    }
+    this.maxRetries = maxRetries;
+  }
+
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * @return the number of times a cmd was tried again after a resync.
+   */
+  public long getRetryCount() {
+    return retryCount.get();
+  }
+
+  /**
+   * @return the number of cmds which succeeded after being tried again.
+   */
+  public long getRecoveredCount() {
+    return recoveredCount.get();
+  }
+
+  /**
+   * @return the number of cmds which still failed once the retries or the budget ran out.
+   */
+  public long getFailedCount() {
+    return failedCount.get();
+  }
+
+  /**
+   * Run the frames of a cmd, resyncing and running them again on a BusDataException until they
+   * check out or the retries or the budget run out, in which case the last exception is thrown.
+   */
+  void run(HA7SSerial serial, CmdTemplate.Frames frames) {
+    final long startNanos = System.nanoTime();
+    final long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(budgetMSec);
+    final int retries = maxRetries;
+    int attempt = 0;
+
+    while (true) {
+      try {
+        if (attempt == 0) {
+          frames.run(serial);
+        } else {
+          frames.run(serial, remainingMSec(deadlineNanos));
+        }
+        if (attempt > 0) {
+          recoveredCount.incrementAndGet();
+        }
+        return;
+      } catch (BusDataException e) {
+        if ((attempt >= retries) || (remainingMSec(deadlineNanos) <= 0)) {
+          if (attempt > 0) {
+            failedCount.incrementAndGet();
+          }
+          throw e;
+        }
+
+        logger.warn("{} resync after:{}", serial.getPortName(), e.getMessage());
+        if (!resync(serial, deadlineNanos)) {
+          failedCount.incrementAndGet();
+          throw e;
+        }
+        attempt++;
+        retryCount.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Issue resets until the HA7S has answered enough of them with nothing but a CR.
+   *
+   * @return false if that did not happen before the deadline.
+   */
+  boolean resync(HA7SSerial serial, long deadlineNanos) {
+    int clean = 0;
+    for (int i = 0; i < MAX_RESETS; i++) {
+      final long timeoutMSec = remainingMSec(deadlineNanos);
+      if (timeoutMSec <= 0) {
+        break;
+      }
+
+      resetResult.setError(ReadResult.ErrorCode.RR_Error);
+      serial.writeReadTilCR(resetCmd, resetRBuf, resetResult, timeoutMSec);
+
+      if ((resetResult.getError() == ReadResult.ErrorCode.RR_Success)
+          && (resetResult.getReadCount() == 0)) {
+        if (++clean >= CLEAN_RESETS_NEEDED) {
+          return true;
+        }
+      } else {
+        clean = 0;
+      }
+    }
+
+    logger.error("{} resync failed", serial.getPortName());
+    return false;
+  }
+
+  // Never less than 1 while there is time left, as 0 asks the port for its own timeout.
+  private static long remainingMSec(long deadlineNanos) {
+    final long remainingNanos = (deadlineNanos - System.nanoTime());
+    if (remainingNanos <= 0) {
+      return 0;
+    }
+    return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+  }
+
+}
@@ -0,0 +1,280 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import java.util.ArrayList;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmasters.HA7S.HA7S.BusDataException;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.ReadResult;
+
+/**
+ * A compiled sequence of HA7S frames, and how the response to each is checked. A template is
+ * immutable and is shared by every cmd of the same kind. Each cmd gets its own Frames from
+ * newFrames(), which holds the buffers written from and read into and the ReadResults, so running
+ * the sequence allocates nothing. The responses are checked by a switch on each Step's Check.
+ */
+final class CmdTemplate {
+
+  /**
+   * How the response to a frame is checked. The echo checks require the response to fill the read
+   * buffer exactly.
+   */
+  enum Check {
+    /**
+     * Anything is accepted.
+     */
+    NONE,
+
+    /**
+     * A reset returns nothing, anything else is a bus fault.
+     */
+    RESET,
+
+    /**
+     * The response starts with what was written at echoOffset.
+     */
+    ECHO,
+
+    /**
+     * As ECHO, with upper case hex following the echo.
+     */
+    ECHO_HEX,
+
+    /**
+     * As ECHO, followed by the two chars of a read power supply bit, "00" or "FF".
+     */
+    ECHO_POWER_SUPPLY
+  }
+
+  static final class Step {
+
+    final Check check;
+    final int echoOffset;
+    final int echoCount;
+
+    // null, or less than zero, when the cmd sets them
+    final byte[] wBuf;
+    final int rBufLength;
+
+    private Step(byte[] wBuf, int rBufLength, Check check, int echoOffset, int echoCount) {
+      this.wBuf = wBuf;
+      this.rBufLength = rBufLength;
+      this.check = check;
+      this.echoOffset = echoOffset;
+      this.echoCount = echoCount;
+    }
+  }
+
+  private static final byte[] resetCmd = {'R'};
+  private static final byte[] selectTemplate = {'A',
+      'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', '\r'};
+
+  private final Step[] steps;
+  private final int selectStep;
+
+  private CmdTemplate(Step[] steps, int selectStep) {
+    this.steps = steps;
+    this.selectStep = selectStep;
+  }
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  int getStepCount() {
+    return steps.length;
+  }
+
+  Frames newFrames() {
+    return new Frames(this);
+  }
+
+  static final class Builder {
+
+    private final ArrayList<Step> steps = new ArrayList<>();
+    private int selectStep = -1;
+
+    private Builder() {
+    }
+
+    /**
+     * Select a device by address. The HA7S echoes back the 16 hex chars of the address.
+     */
+    Builder select() {
+      if (selectStep >= 0) {
+        throw new IllegalArgumentException("only one select");
+      }
+      selectStep = steps.size();
+      steps.add(new Step(null, 16, Check.ECHO, 1, 16));
+      return this;
+    }
+
+    Builder reset() {
+      steps.add(new Step(resetCmd, 16, Check.RESET, 0, 0));
+      return this;
+    }
+
+    /**
+     * A frame which is the same for every cmd.
+     */
+    Builder frame(byte[] wBuf, int rBufLength, Check check, int echoOffset, int echoCount) {
+      if ((wBuf == null) || (rBufLength < 0) || ((echoOffset + echoCount) > wBuf.length)) {
+        throw new IllegalArgumentException("bad frame");
+      }
+      steps.add(new Step(wBuf, rBufLength, check, echoOffset, echoCount));
+      return this;
+    }
+
+    /**
+     * A frame whose bytes, and the length of its response, are set by each cmd with
+     * Frames.setFrame().
+     */
+    Builder frame(Check check, int echoOffset, int echoCount) {
+      steps.add(new Step(null, -1, check, echoOffset, echoCount));
+      return this;
+    }
+
+    CmdTemplate build() {
+      if (steps.isEmpty()) {
+        throw new IllegalArgumentException("no steps");
+      }
+      return new CmdTemplate(steps.toArray(new Step[steps.size()]), selectStep);
+    }
+  }
+
+  /**
+   * The buffers for one cmd running a template.
+   */
+  static final class Frames {
+
+    private final CmdTemplate template;
+    private final byte[][] wBufs;
+    private final byte[][] rBufs;
+    private final ReadResult[] readResults;
+
+    private Frames(CmdTemplate template) {
+      this.template = template;
+      final int stepCount = template.steps.length;
+      wBufs = new byte[stepCount][];
+      rBufs = new byte[stepCount][];
+      readResults = new ReadResult[stepCount];
+
+      for (int i = 0; i < stepCount; i++) {
+        final Step step = template.steps[i];
+        if (i == template.selectStep) {
+          wBufs[i] = selectTemplate.clone();
+        } else {
+          wBufs[i] = step.wBuf;
+        }
+        if (step.rBufLength >= 0) {
+          rBufs[i] = new byte[step.rBufLength];
+        }
+        readResults[i] = new ReadResult();
+      }
+    }
+
+    void setAddress(DSAddress dsAddr) {
+      if (template.selectStep < 0) {
+        throw new IllegalArgumentException("no select step");
+      }
+      dsAddr.copyHexBytesTo(wBufs[template.selectStep], 1);
+    }
+
+    /**
+     * Set the frame for a step the cmd supplies. The read buffer is only reallocated when its length
+     * changes.
+     */
+    void setFrame(int step, byte[] wBuf, int rBufLength) {
+      if ((template.steps[step].wBuf != null) || (step == template.selectStep)) {
+        throw new IllegalArgumentException("step " + step + " is fixed by the template");
+      }
+      wBufs[step] = wBuf;
+      if ((rBufs[step] == null) || (rBufs[step].length != rBufLength)) {
+        rBufs[step] = new byte[rBufLength];
+      }
+    }
+
+    byte[] getWBuf(int step) {
+      return wBufs[step];
+    }
+
+    byte[] getRBuf(int step) {
+      return rBufs[step];
+    }
+
+    ReadResult getReadResult(int step) {
+      return readResults[step];
+    }
+
+    /**
+     * Writes all of the frames in a single pipelined call and then checks each of the responses in
+     * order.
+     */
+    void run(HA7SSerial serial) {
+      run(serial, ResponseTimeout.ADAPTIVE);
+    }
+
+    /**
+     * Same as run(HA7SSerial) except the port is told how long to wait for the responses.
+     */
+    void run(HA7SSerial serial, long timeoutMSec) {
+      serial.pipelineWriteReadTilCR(wBufs, rBufs, readResults, timeoutMSec);
+
+      final Step[] steps = template.steps;
+      for (int i = 0; i < steps.length; i++) {
+        final ReadResult readResult = readResults[i];
+        if (readResult.getError() != ReadResult.ErrorCode.RR_Success) {
+          throw new BusDataException("writeReadTilCR:" + readResult.getError().name());
+        }
+        check(i, steps[i], readResult.getReadCount());
+      }
+    }
+
+    private void check(int i, Step step, int readCount) {
+      final byte[] wBuf = wBufs[i];
+      final byte[] rBuf = rBufs[i];
+
+      switch (step.check) {
+        case NONE:
+          return;
+
+        case RESET:
+          // The HA7S reset does not report presence, so anything read back is stale bytes from an
+          // earlier exchange and the port is out of step.
+          if (readCount != 0) {
+            throw new BusDataException("Reset failed check read:" + readCount);
+          }
+          return;
+
+        case ECHO:
+        case ECHO_HEX:
+        case ECHO_POWER_SUPPLY:
+          if (readCount != rBuf.length) {
+            throw new BusDataException(
+                "step " + i + " failed check expected:" + rBuf.length + " read:" + readCount);
+          }
+          for (int j = 0; j < step.echoCount; j++) {
+            if (rBuf[j] != wBuf[step.echoOffset + j]) {
+              throw new BusDataException("step " + i + " wrong echo j:" + j + " expected:"
+                  + wBuf[step.echoOffset + j] + " got:" + rBuf[j]);
+            }
+          }
+          break;
+      }
+
+      if (step.check == Check.ECHO_HEX) {
+        for (int j = step.echoCount; j < readCount; j++) {
+          if (!(((rBuf[j] >= '0') && (rBuf[j] <= '9')) || ((rBuf[j] >= 'A') && (rBuf[j] <= 'F')))) {
+            throw new BusDataException("step " + i + " not hex data j:" + j + " got:" + rBuf[j]);
+          }
+        }
+      } else if (step.check == Check.ECHO_POWER_SUPPLY) {
+        final byte b0 = rBuf[step.echoCount];
+        final byte b1 = rBuf[step.echoCount + 1];
+        if (((b0 != 'F') && (b0 != '0')) || ((b1 != 'F') && (b1 != '0'))) {
+          throw new BusDataException(
+              "step " + i + " expected:00/FF got:" + (char) b0 + (char) b1);
+        }
+      }
+    }
+  }
+
+}
@@ -1,21 +1,70 @@
 package waterfall.onewire.busmasters.HA7S;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.function.BiConsumer;
+import java.util.concurrent.Executor;
 import waterfall.onewire.Convert;
 import waterfall.onewire.DSAddress;
+import waterfall.onewire.DSAddressInterner;
+import waterfall.onewire.busmaster.BusCmdExecutor;
+import waterfall.onewire.busmaster.BusCmdScheduler;
 import waterfall.onewire.busmaster.BusMaster;
+import waterfall.onewire.busmaster.NoResultDataException;
+import waterfall.onewire.busmaster.NoResultException;
 import waterfall.onewire.busmaster.NotifySearchBusCmdHelper;
 import waterfall.onewire.busmaster.NotifySearchBusCmdResult;
+import waterfall.onewire.busmaster.SearchResultBuilder;
 import waterfall.onewire.busmaster.SearchPusherByBusCmd;
+import waterfall.onewire.busmasters.HA7S.CmdTemplate.Check;
 import waterfall.onewire.busmasters.HA7S.HA7SSerial.ReadResult;
 
 public class HA7S implements BusMaster {
 
+  private static final CmdTemplate convertTTemplate = CmdTemplate.builder()
+      .select()
+      .frame(new byte[]{'W', '0', '1', '4', '4', '\r'}, 2, Check.ECHO, 3, 2)
+      .reset()
+      .build();
+
+  private static final CmdTemplate convertTAllTemplate = CmdTemplate.builder()
+      .reset()
+      .frame(new byte[]{'W', '0', '2', 'C', 'C', '4', '4', '\r'}, 4, Check.ECHO, 3, 4)
+      .reset()
+      .build();
+
+  private static final CmdTemplate readPowerSupplyTemplate = CmdTemplate.builder()
+      .select()
+      .frame(new byte[]{'W', '0', '2', 'B', '4', 'F', 'F', '\r'}, 4, Check.ECHO_POWER_SUPPLY, 3, 2)
+      .reset()
+      .build();
+
+  // the read scratchpad frame depends on how many bytes are read
+  private static final CmdTemplate readScratchpadTemplate = CmdTemplate.builder()
+      .select()
+      .frame(Check.ECHO_HEX, 3, 2)
+      .build();
+
+  // the write scratchpad frame depends on the data written
+  private static final CmdTemplate writeScratchpadTemplate = CmdTemplate.builder()
+      .select()
+      .frame(Check.NONE, 0, 0)
+      .build();
+
   private HA7SSerial serialPort = null;
   private NotifySearchBusCmdHelper searchHelper = null;
   private NotifySearchBusCmdHelper searchByAlarmHelper = null;
+  private BusCmdExecutor asyncCmdExecutor = null;
+  private final BusCmdScheduler cmdScheduler = new BusCmdScheduler();
+  private final BusResync busResync = new BusResync();
+
+  // Search results, only used with the cmdScheduler held. The three kinds of search share the
+  // interned addresses but each has its own previous result to compare against.
+  private final DSAddressInterner searchInterner = new DSAddressInterner();
+  private final SearchResultBuilder searchResultBuilder = new SearchResultBuilder(searchInterner);
+  private final SearchResultBuilder searchByAlarmResultBuilder =
+      new SearchResultBuilder(searchInterner);
+  private final SearchResultBuilder searchByFamilyResultBuilder =
+      new SearchResultBuilder(searchInterner);
+  private final byte[] searchRHexBuf = new byte[16];
 
   /*
   * Begin HA7S specific methods
@@ -26,6 +75,7 @@ public class HA7S implements BusMaster {
     }
     searchHelper = new NotifySearchBusCmdHelper(new SearchPusherByBusCmd(this, false), this);
     searchByAlarmHelper = new NotifySearchBusCmdHelper(new SearchPusherByBusCmd(this, true), this);
+    asyncCmdExecutor = new BusCmdExecutor("HA7S on " + serial.getPortName());
     serialPort = serial;
   }
 
@@ -44,6 +94,27 @@ public class HA7S implements BusMaster {
     return System.currentTimeMillis();
   }
 
+  @Override
+  public Executor getAsyncCmdExecutor() {
+    return asyncCmdExecutor;
+  }
+
+  /**
+   * The scheduler which orders the cmds waiting for this bus, and keeps the statistics on how long
+   * each class of cmd has waited.
+   */
+  public BusCmdScheduler getCmdScheduler() {
+    return cmdScheduler;
+  }
+
+  /**
+   * How the cmds on this bus recover from a garbled exchange with the HA7S, and how often they have
+   * had to.
+   */
+  public BusResync getBusResync() {
+    return busResync;
+  }
+
   @Override
   public SearchBusCmd querySearchBusCmd() {
     return new HA7S.SearchBusCmd(false);
@@ -107,6 +178,11 @@ public class HA7S implements BusMaster {
     return new HA7S.ConvertTCmd(dsAddr);
   }
 
+  @Override
+  public ConvertTAllCmd queryConvertTAllCmd() {
+    return new HA7S.ConvertTAllCmd();
+  }
+
   @Override
   public ReadScratchpadCmd queryReadScratchpadCmd(DSAddress dsAddr, short requestByteCount) {
     return new HA7S.ReadScratchpadCmd(dsAddr, requestByteCount);
@@ -131,6 +207,9 @@ public class HA7S implements BusMaster {
       searchHelper.cancelAllScheduledSearchNotifyFor();
       searchByAlarmHelper.cancelAllScheduledSearchNotifyFor();
 
+      // anything already queued will run and find the bus stopped
+      asyncCmdExecutor.shutdown();
+
       serialPort = null;
       searchHelper = null;
       searchByAlarmHelper = null;
@@ -140,14 +219,14 @@ public class HA7S implements BusMaster {
   //
   // Exceptions
   //
-  private static class BusFaultException extends RuntimeException {
+  static class BusFaultException extends RuntimeException {
 
     public BusFaultException(String message) {
       super(message);
     }
   }
 
-  private static class BusDataException extends RuntimeException {
+  static class BusDataException extends RuntimeException {
 
     public BusDataException(String message) {
       super(message);
@@ -159,65 +238,19 @@ public class HA7S implements BusMaster {
   //
   private class ConvertTCmd extends waterfall.onewire.busmaster.ConvertTCmd {
 
-    private final byte[] selectCmd = new byte[]{'A',
-        'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', '\r'};
-    private final byte[] convertTCmd = {'W', '0', '1', '4', '4', '\r'};
-    private final byte[] resetCmdData = {'R'};
-    private final byte[] readBuf = new byte[16];
-    private final byte[] readBitBuf = new byte[1];
-
-    BiConsumer<byte[], Integer> checkAddressResultData = (rbuf, readCount) -> {
-      if (readCount != 16) {
-        throw new BusDataException("checkAddress wrong count:" + readCount);
-      }
-      for (int i = 0; i < 16; i++) {
-        if (rbuf[i] != selectCmd[i + 1]) {
-          throw new BusDataException("checkAddress wrong data i:" + i + " expected:"
-              + selectCmd[i + 1] + " got:" + rbuf[i]);
-        }
-      }
-    };
-
-    BiConsumer<byte[], Integer> checkConvertTReturn = (rbuf, readCount) -> {
-      if (readCount != 2) {
-        throw new BusDataException("ConvertT failed cmd check read:" + readCount);
-      }
-      if ((rbuf[0] != convertTCmd[3]) || (rbuf[1] != convertTCmd[4])) {
-        throw new BusDataException(
-            "ConvertT failed cmd check expected:44 got:" + rbuf[0] + rbuf[1]);
-      }
-    };
-
-    BiConsumer<byte[], Integer> checkReadBitReturn = (rbuf, readCount) -> {
-      if (readCount != 1) {
-        throw new BusFaultException("ReadBit failed check read:" + readCount);
-      }
-      if ((rbuf[0] != '0') && (rbuf[0] != '1')) {
-        throw new BusFaultException("ReadBit failed check expected:0/1 got:" + rbuf[0]);
-      }
-    };
-
-    BiConsumer<byte[], Integer> checkResetReturn = (rbuf, readCount) -> {
-      if (readCount != 0) {
-        throw new BusFaultException("Reset failed check read:" + readCount);
-      }
-    };
-
-    private Object[][] cmdDataSequence = {
-        // cmd data to send, read into buf, checkFunction, returned readResult
-        {selectCmd, readBuf, checkAddressResultData, null}, // check against the dsAddress
-        {convertTCmd, readBuf, checkConvertTReturn, null},
-        {resetCmdData, readBuf, checkResetReturn, null}
-    };
-
-    private HA7SSerial.ReadResult results[] = new HA7SSerial.ReadResult[4];
+    private final CmdTemplate.Frames frames = convertTTemplate.newFrames();
 
     private ConvertTCmd(DSAddress dsAddr) {
       super(HA7S.this, dsAddr);
-      dsAddr.copyHexBytesTo(selectCmd, 1);
+      frames.setAddress(dsAddr);
     }
 
     protected ConvertTCmd.Result execute_internal() {
+      return cmdScheduler.run(this);
+    }
+
+    @Override
+    protected ConvertTCmd.Result execute_scheduled() {
       assert (result == Result.cmdBusy);
       assert (resultWriteCTM == 0);
 
@@ -226,36 +259,16 @@ public class HA7S implements BusMaster {
           throw new BusFaultException("bus was stopped");
         }
 
-        for (Object[] sequence : cmdDataSequence) {
-          byte[] cmdData = (byte[]) sequence[0];
-          byte[] rBuf = (byte[]) sequence[1];
-          BiConsumer<byte[], Integer> checkDataF = (BiConsumer<byte[], Integer>) sequence[2];
-
-          HA7SSerial.ReadResult readResult = serialPort.writeReadTilCR(cmdData, rBuf);
-
-          if (readResult.getError() != ReadResult.ErrorCode.RR_Success) {
-            throw new BusDataException("writeReadTilCR:" + readResult.getError().name());
-          }
-
-          if (checkDataF != null) {
-            checkDataF.accept(rBuf, readResult.getReadCount());
-          }
-
-          sequence[3] = readResult;
-        }
+        busResync.run(serialPort, frames);
 
         // We are interested in tracking the time the device started the temperature calculation
-        long writeCTM = ((HA7SSerial.ReadResult) cmdDataSequence[1][3]).getPostWriteCTM();
+        long writeCTM = frames.getReadResult(1).getPostWriteCTM();
 
         setResultData(writeCTM);
 
         return ConvertTCmd.Result.success;
       } catch (BusDataException e) {
-        // TODO: Here is a potential place to imagine recovering from the bus fault and then
-        // TODO: trying again.
-        // TODO: logging with the HA7S (need more data in the throw errors)
-        // TODO: resync with the HA7S (a bunch of resets and read until the queue is empty) and
-        // TODO: then retry...
+        // busResync has already resynced and retried as far as its budget allows
         return Result.busFault;
       } catch (BusFaultException e) {
         return Result.busFault;
@@ -269,61 +282,66 @@ public class HA7S implements BusMaster {
 
   }
 
-  private class ReadPowerSupplyCmd extends waterfall.onewire.busmaster.ReadPowerSupplyCmd {
+  private class ConvertTAllCmd extends waterfall.onewire.busmaster.ConvertTAllCmd {
 
-    private final byte[] selectCmd = {'A',
-        'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', '\r'};
-    private final byte[] readPowerSupplyCmd = {'W', '0', '2', 'B', '4', 'F', 'F', '\r'};
-    private final byte[] resetCmd = {'R'};
-    private final byte[] readBuf = new byte[16];
-    private final byte[] readPowerSupplyData = new byte[4];
+    private final CmdTemplate.Frames frames = convertTAllTemplate.newFrames();
 
-    private BiConsumer<byte[], Integer> checkAddressResultData = (rbuf, readCount) -> {
-      if (readCount != 16) {
-        throw new BusDataException("checkAddress wrong count:" + readCount);
-      }
-      for (int i = 0; i < 16; i++) {
-        if (rbuf[i] != selectCmd[i + 1]) {
-          throw new BusDataException("checkAddress wrong data i:" + i + " expected:"
-              + selectCmd[i + 1] + " got:" + rbuf[i]);
+    private ConvertTAllCmd() {
+      super(HA7S.this);
+    }
+
+    protected ConvertTAllCmd.Result execute_internal() {
+      return cmdScheduler.run(this);
+    }
+
+    @Override
+    protected ConvertTAllCmd.Result execute_scheduled() {
+      assert (result == Result.cmdBusy);
+      assert (resultWriteCTM == 0);
+
+      try {
+        if (serialPort == null) {
+          throw new BusFaultException("bus was stopped");
         }
-      }
-    };
 
-    private BiConsumer<byte[], Integer> checkReadPowerSupplyReturn = (rbuf, readCount) -> {
-      if (readCount != 4) {
-        throw new BusDataException("ReadPowerSupply failed cmd check read:" + readCount);
-      }
-      if ((rbuf[0] != readPowerSupplyCmd[3]) || (rbuf[1] != readPowerSupplyCmd[4])) {
-        throw new BusDataException(
-            "ReadPowerSupply failed cmd check expected:B4 got:" + rbuf[0] + rbuf[1]);
-      }
-      if (((rbuf[2] != 'F') && (rbuf[2] != '0')) || ((rbuf[3] != 'F') && (rbuf[3] != '0'))) {
-        throw new BusDataException(
-            "ReadPowerSupply failed cmd check expected:00/FF got:" + rbuf[2] + rbuf[3]);
-      }
-    };
+        busResync.run(serialPort, frames);
+
+        // We are interested in tracking the time the devices started the temperature calculation
+        long writeCTM = frames.getReadResult(1).getPostWriteCTM();
 
-    private BiConsumer<byte[], Integer> checkResetReturn = (rbuf, readCount) -> {
-      if (readCount != 0) {
-        throw new BusFaultException("Reset failed check read:" + readCount);
+        setResultData(writeCTM);
+
+        return ConvertTAllCmd.Result.success;
+      } catch (BusDataException e) {
+        return Result.busFault;
+      } catch (BusFaultException e) {
+        return Result.busFault;
       }
-    };
+    }
 
-    private Object[][] cmdDataSequence = {
-        // cmd data to send, read into buf, checkFunction, returned readResult
-        {selectCmd, readBuf, checkAddressResultData, null}, // check against the dsAddress
-        {readPowerSupplyCmd, readPowerSupplyData, checkReadPowerSupplyReturn, null},
-        {resetCmd, readBuf, checkResetReturn, null}
-    };
+    public void setResultData(long resultWriteCTM) {
+      assert (result == Result.cmdBusy);
+      this.resultWriteCTM = resultWriteCTM;
+    }
+
+  }
+
+  private class ReadPowerSupplyCmd extends waterfall.onewire.busmaster.ReadPowerSupplyCmd {
+
+    private final CmdTemplate.Frames frames = readPowerSupplyTemplate.newFrames();
 
     public ReadPowerSupplyCmd(DSAddress dsAddr) {
       super(HA7S.this, dsAddr);
-      dsAddr.copyHexBytesTo(selectCmd, 1);
+      frames.setAddress(dsAddr);
     }
 
     @Override
     protected ReadPowerSupplyCmd.Result execute_internal() {
+      return cmdScheduler.run(this);
+    }
+
+    @Override
+    protected ReadPowerSupplyCmd.Result execute_scheduled() {
       assert (result == Result.cmdBusy);
       assert (resultWriteCTM == 0);
 
@@ -332,38 +350,18 @@ public class HA7S implements BusMaster {
           throw new BusFaultException("bus was stopped");
         }
 
-        for (Object[] sequence : cmdDataSequence) {
-          byte[] cmdData = (byte[]) sequence[0];
-          byte[] rBuf = (byte[]) sequence[1];
-          BiConsumer<byte[], Integer> checkDataF = (BiConsumer<byte[], Integer>) sequence[2];
-
-          HA7SSerial.ReadResult readResult = serialPort.writeReadTilCR(cmdData, rBuf);
-
-          if (readResult.getError() != ReadResult.ErrorCode.RR_Success) {
-            throw new BusDataException("writeReadTilCR:" + readResult.getError().name());
-          }
-
-          if (checkDataF != null) {
-            checkDataF.accept(rBuf, readResult.getReadCount());
-          }
-
-          sequence[3] = readResult;
-        }
+        busResync.run(serialPort, frames);
 
         // parasitic powered devices will pull the bus low
-        boolean isParasitic = (readPowerSupplyData[3] == '0');
+        boolean isParasitic = (frames.getRBuf(1)[3] == '0');
 
-        long writeCTM = ((HA7SSerial.ReadResult) cmdDataSequence[1][3]).getPostWriteCTM();
+        long writeCTM = frames.getReadResult(1).getPostWriteCTM();
 
         setResultData(writeCTM, isParasitic);
 
         return Result.success;
       } catch (BusDataException e) {
-        // TODO: Here is a potential place to imagine recovering from the bus fault and then
-        // TODO: trying again.
-        // TODO: logging with the HA7S (need more data in the throw errors)
-        // TODO: resync with the HA7S (a bunch of resets and read until the queue is empty) and
-        // TODO: then retry...
+        // busResync has already resynced and retried as far as its budget allows
         return Result.busFault;
       } catch (BusFaultException e) {
         return Result.busFault;
@@ -381,48 +379,16 @@ public class HA7S implements BusMaster {
 
   private class ReadScratchpadCmd extends waterfall.onewire.busmaster.ReadScratchpadCmd {
 
-    private final byte[] selectCmd = {'A',
-        'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', '\r'};
-    private byte[] readScratchpadCmd = null;
-    private final byte[] readBuf = new byte[16];
-    private byte[] readScratchpadResultData = null;
+    private final CmdTemplate.Frames frames = readScratchpadTemplate.newFrames();
+    private final byte[] readScratchpadCmd;
 
-    private BiConsumer<byte[], Integer> checkAddressResultData = (rbuf, readCount) -> {
-      if (readCount != 16) {
-        throw new BusDataException("checkAddress wrong count:" + readCount);
-      }
-      for (int i = 0; i < 16; i++) {
-        if (rbuf[i] != selectCmd[i + 1]) {
-          throw new BusDataException("checkAddress wrong data i:" + i + " expected:"
-              + selectCmd[i + 1] + " got:" + rbuf[i]);
-        }
-      }
-    };
-
-    private BiConsumer<byte[], Integer> checkReadScratchpadReturn = (rbuf, readCount) -> {
-      final int expectedReadCount = ((requestByteCount + 1) * 2);
-      if (readCount != expectedReadCount) {
-        throw new BusDataException(
-            "ReadScratchpad failed cmd check expected:" + expectedReadCount + " read:" + readCount);
-      }
-      if ((rbuf[0] != readScratchpadCmd[3]) || (rbuf[1] != readScratchpadCmd[4])) {
-        throw new BusDataException(
-            "ReadScratchpad failed cmd check expected:BE got:" + (char) rbuf[0] + (char) rbuf[1]);
-      }
-      for (int i = 2; i < expectedReadCount; i++) {
-        if (!(((readScratchpadResultData[i] >= '0') && (readScratchpadResultData[i] <= '9')) ||
-            ((readScratchpadResultData[i] >= 'A') && (readScratchpadResultData[i] <= 'F')))) {
-          throw new BusDataException(
-              "checkReadScratchpad not hex data i:" + i + " got:" + readScratchpadResultData[i]);
-        }
-      }
-    };
-
-    private Object[][] cmdDataSequence = null;
+    // Handed out as the result, only filled in if it is asked for.
+    private final byte[] reusedResultData;
+    private final byte[] reusedResultHexData;
 
     public ReadScratchpadCmd(DSAddress dsAddr, short requestByteCount) {
       super(HA7S.this, dsAddr, requestByteCount);
-      dsAddr.copyHexBytesTo(selectCmd, 1);
+      frames.setAddress(dsAddr);
 
       int totalLength = (5 + (requestByteCount * 2) + 1);
       readScratchpadCmd = new byte[totalLength];
@@ -439,16 +405,19 @@ public class HA7S implements BusMaster {
       }
       readScratchpadCmd[i] = '\r';
 
-      readScratchpadResultData = new byte[(requestByteCount + 1) * 2];
+      // the HA7S echoes back the hex of the command and the data read
+      frames.setFrame(1, readScratchpadCmd, ((requestByteCount + 1) * 2));
 
-      cmdDataSequence = new Object[][]{
-          // cmd data to send, read into buf, checkFunction, returned readResult
-          {selectCmd, readBuf, checkAddressResultData, null}, // check against the dsAddress
-          {readScratchpadCmd, readScratchpadResultData, checkReadScratchpadReturn, null},
-      };
+      reusedResultData = new byte[requestByteCount];
+      reusedResultHexData = new byte[requestByteCount * 2];
     }
 
     protected ReadScratchpadCmd.Result execute_internal() {
+      return cmdScheduler.run(this);
+    }
+
+    @Override
+    protected ReadScratchpadCmd.Result execute_scheduled() {
       assert (result == Result.cmdBusy);
       assert (resultData == null);
       assert (resultWriteCTM == 0);
@@ -462,38 +431,18 @@ public class HA7S implements BusMaster {
 
         Arrays.fill(readScratchpadCmd, 5, (5 + hexByteCount), (byte) 'F');
 
-        for (Object[] sequence : cmdDataSequence) {
-          byte[] cmdData = (byte[]) sequence[0];
-          byte[] rBuf = (byte[]) sequence[1];
-          BiConsumer<byte[], Integer> checkDataF = (BiConsumer<byte[], Integer>) sequence[2];
-
-          HA7SSerial.ReadResult readResult = serialPort.writeReadTilCR(cmdData, rBuf);
+        busResync.run(serialPort, frames);
 
-          if (readResult.getError() != ReadResult.ErrorCode.RR_Success) {
-            throw new BusDataException("writeReadTilCR:" + readResult.getError().name());
-          }
+        // the data follows the echoed BE, it is left as hex in the read buffer until asked for
+        resultHexBuf = frames.getRBuf(1);
+        resultHexOffset = 2;
+        long writeCTM = frames.getReadResult(1).getPostWriteCTM();
 
-          if (checkDataF != null) {
-            checkDataF.accept(rBuf, readResult.getReadCount());
-          }
-
-          sequence[3] = readResult;
-        }
-
-        byte[] resultData = new byte[requestByteCount];
-        Convert.hexToByte(readScratchpadResultData, 2, hexByteCount, resultData, 0);
-        byte[] resultHexData = Arrays.copyOfRange(readScratchpadResultData, 2, (2 + hexByteCount));
-        long writeCTM = ((HA7SSerial.ReadResult) cmdDataSequence[1][3]).getPostWriteCTM();
-
-        setResultData(writeCTM, resultData, resultHexData);
+        setResultData(writeCTM, null, null);
         return Result.success;
 
       } catch (BusDataException e) {
-        // TODO: Here is a potential place to imagine recovering from the bus fault and then
-        // TODO: trying again.
-        // TODO: logging with the HA7S (need more data in the throw errors)
-        // TODO: resync with the HA7S (a bunch of resets and read until the queue is empty) and
-        // TODO: then retry...
+        // busResync has already resynced and retried as far as its budget allows
         return Result.busFault;
       } catch (BusFaultException e) {
         return Result.busFault;
@@ -507,36 +456,36 @@ public class HA7S implements BusMaster {
       this.resultHexData = resultHexData;
     }
 
+    @Override
+    public byte[] getResultData() throws NoResultException, NoResultDataException {
+      final byte[] hexBuf = getResultHexBuf();
+      if (resultData == null) {
+        Convert.hexToByte(hexBuf, resultHexOffset, (requestByteCount * 2), reusedResultData, 0);
+        resultData = reusedResultData;
+      }
+      return resultData;
+    }
+
+    @Override
+    public byte[] getResultHexData() throws NoResultException, NoResultDataException {
+      final byte[] hexBuf = getResultHexBuf();
+      if (resultHexData == null) {
+        System.arraycopy(hexBuf, resultHexOffset, reusedResultHexData, 0, (requestByteCount * 2));
+        resultHexData = reusedResultHexData;
+      }
+      return resultHexData;
+    }
+
   }
 
   private class WriteScratchpadCmd extends waterfall.onewire.busmaster.WriteScratchpadCmd {
 
-    private final byte[] selectCmd;
-    private final byte[] readBuf;
-    private byte[] writeScratchpadCmd;
-    private Object[][] cmdDataSequence;
-
-    private BiConsumer<byte[], Integer> checkAddressResultData = (rbuf, readCount) -> {
-      if (readCount != 16) {
-        throw new BusDataException("checkAddress wrong count:" + readCount);
-      }
-      for (int i = 0; i < 16; i++) {
-        if (rbuf[i] != getSelectCmd()[i + 1]) {
-          throw new BusDataException("checkAddress wrong data i:" + i + " expected:"
-              + getSelectCmd()[i + 1] + " got:" + rbuf[i]);
-        }
-      }
-    };
+    private final CmdTemplate.Frames frames = writeScratchpadTemplate.newFrames();
+    private byte[] writeScratchpadCmd = null;
 
     public WriteScratchpadCmd(DSAddress dsAddr, byte[] writeData) {
       super(HA7S.this, dsAddr, writeData);
-
-      selectCmd = new byte[] {'A',
-          'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', 'F', '\r'};
-      readBuf = new byte[16];
-
-      dsAddr.copyHexBytesTo(selectCmd, 1);
-
+      frames.setAddress(dsAddr);
       updateCmdData();
     }
 
@@ -546,9 +495,15 @@ public class HA7S implements BusMaster {
       updateCmdData();
     }
 
+    /**
+     * Rewrites the write scratchpad frame in place, it is only reallocated when the length of the
+     * data changes.
+     */
     private void updateCmdData() {
       int totalLength = (5 + (writeData.length * 2) + 1);
-      writeScratchpadCmd = new byte[totalLength];
+      if ((writeScratchpadCmd == null) || (writeScratchpadCmd.length != totalLength)) {
+        writeScratchpadCmd = new byte[totalLength];
+      }
       int i = 0;
       writeScratchpadCmd[i++] = 'W';
       writeScratchpadCmd[i++] = Convert
@@ -565,18 +520,16 @@ public class HA7S implements BusMaster {
       }
       writeScratchpadCmd[i] = '\r';
 
-      cmdDataSequence = new Object[][]{
-          // cmd data to send, read into buf, checkFunction, returned readResult
-          {selectCmd, readBuf, checkAddressResultData, null}, // check against the dsAddress
-          {writeScratchpadCmd, readBuf, null, null},
-      };
+      // the HA7S echoes back the hex of the command and the data written
+      frames.setFrame(1, writeScratchpadCmd, ((writeData.length + 1) * 2));
     }
 
-    private byte[] getSelectCmd() {
-      return selectCmd;
+    protected WriteScratchpadCmd.Result execute_internal() {
+      return cmdScheduler.run(this);
     }
 
-    protected WriteScratchpadCmd.Result execute_internal() {
+    @Override
+    protected WriteScratchpadCmd.Result execute_scheduled() {
       assert (result == Result.cmdBusy);
       assert (resultWriteCTM == 0);
 
@@ -585,35 +538,15 @@ public class HA7S implements BusMaster {
           throw new BusFaultException("bus was stopped");
         }
 
-        for (Object[] sequence : cmdDataSequence) {
-          byte[] cmdData = (byte[]) sequence[0];
-          byte[] rBuf = (byte[]) sequence[1];
-          BiConsumer<byte[], Integer> checkDataF = (BiConsumer<byte[], Integer>) sequence[2];
-
-          HA7SSerial.ReadResult readResult = serialPort.writeReadTilCR(cmdData, rBuf);
+        busResync.run(serialPort, frames);
 
-          if (readResult.getError() != ReadResult.ErrorCode.RR_Success) {
-            throw new BusDataException("writeReadTilCR:" + readResult.getError().name());
-          }
-
-          if (checkDataF != null) {
-            checkDataF.accept(rBuf, readResult.getReadCount());
-          }
-
-          sequence[3] = readResult;
-        }
-
-        long writeCTM = ((HA7SSerial.ReadResult) cmdDataSequence[1][3]).getPostWriteCTM();
+        long writeCTM = frames.getReadResult(1).getPostWriteCTM();
 
         setResultData(writeCTM);
         return Result.success;
 
       } catch (BusDataException e) {
-        // TODO: Here is a potential place to imagine recovering from the bus fault and then
-        // TODO: trying again.
-        // TODO: logging with the HA7S (need more data in the throw errors)
-        // TODO: resync with the HA7S (a bunch of resets and read until the queue is empty) and
-        // TODO: then retry...
+        // busResync has already resynced and retried as far as its budget allows
         return Result.busFault;
       } catch (BusFaultException e) {
         return Result.busFault;
@@ -645,6 +578,11 @@ public class HA7S implements BusMaster {
     }
 
     protected Result execute_internal() {
+      return cmdScheduler.run(this);
+    }
+
+    @Override
+    protected Result execute_scheduled() {
       assert (result == Result.busy);
       assert (resultData == null);
 
@@ -661,26 +599,31 @@ public class HA7S implements BusMaster {
 
       byte[] firstCmd = null;
       byte[] nextCmd = null;
+      SearchResultBuilder builder = null;
 
       if (isByFamilyCode()) {
         cmdFamilySearch[1] = Convert.fourBitsToHex(familyCode >> 4);
         cmdFamilySearch[2] = Convert.fourBitsToHex(familyCode & 0xf);
         firstCmd = cmdFamilySearch;
         nextCmd = cmdFamilySearchNext;
+        builder = searchByFamilyResultBuilder;
       } else if (isByAlarm()) {
         firstCmd = cmdAlarmSearch;
         nextCmd = cmdAlarmSearchNext;
+        builder = searchByAlarmResultBuilder;
       } else {
         firstCmd = cmdSearchROM;
         nextCmd = cmdSearchROMNext;
+        builder = searchResultBuilder;
       }
 
-      ArrayList<DSAddress> resultList = new ArrayList<>();
+      builder.begin();
       long firstPostWriteCTM = 0;
 
       int index = 0;
       while (true) {
-        byte[] rHexBuf = new byte[16];
+        // nothing keeps the buffer, the address is interned from the long it decodes to
+        final byte[] rHexBuf = searchRHexBuf;
 
         HA7SSerial.ReadResult readResult = serialPort
             .writeReadTilCR(((index == 0) ? firstCmd : nextCmd), rHexBuf);
@@ -706,11 +649,11 @@ public class HA7S implements BusMaster {
           throw new BusDataException("Not hex bytes");
         }
 
-        resultList.add(DSAddress.takeUnCRCCheckedHex(rHexBuf));
+        builder.addHex(rHexBuf, 0);
         index++;
       }
 
-      ResultData _resultData = new ResultData(resultList, firstPostWriteCTM);
+      ResultData _resultData = builder.build(firstPostWriteCTM);
 
       if (isByAlarm()) {
         searchByAlarmHelper.notifySearchResult(_resultData);
@@ -34,7 +34,78 @@ public interface HA7SSerial {
    * what is expected to be read.
    * @return ReadResult
    */
-  public ReadResult writeReadTilCR(byte wBuf[], byte rBuf[]);
+  public default ReadResult writeReadTilCR(byte wBuf[], byte rBuf[]) {
+    return writeReadTilCR(wBuf, rBuf, new ReadResult());
+  }
+
+  /**
+   * Same as writeReadTilCR(byte[], byte[]) except the result is stored into a ReadResult supplied,
+   * and reused, by the caller so nothing is allocated for the call.
+   *
+   * @param wBuf byte buffer to write from
+   * @param rBuf byte buffer to place read bytes into
+   * @param readResult to be filled in with the result of the call
+   * @return readResult
+   */
+  public ReadResult writeReadTilCR(byte wBuf[], byte rBuf[], ReadResult readResult);
+
+  /**
+   * Same as writeReadTilCR(byte[], byte[], ReadResult) except the caller says how long to wait for
+   * the response. Ports which do not support this wait as long as they otherwise would.
+   *
+   * @param timeoutMSec how long to wait for the CR, or ResponseTimeout.ADAPTIVE for the port to
+   * work it out from the length of the response. Running out of time is RR_ReadTimeout.
+   */
+  public default ReadResult writeReadTilCR(byte wBuf[], byte rBuf[], ReadResult readResult,
+      long timeoutMSec) {
+    return writeReadTilCR(wBuf, rBuf, readResult);
+  }
+
+  /**
+   * Pipelined version of writeReadTilCR(). Every wBuf is written back to back without waiting for
+   * the responses, and then each CR terminated response is read into the rBuf with the same index.
+   * This saves a serial turnaround for each frame after the first, which is most of the time spent
+   * in a short command sequence like select, write block, reset.
+   *
+   * @param wBufs array of byte buffers to write from, one per frame
+   * @param rBufs byte buffers to place each frame's read bytes into, must be the same length as
+   * wBufs. Every response is read before the caller can look at any of them, so a buffer shared by
+   * two frames ends up holding the later frame's data.
+   * @return ReadResult for each frame. Once a frame does not succeed all the frames after it are
+   * returned as RR_Error.
+   */
+  public default ReadResult[] pipelineWriteReadTilCR(byte wBufs[][], byte rBufs[][]) {
+    ReadResult[] readResults = new ReadResult[wBufs.length];
+    for (int i = 0; i < readResults.length; i++) {
+      readResults[i] = new ReadResult();
+    }
+    return pipelineWriteReadTilCR(wBufs, rBufs, readResults);
+  }
+
+  /**
+   * Same as pipelineWriteReadTilCR(byte[][], byte[][]) except the results are stored into the
+   * ReadResults supplied, and reused, by the caller.
+   *
+   * @param wBufs array of byte buffers to write from, one per frame
+   * @param rBufs byte buffers to place each frame's read bytes into
+   * @param readResults one per frame, to be filled in with the result of that frame
+   * @return readResults
+   */
+  public ReadResult[] pipelineWriteReadTilCR(byte wBufs[][], byte rBufs[][],
+      ReadResult readResults[]);
+
+  /**
+   * Same as pipelineWriteReadTilCR(byte[][], byte[][], ReadResult[]) except the caller says how
+   * long to wait for all of the responses. Ports which do not support this wait as long as they
+   * otherwise would.
+   *
+   * @param timeoutMSec how long to wait for the last CR, or ResponseTimeout.ADAPTIVE for the port
+   * to work it out from the length of the responses. Running out of time is RR_ReadTimeout.
+   */
+  public default ReadResult[] pipelineWriteReadTilCR(byte wBufs[][], byte rBufs[][],
+      ReadResult readResults[], long timeoutMSec) {
+    return pipelineWriteReadTilCR(wBufs, rBufs, readResults);
+  }
 
   /**
    * Stop the serial connector.
@@ -115,34 +186,52 @@ public interface HA7SSerial {
     private int readCount;
 
     /**
-     * To be filled in with System.currentTimeMillis() after the final write has completed.
+     * To be filled in with System.currentTimeMillis() after the final write has completed. Only
+     * valid if error is RR_Success.
      */
-    private Long postWriteCTM; // non null if valid
+    private long postWriteCTM;
 
     /**
-     * To be filled in with System.currentTimeMillis() after the CR has been read.
+     * To be filled in with System.currentTimeMillis() after the CR has been read. Only valid if
+     * error is RR_Success.
      */
-    private Long readCRCTM; // non null if valid
+    private long readCRCTM;
 
     public ReadResult() {
       error = null;
       readCount = 0;
-      postWriteCTM = null;
-      readCRCTM = null;
+      postWriteCTM = 0;
+      readCRCTM = 0;
     }
 
     public ReadResult(ErrorCode error) {
-      this.error = error;
-      readCount = 0;
-      postWriteCTM = null;
-      readCRCTM = null;
+      setError(error);
     }
 
     public ReadResult(int readCount, long postWriteCTM, long readCRCTM) {
+      setSuccess(readCount, postWriteCTM, readCRCTM);
+    }
+
+    /**
+     * Reinitialize this result as a success, so that the caller can reuse it for the next call.
+     */
+    public ReadResult setSuccess(int readCount, long postWriteCTM, long readCRCTM) {
       this.error = ErrorCode.RR_Success;
       this.readCount = readCount;
       this.postWriteCTM = postWriteCTM;
       this.readCRCTM = readCRCTM;
+      return this;
+    }
+
+    /**
+     * Reinitialize this result as a failure, so that the caller can reuse it for the next call.
+     */
+    public ReadResult setError(ErrorCode error) {
+      this.error = error;
+      readCount = 0;
+      postWriteCTM = 0;
+      readCRCTM = 0;
+      return this;
     }
 
     public ErrorCode getError() {
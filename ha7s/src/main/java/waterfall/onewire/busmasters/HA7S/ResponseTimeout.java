@@ -0,0 +1,184 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out how long a serial port should wait for the responses to a write. The time it takes to
+ * move the bytes at 9600 baud is known from the length of what is written and what is expected
+ * back, so the only part to guess is how long the HA7S and the 1-Wire bus take to turn the request
+ * around. That margin is learned from the responses the port gets, the same way TCP learns a
+ * retransmit timeout: a smoothed average plus four times the smoothed deviation. Each timeout
+ * doubles the margin until the next response arrives in time.
+ *
+ * A search turns around far slower than an address or a reset, so the margin is learned separately
+ * for each kind of call, keyed by the command letters which start its frames. A pipelined call is
+ * its own kind, its margin is for all of its frames.
+ *
+ * Until the first response for a kind of call has been timed the port's maximum timeout is used,
+ * and no timeout is ever longer than that.
+ */
+public class ResponseTimeout {
+
+  /**
+   * Passed as the timeout to have it worked out by the port.
+   */
+  public static final long ADAPTIVE = 0;
+
+  // 8N1 is 10 bits a char
+  public static final long CHAR_NANOS = (TimeUnit.SECONDS.toNanos(10) / 9600);
+
+  public static final long DEFAULT_MIN_MARGIN_MSEC = 100;
+
+  private static final int MAX_BACKOFF_SHIFT = 6;
+
+  private final long maxTimeoutNanos;
+  private volatile long minMarginNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MIN_MARGIN_MSEC);
+
+  // Guarded by this.
+  private final HashMap<Long, Estimate> estimates = new HashMap<>();
+  private long responseCount = 0;
+  private long timeoutCount = 0;
+
+  public ResponseTimeout(long maxTimeoutMSec) {
+    if (maxTimeoutMSec <= 0) {
+      throw new IllegalArgumentException("maxTimeoutMSec must be positive");
+    }
+    this.maxTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(maxTimeoutMSec);
+  }
+
+  public long getMaxTimeoutMSec() {
+    return TimeUnit.NANOSECONDS.toMillis(maxTimeoutNanos);
+  }
+
+  /**
+   * The least turnaround margin allowed, however quick the port has been.
+   */
+  public void setMinMarginMSec(long minMarginMSec) {
+    if (minMarginMSec < 0) {
+      throw new IllegalArgumentException("minMarginMSec must not be negative");
+    }
+    this.minMarginNanos = TimeUnit.MILLISECONDS.toNanos(minMarginMSec);
+  }
+
+  public long getMinMarginMSec() {
+    return TimeUnit.NANOSECONDS.toMillis(minMarginNanos);
+  }
+
+  /**
+   * The time to move the frames over the wire. Every wBuf is written and every rBuf may be filled
+   * and followed by a CR.
+   */
+  public static long wireNanos(byte[][] wBufs, byte[][] rBufs) {
+    long chars = 0;
+    for (byte[] wBuf : wBufs) {
+      chars += wBuf.length;
+    }
+    for (byte[] rBuf : rBufs) {
+      chars += ((rBuf != null) ? rBuf.length : 0) + 1;
+    }
+    return (chars * CHAR_NANOS);
+  }
+
+  /**
+   * The kind of call, from the first byte of up to eight frames. The HA7S commands are each a
+   * single ASCII letter so a single frame is a small value, and the Long for it is not allocated.
+   */
+  public static long commandKey(byte[][] wBufs) {
+    long key = 0;
+    for (int i = 0; i < Math.min(8, wBufs.length); i++) {
+      key = ((key << 8) | ((wBufs[i].length > 0) ? (wBufs[i][0] & 0xff) : 0));
+    }
+    return key;
+  }
+
+  /**
+   * @param timeoutMSec given by the caller, or ADAPTIVE.
+   * @return nanoseconds to wait, from just before the first byte is written, for all of the
+   * responses.
+   */
+  public long timeoutNanos(byte[][] wBufs, byte[][] rBufs, long timeoutMSec) {
+    if (timeoutMSec < 0) {
+      throw new IllegalArgumentException("timeoutMSec must not be negative");
+    }
+    if (timeoutMSec != ADAPTIVE) {
+      return TimeUnit.MILLISECONDS.toNanos(timeoutMSec);
+    }
+    return Math.min(maxTimeoutNanos, (wireNanos(wBufs, rBufs) + getMarginNanos(wBufs)));
+  }
+
+  /**
+   * The current turnaround margin for this kind of call.
+   */
+  public synchronized long getMarginNanos(byte[][] wBufs) {
+    final Estimate estimate = estimates.get(commandKey(wBufs));
+    if (estimate == null) {
+      return maxTimeoutNanos;
+    }
+    long margin = Math.max(minMarginNanos,
+        (estimate.smoothedNanos + (4 * estimate.deviationNanos)));
+    return Math.min(maxTimeoutNanos, (margin << estimate.backoffShift));
+  }
+
+  /**
+   * Learn from a call whose responses all arrived.
+   *
+   * @param elapsedNanos from just before the first byte was written to the last CR being read.
+   */
+  public synchronized void recordResponse(byte[][] wBufs, byte[][] rBufs, long elapsedNanos) {
+    final long sample = Math.max(0, (elapsedNanos - wireNanos(wBufs, rBufs)));
+
+    final long key = commandKey(wBufs);
+    Estimate estimate = estimates.get(key);
+    if (estimate == null) {
+      estimate = new Estimate(sample);
+      estimates.put(key, estimate);
+    } else {
+      final long err = (sample - estimate.smoothedNanos);
+      estimate.smoothedNanos += (err / 8);
+      estimate.deviationNanos += ((Math.abs(err) - estimate.deviationNanos) / 4);
+      estimate.backoffShift = 0;
+    }
+
+    responseCount++;
+  }
+
+  /**
+   * A call gave up waiting for its responses.
+   */
+  public synchronized void recordTimeout(byte[][] wBufs) {
+    final Estimate estimate = estimates.get(commandKey(wBufs));
+    // until there is a response there is nothing to back off from, the max is already used
+    if ((estimate != null) && (estimate.backoffShift < MAX_BACKOFF_SHIFT)) {
+      estimate.backoffShift++;
+    }
+    timeoutCount++;
+  }
+
+  /**
+   * @return the number of calls whose responses all arrived in time.
+   */
+  public synchronized long getResponseCount() {
+    return responseCount;
+  }
+
+  /**
+   * @return the number of calls which gave up waiting for their responses.
+   */
+  public synchronized long getTimeoutCount() {
+    return timeoutCount;
+  }
+
+  private static class Estimate {
+
+    private long smoothedNanos;
+    private long deviationNanos;
+    private int backoffShift = 0;
+
+    private Estimate(long sampleNanos) {
+      this.smoothedNanos = sampleNanos;
+      this.deviationNanos = (sampleNanos / 2);
+    }
+  }
+
+}
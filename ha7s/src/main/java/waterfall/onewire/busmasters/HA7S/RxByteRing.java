@@ -0,0 +1,181 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single producer, single consumer byte ring used to hand received serial bytes from the serial
+ * library's event thread to the thread waiting on a response. Neither side takes a lock. The
+ * producer never blocks, bytes which do not fit are dropped and counted. The consumer parks with
+ * LockSupport while the ring is empty and is unparked by the producer when bytes are published.
+ */
+public class RxByteRing {
+
+  private final byte[] buffer;
+  private final int mask;
+
+  // Next position the consumer will read, only written by the consumer.
+  private final AtomicLong head = new AtomicLong(0);
+
+  // Next position the producer will write, only written by the producer.
+  private final AtomicLong tail = new AtomicLong(0);
+
+  // The consumer, if it is parked (or about to park) waiting for bytes.
+  private volatile Thread waiter = null;
+
+  // Only written by the producer.
+  private volatile long droppedCount = 0;
+
+  /**
+   * @param capacity minimum number of bytes the ring can hold, rounded up to a power of two.
+   */
+  public RxByteRing(int capacity) {
+    if ((capacity < 1) || (capacity > (1 << 30))) {
+      throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    buffer = new byte[size];
+    mask = (size - 1);
+  }
+
+  public int capacity() {
+    return buffer.length;
+  }
+
+  /**
+   * Number of bytes the producer had to drop because the ring was full.
+   */
+  public long getDroppedCount() {
+    return droppedCount;
+  }
+
+  /**
+   * Number of bytes which may be read by the consumer without waiting.
+   */
+  public int available() {
+    return (int) (tail.get() - head.get());
+  }
+
+  /**
+   * Producer side. Copies as many of the bytes as will fit into the ring and wakes the consumer.
+   *
+   * @return the number of bytes accepted, the rest were dropped.
+   */
+  public int offer(byte[] src, int offset, int length) {
+    final long t = tail.get();
+    final int free = buffer.length - (int) (t - head.get());
+    final int count = Math.min(free, length);
+
+    if (count > 0) {
+      final int index = (int) (t & mask);
+      final int first = Math.min(count, (buffer.length - index));
+      System.arraycopy(src, offset, buffer, index, first);
+      if (first < count) {
+        System.arraycopy(src, (offset + first), buffer, 0, (count - first));
+      }
+
+      // A full volatile write so the store of tail cannot be reordered after the read of waiter,
+      // otherwise a consumer which just decided to park could miss this wakeup.
+      tail.set(t + count);
+
+      Thread w = waiter;
+      if (w != null) {
+        LockSupport.unpark(w);
+      }
+    }
+
+    if (count < length) {
+      droppedCount += (length - count);
+    }
+
+    return count;
+  }
+
+  /**
+   * Consumer side. Copies out whatever bytes are available without waiting.
+   *
+   * @return the number of bytes copied into dst, possibly zero.
+   */
+  public int poll(byte[] dst, int offset, int length) {
+    final long h = head.get();
+    final int count = Math.min((int) (tail.get() - h), length);
+
+    if (count > 0) {
+      final int index = (int) (h & mask);
+      final int first = Math.min(count, (buffer.length - index));
+      System.arraycopy(buffer, index, dst, offset, first);
+      if (first < count) {
+        System.arraycopy(buffer, 0, dst, (offset + first), (count - first));
+      }
+
+      // The producer only needs to see this eventually to reuse the space.
+      head.lazySet(h + count);
+    }
+
+    return count;
+  }
+
+  /**
+   * Consumer side. Waits until at least one byte is available, or until the deadline passes, and
+   * then copies out what is available.
+   *
+   * @param deadlineNanos in terms of System.nanoTime()
+   * @return the number of bytes copied into dst, zero if the deadline passed.
+   * @throws InterruptedException if the consumer was interrupted while waiting.
+   */
+  public int take(byte[] dst, int offset, int length, long deadlineNanos)
+      throws InterruptedException {
+    int count = poll(dst, offset, length);
+    if (count > 0) {
+      return count;
+    }
+
+    waiter = Thread.currentThread();
+    try {
+      while (true) {
+        // Check again now that the producer can see us.
+        count = poll(dst, offset, length);
+        if (count > 0) {
+          return count;
+        }
+
+        final long waitNanos = deadlineNanos - System.nanoTime();
+        if (waitNanos <= 0) {
+          return 0;
+        }
+
+        LockSupport.parkNanos(this, waitNanos);
+
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+      }
+    } finally {
+      waiter = null;
+    }
+  }
+
+  /**
+   * Convenience for computing a take() deadline.
+   */
+  public static long deadlineNanosFromNow(long timeoutMSec) {
+    return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMSec);
+  }
+
+  /**
+   * Consumer side. Throws away everything currently available.
+   *
+   * @return the number of bytes thrown away.
+   */
+  public int clear() {
+    final long h = head.get();
+    final int count = (int) (tail.get() - h);
+    head.lazySet(h + count);
+    return count;
+  }
+
+}
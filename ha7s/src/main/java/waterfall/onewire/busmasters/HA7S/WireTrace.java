@@ -0,0 +1,159 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.ReadResult;
+
+/**
+ * Fixed size ring of what went over the wire, kept as raw bytes rather than formatted log lines so
+ * recording costs a copy into the ring and nothing more. When the ring is full the oldest records
+ * are overwritten. A snapshot of the ring can be taken, or dumped to a stream, at any time and
+ * turned back into the usual trace lines with WireTraceDecoder.
+ *
+ * The ring is made of fixed size slots. Each slot holds the record type, the number of data bytes,
+ * the System.nanoTime() it was recorded at, and up to MAX_DATA bytes of data. Longer data carries
+ * on in continuation slots.
+ */
+public class WireTrace {
+
+  public static final byte WRITE = 1;
+  public static final byte WRITE_END = 2;
+  public static final byte READ = 3;
+  public static final byte RESULT = 4;
+  public static final byte FLUSH = 5;
+
+  // Set in the type of the slots after the first one of a record.
+  static final byte CONTINUATION = (byte) 0x80;
+
+  static final int SLOT_SIZE = 64;
+  static final int TYPE_OFFSET = 0;
+  static final int LENGTH_OFFSET = 1;
+  static final int NANOS_OFFSET = 4;
+  static final int DATA_OFFSET = 12;
+  static final int MAX_DATA = (SLOT_SIZE - DATA_OFFSET);
+
+  static final int MAGIC = 0x57545231; // "WTR1"
+
+  private final byte[] slots;
+  private final int mask;
+
+  // Number of slots ever written, the next slot written is (count & mask).
+  private long count = 0;
+
+  /**
+   * @param slotCount minimum number of slots, rounded up to a power of two.
+   */
+  public WireTrace(int slotCount) {
+    if ((slotCount < 1) || (slotCount > (1 << 24))) {
+      throw new IllegalArgumentException("slotCount must be between 1 and 2^24");
+    }
+    int size = Integer.highestOneBit(slotCount);
+    if (size < slotCount) {
+      size <<= 1;
+    }
+    slots = new byte[size * SLOT_SIZE];
+    mask = (size - 1);
+  }
+
+  public int getSlotCount() {
+    return (mask + 1);
+  }
+
+  public synchronized long getSlotsWritten() {
+    return count;
+  }
+
+  public void recordWrite(byte[] buf, int offset, int length) {
+    record(WRITE, buf, offset, length);
+  }
+
+  public void recordWriteEnd() {
+    record(WRITE_END, null, 0, 0);
+  }
+
+  public void recordRead(byte[] buf, int offset, int length) {
+    record(READ, buf, offset, length);
+  }
+
+  public void recordFlush(byte[] buf, int offset, int length) {
+    record(FLUSH, buf, offset, length);
+  }
+
+  public synchronized void recordResult(ReadResult.ErrorCode error) {
+    final int base = nextSlot(RESULT, 1, System.nanoTime());
+    slots[base + DATA_OFFSET] = (byte) error.ordinal();
+  }
+
+  private synchronized void record(byte type, byte[] buf, int offset, int length) {
+    final long nanos = System.nanoTime();
+    int done = 0;
+    do {
+      final int chunk = Math.min(MAX_DATA, (length - done));
+      final int base = nextSlot((done == 0) ? type : (byte) (type | CONTINUATION), chunk, nanos);
+      if (chunk > 0) {
+        System.arraycopy(buf, (offset + done), slots, (base + DATA_OFFSET), chunk);
+      }
+      done += chunk;
+    } while (done < length);
+  }
+
+  // Returns the index in slots of the slot claimed, with its header filled in.
+  private int nextSlot(byte type, int length, long nanos) {
+    final int base = (int) (count & mask) * SLOT_SIZE;
+    count++;
+
+    slots[base + TYPE_OFFSET] = type;
+    slots[base + LENGTH_OFFSET] = (byte) length;
+    for (int i = 0; i < 8; i++) {
+      slots[base + NANOS_OFFSET + i] = (byte) (nanos >>> (56 - (8 * i)));
+    }
+    return base;
+  }
+
+  /**
+   * @return the ring, oldest slot first, behind a header with the clocks needed to turn the slot
+   * times back into wall clock times.
+   */
+  public byte[] snapshot() {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(slots.length + 32);
+    try {
+      dump(bos);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return bos.toByteArray();
+  }
+
+  public void dump(OutputStream os) throws IOException {
+    final byte[] copy;
+    final int slotCount;
+    final long wallMillis;
+    final long nanoTime;
+
+    synchronized (this) {
+      wallMillis = System.currentTimeMillis();
+      nanoTime = System.nanoTime();
+      slotCount = (int) Math.min(count, (mask + 1));
+
+      copy = new byte[slotCount * SLOT_SIZE];
+      final int first = (int) ((count - slotCount) & mask);
+      final int firstRun = Math.min(slotCount, ((mask + 1) - first));
+      System.arraycopy(slots, (first * SLOT_SIZE), copy, 0, (firstRun * SLOT_SIZE));
+      if (firstRun < slotCount) {
+        System.arraycopy(slots, 0, copy, (firstRun * SLOT_SIZE),
+            ((slotCount - firstRun) * SLOT_SIZE));
+      }
+    }
+
+    DataOutputStream dos = new DataOutputStream(os);
+    dos.writeInt(MAGIC);
+    dos.writeLong(wallMillis);
+    dos.writeLong(nanoTime);
+    dos.writeInt(slotCount);
+    dos.write(copy);
+    dos.flush();
+  }
+
+}
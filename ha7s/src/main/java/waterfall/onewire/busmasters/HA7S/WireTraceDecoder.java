@@ -0,0 +1,165 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.ReadResult;
+
+/**
+ * Turns a WireTrace snapshot back into the trace lines the serial classes used to log, one line
+ * per exchange:
+ *
+ * <pre>
+ * 2018-11-03 23:59:45.000 w[18]:A7C0000063BB13028{0D} w[6]:W0144{0D} [+0] r[+4 16]:7C0000063BB13028{0D} ... [+9]:RR_Success
+ * </pre>
+ *
+ * Times in brackets are milliseconds since the first write of the exchange. Flushed bytes are put
+ * on a line of their own.
+ *
+ * Run with: java -cp ... waterfall.onewire.busmasters.HA7S.WireTraceDecoder dumpFile...
+ */
+public class WireTraceDecoder {
+
+  public static void main(String[] args) throws IOException {
+    for (String fileName : args) {
+      try (InputStream is = new FileInputStream(fileName)) {
+        decode(is, System.out);
+      }
+    }
+  }
+
+  public static void decode(byte[] snapshot, Appendable out) throws IOException {
+    decode(new ByteArrayInputStream(snapshot), out);
+  }
+
+  public static void decode(InputStream is, Appendable out) throws IOException {
+    DataInputStream dis = new DataInputStream(is);
+    if (dis.readInt() != WireTrace.MAGIC) {
+      throw new IOException("not a WireTrace snapshot");
+    }
+    final long wallMillis = dis.readLong();
+    final long nanoTime = dis.readLong();
+    final int slotCount = dis.readInt();
+
+    final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    final byte[] slot = new byte[WireTrace.SLOT_SIZE];
+    final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    final StringBuilder line = new StringBuilder();
+    long exchangeStartNanos = 0;
+    boolean inExchange = false;
+
+    // Each record is rendered when the slot after its last one is seen, so look one slot ahead.
+    byte type = 0;
+    long nanos = 0;
+
+    for (int s = 0; s <= slotCount; s++) {
+      byte nextType = 0;
+      if (s < slotCount) {
+        dis.readFully(slot);
+        nextType = slot[WireTrace.TYPE_OFFSET];
+        if ((nextType & WireTrace.CONTINUATION) != 0) {
+          if (type == 0) {
+            continue; // the start of this record has been overwritten
+          }
+          data.write(slot, WireTrace.DATA_OFFSET, (slot[WireTrace.LENGTH_OFFSET] & 0xff));
+          continue;
+        }
+      }
+
+      // render the record just finished
+      if (type != 0) {
+        final byte[] bytes = data.toByteArray();
+        if (type == WireTrace.FLUSH) {
+          out.append(dateFormat.format(new Date(toMillis(nanos, wallMillis, nanoTime))))
+              .append(String.format(" flushing[%d]:%s", bytes.length, toSafeString(bytes)))
+              .append('\n');
+        } else {
+          if (!inExchange) {
+            inExchange = true;
+            exchangeStartNanos = nanos;
+            line.setLength(0);
+            line.append(dateFormat.format(new Date(toMillis(nanos, wallMillis, nanoTime))));
+          }
+          final long plus = TimeUnit.NANOSECONDS.toMillis(nanos - exchangeStartNanos);
+          switch (type) {
+            case WireTrace.WRITE:
+              line.append(String.format(" w[%d]:%s", bytes.length, toSafeString(bytes)));
+              break;
+            case WireTrace.WRITE_END:
+              line.append(String.format(" [+%d]", plus));
+              break;
+            case WireTrace.READ:
+              line.append(String.format(" r[+%d %d]:%s", plus, bytes.length,
+                  toSafeString(bytes)));
+              break;
+            case WireTrace.RESULT:
+              line.append(String.format(" [+%d]:%s", plus, errorName(bytes)));
+              out.append(line).append('\n');
+              inExchange = false;
+              break;
+            default:
+              line.append(String.format(" ?%d", type));
+              break;
+          }
+        }
+      }
+
+      if (s < slotCount) {
+        type = nextType;
+        nanos = readNanos(slot);
+        data.reset();
+        data.write(slot, WireTrace.DATA_OFFSET, (slot[WireTrace.LENGTH_OFFSET] & 0xff));
+      }
+    }
+
+    // an exchange still in progress when the snapshot was taken
+    if (inExchange) {
+      out.append(line).append(" ...").append('\n');
+    }
+  }
+
+  private static long readNanos(byte[] slot) {
+    long nanos = 0;
+    for (int i = 0; i < 8; i++) {
+      nanos = (nanos << 8) | (slot[WireTrace.NANOS_OFFSET + i] & 0xff);
+    }
+    return nanos;
+  }
+
+  private static long toMillis(long nanos, long wallMillis, long nanoTime) {
+    return wallMillis - TimeUnit.NANOSECONDS.toMillis(nanoTime - nanos);
+  }
+
+  private static String errorName(byte[] bytes) {
+    ReadResult.ErrorCode[] codes = ReadResult.ErrorCode.values();
+    if ((bytes.length == 1) && ((bytes[0] & 0xff) < codes.length)) {
+      return codes[bytes[0] & 0xff].name();
+    }
+    return "?";
+  }
+
+  static String toSafeString(byte[] buf) {
+    if (buf.length == 0) {
+      return "{empty}";
+    }
+
+    StringBuilder sb = new StringBuilder();
+
+    for (byte b : buf) {
+      if (b < 32) {
+        sb.append(String.format("{%02X}", b));
+      } else {
+        sb.append((char) b);
+      }
+    }
+
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,220 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmasters.HA7S.CmdTemplate.Check;
+import waterfall.onewire.busmasters.HA7S.HA7S.BusDataException;
+import waterfall.onewire.busmasters.HA7S.HA7S.BusFaultException;
+
+public class BusResyncTests {
+
+  private static final CmdTemplate template = CmdTemplate.builder()
+      .select()
+      .frame(new byte[]{'W', '0', '1', '4', '4', '\r'}, 2, Check.ECHO, 3, 2)
+      .reset()
+      .build();
+
+  @Test
+  public void testNoFault() {
+    BusResync busResync = new BusResync();
+    FlakySerial serial = new FlakySerial(0, 0);
+
+    busResync.run(serial, newFrames());
+
+    Assert.assertEquals(serial.runCount, 1);
+    Assert.assertEquals(serial.resetCount, 0);
+    Assert.assertEquals(busResync.getRetryCount(), 0);
+    Assert.assertEquals(busResync.getRecoveredCount(), 0);
+  }
+
+  @Test
+  public void testRecover() {
+    BusResync busResync = new BusResync();
+    // the first reset still sees the tail of the garbled response
+    FlakySerial serial = new FlakySerial(1, 1);
+
+    busResync.run(serial, newFrames());
+
+    Assert.assertEquals(serial.runCount, 2);
+    Assert.assertEquals(serial.resetCount, (1 + BusResync.CLEAN_RESETS_NEEDED));
+    Assert.assertEquals(busResync.getRetryCount(), 1);
+    Assert.assertEquals(busResync.getRecoveredCount(), 1);
+    Assert.assertEquals(busResync.getFailedCount(), 0);
+  }
+
+  @Test
+  public void testMaxRetries() {
+    BusResync busResync = new BusResync();
+    busResync.setMaxRetries(2);
+    FlakySerial serial = new FlakySerial(3, 0);
+
+    try {
+      busResync.run(serial, newFrames());
+      Assert.fail("expected BusDataException");
+    } catch (BusDataException e) {
+      // expected
+    }
+
+    Assert.assertEquals(serial.runCount, 3);
+    Assert.assertEquals(busResync.getRetryCount(), 2);
+    Assert.assertEquals(busResync.getFailedCount(), 1);
+  }
+
+  @Test
+  public void testNoBudget() {
+    BusResync busResync = new BusResync();
+    busResync.setBudgetMSec(0);
+    FlakySerial serial = new FlakySerial(1, 0);
+
+    try {
+      busResync.run(serial, newFrames());
+      Assert.fail("expected BusDataException");
+    } catch (BusDataException e) {
+      // expected
+    }
+
+    Assert.assertEquals(serial.runCount, 1);
+    Assert.assertEquals(serial.resetCount, 0);
+  }
+
+  @Test
+  public void testResyncFails() {
+    BusResync busResync = new BusResync();
+    FlakySerial serial = new FlakySerial(1, Integer.MAX_VALUE);
+
+    try {
+      busResync.run(serial, newFrames());
+      Assert.fail("expected BusDataException");
+    } catch (BusDataException e) {
+      // expected
+    }
+
+    Assert.assertEquals(serial.runCount, 1);
+    Assert.assertEquals(serial.resetCount, BusResync.MAX_RESETS);
+    Assert.assertEquals(busResync.getFailedCount(), 1);
+  }
+
+  @Test
+  public void testStrayResetRecover() {
+    BusResync busResync = new BusResync();
+    // late bytes from an earlier exchange land in the trailing reset
+    FlakySerial serial = new FlakySerial(0, 0);
+    serial.strayResetRuns = 1;
+
+    busResync.run(serial, newFrames());
+
+    Assert.assertEquals(serial.runCount, 2);
+    Assert.assertEquals(serial.resetCount, BusResync.CLEAN_RESETS_NEEDED);
+    Assert.assertEquals(busResync.getRecoveredCount(), 1);
+  }
+
+  @Test(expectedExceptions = BusFaultException.class)
+  public void testBusFaultNotRetried() {
+    BusResync busResync = new BusResync();
+    FlakySerial serial = new FlakySerial(0, 0);
+    serial.stopped = true;
+
+    try {
+      busResync.run(serial, newFrames());
+    } finally {
+      Assert.assertEquals(serial.runCount, 1);
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNegativeBudget() {
+    new BusResync().setBudgetMSec(-1);
+  }
+
+  private static CmdTemplate.Frames newFrames() {
+    CmdTemplate.Frames frames = template.newFrames();
+    frames.setAddress(DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28));
+    return frames;
+  }
+
+  /**
+   * Garbles the echo of the first garbledRuns pipelined calls, and answers the first dirtyResets
+   * resets with stale bytes.
+   */
+  private static class FlakySerial implements HA7SSerial {
+
+    private final int garbledRuns;
+    private final int dirtyResets;
+    int strayResetRuns = 0;
+    boolean stopped = false;
+    int runCount = 0;
+    int resetCount = 0;
+
+    FlakySerial(int garbledRuns, int dirtyResets) {
+      this.garbledRuns = garbledRuns;
+      this.dirtyResets = dirtyResets;
+    }
+
+    @Override
+    public String getPortName() {
+      return "flaky";
+    }
+
+    @Override
+    public StartResult start() {
+      return StartResult.SR_Success;
+    }
+
+    @Override
+    public boolean isStarted() {
+      return true;
+    }
+
+    @Override
+    public ReadResult writeReadTilCR(byte[] wBuf, byte[] rBuf, ReadResult readResult) {
+      return writeReadTilCR(wBuf, rBuf, readResult, ResponseTimeout.ADAPTIVE);
+    }
+
+    @Override
+    public ReadResult writeReadTilCR(byte[] wBuf, byte[] rBuf, ReadResult readResult,
+        long timeoutMSec) {
+      Assert.assertEquals(wBuf, new byte[]{'R'});
+      Assert.assertTrue(timeoutMSec > 0);
+      if (resetCount++ < dirtyResets) {
+        rBuf[0] = '4';
+        return readResult.setSuccess(1, 0, 0);
+      }
+      return readResult.setSuccess(0, 0, 0);
+    }
+
+    @Override
+    public ReadResult[] pipelineWriteReadTilCR(byte[][] wBufs, byte[][] rBufs,
+        ReadResult[] readResults) {
+      return pipelineWriteReadTilCR(wBufs, rBufs, readResults, ResponseTimeout.ADAPTIVE);
+    }
+
+    @Override
+    public ReadResult[] pipelineWriteReadTilCR(byte[][] wBufs, byte[][] rBufs,
+        ReadResult[] readResults, long timeoutMSec) {
+      if (stopped) {
+        runCount++;
+        throw new BusFaultException("bus was stopped");
+      }
+      final boolean stray = (runCount < strayResetRuns);
+      final boolean garbled = (runCount++ < garbledRuns);
+
+      // select
+      System.arraycopy(wBufs[0], 1, rBufs[0], 0, 16);
+      readResults[0].setSuccess(16, 1, 2);
+      // convert, the echo is off by one char when garbled
+      rBufs[1][0] = (byte) (garbled ? '\r' : '4');
+      rBufs[1][1] = '4';
+      readResults[1].setSuccess(2, 3, 4);
+      // reset
+      readResults[2].setSuccess((stray ? 1 : 0), 5, 6);
+      return readResults;
+    }
+
+    @Override
+    public StopResult stop() {
+      return StopResult.SR_Success;
+    }
+  }
+
+}
@@ -0,0 +1,169 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmasters.HA7S.CmdTemplate.Check;
+import waterfall.onewire.busmasters.HA7S.HA7S.BusDataException;
+import waterfall.onewire.busmasters.HA7S.HA7S.BusFaultException;
+
+public class CmdTemplateTests {
+
+  private static final byte[] readPowerSupplyCmd = {'W', '0', '2', 'B', '4', 'F', 'F', '\r'};
+
+  private static final CmdTemplate template = CmdTemplate.builder()
+      .select()
+      .frame(readPowerSupplyCmd, 4, Check.ECHO_POWER_SUPPLY, 3, 2)
+      .frame(Check.ECHO_HEX, 3, 2)
+      .reset()
+      .build();
+
+  @Test
+  public void testFrames() {
+    DSAddress dsAddr = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+    CmdTemplate.Frames frames = template.newFrames();
+    frames.setAddress(dsAddr);
+
+    Assert.assertEquals(template.getStepCount(), 4);
+    Assert.assertEquals(new String(frames.getWBuf(0)), "A" + DSAddress._EE0000065BC0AE28 + "\r");
+    Assert.assertEquals(frames.getRBuf(0).length, 16);
+    Assert.assertSame(frames.getWBuf(1), readPowerSupplyCmd);
+    Assert.assertEquals(frames.getWBuf(3), new byte[]{'R'});
+
+    // every cmd has its own select frame and read buffers
+    CmdTemplate.Frames other = template.newFrames();
+    Assert.assertNotSame(other.getWBuf(0), frames.getWBuf(0));
+    Assert.assertNotSame(other.getRBuf(1), frames.getRBuf(1));
+  }
+
+  @Test
+  public void testSetFrame() {
+    CmdTemplate.Frames frames = template.newFrames();
+    Assert.assertNull(frames.getRBuf(2));
+
+    frames.setFrame(2, "W03BEFFFF\r".getBytes(), 6);
+    byte[] rBuf = frames.getRBuf(2);
+    Assert.assertEquals(rBuf.length, 6);
+
+    // same length, so the read buffer is reused
+    frames.setFrame(2, "W03BE0000\r".getBytes(), 6);
+    Assert.assertSame(frames.getRBuf(2), rBuf);
+
+    frames.setFrame(2, "W02BEFF\r".getBytes(), 4);
+    Assert.assertEquals(frames.getRBuf(2).length, 4);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testSetFrameFixed() {
+    template.newFrames().setFrame(1, readPowerSupplyCmd, 4);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testTwoSelects() {
+    CmdTemplate.builder().select().select();
+  }
+
+  @Test(dataProvider = "createRunCases")
+  public void testRun(String address, String powerSupply, String scratchpad, String reset,
+      Class<?> expectedException) {
+    DSAddress dsAddr = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+    CmdTemplate.Frames frames = template.newFrames();
+    frames.setAddress(dsAddr);
+    frames.setFrame(2, "W03BEFFFF\r".getBytes(), 6);
+
+    HA7SSerial serial = new ResponseSerial(address, powerSupply, scratchpad, reset);
+
+    Exception thrown = null;
+    try {
+      frames.run(serial);
+    } catch (BusDataException | BusFaultException e) {
+      thrown = e;
+    }
+
+    if (expectedException == null) {
+      Assert.assertNull(thrown);
+      Assert.assertEquals(new String(frames.getRBuf(2)), scratchpad);
+      Assert.assertEquals(frames.getReadResult(1).getPostWriteCTM(), 2L);
+    } else {
+      Assert.assertNotNull(thrown);
+      Assert.assertEquals(thrown.getClass(), expectedException);
+    }
+  }
+
+  @DataProvider
+  public Object[][] createRunCases() {
+    final String addr = DSAddress._EE0000065BC0AE28;
+    return new Object[][]{
+        {addr, "B4FF", "BE1234", "", null},
+        {addr, "B400", "BEABCD", "", null},
+        {"EE0000065BC0AE29", "B4FF", "BE1234", "", BusDataException.class},
+        {addr.substring(1), "B4FF", "BE1234", "", BusDataException.class},
+        {addr, "B4F1", "BE1234", "", BusDataException.class},
+        {addr, "44FF", "BE1234", "", BusDataException.class},
+        {addr, "B4FF", "BE12x4", "", BusDataException.class},
+        {addr, "B4FF", "4E1234", "", BusDataException.class},
+        {addr, "B4FF", "BE12", "", BusDataException.class},
+        {addr, "B4FF", "BE1234", "0", BusDataException.class},
+        {addr, "B4FF", "BE1234", null, BusDataException.class},
+    };
+  }
+
+  /**
+   * Answers each frame with a fixed response, a null response fails the frame.
+   */
+  private static class ResponseSerial implements HA7SSerial {
+
+    private final String[] responses;
+
+    ResponseSerial(String... responses) {
+      this.responses = responses;
+    }
+
+    @Override
+    public String getPortName() {
+      return "responses";
+    }
+
+    @Override
+    public StartResult start() {
+      return StartResult.SR_Success;
+    }
+
+    @Override
+    public boolean isStarted() {
+      return true;
+    }
+
+    @Override
+    public ReadResult writeReadTilCR(byte[] wBuf, byte[] rBuf, ReadResult readResult) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ReadResult[] pipelineWriteReadTilCR(byte[][] wBufs, byte[][] rBufs,
+        ReadResult[] readResults) {
+      Assert.assertEquals(wBufs.length, responses.length);
+      for (int i = 0; i < wBufs.length; i++) {
+        if (responses[i] == null) {
+          readResults[i].setError(ReadResult.ErrorCode.RR_Error);
+          continue;
+        }
+        byte[] response = responses[i].getBytes();
+        if (response.length > rBufs[i].length) {
+          readResults[i].setError(ReadResult.ErrorCode.RR_ReadOverrun);
+          continue;
+        }
+        System.arraycopy(response, 0, rBufs[i], 0, response.length);
+        readResults[i].setSuccess(response.length, (i + 1), (i + 2));
+      }
+      return readResults;
+    }
+
+    @Override
+    public StopResult stop() {
+      return StopResult.SR_Success;
+    }
+  }
+
+}
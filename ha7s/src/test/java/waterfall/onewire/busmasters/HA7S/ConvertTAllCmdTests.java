@@ -0,0 +1,107 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmaster.ConvertTAllCmd;
+import waterfall.onewire.busmasters.HA7S.part.DS18B20;
+
+public class ConvertTAllCmdTests extends TestBase {
+
+  @Test
+  public void testConvertTAllCmd() {
+
+    final long cmdWriteCTM = 5;
+    final long cmdReadCRCTM = 6;
+
+    HA7SSerial mockSerial = getStartedMockSerial();
+    HA7S ha7s = new HA7S(mockSerial);
+
+    ConvertTAllCmd cmd = ha7s.queryConvertTAllCmd();
+    Assert.assertNotNull(cmd);
+
+    try {
+      when(mockSerial.writeReadTilCR(any(byte[].class), any(byte[].class)))
+          .thenAnswer(makeAnswerForCmd(new byte[]{'R'},
+              new HA7SSerial.ReadResult(0, 1L, 2L), null))
+          .thenAnswer(makeAnswerForCmd(new byte[]{'W', '0', '2', 'C', 'C', '4', '4', '\r'},
+              new HA7SSerial.ReadResult(4, cmdWriteCTM, cmdReadCRCTM),
+              new byte[]{'C', 'C', '4', '4'}))
+          .thenAnswer(makeAnswerForCmd(new byte[]{'R'},
+              new HA7SSerial.ReadResult(0, 7L, 8L), null));
+
+      Assert.assertEquals(cmd.execute(), ConvertTAllCmd.Result.success);
+      Assert.assertEquals(cmd.getResultWriteCTM(), cmdWriteCTM);
+
+      // the bus echoed back something other than the skip rom and convert
+      when(mockSerial.writeReadTilCR(any(byte[].class), any(byte[].class)))
+          .thenAnswer(makeAnswerForReadZero(1L, 2L))
+          .thenAnswer(makeAnswerForReadResult(
+              new HA7SSerial.ReadResult(4, cmdWriteCTM, cmdReadCRCTM),
+              new byte[]{'C', 'C', '4', '0'}))
+          .thenAnswer(makeAnswerForReadZero(7L, 8L));
+
+      Assert.assertEquals(cmd.execute(), ConvertTAllCmd.Result.busFault);
+
+      ha7s.stopBus();
+
+      ConvertTAllCmd.Result result = cmd.execute();
+      Assert.assertEquals(result, ConvertTAllCmd.Result.busFault);
+
+    } catch (Exception e) {
+      Assert.fail("Unexpected exception:" + e);
+    }
+  }
+
+  @Test
+  public void testConvertTAllCmdReachesEveryDevice() {
+    DS18B20 dev_A = new DS18B20(DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28));
+    DS18B20 dev_B = new DS18B20(DSAddress.fromUncheckedHex(DSAddress._090000065BD53528));
+    DS18B20 dev_C = new DS18B20(DSAddress.fromUncheckedHex(DSAddress._5F0000065CCD1A28));
+
+    HA7SSerialDummy serial = new HA7SSerialDummy("port");
+    serial.addDevice(dev_A).addDevice(dev_B).addDevice(dev_C);
+    serial.start();
+
+    HA7S ha7s = new HA7S(serial);
+
+    ConvertTAllCmd cmd = ha7s.queryConvertTAllCmd();
+    Assert.assertEquals(cmd.execute(), ConvertTAllCmd.Result.success);
+    Assert.assertEquals(dev_A.getConvertTCount(), 1);
+    Assert.assertEquals(dev_B.getConvertTCount(), 1);
+    Assert.assertEquals(dev_C.getConvertTCount(), 1);
+
+    Assert.assertEquals(cmd.execute(), ConvertTAllCmd.Result.success);
+    Assert.assertEquals(dev_A.getConvertTCount(), 2);
+    Assert.assertEquals(dev_B.getConvertTCount(), 2);
+    Assert.assertEquals(dev_C.getConvertTCount(), 2);
+
+    ha7s.stopBus();
+  }
+
+  private Answer<HA7SSerial.ReadResult> makeAnswerForCmd(byte[] expectedCmd,
+      HA7SSerial.ReadResult serialReadResult, byte[] rbuf_data) {
+    return new Answer<HA7SSerial.ReadResult>() {
+      @Override
+      public HA7SSerial.ReadResult answer(final InvocationOnMock invocation) {
+        byte[] wbuf = (byte[]) (invocation.getArguments())[0];
+        byte[] rbuf = (byte[]) (invocation.getArguments())[1];
+
+        Assert.assertEquals(wbuf, expectedCmd);
+        if (rbuf_data != null) {
+          for (int i = 0; i < rbuf_data.length; i++) {
+            rbuf[i] = rbuf_data[i];
+          }
+        }
+
+        return serialReadResult;
+      }
+    };
+  }
+
+}
@@ -0,0 +1,51 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmaster.ConvertTCmd;
+import waterfall.onewire.busmaster.SearchBusCmd;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.StartResult;
+import waterfall.onewire.busmasters.HA7S.part.DS18B20;
+
+public class ExecuteAsyncTests extends TestBase {
+
+  @Test
+  public void testExecuteAsync() throws Exception {
+    DSAddress dsAddr_A = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+    DSAddress dsAddr_B = DSAddress.fromUncheckedHex(DSAddress._090000065BD53528);
+
+    HA7SSerialDummy serial = new HA7SSerialDummy("port");
+    serial.addDevice(new DS18B20(dsAddr_A)).addDevice(new DS18B20(dsAddr_B));
+    Assert.assertEquals(serial.start(), StartResult.SR_Success);
+    HA7S ha7s = new HA7S(serial);
+
+    ConvertTCmd convertA = ha7s.queryConvertTCmd(dsAddr_A);
+    ConvertTCmd convertB = ha7s.queryConvertTCmd(dsAddr_B);
+    SearchBusCmd search = ha7s.querySearchBusCmd();
+
+    CompletableFuture<ConvertTCmd.Result> futureA = convertA.executeAsync();
+    CompletableFuture<ConvertTCmd.Result> futureB = convertB.executeAsync();
+    CompletableFuture<SearchBusCmd.Result> futureSearch = search.executeAsync();
+
+    Assert.assertEquals(futureA.get(5, TimeUnit.SECONDS), ConvertTCmd.Result.success);
+    Assert.assertEquals(futureB.get(5, TimeUnit.SECONDS), ConvertTCmd.Result.success);
+    Assert.assertEquals(futureSearch.get(5, TimeUnit.SECONDS), SearchBusCmd.Result.success);
+
+    // queued in order, so the converts are done before the search is
+    Assert.assertTrue(convertB.getResultWriteCTM() >= convertA.getResultWriteCTM());
+    List<DSAddress> list = search.getResultList();
+    Assert.assertEquals(list.size(), 2);
+    Assert.assertTrue(list.contains(dsAddr_A));
+    Assert.assertTrue(list.contains(dsAddr_B));
+
+    ha7s.stopBus();
+
+    Assert.assertEquals(convertA.executeAsync().get(5, TimeUnit.SECONDS),
+        ConvertTCmd.Result.busFault);
+  }
+
+}
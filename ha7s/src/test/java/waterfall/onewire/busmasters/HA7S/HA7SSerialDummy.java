@@ -1,9 +1,11 @@
 package waterfall.onewire.busmasters.HA7S;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import waterfall.onewire.Convert;
 import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmaster.Command;
 
 /**
  * Created by dwaterfa on 1/18/17.
@@ -54,7 +56,7 @@ public class HA7SSerialDummy implements HA7SSerial {
   }
 
   @Override
-  public ReadResult writeReadTilCR(byte[] wBuf, byte[] rBuf) {
+  public ReadResult writeReadTilCR(byte[] wBuf, byte[] rBuf, ReadResult readResult) {
     final String logContext = "writeReadTilCR()";
 
     if (wBuf == null) {
@@ -80,7 +82,7 @@ public class HA7SSerialDummy implements HA7SSerial {
               ;
             }
           }
-          return new ReadResult(readCount, postWriteCTM, readCRCTM);
+          return readResult.setSuccess(readCount, postWriteCTM, readCRCTM);
         }
 
         switch (wBuf[wStart]) {
@@ -132,6 +134,30 @@ public class HA7SSerialDummy implements HA7SSerial {
       }
   }
 
+  @Override
+  public ReadResult[] pipelineWriteReadTilCR(byte[][] wBufs, byte[][] rBufs,
+      ReadResult[] readResults) {
+    if ((wBufs == null) || (rBufs == null) || (readResults == null) ||
+        (wBufs.length != rBufs.length) || (wBufs.length != readResults.length)) {
+      throw new IllegalArgumentException(
+          "wBufs, rBufs and readResults must be non-null and the same length");
+    }
+
+    // There is no serial turnaround to save here, the frames are simply answered in order.
+    boolean failed = false;
+
+    for (int i = 0; i < wBufs.length; i++) {
+      if (failed) {
+        readResults[i].setError(ReadResult.ErrorCode.RR_Error);
+      } else {
+        writeReadTilCR(wBufs[i], rBufs[i], readResults[i]);
+        failed = (readResults[i].getError() != ReadResult.ErrorCode.RR_Success);
+      }
+    }
+
+    return readResults;
+  }
+
   @Override
   public StopResult stop() {
     if (started) {
@@ -314,6 +340,14 @@ public class HA7SSerialDummy implements HA7SSerial {
     if (wBuf[wEnd - 1] != 0x0d) {
       throw new IllegalArgumentException("WriteBlock must be terminated by CR");
     }
+    short end = 0;
+    for (int i = wStart + 3; i < (wEnd - 1); i++) {
+      rBuf[end++] = wBuf[i];
+    }
+    if ((activeDeviceHexAddr == null) && (end >= 2) &&
+        ((byte) Convert.hexTo8bits(rBuf[0], rBuf[1]) == Command.SKIP_ROM)) {
+      return skipROMWriteBlock(rBuf, end);
+    }
     if (activeDeviceHexAddr == null) {
       throw new IllegalArgumentException("Write block has no active device addr");
     }
@@ -321,10 +355,6 @@ public class HA7SSerialDummy implements HA7SSerial {
     if (dd == null) {
       throw new IllegalArgumentException("Write block cannot find active device addr");
     }
-    short end = 0;
-    for (int i = wStart + 3; i < (wEnd - 1); i++) {
-      rBuf[end++] = wBuf[i];
-    }
     try {
       dd.writeBlock(rBuf, (short) 0, end);
       return (end - 0);
@@ -333,6 +363,31 @@ public class HA7SSerialDummy implements HA7SSerial {
     }
   }
 
+  // Every device on the bus sees the data after the Skip ROM byte. What is read back is the wired-AND
+  // of what each of the devices drove on the bus.
+  private int skipROMWriteBlock(byte[] rBuf, short end) {
+    final int dataLength = (end - 2);
+    byte[] busData = Arrays.copyOfRange(rBuf, 2, end);
+
+    for (HA7SDummyDevice dd : deviceDataList.values()) {
+      byte[] deviceData = Arrays.copyOfRange(rBuf, 2, end);
+      try {
+        dd.writeBlock(deviceData, (short) 0, (short) dataLength);
+      } catch (Exception e) {
+        throw new RuntimeException("Skip ROM write block device threw exception", e);
+      }
+      for (int i = 0; i < dataLength; i += 2) {
+        int b = Convert.hexTo8bits(busData[i], busData[i + 1]) &
+            Convert.hexTo8bits(deviceData[i], deviceData[i + 1]);
+        busData[i] = Convert.fourBitsToHex(b >> 4);
+        busData[i + 1] = Convert.fourBitsToHex(b & 0xf);
+      }
+    }
+
+    System.arraycopy(busData, 0, rBuf, 2, dataLength);
+    return end;
+  }
+
   // This method knows about which cmd codes are supported and what their format is, in particular
   // which ones do not need CRs at the end. Returns the end index of the parse relative to the start.
 
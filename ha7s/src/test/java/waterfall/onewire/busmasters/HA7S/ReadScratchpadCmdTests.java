@@ -42,6 +42,14 @@ public class ReadScratchpadCmdTests extends TestBase {
       Assert.assertTrue(Arrays.equals(cmd.getResultHexData(),
           Arrays.copyOfRange(read_data, 2, read_data.length)));
 
+      // the hex is left where it was read, and only decoded when asked for
+      byte[] hexBuf = cmd.getResultHexBuf();
+      Assert.assertTrue(Arrays.equals(
+          Arrays.copyOfRange(hexBuf, cmd.getResultHexOffset(), cmd.getResultHexOffset() + 18),
+          Arrays.copyOfRange(read_data, 2, read_data.length)));
+      Assert.assertEquals(cmd.getResultData(), new byte[]{0x01, 0x23, 0x45, 0x67, (byte) 0x89,
+          0x0A, (byte) 0xF0, 0x12, 0x34});
+
       ha7s.stopBus();
 
       ReadScratchpadCmd.Result result = cmd.execute();
@@ -0,0 +1,120 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ResponseTimeoutTests {
+
+  private static final byte[][] wBufs = {"AEE0000065BC0AE28\r".getBytes(), "W0144\r".getBytes()};
+  private static final byte[][] rBufs = {new byte[16], new byte[2]};
+
+  @Test
+  public void testWireNanos() {
+    // 24 written, 16 + 1 and 2 + 1 read
+    Assert.assertEquals(ResponseTimeout.wireNanos(wBufs, rBufs), (44 * ResponseTimeout.CHAR_NANOS));
+  }
+
+  @Test
+  public void testFirstCallUsesMax() {
+    ResponseTimeout responseTimeout = new ResponseTimeout(500);
+    Assert.assertEquals(responseTimeout.timeoutNanos(wBufs, rBufs, ResponseTimeout.ADAPTIVE),
+        TimeUnit.MILLISECONDS.toNanos(500));
+  }
+
+  @Test
+  public void testExplicit() {
+    ResponseTimeout responseTimeout = new ResponseTimeout(500);
+    Assert.assertEquals(responseTimeout.timeoutNanos(wBufs, rBufs, 20),
+        TimeUnit.MILLISECONDS.toNanos(20));
+    // longer than the max is still used as given
+    Assert.assertEquals(responseTimeout.timeoutNanos(wBufs, rBufs, 1000),
+        TimeUnit.MILLISECONDS.toNanos(1000));
+  }
+
+  @Test
+  public void testLearn() {
+    ResponseTimeout responseTimeout = new ResponseTimeout(15000);
+    responseTimeout.setMinMarginMSec(10);
+    final long wireNanos = ResponseTimeout.wireNanos(wBufs, rBufs);
+
+    for (int i = 0; i < 50; i++) {
+      responseTimeout.recordResponse(wBufs, rBufs, (wireNanos + TimeUnit.MILLISECONDS.toNanos(2)));
+    }
+    Assert.assertEquals(responseTimeout.getResponseCount(), 50);
+
+    // the turnaround is steady and under the min margin
+    Assert.assertEquals(responseTimeout.timeoutNanos(wBufs, rBufs, ResponseTimeout.ADAPTIVE),
+        (wireNanos + TimeUnit.MILLISECONDS.toNanos(10)));
+  }
+
+  @Test
+  public void testBackoff() {
+    ResponseTimeout responseTimeout = new ResponseTimeout(500);
+    responseTimeout.setMinMarginMSec(10);
+    responseTimeout.recordResponse(wBufs, rBufs, 0);
+    final long margin = responseTimeout.getMarginNanos(wBufs);
+    Assert.assertEquals(margin, TimeUnit.MILLISECONDS.toNanos(10));
+
+    responseTimeout.recordTimeout(wBufs);
+    Assert.assertEquals(responseTimeout.getMarginNanos(wBufs), (2 * margin));
+    responseTimeout.recordTimeout(wBufs);
+    Assert.assertEquals(responseTimeout.getMarginNanos(wBufs), (4 * margin));
+    Assert.assertEquals(responseTimeout.getTimeoutCount(), 2);
+
+    // never past the max
+    for (int i = 0; i < 10; i++) {
+      responseTimeout.recordTimeout(wBufs);
+    }
+    Assert.assertEquals(responseTimeout.getMarginNanos(wBufs), TimeUnit.MILLISECONDS.toNanos(500));
+
+    // a response in time resets it
+    responseTimeout.recordResponse(wBufs, rBufs, 0);
+    Assert.assertEquals(responseTimeout.getMarginNanos(wBufs), margin);
+  }
+
+  @Test
+  public void testMarginPerCommand() {
+    final byte[][] searchWBufs = {"S\r".getBytes()};
+    final byte[][] searchRBufs = {new byte[16]};
+    final byte[][] resetWBufs = {"R".getBytes()};
+    final byte[][] resetRBufs = {new byte[0]};
+
+    ResponseTimeout responseTimeout = new ResponseTimeout(15000);
+    responseTimeout.setMinMarginMSec(10);
+    for (int i = 0; i < 50; i++) {
+      responseTimeout.recordResponse(searchWBufs, searchRBufs,
+          (ResponseTimeout.wireNanos(searchWBufs, searchRBufs) + TimeUnit.MILLISECONDS
+              .toNanos(200)));
+      responseTimeout.recordResponse(resetWBufs, resetRBufs,
+          (ResponseTimeout.wireNanos(resetWBufs, resetRBufs) + TimeUnit.MILLISECONDS.toNanos(2)));
+    }
+
+    // the slow searches do not stretch the margin of the quick resets
+    final long searchMargin = responseTimeout.getMarginNanos(searchWBufs);
+    Assert.assertTrue(searchMargin >= TimeUnit.MILLISECONDS.toNanos(200));
+    Assert.assertEquals(responseTimeout.getMarginNanos(resetWBufs),
+        TimeUnit.MILLISECONDS.toNanos(10));
+
+    // nor does a search timing out
+    responseTimeout.recordTimeout(searchWBufs);
+    Assert.assertEquals(responseTimeout.getMarginNanos(searchWBufs), (2 * searchMargin));
+    Assert.assertEquals(responseTimeout.getMarginNanos(resetWBufs),
+        TimeUnit.MILLISECONDS.toNanos(10));
+
+    // a pipelined call is not yet known
+    Assert.assertEquals(responseTimeout.getMarginNanos(wBufs),
+        TimeUnit.MILLISECONDS.toNanos(15000));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testMaxNotPositive() {
+    new ResponseTimeout(0);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testNegativeTimeout() {
+    new ResponseTimeout(500).timeoutNanos(wBufs, rBufs, -1);
+  }
+
+}
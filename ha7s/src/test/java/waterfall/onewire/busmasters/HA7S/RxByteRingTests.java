@@ -0,0 +1,115 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class RxByteRingTests {
+
+  @Test(dataProvider = "createCapacityCases")
+  public void testCapacity(int requested, int expected) {
+    Assert.assertEquals(new RxByteRing(requested).capacity(), expected);
+  }
+
+  @DataProvider
+  public Object[][] createCapacityCases() {
+    return new Object[][]{
+        {1, 1},
+        {2, 2},
+        {3, 4},
+        {1000, 1024},
+        {1024, 1024},
+    };
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testCapacityZero() {
+    new RxByteRing(0);
+  }
+
+  @Test
+  public void testWrapAround() {
+    RxByteRing ring = new RxByteRing(8);
+    byte[] out = new byte[8];
+
+    // move the head and tail most of the way around first
+    Assert.assertEquals(ring.offer(new byte[]{1, 2, 3, 4, 5, 6}, 0, 6), 6);
+    Assert.assertEquals(ring.poll(out, 0, 8), 6);
+
+    Assert.assertEquals(ring.offer(new byte[]{'a', 'b', 'c', 'd', 'e'}, 0, 5), 5);
+    Assert.assertEquals(ring.available(), 5);
+    Assert.assertEquals(ring.poll(out, 1, 7), 5);
+    Assert.assertEquals(out[1], 'a');
+    Assert.assertEquals(out[2], 'b');
+    Assert.assertEquals(out[3], 'c');
+    Assert.assertEquals(out[4], 'd');
+    Assert.assertEquals(out[5], 'e');
+    Assert.assertEquals(ring.available(), 0);
+  }
+
+  @Test
+  public void testFullDrops() {
+    RxByteRing ring = new RxByteRing(4);
+
+    Assert.assertEquals(ring.offer(new byte[]{1, 2, 3}, 0, 3), 3);
+    Assert.assertEquals(ring.offer(new byte[]{4, 5, 6}, 0, 3), 1);
+    Assert.assertEquals(ring.getDroppedCount(), 2);
+
+    byte[] out = new byte[4];
+    Assert.assertEquals(ring.poll(out, 0, 4), 4);
+    Assert.assertEquals(out, new byte[]{1, 2, 3, 4});
+  }
+
+  @Test
+  public void testClear() {
+    RxByteRing ring = new RxByteRing(16);
+    ring.offer(new byte[]{'x', 'y', '\r'}, 0, 3);
+
+    Assert.assertEquals(ring.clear(), 3);
+    Assert.assertEquals(ring.available(), 0);
+    Assert.assertEquals(ring.poll(new byte[4], 0, 4), 0);
+  }
+
+  @Test
+  public void testTakeTimeout() throws InterruptedException {
+    RxByteRing ring = new RxByteRing(16);
+
+    long start = System.currentTimeMillis();
+    Assert.assertEquals(ring.take(new byte[4], 0, 4, RxByteRing.deadlineNanosFromNow(50)), 0);
+    Assert.assertTrue((System.currentTimeMillis() - start) >= 45);
+  }
+
+  @Test
+  public void testTakeWokenByProducer() throws Exception {
+    final RxByteRing ring = new RxByteRing(64);
+    final int total = 10000;
+
+    Thread producer = new Thread(() -> {
+      byte[] b = new byte[1];
+      for (int i = 0; i < total; i++) {
+        b[0] = (byte) i;
+        // wait for room rather than have the ring drop the byte
+        while (ring.available() == ring.capacity()) {
+          Thread.yield();
+        }
+        ring.offer(b, 0, 1);
+      }
+    });
+    producer.start();
+
+    byte[] out = new byte[7];
+    int received = 0;
+    while (received < total) {
+      int count = ring.take(out, 0, out.length, RxByteRing.deadlineNanosFromNow(5000));
+      Assert.assertTrue(count > 0, "timed out after " + received);
+      for (int i = 0; i < count; i++) {
+        Assert.assertEquals(out[i], (byte) (received + i));
+      }
+      received += count;
+    }
+
+    producer.join();
+    Assert.assertEquals(ring.getDroppedCount(), 0);
+  }
+
+}
@@ -1,5 +1,6 @@
 package waterfall.onewire.busmasters.HA7S;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -29,9 +30,42 @@ public class TestBase {
   protected HA7SSerial getStartedMockSerial() {
     HA7SSerial mockSerial = mock(HA7SSerial.class);
     when(mockSerial.isStarted()).thenReturn(true);
+    when(mockSerial.pipelineWriteReadTilCR(any(byte[][].class), any(byte[][].class),
+        any(HA7SSerial.ReadResult[].class)))
+        .thenAnswer(makeAnswerForPipeline(mockSerial));
     return mockSerial;
   }
 
+  // Hands each frame of a pipelined call to writeReadTilCR() so that tests can stub the frames
+  // one at a time in the order they are written.
+  protected Answer<HA7SSerial.ReadResult[]> makeAnswerForPipeline(HA7SSerial mockSerial) {
+    return new Answer<HA7SSerial.ReadResult[]>() {
+      @Override
+      public HA7SSerial.ReadResult[] answer(final InvocationOnMock invocation) {
+        byte[][] wbufs = (byte[][]) (invocation.getArguments())[0];
+        byte[][] rbufs = (byte[][]) (invocation.getArguments())[1];
+        HA7SSerial.ReadResult[] results = (HA7SSerial.ReadResult[]) (invocation.getArguments())[2];
+
+        boolean failed = false;
+        for (int i = 0; i < wbufs.length; i++) {
+          if (failed) {
+            results[i].setError(ReadResult.ErrorCode.RR_Error);
+            continue;
+          }
+          HA7SSerial.ReadResult frameResult = mockSerial.writeReadTilCR(wbufs[i], rbufs[i]);
+          if (frameResult.getError() == ReadResult.ErrorCode.RR_Success) {
+            results[i].setSuccess(frameResult.getReadCount(), frameResult.getPostWriteCTM(),
+                frameResult.getReadCRCTM());
+          } else {
+            results[i].setError(frameResult.getError());
+            failed = true;
+          }
+        }
+        return results;
+      }
+    };
+  }
+
   protected Answer<HA7SSerial.ReadResult> makeAnswerForReadResult(
       HA7SSerial.ReadResult serialReadResult, byte[] rbuf_data) {
     return new Answer<HA7SSerial.ReadResult>() {
@@ -0,0 +1,113 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.ReadResult.ErrorCode;
+
+public class WireTraceTests {
+
+  @Test
+  public void testSlotCount() {
+    Assert.assertEquals(new WireTrace(1).getSlotCount(), 1);
+    Assert.assertEquals(new WireTrace(100).getSlotCount(), 128);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testSlotCountZero() {
+    new WireTrace(0);
+  }
+
+  @Test
+  public void testDecodeExchange() throws IOException {
+    WireTrace wireTrace = new WireTrace(16);
+
+    byte[] select = "AEE0000065BC0AE28\r".getBytes();
+    byte[] convertT = "W0144\r".getBytes();
+    wireTrace.recordWrite(select, 0, select.length);
+    wireTrace.recordWrite(convertT, 0, convertT.length);
+    wireTrace.recordWriteEnd();
+    byte[] read = "EE0000065BC0AE28\r44\r".getBytes();
+    wireTrace.recordRead(read, 0, read.length);
+    wireTrace.recordResult(ErrorCode.RR_Success);
+
+    byte[] stale = "xx\r".getBytes();
+    wireTrace.recordFlush(stale, 0, stale.length);
+
+    String[] lines = decode(wireTrace);
+    Assert.assertEquals(lines.length, 2);
+    Assert.assertTrue(lines[0].matches(
+        "\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d\\.\\d{3} "
+            + "w\\[18\\]:AEE0000065BC0AE28\\{0D\\} w\\[6\\]:W0144\\{0D\\} \\[\\+\\d+\\] "
+            + "r\\[\\+\\d+ 20\\]:EE0000065BC0AE28\\{0D\\}44\\{0D\\} \\[\\+\\d+\\]:RR_Success"),
+        lines[0]);
+    Assert.assertTrue(lines[1].endsWith(" flushing[3]:xx{0D}"), lines[1]);
+  }
+
+  @Test
+  public void testLongRecord() throws IOException {
+    WireTrace wireTrace = new WireTrace(16);
+
+    // more than one slot's worth
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 150; i++) {
+      sb.append((char) ('A' + (i % 26)));
+    }
+    byte[] read = sb.toString().getBytes();
+    wireTrace.recordRead(read, 0, read.length);
+    wireTrace.recordResult(ErrorCode.RR_ReadOverrun);
+
+    Assert.assertEquals(wireTrace.getSlotsWritten(), 4);
+    String[] lines = decode(wireTrace);
+    Assert.assertEquals(lines.length, 1);
+    Assert.assertTrue(lines[0].endsWith(" r[+0 150]:" + sb + " [+0]:RR_ReadOverrun"), lines[0]);
+  }
+
+  @Test
+  public void testOverwrite() throws IOException {
+    WireTrace wireTrace = new WireTrace(8);
+
+    // each exchange takes 2 slots, only the last 4 exchanges fit
+    for (int i = 0; i < 10; i++) {
+      byte[] write = ("W" + i + "\r").getBytes();
+      wireTrace.recordWrite(write, 0, write.length);
+      wireTrace.recordResult(ErrorCode.RR_Success);
+    }
+
+    String[] lines = decode(wireTrace);
+    Assert.assertEquals(lines.length, 4);
+    for (int i = 0; i < 4; i++) {
+      Assert.assertTrue(lines[i].contains(" w[3]:W" + (i + 6) + "{0D} "), lines[i]);
+    }
+  }
+
+  @Test
+  public void testOverwriteContinuation() throws IOException {
+    WireTrace wireTrace = new WireTrace(4);
+
+    byte[] read = new byte[150];
+    Arrays.fill(read, (byte) 'A');
+    wireTrace.recordRead(read, 0, read.length); // 3 slots
+    wireTrace.recordResult(ErrorCode.RR_Success);
+    wireTrace.recordWrite(new byte[]{'R'}, 0, 1);
+
+    // the head of the read has been overwritten, its continuations are skipped
+    String[] lines = decode(wireTrace);
+    Assert.assertEquals(lines.length, 2);
+    Assert.assertTrue(lines[0].endsWith(" [+0]:RR_Success"), lines[0]);
+    Assert.assertTrue(lines[1].endsWith(" w[1]:R ..."), lines[1]);
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testDecodeNotSnapshot() throws IOException {
+    WireTraceDecoder.decode(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, new StringBuilder());
+  }
+
+  private static String[] decode(WireTrace wireTrace) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    WireTraceDecoder.decode(wireTrace.snapshot(), sb);
+    return sb.toString().split("\n");
+  }
+
+}
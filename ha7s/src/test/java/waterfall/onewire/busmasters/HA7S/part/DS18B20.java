@@ -15,6 +15,7 @@ public class DS18B20 implements HA7SDummyDevice {
   private boolean hasAlarm;
   private short readIndex;
   private byte[][] readData;
+  private int convertTCount;
 
   public DS18B20(DSAddress dsAddress) {
     this.dsAddress = dsAddress;
@@ -22,6 +23,7 @@ public class DS18B20 implements HA7SDummyDevice {
     hasAlarm = false;
     readIndex = Short.MAX_VALUE;
     readData = null;
+    convertTCount = 0;
   }
 
   @Override
@@ -85,6 +87,7 @@ public class DS18B20 implements HA7SDummyDevice {
 
     // At one point we had the Convert be the way things were advanced, that turned out to be
     // problematic when simulating CRC errors. So we have to advance each time we read.
+    convertTCount++;
   }
 
   public void readPowerSupply(byte[] data, short start, short end) {
@@ -139,6 +142,10 @@ public class DS18B20 implements HA7SDummyDevice {
     return this;
   }
 
+  public int getConvertTCount() {
+    return convertTCount;
+  }
+
   public byte[][] getScratchpadData() {
     return this.readData;
   }
@@ -11,22 +11,43 @@ import waterfall.onewire.busmasters.HA7S.HA7SSerial.ReadResult.ErrorCode;
 
 public class JSSC implements HA7SSerial {
 
+  private static final int RX_RING_CAPACITY = 1024;
+  private static final int WIRE_TRACE_SLOTS = 4096;
+
   private final String portName;
-  private final long readTimeoutMSec;
+  private final ResponseTimeout responseTimeout;
   private final org.slf4j.Logger logger = LoggerFactory.getLogger(this.getClass());
 
-  SharedData sharedData = new SharedData(logger);
+  // Bytes received by the jSSC event thread are handed to the calling thread through here.
+  private final RxByteRing rxRing = new RxByteRing(RX_RING_CAPACITY);
+
+  // What went over the wire, see getWireTrace().
+  private final WireTrace wireTrace = new WireTrace(WIRE_TRACE_SLOTS);
+
+  // Only used by the calling thread while it holds this.
+  private final CallerData callerData = new CallerData(logger, wireTrace);
+
+  private volatile boolean started = false;
 
   private SerialPort serialPort = null;
 
+  // Used to run a single writeReadTilCR() through the pipelined path without allocating. Guarded by
+  // this.
+  private final byte[][] singleWBuf = new byte[1][];
+  private final byte[][] singleRBuf = new byte[1][];
+  private final ReadResult[] singleReadResult = new ReadResult[1];
+
+  /**
+   * @param readTimeoutMSec the longest any call waits for its responses. Calls which do not give a
+   * timeout wait for as long as their responses should take, see ResponseTimeout.
+   */
   public JSSC(String portName, long readTimeoutMSec) {
     this.portName = portName;
-    this.readTimeoutMSec = readTimeoutMSec;
+    this.responseTimeout = new ResponseTimeout(readTimeoutMSec);
   }
 
   public JSSC(String portName) {
-    this.portName = portName;
-    this.readTimeoutMSec = TimeUnit.SECONDS.toMillis(15);
+    this(portName, TimeUnit.SECONDS.toMillis(15));
   }
 
   public static String byteToSafeString(byte[] buf, int bOffset, int bCount) {
@@ -47,6 +68,34 @@ public class JSSC implements HA7SSerial {
     return sb.toString();
   }
 
+  /**
+   * In zero allocation mode flushed bytes are only recorded in the wire trace rather than also being
+   * logged, and callers are expected to use the writeReadTilCR() and pipelineWriteReadTilCR() forms
+   * which take a reusable ReadResult. Errors are still logged.
+   */
+  public void setZeroAllocationMode(boolean zeroAllocationMode) {
+    callerData.zeroAllocationMode = zeroAllocationMode;
+  }
+
+  public boolean isZeroAllocationMode() {
+    return callerData.zeroAllocationMode;
+  }
+
+  /**
+   * Every write and read is recorded here, as raw bytes, instead of being formatted and logged as
+   * it happens. Use WireTraceDecoder to turn a snapshot of it back into trace lines.
+   */
+  public WireTrace getWireTrace() {
+    return wireTrace;
+  }
+
+  /**
+   * How long calls wait for their responses, and how many of them gave up waiting.
+   */
+  public ResponseTimeout getResponseTimeout() {
+    return responseTimeout;
+  }
+
   @Override
   public String getPortName() {
     return this.portName;
@@ -54,13 +103,13 @@ public class JSSC implements HA7SSerial {
 
   @Override
   public boolean isStarted() {
-    return sharedData.started;
+    return started;
   }
 
   @Override
   public synchronized StartResult start() {
 
-    if (sharedData.started) {
+    if (started) {
       logger.info("Already started");
       return StartResult.SR_Success;
     }
@@ -109,10 +158,11 @@ public class JSSC implements HA7SSerial {
     try {
       if (serialPort.getInputBufferBytesCount() > 0) {
         byte[] flushed = serialPort.readBytes();
-        sharedData.logFlushing(flushed, 0, flushed.length);
+        callerData.logFlushing(flushed, 0, flushed.length);
       }
+      rxRing.clear();
     } catch (SerialPortException ex) {
-      sharedData.logError("readBytes", ex);
+      callerData.logError("readBytes", ex);
       serialPort = null;
       return StartResult.SR_Error;
     }
@@ -120,140 +170,168 @@ public class JSSC implements HA7SSerial {
     try {
       serialPort.addEventListener((SerialPortEvent serialPortEvent) -> {
         if (serialPortEvent.isRXCHAR()) {
-          synchronized (serialPort) {
-            try {
-              byte[] rbuf = serialPort.readBytes();
-              if ((rbuf != null) && (rbuf.length > 0)) {
-                sharedData.logRead(rbuf, 0, rbuf.length);
-                if ((sharedData.waitingThread == null) || (sharedData.readComplete)) {
-                  // nobody is waiting so log and clear.
-                  sharedData.logError("No thread or readComplete, flushing");
-                } else {
-                  for (int i = 0; i < rbuf.length; i++) {
-                    if (rbuf[i] == '\r') {
-                      // found the terminator
-                      sharedData.readComplete = true;
-                      sharedData.readCRCTM = System.currentTimeMillis();
-                      if ((i + 1) != rbuf.length) {
-                        sharedData.logError(String.format("%d extra bytes ignored", (rbuf.length - i - 1)));
-                      }
-
-                      if (sharedData.waitingThread != null) {
-                        serialPort.notify();
-                      }
-
-                      break; // necessary if the read has extra chars
-
-                    } else if (sharedData.readBuffer != null) {
-                      if ((sharedData.readOffset + sharedData.readCount)
-                          < sharedData.readBuffer.length) {
-                        sharedData.readBuffer[sharedData.readOffset
-                            + sharedData.readCount++] = rbuf[i];
-                      } else if (!sharedData.readOverrun) {
-                        sharedData.logError(String.format("Read overrun at index %d", sharedData.waitingThread, i));
-                        sharedData.readOverrun = true;
-                      }
-                    }
-                  }
-                }
-              } else {
-                sharedData.logError("Read zero chars?");
+          try {
+            // jSSC has no call to read into a buffer we own, so this is the one allocation left
+            // on the receive path.
+            byte[] rbuf = serialPort.readBytes();
+            if ((rbuf != null) && (rbuf.length > 0)) {
+              final int accepted = rxRing.offer(rbuf, 0, rbuf.length);
+              if (accepted != rbuf.length) {
+                logger.error("Receive ring full, {} bytes dropped", (rbuf.length - accepted));
               }
-            } catch (SerialPortException ex) {
-              sharedData.logError("readBytes", ex);
+            } else {
+              logger.error("Read zero chars?");
             }
+          } catch (SerialPortException ex) {
+            logger.error("readBytes", ex);
           }
         }
       }, SerialPort.MASK_RXCHAR);
     } catch (SerialPortException ex) {
-      sharedData.logError("readBytes", ex);
+      callerData.logError("readBytes", ex);
       serialPort = null;
       return StartResult.SR_Error;
     }
 
-    sharedData.started = true;
+    started = true;
     logger.info("started");
     return StartResult.SR_Success;
   }
 
   @Override
-  public ReadResult writeReadTilCR(byte wBuf[], byte rBuf[]) {
+  public ReadResult writeReadTilCR(byte wBuf[], byte rBuf[], ReadResult readResult) {
+    return writeReadTilCR(wBuf, rBuf, readResult, ResponseTimeout.ADAPTIVE);
+  }
+
+  @Override
+  public ReadResult writeReadTilCR(byte wBuf[], byte rBuf[], ReadResult readResult,
+      long timeoutMSec) {
+    synchronized (this) {
+      singleWBuf[0] = wBuf;
+      singleRBuf[0] = rBuf;
+      singleReadResult[0] = readResult;
+      try {
+        pipelineWriteReadTilCR(singleWBuf, singleRBuf, singleReadResult, timeoutMSec);
+      } finally {
+        singleWBuf[0] = null;
+        singleRBuf[0] = null;
+        singleReadResult[0] = null;
+      }
+    }
+    return readResult;
+  }
+
+  @Override
+  public ReadResult[] pipelineWriteReadTilCR(byte wBufs[][], byte rBufs[][],
+      ReadResult readResults[]) {
+    return pipelineWriteReadTilCR(wBufs, rBufs, readResults, ResponseTimeout.ADAPTIVE);
+  }
+
+  @Override
+  public ReadResult[] pipelineWriteReadTilCR(byte wBufs[][], byte rBufs[][],
+      ReadResult readResults[], long timeoutMSec) {
+    if ((wBufs == null) || (rBufs == null) || (readResults == null) || (wBufs.length == 0)
+        || (wBufs.length != rBufs.length) || (wBufs.length != readResults.length)) {
+      throw new IllegalArgumentException(
+          "wBufs, rBufs and readResults must be non-empty and the same length");
+    }
+
+    final int frameCount = wBufs.length;
+    final long timeoutNanos = responseTimeout.timeoutNanos(wBufs, rBufs, timeoutMSec);
     ReadResult.ErrorCode error = null;
-    int readCount = 0;
-    long postWriteCTM = 0;
-    long readCRCTM = 0;
+    ReadResult.ErrorCode logError = ErrorCode.RR_Success;
 
     synchronized (this) {
 
-      if (sharedData.started) {
-        synchronized (serialPort) {
-          try {
-            sharedData.addWaitingThread(Thread.currentThread(), rBuf);
+      final CallerData cd = callerData;
+      int framesRead = 0;
 
-            try {
-              final int wcount = wBuf.length;
+      if (started) {
+        // Anything in the ring now arrived after the last response was complete, so it can not
+        // belong to what we are about to write.
+        int flushCount;
+        while ((flushCount = rxRing.poll(cd.chunk, 0, cd.chunk.length)) > 0) {
+          cd.logFlushing(cd.chunk, 0, flushCount);
+        }
 
-              sharedData.logWriteStart(wBuf, 0, wcount);
+        cd.startFrames(rBufs);
 
-              for (int i = 0; i < wcount; i++) {
-                serialPort.writeByte(wBuf[i]);
-              }
+        final long startNanos = System.nanoTime();
+        try {
+          // Write every frame before waiting on any of the responses, the HA7S will queue them.
+          for (int f = 0; f < frameCount; f++) {
+            cd.logWriteStart(wBufs[f], 0, wBufs[f].length);
 
-              postWriteCTM = System.currentTimeMillis();
+            serialPort.writeBytes(wBufs[f]);
 
-              sharedData.logWriteEnd(postWriteCTM);
+            cd.postWriteCTM[f] = System.currentTimeMillis();
 
-              serialPort.wait(readTimeoutMSec);
+            cd.logWriteEnd();
+          }
 
-              if (sharedData.readComplete) {
-                if (sharedData.readOverrun) {
-                  error = ReadResult.ErrorCode.RR_ReadOverrun;
-                } else {
-                  error = ReadResult.ErrorCode.RR_Success;
-                }
-                readCount = sharedData.readCount;
-                readCRCTM = sharedData.readCRCTM;
-              } else {
-                sharedData.logError("read not complete?");
-                error = ReadResult.ErrorCode.RR_Error;
-              }
-            } catch (SerialPortException ex) {
-              sharedData.logError("writeByte", ex);
-              error = ReadResult.ErrorCode.RR_Error;
-            } catch (InterruptedException ex) {
-              sharedData.logError("wait", ex);
+          final long deadlineNanos = (startNanos + timeoutNanos);
+          while (!cd.readComplete) {
+            final int count = rxRing.take(cd.chunk, 0, cd.chunk.length, deadlineNanos);
+            if (count == 0) {
+              cd.logError("read not complete?");
               error = ReadResult.ErrorCode.RR_ReadTimeout;
-              readCount = sharedData.readCount;
+              responseTimeout.recordTimeout(wBufs);
+              break;
             }
-          } finally {
-            sharedData.clearWaitingThread();
+            cd.logRead(cd.chunk, 0, count);
+            cd.receive(cd.chunk, count);
           }
+          if (cd.readComplete) {
+            responseTimeout.recordResponse(wBufs, rBufs, (System.nanoTime() - startNanos));
+          }
+        } catch (SerialPortException ex) {
+          cd.logError("writeBytes", ex);
+          error = ReadResult.ErrorCode.RR_Error;
+        } catch (InterruptedException ex) {
+          cd.logError("take", ex);
+          error = ReadResult.ErrorCode.RR_Error;
         }
+
+        framesRead = cd.readFrame;
+        cd.readBuffers = null;
       } else {
         logger.info("not started.");
         error = ReadResult.ErrorCode.RR_Error;
       }
-    }
-    sharedData.logReadResult(error);
 
-    if (error == ErrorCode.RR_Success) {
-      return new ReadResult(readCount, postWriteCTM, readCRCTM);
-    }
-    else {
-      return new ReadResult(error);
+      for (int f = 0; f < frameCount; f++) {
+        if ((f < framesRead) && (logError == ErrorCode.RR_Success)) {
+          if (cd.readOverrun[f]) {
+            logError = ErrorCode.RR_ReadOverrun;
+            readResults[f].setError(logError);
+          } else {
+            readResults[f].setSuccess(cd.readCount[f], cd.postWriteCTM[f], cd.readCRCTM[f]);
+          }
+        } else if ((f == framesRead) && (logError == ErrorCode.RR_Success) && (error != null)) {
+          // the frame we were waiting on when things went wrong
+          logError = error;
+          readResults[f].setError(logError);
+        } else {
+          readResults[f].setError(ErrorCode.RR_Error);
+        }
+      }
+
+      cd.logReadResult(logError);
     }
+
+    return readResults;
   }
 
   @Override
   public synchronized StopResult stop() {
     logger.info("stop()");
 
-    if (!sharedData.started) {
+    if (!started) {
       logger.info("Already stopped");
       return StopResult.SR_Success;
     }
 
-    sharedData.started = false;
+    started = false;
 
     try {
       boolean closeResult = serialPort.closePort();
@@ -270,102 +348,147 @@ public class JSSC implements HA7SSerial {
     return StopResult.SR_Success;
   }
 
-  class SharedData {
+  /**
+   * State used by the calling thread to collect the responses for the frames it wrote, and to trace
+   * the calls. Only touched while holding the JSSC lock so it needs no synchronization of its own.
+   */
+  class CallerData {
 
     private final org.slf4j.Logger logger;
-    private final StringBuffer logSB;
-    private long logWriteStart;
+    private final WireTrace wireTrace;
+
+    public volatile boolean zeroAllocationMode;
 
-    public boolean started;
+    // What has been taken from the ring but not yet sorted into the frames.
+    public final byte[] chunk = new byte[RX_RING_CAPACITY];
 
-    public Thread waitingThread;
-    public byte[] readBuffer;
+    public byte[][] readBuffers;
 
-    public int readOffset;
-    public int readCount;
-    public boolean readOverrun;
+    // The per frame state is sized for the largest pipeline seen so far and reused.
+    public int readFrame;
+    public int[] readCount;
+    public boolean[] readOverrun;
     public boolean readComplete;
-    public long readCRCTM;
+    public long[] readCRCTM;
+    public long[] postWriteCTM;
 
 
-    public SharedData(org.slf4j.Logger logger) {
+    public CallerData(org.slf4j.Logger logger, WireTrace wireTrace) {
       this.logger = logger;
-      logSB = new StringBuffer();
-      logWriteStart = 0;
+      this.wireTrace = wireTrace;
 
-      started = false;
-      waitingThread = null;
-      readBuffer = null;
+      zeroAllocationMode = false;
+      readBuffers = null;
 
-      readOffset = 0;
-      readCount = 0;
-      readOverrun = false;
+      readFrame = 0;
+      readCount = new int[4];
+      readOverrun = new boolean[4];
       readComplete = true;
-      readCRCTM = 0;
+      readCRCTM = new long[4];
+      postWriteCTM = new long[4];
     }
 
-    public void addWaitingThread(Thread waitingThread, byte[] rBuf) {
-      this.waitingThread = waitingThread;
-      this.readBuffer = rBuf;
-      readOffset = 0;
-      readCount = 0;
-      readOverrun = false;
+    public void startFrames(byte[][] rBufs) {
+      final int frameCount = rBufs.length;
+      if (readCount.length < frameCount) {
+        readCount = new int[frameCount];
+        readOverrun = new boolean[frameCount];
+        readCRCTM = new long[frameCount];
+        postWriteCTM = new long[frameCount];
+      }
+
+      this.readBuffers = rBufs;
+      readFrame = 0;
+      for (int f = 0; f < frameCount; f++) {
+        readCount[f] = 0;
+        readOverrun[f] = false;
+        readCRCTM[f] = 0;
+        postWriteCTM[f] = 0;
+      }
       readComplete = false;
-      readCRCTM = 0;
     }
 
-    public void logWriteStart(byte[] wBuf, int bOffset, int wCount) {
-      if (logSB.length() != 0) {
-        flushLog();
-        logger.error("logWriteStart already has length!");
+    /**
+     * Sorts bytes taken from the ring into the frames. The bytes in front of each CR are copied in
+     * bulk into the current frame's buffer.
+     *
+     * @return true if the CR for the last frame has been read.
+     */
+    public boolean receive(byte[] rbuf, int rCount) {
+      int i = 0;
+      while (i < rCount) {
+        final int frame = readFrame;
+
+        int cr = i;
+        while ((cr < rCount) && (rbuf[cr] != '\r')) {
+          cr++;
+        }
+
+        final int dataCount = (cr - i);
+        final byte[] readBuffer = readBuffers[frame];
+        if ((dataCount > 0) && (readBuffer != null)) {
+          final int copyCount = Math.min(dataCount, (readBuffer.length - readCount[frame]));
+          System.arraycopy(rbuf, i, readBuffer, readCount[frame], copyCount);
+          readCount[frame] += copyCount;
+
+          if ((copyCount < dataCount) && (!readOverrun[frame])) {
+            logError(String.format("Read overrun frame %d at index %d", frame, (i + copyCount)));
+            readOverrun[frame] = true;
+          }
+        }
+
+        if (cr == rCount) {
+          return false; // the rest of this frame is still to come
+        }
+
+        // found the terminator for this frame
+        readCRCTM[frame] = System.currentTimeMillis();
+        readFrame++;
+        i = (cr + 1);
+
+        if (readFrame == readBuffers.length) {
+          readComplete = true;
+          if (i != rCount) {
+            logError(String.format("%d extra bytes ignored", (rCount - i)));
+          }
+          return true;
+        }
       }
-      logWriteStart = System.currentTimeMillis();
-      logSB.append(String.format("w[%d]:%s", wCount, byteToSafeString(wBuf, bOffset, wCount)));
+
+      return false;
     }
 
-    public void logWriteEnd(long ctm) {
-      logSB.append(String.format(" [+%d]", (ctm - logWriteStart)));
+    public void logWriteStart(byte[] wBuf, int bOffset, int wCount) {
+      wireTrace.recordWrite(wBuf, bOffset, wCount);
+    }
+
+    public void logWriteEnd() {
+      wireTrace.recordWriteEnd();
     }
 
     public void logRead(byte[] rBuf, int bOffset, int rCount) {
-      long ctm = System.currentTimeMillis();
-      logSB.append(String.format(" r[+%d %d]:%s", (ctm - logWriteStart), rBuf.length,
-          byteToSafeString(rBuf, bOffset, rCount)));
+      wireTrace.recordRead(rBuf, bOffset, rCount);
     }
 
     public void logReadResult(ReadResult.ErrorCode errCode) {
-      long ctm = System.currentTimeMillis();
-      logSB.append(String.format(" [+%d]:%s", (ctm - logWriteStart), errCode.name()));
-      flushLog();
+      wireTrace.recordResult(errCode);
     }
 
     public void logFlushing(byte[] rBuf, int bOffset, int rCount) {
-      flushLog();
-      logger.info("flushing[{}]:{}", rCount, JSSC.byteToSafeString(rBuf, bOffset, rCount));
+      wireTrace.recordFlush(rBuf, bOffset, rCount);
+      if (!zeroAllocationMode) {
+        logger.info("flushing[{}]:{}", rCount, JSSC.byteToSafeString(rBuf, bOffset, rCount));
+      }
     }
+
     public void logError(String s) {
-      flushLog();
       logger.error(s);
     }
 
     public void logError(String s, Exception e) {
-      flushLog();
       logger.error(s, e);
     }
 
-    private void flushLog() {
-      if (logSB.length() > 0) {
-        logger.info(logSB.toString());
-        logSB.setLength(0);
-        logWriteStart = 0;
-      }
-    }
-
-    public void clearWaitingThread() {
-      this.waitingThread = null;
-      this.readBuffer = null;
-    }
-
   }
 
 }
@@ -0,0 +1,675 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.LoggerFactory;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.ReadResult.ErrorCode;
+
+/**
+ * HA7SSerial which drives the tty directly through a FileChannel, with no native library and no
+ * event thread. The calling thread writes all of its frames with one channel write and then reads
+ * the responses itself into a direct buffer, so the only copy made is from that buffer into the
+ * caller's read buffers.
+ *
+ * The line settings are made by running stty before the port is opened. The tty must be left in
+ * non-blocking raw mode ("min 0 time 0") since a read with nothing waiting has to return at once.
+ * The command can be replaced with the {@value #STTY_PROPERTY} system property, or through the
+ * constructor, where "{port}" is replaced with the port name.
+ *
+ * The responses may instead be read by an NIOEventLoop, which reads every port registered with it
+ * from one thread while the callers park until their response is complete. Ports opened by name,
+ * as HA7SBusMasterManager does, share NIOEventLoop.getDefault().
+ *
+ * For testing the tty can be stood in for by any pair of channels, such as the two ends of a
+ * java.nio.channels.Pipe.
+ */
+public class NIO implements HA7SSerial {
+
+  public static final String STTY_PROPERTY = "waterfall.ha7s.nio.stty";
+  public static final String DEFAULT_STTY_COMMAND =
+      "stty -F {port} 9600 cs8 -cstopb -parenb raw -echo -ixon -ixoff -crtscts clocal min 0 time 0";
+
+  private static final int RX_BUFFER_CAPACITY = 1024;
+  private static final int TX_BUFFER_CAPACITY = 256;
+
+  // About one character time at 9600 baud.
+  private static final long DEFAULT_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(1000);
+
+  private final String portName;
+  private final ResponseTimeout responseTimeout;
+  private final String sttyCommand;
+  private final NIOEventLoop eventLoop;
+  private final org.slf4j.Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final ByteBuffer rxBuffer = ByteBuffer.allocateDirect(RX_BUFFER_CAPACITY);
+  private ByteBuffer txBuffer = ByteBuffer.allocateDirect(TX_BUFFER_CAPACITY);
+
+  private volatile boolean started = false;
+  private volatile boolean zeroAllocationMode = false;
+  private volatile long pollNanos = DEFAULT_POLL_NANOS;
+
+  // Either both are set by the constructor, or both are the FileChannel opened by start().
+  private final boolean ownsChannels;
+  private ReadableByteChannel readChannel = null;
+  private WritableByteChannel writeChannel = null;
+
+  // The per frame state is sized for the largest pipeline seen so far and reused. Guarded by this.
+  private byte[][] readBuffers = null;
+  private int readFrame;
+  private int[] readCount = new int[4];
+  private boolean[] readOverrun = new boolean[4];
+  private long[] readCRCTM = new long[4];
+
+  // How long past its deadline the caller waits for the event loop to finish an exchange before
+  // giving up on the loop.
+  static final long EXCHANGE_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  // Handed between the caller and the event loop, see awaitEventLoop(). Set with exchangeLock held,
+  // and the loop only reads the port with it held while the exchange is not done.
+  private final Object exchangeLock = new Object();
+  private long exchangeDeadlineNanos;
+  private ReadResult.ErrorCode exchangeError;
+  private volatile boolean exchangeDone = true;
+  private volatile Thread exchangeWaiter;
+
+  // Used to run a single writeReadTilCR() through the pipelined path without allocating. Guarded by
+  // this.
+  private final byte[][] singleWBuf = new byte[1][];
+  private final byte[][] singleRBuf = new byte[1][];
+  private final ReadResult[] singleReadResult = new ReadResult[1];
+
+  /**
+   * @param eventLoop to read the responses, or null for the caller to read them itself.
+   */
+  public NIO(String portName, long readTimeoutMSec, String sttyCommand, NIOEventLoop eventLoop) {
+    this.portName = portName;
+    this.responseTimeout = new ResponseTimeout(readTimeoutMSec);
+    this.sttyCommand = sttyCommand;
+    this.eventLoop = eventLoop;
+    this.ownsChannels = true;
+  }
+
+  public NIO(String portName, long readTimeoutMSec, String sttyCommand) {
+    this(portName, readTimeoutMSec, sttyCommand, NIOEventLoop.getDefault());
+  }
+
+  public NIO(String portName, long readTimeoutMSec) {
+    this(portName, readTimeoutMSec, System.getProperty(STTY_PROPERTY, DEFAULT_STTY_COMMAND));
+  }
+
+  public NIO(String portName) {
+    this(portName, TimeUnit.SECONDS.toMillis(15));
+  }
+
+  /**
+   * Use channels which are already open in place of the tty, no stty command is run. A
+   * SelectableChannel read channel is switched to non-blocking. The channels are not closed by
+   * stop().
+   *
+   * @param eventLoop to read the responses, or null for the caller to read them itself.
+   */
+  public NIO(String portName, ReadableByteChannel readChannel, WritableByteChannel writeChannel,
+      long readTimeoutMSec, NIOEventLoop eventLoop) throws IOException {
+    if ((readChannel == null) || (writeChannel == null)) {
+      throw new IllegalArgumentException("readChannel and writeChannel must be non-null");
+    }
+    if (readChannel instanceof SelectableChannel) {
+      ((SelectableChannel) readChannel).configureBlocking(false);
+    }
+    this.portName = portName;
+    this.responseTimeout = new ResponseTimeout(readTimeoutMSec);
+    this.sttyCommand = null;
+    this.eventLoop = eventLoop;
+    this.ownsChannels = false;
+    this.readChannel = readChannel;
+    this.writeChannel = writeChannel;
+  }
+
+  public NIO(String portName, ReadableByteChannel readChannel, WritableByteChannel writeChannel,
+      long readTimeoutMSec) throws IOException {
+    this(portName, readChannel, writeChannel, readTimeoutMSec, null);
+  }
+
+  public static String byteToSafeString(byte[] buf, int bOffset, int bCount) {
+    if (bCount == 0) {
+      return "{empty}";
+    }
+
+    StringBuilder sb = new StringBuilder();
+
+    for (int i = bOffset; i < (bOffset + bCount); i++) {
+      if (buf[i] < 32) {
+        sb.append(String.format("{%02X}", buf[i]));
+      } else {
+        sb.append((char) buf[i]);
+      }
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * In zero allocation mode the per call trace of what was written and read is not formatted or
+   * logged. Errors are still logged.
+   */
+  public void setZeroAllocationMode(boolean zeroAllocationMode) {
+    this.zeroAllocationMode = zeroAllocationMode;
+  }
+
+  public boolean isZeroAllocationMode() {
+    return zeroAllocationMode;
+  }
+
+  public NIOEventLoop getEventLoop() {
+    return eventLoop;
+  }
+
+  /**
+   * The readTimeoutMSec given to the constructor is the longest this port will wait.
+   */
+  public ResponseTimeout getResponseTimeout() {
+    return responseTimeout;
+  }
+
+  /**
+   * How long to wait before reading again when a read found nothing. Only used when there is no
+   * event loop.
+   */
+  public void setPollNanos(long pollNanos) {
+    if (pollNanos <= 0) {
+      throw new IllegalArgumentException("pollNanos must be positive");
+    }
+    this.pollNanos = pollNanos;
+  }
+
+  public long getPollNanos() {
+    return pollNanos;
+  }
+
+  @Override
+  public String getPortName() {
+    return this.portName;
+  }
+
+  @Override
+  public boolean isStarted() {
+    return started;
+  }
+
+  @Override
+  public synchronized StartResult start() {
+
+    if (started) {
+      logger.info("Already started");
+      return StartResult.SR_Success;
+    }
+
+    if (ownsChannels) {
+      if (portName == null) {
+        logger.error("No portName");
+        return StartResult.SR_NoPortName;
+      }
+
+      if ((sttyCommand != null) && (!sttyCommand.trim().isEmpty()) && (!runStty())) {
+        return StartResult.SR_Error;
+      }
+
+      try {
+        FileChannel fileChannel = FileChannel.open(Paths.get(portName), StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        readChannel = fileChannel;
+        writeChannel = fileChannel;
+      } catch (IOException | RuntimeException ex) {
+        logger.error("open " + portName, ex);
+        return StartResult.SR_Error;
+      }
+    }
+
+    // flush anything we find.
+    try {
+      flushInput();
+    } catch (IOException ex) {
+      logger.error("read", ex);
+      if (ownsChannels) {
+        closeChannels();
+      }
+      return StartResult.SR_Error;
+    }
+
+    started = true;
+    logger.info("started");
+    return StartResult.SR_Success;
+  }
+
+  @Override
+  public ReadResult writeReadTilCR(byte wBuf[], byte rBuf[], ReadResult readResult) {
+    return writeReadTilCR(wBuf, rBuf, readResult, ResponseTimeout.ADAPTIVE);
+  }
+
+  @Override
+  public ReadResult writeReadTilCR(byte wBuf[], byte rBuf[], ReadResult readResult,
+      long timeoutMSec) {
+    synchronized (this) {
+      singleWBuf[0] = wBuf;
+      singleRBuf[0] = rBuf;
+      singleReadResult[0] = readResult;
+      try {
+        pipelineWriteReadTilCR(singleWBuf, singleRBuf, singleReadResult, timeoutMSec);
+      } finally {
+        singleWBuf[0] = null;
+        singleRBuf[0] = null;
+        singleReadResult[0] = null;
+      }
+    }
+    return readResult;
+  }
+
+  @Override
+  public ReadResult[] pipelineWriteReadTilCR(byte wBufs[][], byte rBufs[][],
+      ReadResult readResults[]) {
+    return pipelineWriteReadTilCR(wBufs, rBufs, readResults, ResponseTimeout.ADAPTIVE);
+  }
+
+  @Override
+  public ReadResult[] pipelineWriteReadTilCR(byte wBufs[][], byte rBufs[][],
+      ReadResult readResults[], long timeoutMSec) {
+    if ((wBufs == null) || (rBufs == null) || (readResults == null) || (wBufs.length == 0)
+        || (wBufs.length != rBufs.length) || (wBufs.length != readResults.length)) {
+      throw new IllegalArgumentException(
+          "wBufs, rBufs and readResults must be non-empty and the same length");
+    }
+
+    final int frameCount = wBufs.length;
+    final long timeoutNanos = responseTimeout.timeoutNanos(wBufs, rBufs, timeoutMSec);
+    ReadResult.ErrorCode error = null;
+    ReadResult.ErrorCode logError = ErrorCode.RR_Success;
+
+    synchronized (this) {
+
+      int framesRead = 0;
+      long postWriteCTM = 0;
+      long writeStartCTM = 0;
+
+      if (started) {
+        startFrames(rBufs);
+
+        try {
+          // Anything waiting now arrived after the last response was complete, so it can not
+          // belong to what we are about to write.
+          flushInput();
+
+          fillTxBuffer(wBufs);
+          final long startNanos = System.nanoTime();
+          writeStartCTM = System.currentTimeMillis();
+          while (txBuffer.hasRemaining()) {
+            writeChannel.write(txBuffer);
+          }
+          postWriteCTM = System.currentTimeMillis();
+
+          final long deadlineNanos = (startNanos + timeoutNanos);
+          if (eventLoop != null) {
+            error = awaitEventLoop(deadlineNanos);
+          } else {
+            error = readUntilComplete(deadlineNanos);
+          }
+          if (error == null) {
+            responseTimeout.recordResponse(wBufs, rBufs, (System.nanoTime() - startNanos));
+          } else if (error == ErrorCode.RR_ReadTimeout) {
+            responseTimeout.recordTimeout(wBufs);
+          }
+        } catch (IOException ex) {
+          logger.error("writeRead", ex);
+          error = ReadResult.ErrorCode.RR_Error;
+        }
+
+        framesRead = readFrame;
+        readBuffers = null;
+      } else {
+        logger.info("not started.");
+        error = ReadResult.ErrorCode.RR_Error;
+      }
+
+      for (int f = 0; f < frameCount; f++) {
+        if ((f < framesRead) && (logError == ErrorCode.RR_Success)) {
+          if (readOverrun[f]) {
+            logError = ErrorCode.RR_ReadOverrun;
+            readResults[f].setError(logError);
+          } else {
+            readResults[f].setSuccess(readCount[f], postWriteCTM, readCRCTM[f]);
+          }
+        } else if ((f == framesRead) && (logError == ErrorCode.RR_Success) && (error != null)) {
+          // the frame we were waiting on when things went wrong
+          logError = error;
+          readResults[f].setError(logError);
+        } else {
+          readResults[f].setError(ErrorCode.RR_Error);
+        }
+      }
+
+      if ((!zeroAllocationMode) && (logger.isInfoEnabled()) && (writeStartCTM != 0)) {
+        logTrace(wBufs, rBufs, framesRead, writeStartCTM, postWriteCTM, logError);
+      }
+    }
+
+    return readResults;
+  }
+
+  @Override
+  public synchronized StopResult stop() {
+    logger.info("stop()");
+
+    if (!started) {
+      logger.info("Already stopped");
+      return StopResult.SR_Success;
+    }
+
+    started = false;
+
+    if (ownsChannels && (!closeChannels())) {
+      return StopResult.SR_Error;
+    }
+
+    logger.info("stopped");
+
+    return StopResult.SR_Success;
+  }
+
+  /**
+   * Read the responses on the calling thread, polling while nothing has arrived.
+   *
+   * @return null if every frame was read, otherwise the error for the frame being read.
+   */
+  private ReadResult.ErrorCode readUntilComplete(long deadlineNanos) throws IOException {
+    while (!isResponseComplete()) {
+      final int count = readAvailable(rxBuffer);
+      if (count < 0) {
+        logger.error("end of stream");
+        return ReadResult.ErrorCode.RR_Error;
+      }
+      if (count == 0) {
+        if ((deadlineNanos - System.nanoTime()) <= 0) {
+          logger.error("read not complete?");
+          return ReadResult.ErrorCode.RR_ReadTimeout;
+        }
+        LockSupport.parkNanos(this, pollNanos);
+        if (Thread.interrupted()) {
+          logger.error("interrupted");
+          return ReadResult.ErrorCode.RR_Error;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Hand the reading of the responses to the event loop and park until it says they are complete,
+   * or failed. The loop finishes an exchange by its deadline, so if it has not done so a little
+   * after that it has died or is stuck, and the exchange is taken back from it as a timeout. An
+   * interrupt is left set for the caller.
+   *
+   * @return null if every frame was read, otherwise the error for the frame being read.
+   */
+  private ReadResult.ErrorCode awaitEventLoop(long deadlineNanos) {
+    synchronized (exchangeLock) {
+      exchangeDeadlineNanos = deadlineNanos;
+      exchangeError = null;
+      exchangeWaiter = Thread.currentThread();
+      exchangeDone = false;
+    }
+
+    boolean interrupted = false;
+    try {
+      eventLoop.submit(this);
+      final long giveUpNanos = (deadlineNanos + EXCHANGE_SLACK_NANOS);
+      while (!exchangeDone) {
+        final long remainingNanos = (giveUpNanos - System.nanoTime());
+        if (remainingNanos <= 0) {
+          withdrawExchange();
+          break;
+        }
+        LockSupport.parkNanos(this, remainingNanos);
+        interrupted |= Thread.interrupted();
+      }
+    } finally {
+      exchangeWaiter = null;
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (exchangeError != null) {
+      logger.error("read not complete?");
+    }
+    return exchangeError;
+  }
+
+  /**
+   * Event loop side. Read whatever is waiting and sort it into the frames.
+   *
+   * @return the number of bytes read, -1 at end of stream.
+   */
+  int readAvailable(ByteBuffer buffer) throws IOException {
+    buffer.clear();
+    final int count = readChannel.read(buffer);
+    if (count > 0) {
+      buffer.flip();
+      receive(buffer);
+    }
+    return count;
+  }
+
+  boolean isResponseComplete() {
+    return (readFrame == readBuffers.length);
+  }
+
+  long getExchangeDeadlineNanos() {
+    return exchangeDeadlineNanos;
+  }
+
+  /**
+   * Event loop side. Held while the port is read, after which the exchange has to be checked as
+   * still open with isExchangeDone().
+   */
+  Object getExchangeLock() {
+    return exchangeLock;
+  }
+
+  /**
+   * @return true if there is no exchange for the event loop, so the port is to be left alone.
+   */
+  boolean isExchangeDone() {
+    return exchangeDone;
+  }
+
+  /**
+   * Event loop side. Hand the exchange back to the caller.
+   *
+   * @param error null if every frame was read.
+   */
+  void finishExchange(ReadResult.ErrorCode error) {
+    synchronized (exchangeLock) {
+      exchangeError = error;
+      exchangeDone = true;
+    }
+    Thread waiter = exchangeWaiter;
+    if (waiter != null) {
+      LockSupport.unpark(waiter);
+    }
+  }
+
+  // The event loop did not finish the exchange in time. Once this returns the loop will not touch
+  // the port until it is handed the next exchange.
+  private void withdrawExchange() {
+    synchronized (exchangeLock) {
+      if (!exchangeDone) {
+        logger.error("{} event loop did not finish the exchange", portName);
+        exchangeError = ReadResult.ErrorCode.RR_ReadTimeout;
+        exchangeDone = true;
+      }
+    }
+  }
+
+  private boolean runStty() {
+    String[] command = sttyCommand.trim().replace("{port}", portName).split("\\s+");
+    try {
+      Process process = new ProcessBuilder(command).redirectErrorStream(true)
+          .redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
+      int exitValue = process.waitFor();
+      if (exitValue != 0) {
+        logger.error("{} exited with {}", String.join(" ", command), exitValue);
+        return false;
+      }
+    } catch (IOException ex) {
+      logger.error("stty", ex);
+      return false;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      logger.error("stty", ex);
+      return false;
+    }
+    return true;
+  }
+
+  private boolean closeChannels() {
+    boolean closed = true;
+    Channel channel = readChannel;
+    readChannel = null;
+    writeChannel = null;
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException ex) {
+        logger.error("close", ex);
+        closed = false;
+      }
+    }
+    return closed;
+  }
+
+  private void flushInput() throws IOException {
+    while (true) {
+      rxBuffer.clear();
+      if (readChannel.read(rxBuffer) <= 0) {
+        return;
+      }
+      rxBuffer.flip();
+      logger.info("flushing[{}]:{}", rxBuffer.remaining(), bufferToSafeString(rxBuffer));
+    }
+  }
+
+  private void fillTxBuffer(byte[][] wBufs) {
+    int total = 0;
+    for (byte[] wBuf : wBufs) {
+      total += wBuf.length;
+    }
+    if (total > txBuffer.capacity()) {
+      txBuffer = ByteBuffer.allocateDirect(Integer.highestOneBit(total) << 1);
+    }
+
+    txBuffer.clear();
+    for (byte[] wBuf : wBufs) {
+      txBuffer.put(wBuf);
+    }
+    txBuffer.flip();
+  }
+
+  private void startFrames(byte[][] rBufs) {
+    final int frameCount = rBufs.length;
+    if (readCount.length < frameCount) {
+      readCount = new int[frameCount];
+      readOverrun = new boolean[frameCount];
+      readCRCTM = new long[frameCount];
+    }
+
+    readBuffers = rBufs;
+    readFrame = 0;
+    for (int f = 0; f < frameCount; f++) {
+      readCount[f] = 0;
+      readOverrun[f] = false;
+      readCRCTM[f] = 0;
+    }
+  }
+
+  /**
+   * Sorts what was read into the frames. The bytes in front of each CR are copied in bulk into the
+   * current frame's buffer.
+   */
+  private void receive(ByteBuffer src) {
+    final int limit = src.limit();
+    int i = src.position();
+    while (i < limit) {
+      final int frame = readFrame;
+
+      int cr = i;
+      while ((cr < limit) && (src.get(cr) != '\r')) {
+        cr++;
+      }
+
+      final int dataCount = (cr - i);
+      final byte[] readBuffer = readBuffers[frame];
+      if ((dataCount > 0) && (readBuffer != null)) {
+        final int copyCount = Math.min(dataCount, (readBuffer.length - readCount[frame]));
+        src.position(i);
+        src.get(readBuffer, readCount[frame], copyCount);
+        readCount[frame] += copyCount;
+
+        if ((copyCount < dataCount) && (!readOverrun[frame])) {
+          logger.error(String.format("Read overrun frame %d at index %d", frame, (i + copyCount)));
+          readOverrun[frame] = true;
+        }
+      }
+
+      if (cr == limit) {
+        return; // the rest of this frame is still to come
+      }
+
+      // found the terminator for this frame
+      readCRCTM[frame] = System.currentTimeMillis();
+      readFrame++;
+      i = (cr + 1);
+
+      if (readFrame == readBuffers.length) {
+        if (i != limit) {
+          logger.error(String.format("%d extra bytes ignored", (limit - i)));
+        }
+        return;
+      }
+    }
+  }
+
+  private void logTrace(byte[][] wBufs, byte[][] rBufs, int framesRead, long writeStartCTM,
+      long postWriteCTM, ErrorCode errCode) {
+    StringBuilder sb = new StringBuilder();
+    for (int f = 0; f < wBufs.length; f++) {
+      if (f > 0) {
+        sb.append(' ');
+      }
+      sb.append(String.format("w[%d]:%s", wBufs[f].length,
+          byteToSafeString(wBufs[f], 0, wBufs[f].length)));
+    }
+    sb.append(String.format(" [+%d]", (postWriteCTM - writeStartCTM)));
+    for (int f = 0; f < framesRead; f++) {
+      sb.append(String.format(" r[+%d %d]:%s", (readCRCTM[f] - writeStartCTM), readCount[f],
+          byteToSafeString(rBufs[f], 0, readCount[f])));
+    }
+    sb.append(String.format(" [+%d]:%s", (System.currentTimeMillis() - writeStartCTM),
+        errCode.name()));
+    logger.info(sb.toString());
+  }
+
+  private static String bufferToSafeString(ByteBuffer buf) {
+    byte[] b = new byte[buf.remaining()];
+    buf.get(b);
+    return byteToSafeString(b, 0, b.length);
+  }
+
+}
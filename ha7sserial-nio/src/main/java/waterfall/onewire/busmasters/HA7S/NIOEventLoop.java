@@ -0,0 +1,186 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.ReadResult;
+
+/**
+ * One thread which reads the responses for every NIO port using it. A caller writes its frames
+ * itself and then submits the port here and parks. The loop reads each port with an outstanding
+ * exchange into one shared direct buffer, sorts the bytes into that port's frames, and unparks the
+ * caller once the last CR has been read or the deadline has passed. Adding ports adds no threads.
+ *
+ * A tty can not be registered with a Selector, so the loop polls. It only does so while at least one
+ * exchange is outstanding, otherwise it parks until the next one is submitted.
+ */
+public class NIOEventLoop {
+
+  private static final NIOEventLoop defaultEventLoop = new NIOEventLoop("default");
+
+  // About one character time at 9600 baud.
+  private static final long DEFAULT_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(1000);
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+  private final String name;
+
+  private final ConcurrentLinkedQueue<NIO> submitted = new ConcurrentLinkedQueue<>();
+
+  // Only touched by the loop thread.
+  private final ArrayList<NIO> active = new ArrayList<>();
+  private final ByteBuffer rxBuffer = ByteBuffer.allocateDirect(1024);
+
+  private volatile long pollNanos = DEFAULT_POLL_NANOS;
+  private volatile Thread thread = null;
+
+  // Only written by the loop thread.
+  private volatile long exchangeCount = 0;
+  private volatile long timeoutCount = 0;
+
+  public NIOEventLoop(String name) {
+    if (name == null) {
+      throw new IllegalArgumentException("name");
+    }
+    this.name = name;
+  }
+
+  /**
+   * The loop shared by the ports NIO opens by name.
+   */
+  public static NIOEventLoop getDefault() {
+    return defaultEventLoop;
+  }
+
+  /**
+   * How long to wait before reading again when no port had anything to read.
+   */
+  public void setPollNanos(long pollNanos) {
+    if (pollNanos <= 0) {
+      throw new IllegalArgumentException("pollNanos must be positive");
+    }
+    this.pollNanos = pollNanos;
+  }
+
+  public long getPollNanos() {
+    return pollNanos;
+  }
+
+  /**
+   * @return the number of exchanges finished, successfully or not.
+   */
+  public long getExchangeCount() {
+    return exchangeCount;
+  }
+
+  /**
+   * @return the number of exchanges which were not complete by their deadline.
+   */
+  public long getTimeoutCount() {
+    return timeoutCount;
+  }
+
+  /**
+   * Called by the port, holding its own lock, once its frames have been written.
+   */
+  void submit(NIO port) {
+    submitted.add(port);
+
+    Thread t = thread;
+    if ((t == null) || (!t.isAlive())) {
+      t = startThread();
+    }
+    LockSupport.unpark(t);
+  }
+
+  // Also replaces a thread which has died, the callers whose exchanges it had will have given up on
+  // them.
+  private synchronized Thread startThread() {
+    if ((thread == null) || (!thread.isAlive())) {
+      Thread t = new Thread(this::run, "NIOEventLoop " + name);
+      t.setDaemon(true);
+      t.start();
+      thread = t;
+    }
+    return thread;
+  }
+
+  private void run() {
+    while (true) {
+      NIO port;
+      while ((port = submitted.poll()) != null) {
+        active.add(port);
+      }
+
+      if (active.isEmpty()) {
+        // unparked by submit()
+        LockSupport.park(this);
+        continue;
+      }
+
+      boolean anyRead = false;
+      final long nowNanos = System.nanoTime();
+
+      // walk backwards so finished ports can be removed as we go
+      for (int i = (active.size() - 1); i >= 0; i--) {
+        port = active.get(i);
+
+        synchronized (port.getExchangeLock()) {
+          // withdrawn by a caller which gave up waiting, or already finished through another entry
+          if (port.isExchangeDone()) {
+            removeActive(i);
+            continue;
+          }
+
+          ReadResult.ErrorCode error = null;
+          boolean finished = false;
+          try {
+            int count;
+            while ((!port.isResponseComplete()) && ((count = port.readAvailable(rxBuffer)) != 0)) {
+              if (count < 0) {
+                logger.error("{} end of stream", port.getPortName());
+                error = ReadResult.ErrorCode.RR_Error;
+                break;
+              }
+              anyRead = true;
+            }
+          } catch (IOException | RuntimeException e) {
+            logger.error(port.getPortName() + " read", e);
+            error = ReadResult.ErrorCode.RR_Error;
+          }
+
+          if ((error != null) || port.isResponseComplete()) {
+            finished = true;
+          } else if ((port.getExchangeDeadlineNanos() - nowNanos) <= 0) {
+            error = ReadResult.ErrorCode.RR_ReadTimeout;
+            timeoutCount++;
+            finished = true;
+          }
+
+          if (finished) {
+            removeActive(i);
+            exchangeCount++;
+            port.finishExchange(error);
+          }
+        }
+      }
+
+      if ((!anyRead) && (!active.isEmpty())) {
+        LockSupport.parkNanos(this, pollNanos);
+      }
+    }
+  }
+
+  // swap the last one in, order does not matter
+  private void removeActive(int i) {
+    final NIO last = active.remove(active.size() - 1);
+    if (i < active.size()) {
+      active.set(i, last);
+    }
+  }
+
+}
@@ -0,0 +1,194 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.ReadResult;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.ReadResult.ErrorCode;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.StartResult;
+
+/**
+ * Several ports, each stood in for by two pipes and an echo "device", read by the one loop.
+ */
+public class NIOEventLoopTests {
+
+  @Test
+  public void testManyPorts() throws Exception {
+    final NIOEventLoop eventLoop = new NIOEventLoop("testManyPorts");
+    final int portCount = 12;
+    final int callCount = 50;
+
+    final Port[] ports = new Port[portCount];
+    for (int p = 0; p < portCount; p++) {
+      ports[p] = new Port("port" + p, eventLoop, 2000);
+      Assert.assertEquals(ports[p].serial.start(), StartResult.SR_Success);
+    }
+
+    final AtomicInteger failures = new AtomicInteger(0);
+    final CountDownLatch done = new CountDownLatch(portCount);
+    for (int p = 0; p < portCount; p++) {
+      final Port port = ports[p];
+      new Thread(() -> {
+        byte[] rBuf = new byte[16];
+        ReadResult result = new ReadResult();
+        for (int i = 0; i < callCount; i++) {
+          byte[] wBuf = String.format("%s:%d\r", port.serial.getPortName(), i).getBytes();
+          port.serial.writeReadTilCR(wBuf, rBuf, result);
+          if ((result.getError() != ErrorCode.RR_Success)
+              || (!new String(rBuf, 0, result.getReadCount())
+              .equals(new String(wBuf, 0, wBuf.length - 1)))) {
+            failures.incrementAndGet();
+          }
+        }
+        done.countDown();
+      }).start();
+    }
+
+    Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+    Assert.assertEquals(failures.get(), 0);
+    Assert.assertEquals(eventLoop.getExchangeCount(), (long) (portCount * callCount));
+    Assert.assertEquals(eventLoop.getTimeoutCount(), 0);
+
+    for (Port port : ports) {
+      port.close();
+    }
+  }
+
+  @Test
+  public void testPipeline() throws Exception {
+    Port port = new Port("port", new NIOEventLoop("testPipeline"), 2000);
+    Assert.assertEquals(port.serial.start(), StartResult.SR_Success);
+
+    byte[][] wBufs = {"A\r".getBytes(), "BB\r".getBytes(), "\r".getBytes()};
+    byte[][] rBufs = {new byte[4], new byte[4], new byte[4]};
+    ReadResult[] results = {new ReadResult(), new ReadResult(), new ReadResult()};
+    port.serial.pipelineWriteReadTilCR(wBufs, rBufs, results);
+
+    Assert.assertEquals(results[0].getError(), ErrorCode.RR_Success);
+    Assert.assertEquals(results[0].getReadCount(), 1);
+    Assert.assertEquals(results[1].getError(), ErrorCode.RR_Success);
+    Assert.assertEquals(results[1].getReadCount(), 2);
+    Assert.assertEquals(new String(rBufs[1], 0, 2), "BB");
+    Assert.assertEquals(results[2].getError(), ErrorCode.RR_Success);
+    Assert.assertEquals(results[2].getReadCount(), 0);
+
+    port.close();
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    NIOEventLoop eventLoop = new NIOEventLoop("testTimeout");
+    Port port = new Port("port", eventLoop, 200);
+    Assert.assertEquals(port.serial.start(), StartResult.SR_Success);
+
+    // no CR, so the device never answers
+    long start = System.currentTimeMillis();
+    ReadResult result = port.serial
+        .writeReadTilCR("noCR".getBytes(), new byte[8], new ReadResult());
+    Assert.assertTrue((System.currentTimeMillis() - start) >= 190);
+    Assert.assertEquals(result.getError(), ErrorCode.RR_ReadTimeout);
+    Assert.assertEquals(eventLoop.getTimeoutCount(), 1);
+    Assert.assertEquals(port.serial.getResponseTimeout().getTimeoutCount(), 1);
+
+    // and the port is still usable afterwards, the device echoes the first write along with this
+    byte[] rBuf = new byte[8];
+    result = port.serial.writeReadTilCR("ok\r".getBytes(), rBuf, new ReadResult());
+    Assert.assertEquals(result.getError(), ErrorCode.RR_Success);
+    Assert.assertEquals(new String(rBuf, 0, result.getReadCount()), "noCRok");
+
+    port.close();
+  }
+
+  @Test
+  public void testLoopNeverServices() throws Exception {
+    // as if the loop thread had died, nothing is ever read or finished
+    NIOEventLoop deadLoop = new NIOEventLoop("testLoopNeverServices") {
+      @Override
+      void submit(NIO port) {
+      }
+    };
+    Port port = new Port("port", deadLoop, 200);
+    Assert.assertEquals(port.serial.start(), StartResult.SR_Success);
+
+    // the caller gives up a little after the deadline rather than waiting forever
+    long start = System.currentTimeMillis();
+    ReadResult result = port.serial
+        .writeReadTilCR("ok\r".getBytes(), new byte[8], new ReadResult());
+    final long elapsed = (System.currentTimeMillis() - start);
+    Assert.assertTrue(elapsed >= 290, "elapsed " + elapsed);
+    Assert.assertTrue(elapsed < 5000, "elapsed " + elapsed);
+    Assert.assertEquals(result.getError(), ErrorCode.RR_ReadTimeout);
+    Assert.assertEquals(port.serial.getResponseTimeout().getTimeoutCount(), 1);
+
+    port.close();
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testPollNanos() {
+    new NIOEventLoop("testPollNanos").setPollNanos(0);
+  }
+
+  /**
+   * An NIO on a pair of pipes, with a device thread which echoes back every CR terminated line.
+   */
+  private static class Port {
+
+    final Pipe toDevice = Pipe.open();
+    final Pipe fromDevice = Pipe.open();
+    final NIO serial;
+    final Thread device;
+
+    Port(String name, NIOEventLoop eventLoop, long readTimeoutMSec) throws IOException {
+      serial = new NIO(name, fromDevice.source(), toDevice.sink(), readTimeoutMSec, eventLoop);
+      device = new Thread(this::echo, name + " device");
+      device.setDaemon(true);
+      device.start();
+    }
+
+    void echo() {
+      ByteBuffer in = ByteBuffer.allocate(64);
+      try {
+        while (toDevice.source().read(in) >= 0) {
+          int lineEnd;
+          while ((lineEnd = indexOfCR(in)) >= 0) {
+            ByteBuffer out = ByteBuffer.allocate(lineEnd + 1);
+            in.flip();
+            for (int i = 0; i <= lineEnd; i++) {
+              out.put(in.get());
+            }
+            in.compact();
+            out.flip();
+            while (out.hasRemaining()) {
+              fromDevice.sink().write(out);
+            }
+          }
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    }
+
+    private static int indexOfCR(ByteBuffer in) {
+      for (int i = 0; i < in.position(); i++) {
+        if (in.get(i) == '\r') {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    void close() throws IOException {
+      serial.stop();
+      toDevice.sink().close();
+      toDevice.source().close();
+      fromDevice.sink().close();
+      fromDevice.source().close();
+    }
+  }
+
+}
@@ -0,0 +1,186 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.ReadResult;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.ReadResult.ErrorCode;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.StartResult;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.StopResult;
+
+/**
+ * The tty is stood in for by two pipes, and a "device" thread which answers each write.
+ */
+public class NIOTests {
+
+  private Pipe toDevice;
+  private Pipe fromDevice;
+  private NIO serial;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    toDevice = Pipe.open();
+    fromDevice = Pipe.open();
+    serial = new NIO("pipe", fromDevice.source(), toDevice.sink(), 500);
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    serial.stop();
+    toDevice.sink().close();
+    toDevice.source().close();
+    fromDevice.sink().close();
+    fromDevice.source().close();
+  }
+
+  @Test
+  public void testNotStarted() {
+    ReadResult result = serial.writeReadTilCR(new byte[]{'R'}, new byte[4], new ReadResult());
+    Assert.assertEquals(result.getError(), ErrorCode.RR_Error);
+  }
+
+  @Test
+  public void testStartFlushes() throws Exception {
+    fromDevice.sink().write(ByteBuffer.wrap(new byte[]{'s', 't', 'a', 'l', 'e', '\r'}));
+    Assert.assertEquals(serial.start(), StartResult.SR_Success);
+    Assert.assertTrue(serial.isStarted());
+
+    Thread device = respond(1, "\r", false);
+    ReadResult result = serial.writeReadTilCR(new byte[]{'R'}, new byte[4], new ReadResult());
+    device.join();
+
+    Assert.assertEquals(result.getError(), ErrorCode.RR_Success);
+    Assert.assertEquals(result.getReadCount(), 0);
+  }
+
+  @Test
+  public void testWriteRead() throws Exception {
+    Assert.assertEquals(serial.start(), StartResult.SR_Success);
+
+    byte[] wBuf = "W02CC44\r".getBytes();
+    byte[] rBuf = new byte[8];
+    Thread device = respond(wBuf.length, "CC44\r", true);
+    ReadResult result = serial.writeReadTilCR(wBuf, rBuf, new ReadResult());
+    device.join();
+
+    Assert.assertEquals(result.getError(), ErrorCode.RR_Success);
+    Assert.assertEquals(result.getReadCount(), 4);
+    Assert.assertEquals(new String(rBuf, 0, 4), "CC44");
+    Assert.assertTrue(result.getReadCRCTM() >= result.getPostWriteCTM());
+  }
+
+  @Test
+  public void testPipeline() throws Exception {
+    Assert.assertEquals(serial.start(), StartResult.SR_Success);
+
+    byte[][] wBufs = {{'R'}, "W02CC44\r".getBytes(), {'R'}};
+    byte[][] rBufs = {new byte[4], new byte[8], new byte[4]};
+    ReadResult[] results = {new ReadResult(), new ReadResult(), new ReadResult()};
+
+    // all three answers arrive in the one read
+    Thread device = respond(10, "\rCC44\r\r", false);
+    serial.pipelineWriteReadTilCR(wBufs, rBufs, results);
+    device.join();
+
+    Assert.assertEquals(results[0].getError(), ErrorCode.RR_Success);
+    Assert.assertEquals(results[0].getReadCount(), 0);
+    Assert.assertEquals(results[1].getError(), ErrorCode.RR_Success);
+    Assert.assertEquals(results[1].getReadCount(), 4);
+    Assert.assertEquals(new String(rBufs[1], 0, 4), "CC44");
+    Assert.assertEquals(results[2].getError(), ErrorCode.RR_Success);
+    Assert.assertEquals(results[2].getReadCount(), 0);
+  }
+
+  @Test
+  public void testReadOverrun() throws Exception {
+    Assert.assertEquals(serial.start(), StartResult.SR_Success);
+
+    Thread device = respond(1, "0123456789\r", true);
+    ReadResult result = serial.writeReadTilCR(new byte[]{'S'}, new byte[4], new ReadResult());
+    device.join();
+
+    Assert.assertEquals(result.getError(), ErrorCode.RR_ReadOverrun);
+  }
+
+  @Test
+  public void testReadTimeout() throws Exception {
+    Assert.assertEquals(serial.start(), StartResult.SR_Success);
+
+    byte[][] wBufs = {{'R'}, {'R'}};
+    byte[][] rBufs = {new byte[4], new byte[4]};
+    ReadResult[] results = {new ReadResult(), new ReadResult()};
+
+    // only the first frame is answered
+    Thread device = respond(2, "\r", false);
+    long start = System.currentTimeMillis();
+    serial.pipelineWriteReadTilCR(wBufs, rBufs, results);
+    device.join();
+
+    Assert.assertTrue((System.currentTimeMillis() - start) >= 450);
+    Assert.assertEquals(results[0].getError(), ErrorCode.RR_Success);
+    Assert.assertEquals(results[1].getError(), ErrorCode.RR_ReadTimeout);
+    Assert.assertEquals(serial.getResponseTimeout().getTimeoutCount(), 1);
+  }
+
+  @Test
+  public void testExplicitTimeout() throws Exception {
+    Assert.assertEquals(serial.start(), StartResult.SR_Success);
+
+    // no CR, so the device never answers
+    long start = System.currentTimeMillis();
+    ReadResult result = serial
+        .writeReadTilCR("noCR".getBytes(), new byte[4], new ReadResult(), 50);
+    long elapsed = (System.currentTimeMillis() - start);
+
+    Assert.assertTrue(elapsed >= 45, Long.toString(elapsed));
+    Assert.assertTrue(elapsed < 450, Long.toString(elapsed));
+    Assert.assertEquals(result.getError(), ErrorCode.RR_ReadTimeout);
+  }
+
+  @Test
+  public void testStop() {
+    Assert.assertEquals(serial.start(), StartResult.SR_Success);
+    Assert.assertEquals(serial.stop(), StopResult.SR_Success);
+    Assert.assertFalse(serial.isStarted());
+
+    // the channels belong to the test, not to NIO
+    Assert.assertTrue(fromDevice.source().isOpen());
+    Assert.assertTrue(toDevice.sink().isOpen());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testMismatchedPipeline() {
+    serial.pipelineWriteReadTilCR(new byte[][]{{'R'}}, new byte[2][4], new ReadResult[1]);
+  }
+
+  /**
+   * Starts a device thread which waits until writeCount bytes have been written to it, and then
+   * answers with the response, either in one write or a byte at a time.
+   */
+  private Thread respond(final int writeCount, final String response, final boolean byByte) {
+    Thread device = new Thread(() -> {
+      try {
+        ByteBuffer in = ByteBuffer.allocate(writeCount);
+        while (in.hasRemaining()) {
+          toDevice.source().read(in);
+        }
+        if (byByte) {
+          for (byte b : response.getBytes()) {
+            fromDevice.sink().write(ByteBuffer.wrap(new byte[]{b}));
+          }
+        } else {
+          fromDevice.sink().write(ByteBuffer.wrap(response.getBytes()));
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }, "device");
+    device.start();
+    return device;
+  }
+
+}
@@ -0,0 +1,97 @@
+package waterfall.onewire.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects the latencies, and the errors, of one thread of a load test. Nothing is shared so it is
+ * not thread safe, the recorders of the threads are added together once they have finished.
+ */
+public class LatencyRecorder {
+
+  private long[] nanos = new long[1024];
+  private int count = 0;
+  private boolean sorted = true;
+  private final Map<String, Integer> errors = new TreeMap<>();
+
+  public void record(long latencyNanos) {
+    if (latencyNanos < 0) {
+      throw new IllegalArgumentException("latencyNanos must not be negative");
+    }
+    if (count == nanos.length) {
+      nanos = Arrays.copyOf(nanos, count * 2);
+    }
+    nanos[count++] = latencyNanos;
+    sorted = false;
+  }
+
+  public void recordError(String error) {
+    errors.merge(error, 1, Integer::sum);
+  }
+
+  public void addAll(LatencyRecorder other) {
+    if (other.count > (nanos.length - count)) {
+      nanos = Arrays.copyOf(nanos, Math.max(count + other.count, nanos.length * 2));
+    }
+    System.arraycopy(other.nanos, 0, nanos, count, other.count);
+    count += other.count;
+    sorted = false;
+    other.errors.forEach((error, n) -> errors.merge(error, n, Integer::sum));
+  }
+
+  /**
+   * @return the number of latencies recorded, not counting the errors.
+   */
+  public int getCount() {
+    return count;
+  }
+
+  public int getErrorCount() {
+    int n = 0;
+    for (int c : errors.values()) {
+      n += c;
+    }
+    return n;
+  }
+
+  /**
+   * @return the count of each error, by the error.
+   */
+  public Map<String, Integer> getErrors() {
+    return errors;
+  }
+
+  /**
+   * @param percentile from 0 to 100, such as 99.9
+   * @return the nearest rank latency at the percentile, or 0 when nothing was recorded.
+   */
+  public long getPercentileNanos(double percentile) {
+    if ((percentile < 0.0) || (percentile > 100.0)) {
+      throw new IllegalArgumentException("percentile must be within 0-100");
+    }
+    if (count == 0) {
+      return 0;
+    }
+    sort();
+    // less a little so that 99.9 of 2000 is rank 1998, not 1999 from the rounding
+    final int rank = (int) Math.ceil(((percentile * count) / 100.0) - 1e-9);
+    return nanos[Math.max(rank, 1) - 1];
+  }
+
+  public long getMaxNanos() {
+    if (count == 0) {
+      return 0;
+    }
+    sort();
+    return nanos[count - 1];
+  }
+
+  private void sort() {
+    if (!sorted) {
+      Arrays.sort(nanos, 0, count);
+      sorted = true;
+    }
+  }
+
+}
@@ -0,0 +1,344 @@
+package waterfall.onewire.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import waterfall.onewire.BusMasterRegistry;
+import waterfall.onewire.Temp18B20;
+import waterfall.onewire.busmasters.HA7S.HA7S;
+import waterfall.onewire.busmasters.HA7S.SimHA7SSerial;
+import waterfall.onewire.device.DS18B20Scratchpad;
+import waterfall.onewire.simulator.SimBus;
+import waterfall.onewire.simulator.SimDS18B20;
+import waterfall.onewire.simulator.SimTiming;
+import waterfall.onewire.simulator.Simulator;
+
+/**
+ * Starts an HA7S on a SimHA7SSerial for each bus of a Simulator and adds them to a
+ * BusMasterRegistry, then attaches a Temp18B20 to every device with setBusMasterRegistry() so they
+ * have to find their BusMaster through WaitForDeviceByAddress and the scheduled searches. Once they
+ * are bound, or the bind timeout passes, the threads call getTemperature() on sensors picked at
+ * random for the duration.
+ *
+ * The latencies of the readings and the count of each kind of error are in the Report.
+ */
+public class LoadTest {
+
+  // wide enough that nothing alarms, and the same as the Simulator so no init write is needed
+  private static final byte TEMP_H_ALARM = 125;
+  private static final byte TEMP_L_ALARM = -55;
+
+  private final int busCount;
+  private final int sensorsPerBus;
+  private final int threadCount;
+  private final long durationMSec;
+  private final long bindTimeoutMSec;
+  private final long maxAgeMSec;
+  private final byte resolution;
+  private final SimTiming timing;
+  private final long seed;
+
+  private LoadTest(Builder builder) {
+    this.busCount = builder.busCount;
+    this.sensorsPerBus = builder.sensorsPerBus;
+    this.threadCount = builder.threadCount;
+    this.durationMSec = builder.durationMSec;
+    this.bindTimeoutMSec = builder.bindTimeoutMSec;
+    this.maxAgeMSec = builder.maxAgeMSec;
+    this.resolution = builder.resolution;
+    this.timing = builder.timing;
+    this.seed = builder.seed;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public Report run() throws InterruptedException {
+    Simulator sim = Simulator.builder()
+        .busCount(busCount)
+        .devicesPerBus(sensorsPerBus)
+        .timing(timing)
+        .seed(seed)
+        .resolution(resolution)
+        .alarms(TEMP_H_ALARM, TEMP_L_ALARM)
+        .build();
+
+    BusMasterRegistry registry = new BusMasterRegistry();
+    List<SimHA7SSerial> serials = new ArrayList<>(busCount);
+    List<HA7S> ha7ss = new ArrayList<>(busCount);
+    for (SimBus bus : sim.getBuses()) {
+      SimHA7SSerial serial = new SimHA7SSerial(bus);
+      serial.start();
+      HA7S ha7s = new HA7S(serial);
+      registry.addBusMaster(ha7s);
+      serials.add(serial);
+      ha7ss.add(ha7s);
+    }
+
+    try {
+      final long bindStartNanos = System.nanoTime();
+      List<Temp18B20> sensors = new ArrayList<>();
+      for (SimDS18B20 device : sim.getDS18B20s()) {
+        sensors.add(new Temp18B20(device.getDSAddress(), resolution, TEMP_H_ALARM, TEMP_L_ALARM)
+            .setBusMasterRegistry(registry));
+      }
+
+      final long bindDeadlineNanos = (bindStartNanos +
+          TimeUnit.MILLISECONDS.toNanos(bindTimeoutMSec));
+      int bound;
+      while (((bound = countBound(sensors)) < sensors.size()) &&
+          (System.nanoTime() < bindDeadlineNanos)) {
+        Thread.sleep(10);
+      }
+      final long bindNanos = (System.nanoTime() - bindStartNanos);
+
+      final long startNanos = System.nanoTime();
+      final long endNanos = (startNanos + TimeUnit.MILLISECONDS.toNanos(durationMSec));
+      List<Worker> workers = new ArrayList<>(threadCount);
+      for (int i = 0; i < threadCount; i++) {
+        Worker worker = new Worker(sensors, new Random(seed + i), endNanos);
+        worker.setName("loadtest-" + i);
+        worker.start();
+        workers.add(worker);
+      }
+
+      LatencyRecorder recorder = new LatencyRecorder();
+      for (Worker worker : workers) {
+        worker.join();
+        recorder.addAll(worker.recorder);
+      }
+      final long elapsedNanos = (System.nanoTime() - startNanos);
+
+      long frameCount = 0;
+      for (SimHA7SSerial serial : serials) {
+        frameCount += serial.getFrameCount();
+      }
+
+      return new Report(sensors.size(), bound, bindNanos, threadCount, elapsedNanos, recorder,
+          frameCount);
+    } finally {
+      for (HA7S ha7s : ha7ss) {
+        registry.removeBusMaster(ha7s);
+        ha7s.stopBus();
+      }
+    }
+  }
+
+  private static int countBound(List<Temp18B20> sensors) {
+    int bound = 0;
+    for (Temp18B20 sensor : sensors) {
+      synchronized (sensor) {
+        if (sensor.getBusMaster() != null) {
+          bound++;
+        }
+      }
+    }
+    return bound;
+  }
+
+  private class Worker extends Thread {
+
+    private final List<Temp18B20> sensors;
+    private final Random random;
+    private final long endNanos;
+    private final LatencyRecorder recorder = new LatencyRecorder();
+
+    private Worker(List<Temp18B20> sensors, Random random, long endNanos) {
+      this.sensors = sensors;
+      this.random = random;
+      this.endNanos = endNanos;
+    }
+
+    @Override
+    public void run() {
+      while (System.nanoTime() < endNanos) {
+        final Temp18B20 sensor = sensors.get(random.nextInt(sensors.size()));
+        final Long withinTimeMSec = ((maxAgeMSec > 0) ?
+            (System.currentTimeMillis() - maxAgeMSec) : null);
+
+        final long start = System.nanoTime();
+        final Temp18B20.Reading reading = sensor.getTemperature(withinTimeMSec);
+        final long latency = (System.nanoTime() - start);
+
+        if (reading instanceof Temp18B20.ReadingError) {
+          recorder.recordError(reading.getError());
+        } else {
+          recorder.record(latency);
+        }
+      }
+    }
+  }
+
+  public static class Builder {
+
+    private int busCount = 4;
+    private int sensorsPerBus = 100;
+    private int threadCount = 32;
+    private long durationMSec = TimeUnit.SECONDS.toMillis(30);
+    private long bindTimeoutMSec = TimeUnit.SECONDS.toMillis(60);
+    private long maxAgeMSec = 0;
+    private byte resolution = DS18B20Scratchpad.RESOLUTION_9;
+    private SimTiming timing = SimTiming.REAL_TIME;
+    private long seed = 0;
+
+    private Builder() {
+    }
+
+    public Builder busCount(int busCount) {
+      if (busCount < 1) {
+        throw new IllegalArgumentException("busCount must be positive");
+      }
+      this.busCount = busCount;
+      return this;
+    }
+
+    public Builder sensorsPerBus(int sensorsPerBus) {
+      if (sensorsPerBus < 1) {
+        throw new IllegalArgumentException("sensorsPerBus must be positive");
+      }
+      this.sensorsPerBus = sensorsPerBus;
+      return this;
+    }
+
+    public Builder threadCount(int threadCount) {
+      if (threadCount < 1) {
+        throw new IllegalArgumentException("threadCount must be positive");
+      }
+      this.threadCount = threadCount;
+      return this;
+    }
+
+    public Builder durationMSec(long durationMSec) {
+      if (durationMSec < 1) {
+        throw new IllegalArgumentException("durationMSec must be positive");
+      }
+      this.durationMSec = durationMSec;
+      return this;
+    }
+
+    public Builder bindTimeoutMSec(long bindTimeoutMSec) {
+      if (bindTimeoutMSec < 1) {
+        throw new IllegalArgumentException("bindTimeoutMSec must be positive");
+      }
+      this.bindTimeoutMSec = bindTimeoutMSec;
+      return this;
+    }
+
+    /**
+     * How old a reading may be and still be returned, or 0 to always take a new one.
+     */
+    public Builder maxAgeMSec(long maxAgeMSec) {
+      if (maxAgeMSec < 0) {
+        throw new IllegalArgumentException("maxAgeMSec must not be negative");
+      }
+      this.maxAgeMSec = maxAgeMSec;
+      return this;
+    }
+
+    public Builder resolution(byte resolution) {
+      if ((resolution < 0) || (resolution > 3)) {
+        throw new IllegalArgumentException("resolution not valid");
+      }
+      this.resolution = resolution;
+      return this;
+    }
+
+    public Builder timing(SimTiming timing) {
+      if (timing == null) {
+        throw new IllegalArgumentException("timing must be non-null");
+      }
+      this.timing = timing;
+      return this;
+    }
+
+    public Builder seed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public LoadTest build() {
+      return new LoadTest(this);
+    }
+  }
+
+  public static class Report {
+
+    private final int sensorCount;
+    private final int boundCount;
+    private final long bindNanos;
+    private final int threadCount;
+    private final long elapsedNanos;
+    private final LatencyRecorder recorder;
+    private final long frameCount;
+
+    private Report(int sensorCount, int boundCount, long bindNanos, int threadCount,
+        long elapsedNanos, LatencyRecorder recorder, long frameCount) {
+      this.sensorCount = sensorCount;
+      this.boundCount = boundCount;
+      this.bindNanos = bindNanos;
+      this.threadCount = threadCount;
+      this.elapsedNanos = elapsedNanos;
+      this.recorder = recorder;
+      this.frameCount = frameCount;
+    }
+
+    public int getSensorCount() {
+      return sensorCount;
+    }
+
+    /**
+     * @return how many of the sensors had found their BusMaster when the readings started.
+     */
+    public int getBoundCount() {
+      return boundCount;
+    }
+
+    public long getBindNanos() {
+      return bindNanos;
+    }
+
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+
+    public LatencyRecorder getRecorder() {
+      return recorder;
+    }
+
+    /**
+     * @return the successful readings per second.
+     */
+    public double getThroughput() {
+      return ((recorder.getCount() * 1e9) / elapsedNanos);
+    }
+
+    /**
+     * @return the HA7S frames written on all of the buses, searches included.
+     */
+    public long getFrameCount() {
+      return frameCount;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format("sensors:    %d, %d bound in %.1fs%n", sensorCount, boundCount,
+          bindNanos / 1e9));
+      sb.append(String.format("readings:   %d by %d threads in %.1fs, %d errors%n",
+          recorder.getCount(), threadCount, elapsedNanos / 1e9, recorder.getErrorCount()));
+      sb.append(String.format("throughput: %.1f readings/s, %d frames%n", getThroughput(),
+          frameCount));
+      sb.append(String.format("latency ms: p50 %.1f  p99 %.1f  p999 %.1f  max %.1f%n",
+          recorder.getPercentileNanos(50.0) / 1e6, recorder.getPercentileNanos(99.0) / 1e6,
+          recorder.getPercentileNanos(99.9) / 1e6, recorder.getMaxNanos() / 1e6));
+      for (Map.Entry<String, Integer> error : recorder.getErrors().entrySet()) {
+        sb.append(String.format("error:      %d %s%n", error.getValue(), error.getKey()));
+      }
+      return sb.toString();
+    }
+  }
+
+}
@@ -0,0 +1,80 @@
+package waterfall.onewire.loadtest;
+
+import waterfall.onewire.simulator.SimTiming;
+
+/**
+ * Runs a LoadTest from the command line and prints its Report.
+ *
+ * Run with: LoadTestMain [-buses n] [-sensors n] [-threads n] [-seconds n] [-bindSeconds n]
+ * [-maxAgeMSec n] [-resolution 0-3] [-speedup x] [-seed n]
+ */
+public class LoadTestMain {
+
+  private static final String USAGE = String.join(System.lineSeparator(),
+      "usage: LoadTestMain [options]",
+      "  -buses n        HA7S bus masters, each on its own simulated bus (4)",
+      "  -sensors n      Temp18B20s on each bus (100)",
+      "  -threads n      threads calling getTemperature() (32)",
+      "  -seconds n      how long to take readings for (30)",
+      "  -bindSeconds n  how long to wait for the sensors to find their bus master (60)",
+      "  -maxAgeMSec n   how old a reading may be and still be returned, 0 for never (0)",
+      "  -resolution n   0-3 for 9-12 bits (0)",
+      "  -speedup x      how much faster than real time the buses run, 0 for no delay (1)",
+      "  -seed n         for the addresses and the sensors picked (0)");
+
+  public static void main(String[] args) throws InterruptedException {
+    LoadTest.Builder builder = LoadTest.builder();
+    try {
+      for (int i = 0; i < args.length; i += 2) {
+        if (args[i].equals("-help") || (i + 1 >= args.length)) {
+          System.out.println(USAGE);
+          return;
+        }
+        final String value = args[i + 1];
+        switch (args[i]) {
+          case "-buses":
+            builder.busCount(Integer.parseInt(value));
+            break;
+          case "-sensors":
+            builder.sensorsPerBus(Integer.parseInt(value));
+            break;
+          case "-threads":
+            builder.threadCount(Integer.parseInt(value));
+            break;
+          case "-seconds":
+            builder.durationMSec(Long.parseLong(value) * 1000);
+            break;
+          case "-bindSeconds":
+            builder.bindTimeoutMSec(Long.parseLong(value) * 1000);
+            break;
+          case "-maxAgeMSec":
+            builder.maxAgeMSec(Long.parseLong(value));
+            break;
+          case "-resolution":
+            builder.resolution(Byte.parseByte(value));
+            break;
+          case "-speedup":
+            final double speedup = Double.parseDouble(value);
+            builder.timing((speedup == 0.0) ? SimTiming.NO_DELAY : new SimTiming(speedup));
+            break;
+          case "-seed":
+            builder.seed(Long.parseLong(value));
+            break;
+          default:
+            System.out.println("unknown option " + args[i]);
+            System.out.println(USAGE);
+            return;
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      // NumberFormatException included
+      System.out.println(e.getMessage());
+      System.out.println(USAGE);
+      return;
+    }
+
+    LoadTest.Report report = builder.build().run();
+    System.out.print(report);
+  }
+
+}
@@ -0,0 +1,55 @@
+package waterfall.onewire.loadtest;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class LatencyRecorderTests {
+
+  @Test
+  public void testPercentiles() {
+    LatencyRecorder recorder = new LatencyRecorder();
+    Assert.assertEquals(recorder.getPercentileNanos(99.0), 0);
+    Assert.assertEquals(recorder.getMaxNanos(), 0);
+
+    // backwards so that it has to sort, and past the first array
+    for (int i = 2000; i > 0; i--) {
+      recorder.record(i);
+    }
+    Assert.assertEquals(recorder.getCount(), 2000);
+    Assert.assertEquals(recorder.getPercentileNanos(0.0), 1);
+    Assert.assertEquals(recorder.getPercentileNanos(50.0), 1000);
+    Assert.assertEquals(recorder.getPercentileNanos(99.0), 1980);
+    Assert.assertEquals(recorder.getPercentileNanos(99.9), 1998);
+    Assert.assertEquals(recorder.getPercentileNanos(100.0), 2000);
+    Assert.assertEquals(recorder.getMaxNanos(), 2000);
+
+    recorder.record(5000);
+    Assert.assertEquals(recorder.getMaxNanos(), 5000);
+  }
+
+  @Test
+  public void testAddAll() {
+    LatencyRecorder a = new LatencyRecorder();
+    LatencyRecorder b = new LatencyRecorder();
+    for (int i = 1; i <= 1500; i++) {
+      a.record(i * 2);
+      b.record((i * 2) - 1);
+    }
+    a.recordError("one");
+    b.recordError("one");
+    b.recordError("two");
+
+    a.addAll(b);
+    Assert.assertEquals(a.getCount(), 3000);
+    Assert.assertEquals(a.getPercentileNanos(50.0), 1500);
+    Assert.assertEquals(a.getErrorCount(), 3);
+    Assert.assertEquals(a.getErrors().get("one"), Integer.valueOf(2));
+    Assert.assertEquals(a.getErrors().get("two"), Integer.valueOf(1));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testBadPercentile() {
+    new LatencyRecorder().getPercentileNanos(101.0);
+  }
+
+}
@@ -0,0 +1,31 @@
+package waterfall.onewire.loadtest;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import waterfall.onewire.simulator.SimTiming;
+
+public class LoadTestTests {
+
+  @Test
+  public void testRun() throws InterruptedException {
+    LoadTest.Report report = LoadTest.builder()
+        .busCount(2)
+        .sensorsPerBus(20)
+        .threadCount(8)
+        .durationMSec(1000)
+        .bindTimeoutMSec(10000)
+        .timing(SimTiming.NO_DELAY)
+        .build()
+        .run();
+
+    Assert.assertEquals(report.getSensorCount(), 40);
+    Assert.assertEquals(report.getBoundCount(), 40);
+    Assert.assertTrue(report.getRecorder().getCount() > 0);
+    Assert.assertEquals(report.getRecorder().getErrorCount(), 0, report.toString());
+    Assert.assertTrue(report.getThroughput() > 0.0);
+    Assert.assertTrue(report.getFrameCount() > 0);
+    // a 9 bit conversion is waited for in real time whatever the bus speed
+    Assert.assertTrue(report.getRecorder().getPercentileNanos(50.0) >= 94000000L);
+  }
+
+}
@@ -0,0 +1,311 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import waterfall.onewire.Convert;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.simulator.SimBus;
+import waterfall.onewire.simulator.SimBus.SearchType;
+import waterfall.onewire.simulator.SimFaults;
+import waterfall.onewire.simulator.SimTiming;
+
+/**
+ * An HA7SSerial with a simulated HA7S and SimBus on the other end, in place of JSSC or NIO and the
+ * hardware. Each frame takes the time it would at 9600 baud: the chars written, the HA7S turning
+ * the cmd around, the 1-Wire time the SimBus adds up for the cmd, and the chars of the response.
+ * The frames of a pipelined write are written back to back and answered in order, so the overlap
+ * of the writes with the earlier responses is modeled too.
+ *
+ * Unlike HA7SSerialDummy nothing malformed throws, the HA7S just answers with a bare CR, and the
+ * faults set on the bus's SimFaults are applied to the responses.
+ */
+public class SimHA7SSerial implements HA7SSerial {
+
+  public static final long DEFAULT_MAX_TIMEOUT_MSEC = 1000;
+
+  private static final int MAX_RESPONSE = (2 * 255);
+
+  private final SimBus bus;
+  private final SimTiming timing;
+  private final SimFaults faults;
+  private volatile boolean started = false;
+  private volatile long maxTimeoutMSec = DEFAULT_MAX_TIMEOUT_MSEC;
+
+  // Guarded by this.
+  private final byte[] response = new byte[MAX_RESPONSE];
+  private SearchType searchType = null;
+  private short searchFamilyCode;
+  private DSAddress searchLast;
+  private long frameCount = 0;
+
+  public SimHA7SSerial(SimBus bus) {
+    if (bus == null) {
+      throw new IllegalArgumentException("bus must be non-null");
+    }
+    this.bus = bus;
+    this.timing = bus.getTiming();
+    this.faults = bus.getFaults();
+  }
+
+  public SimBus getBus() {
+    return bus;
+  }
+
+  /**
+   * How long a read waits for a dropped response, in simulated time, when the caller does not say.
+   */
+  public void setMaxTimeoutMSec(long maxTimeoutMSec) {
+    if (maxTimeoutMSec <= 0) {
+      throw new IllegalArgumentException("maxTimeoutMSec must be positive");
+    }
+    this.maxTimeoutMSec = maxTimeoutMSec;
+  }
+
+  public synchronized long getFrameCount() {
+    return frameCount;
+  }
+
+  @Override
+  public String getPortName() {
+    return "sim:" + bus.getName();
+  }
+
+  @Override
+  public StartResult start() {
+    started = true;
+    return StartResult.SR_Success;
+  }
+
+  @Override
+  public boolean isStarted() {
+    return started;
+  }
+
+  @Override
+  public StopResult stop() {
+    started = false;
+    return StopResult.SR_Success;
+  }
+
+  @Override
+  public ReadResult writeReadTilCR(byte[] wBuf, byte[] rBuf, ReadResult readResult) {
+    return writeReadTilCR(wBuf, rBuf, readResult, ResponseTimeout.ADAPTIVE);
+  }
+
+  @Override
+  public ReadResult writeReadTilCR(byte[] wBuf, byte[] rBuf, ReadResult readResult,
+      long timeoutMSec) {
+    if (wBuf == null) {
+      throw new IllegalArgumentException("null wBuf");
+    }
+    exchange(new byte[][]{wBuf}, new byte[][]{rBuf}, new ReadResult[]{readResult}, timeoutMSec);
+    return readResult;
+  }
+
+  @Override
+  public ReadResult[] pipelineWriteReadTilCR(byte[][] wBufs, byte[][] rBufs,
+      ReadResult[] readResults) {
+    return pipelineWriteReadTilCR(wBufs, rBufs, readResults, ResponseTimeout.ADAPTIVE);
+  }
+
+  @Override
+  public ReadResult[] pipelineWriteReadTilCR(byte[][] wBufs, byte[][] rBufs,
+      ReadResult[] readResults, long timeoutMSec) {
+    if ((wBufs == null) || (rBufs == null) || (readResults == null) ||
+        (wBufs.length != rBufs.length) || (wBufs.length != readResults.length)) {
+      throw new IllegalArgumentException(
+          "wBufs, rBufs and readResults must be non-null and the same length");
+    }
+    exchange(wBufs, rBufs, readResults, timeoutMSec);
+    return readResults;
+  }
+
+  //
+  // Private
+  //
+
+  // All of the times here are simulated nanos from when the first char is written.
+  private synchronized void exchange(byte[][] wBufs, byte[][] rBufs, ReadResult[] readResults,
+      long timeoutMSec) {
+    if (!started) {
+      for (ReadResult readResult : readResults) {
+        readResult.setError(ReadResult.ErrorCode.RR_Error);
+      }
+      return;
+    }
+
+    final long startNanoTime = System.nanoTime();
+    final long startCTM = System.currentTimeMillis();
+    final long timeoutNanos = (((timeoutMSec > 0) ? timeoutMSec : maxTimeoutMSec) * 1000000L);
+
+    long writtenNanos = 0;
+    long respondedNanos = 0;
+    boolean failed = false;
+
+    for (int i = 0; i < wBufs.length; i++) {
+      writtenNanos += (wBufs[i].length * SimTiming.CHAR_NANOS);
+      if (failed) {
+        readResults[i].setError(ReadResult.ErrorCode.RR_Error);
+        continue;
+      }
+      frameCount++;
+
+      // the HA7S starts once the frame is in and it has finished answering the one before
+      final long beginNanos = (Math.max(writtenNanos, respondedNanos) +
+          SimTiming.HA7S_TURNAROUND_NANOS + faults.getExtraLatencyNanos());
+      waitUntil(startNanoTime, beginNanos);
+
+      final int length = execute(wBufs[i]);
+      final long oneWireNanos = bus.takeElapsedNanos();
+
+      if (faults.dropResponse()) {
+        waitUntil(startNanoTime, writtenNanos + timeoutNanos);
+        readResults[i].setError(ReadResult.ErrorCode.RR_ReadTimeout);
+        failed = true;
+        continue;
+      }
+      final int corrupt = faults.corruptResponse(length);
+      if (corrupt >= 0) {
+        response[corrupt] = 'x';
+      }
+
+      respondedNanos = (beginNanos + oneWireNanos + ((length + 1) * SimTiming.CHAR_NANOS));
+      waitUntil(startNanoTime, respondedNanos);
+
+      final byte[] rBuf = rBufs[i];
+      final int rLength = ((rBuf != null) ? rBuf.length : 0);
+      if (rLength > 0) {
+        System.arraycopy(response, 0, rBuf, 0, Math.min(length, rLength));
+      }
+      if (length > rLength) {
+        readResults[i].setError(ReadResult.ErrorCode.RR_ReadOverrun);
+        failed = true;
+        continue;
+      }
+
+      final long postWriteCTM = (startCTM +
+          (timing.wallNanos(Math.min(writtenNanos, beginNanos)) / 1000000L));
+      readResults[i].setSuccess(length, postWriteCTM, System.currentTimeMillis());
+    }
+  }
+
+  private void waitUntil(long startNanoTime, long simNanos) {
+    SimTiming.waitUntil(startNanoTime + timing.wallNanos(simNanos));
+  }
+
+  // Run the cmd on the bus and leave the response, without its CR, in response.
+  private int execute(byte[] wBuf) {
+    if (wBuf.length == 0) {
+      return 0;
+    }
+
+    switch (wBuf[0]) {
+      case 'R':
+        endSearch();
+        bus.reset();
+        return 0;
+
+      case 'A':
+        endSearch();
+        return addressSelect(wBuf);
+
+      case 'W':
+        return writeBlock(wBuf);
+
+      case 'O':
+        response[0] = (byte) (bus.touchBit(true) ? '1' : '0');
+        return 1;
+
+      case 'S':
+        return search(SearchType.General, (short) 0);
+
+      case 'C':
+        return search(SearchType.Alarm, (short) 0);
+
+      case 'F':
+        if ((wBuf.length < 3) || !isHex(wBuf, 1, 2)) {
+          return 0;
+        }
+        return search(SearchType.Family, (short) Convert.hexTo8bits(wBuf[1], wBuf[2]));
+
+      case 's':
+        return searchNext(SearchType.General);
+
+      case 'c':
+        return searchNext(SearchType.Alarm);
+
+      case 'f':
+        return searchNext(SearchType.Family);
+
+      default:
+        return 0;
+    }
+  }
+
+  private int addressSelect(byte[] wBuf) {
+    // A {16} CR
+    if ((wBuf.length < 18) || (wBuf[17] != '\r') || !isHex(wBuf, 1, 16)) {
+      return 0;
+    }
+    // the address is written MSB first, so this is the DSAddress.toLong() form
+    long value = 0;
+    for (int i = 0; i < 16; i++) {
+      value = ((value << 4) | Convert.hexToFourBits(wBuf[1 + i]));
+    }
+    bus.select(value);
+    System.arraycopy(wBuf, 1, response, 0, 16);
+    return 16;
+  }
+
+  private int writeBlock(byte[] wBuf) {
+    // W {2} {2 * count} CR
+    if ((wBuf.length < 4) || !isHex(wBuf, 1, 2)) {
+      return 0;
+    }
+    final int count = Convert.hexTo8bits(wBuf[1], wBuf[2]);
+    final int end = (3 + (count * 2));
+    if ((wBuf.length <= end) || (wBuf[end] != '\r') || !isHex(wBuf, 3, count * 2)) {
+      return 0;
+    }
+    for (int i = 0; i < count; i++) {
+      final int b = bus.touchByte(Convert.hexTo8bits(wBuf[3 + (i * 2)], wBuf[4 + (i * 2)]));
+      response[i * 2] = Convert.fourBitsToHex(b >> 4);
+      response[(i * 2) + 1] = Convert.fourBitsToHex(b & 0xf);
+    }
+    return (count * 2);
+  }
+
+  private int search(SearchType type, short familyCode) {
+    searchType = type;
+    searchFamilyCode = familyCode;
+    searchLast = null;
+    return searchNext(type);
+  }
+
+  private int searchNext(SearchType type) {
+    if (searchType != type) {
+      return 0;
+    }
+    final DSAddress found = bus.search(type, searchFamilyCode, searchLast);
+    if (found == null) {
+      endSearch();
+      return 0;
+    }
+    searchLast = found;
+    found.copyHexBytesTo(response, 0);
+    return 16;
+  }
+
+  private void endSearch() {
+    searchType = null;
+    searchLast = null;
+  }
+
+  private static boolean isHex(byte[] buf, int offset, int count) {
+    for (int i = offset; i < (offset + count); i++) {
+      if (!(((buf[i] >= 'A') && (buf[i] <= 'F')) || ((buf[i] >= '0') && (buf[i] <= '9')))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,298 @@
+package waterfall.onewire.simulator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmaster.Command;
+
+/**
+ * A simulated 1-Wire bus, the ROM layer and the devices on it. Operations are modeled a byte at a
+ * time, and the 1-Wire time each takes at standard speed is added up for whoever is driving the bus
+ * to wait out with takeElapsedNanos().
+ *
+ * The devices are kept in the order a ROM search finds them, which is by address with the bits
+ * taken LSB first, so each step of a search is a lookup rather than a walk of the whole bus. A
+ * family is contiguous in that order. Selecting a device is a lookup too, so a bus can have
+ * thousands of devices.
+ *
+ * The devices with an alarm are kept in a second map in the same order, so an alarm search step is
+ * a lookup as well. A device only decides it has an alarm when it is told to do something, so the
+ * bus asks again only the devices it has selected since, and those still busy with a conversion.
+ */
+public class SimBus {
+
+  public enum SearchType {
+    General,
+    Alarm,
+    Family
+  }
+
+  private enum State {idle, romCommand, matchRom, function}
+
+  // After the reset, a search step is the command byte and three slots for each of the 64 bits, or
+  // just the first two read slots when nobody answers.
+  private static final long SEARCH_ONE_NANOS = ((8 + (64 * 3)) * SimTiming.SLOT_NANOS);
+  private static final long SEARCH_NONE_NANOS = ((8 + 2) * SimTiming.SLOT_NANOS);
+
+  private final String name;
+  private final SimTiming timing;
+  private final SimFaults faults;
+
+  // keyed by searchKey()
+  private final TreeMap<Long, SimDevice> devices = new TreeMap<>(Long::compareUnsigned);
+  // those which had an alarm when last asked, and those to ask again, both keyed by searchKey()
+  private final TreeMap<Long, SimDevice> alarmed = new TreeMap<>(Long::compareUnsigned);
+  private final HashMap<Long, SimDevice> alarmRecheck = new HashMap<>();
+  private boolean alarmRecheckAll = false;
+
+  private State state = State.idle;
+  private final List<SimDevice> selected = new ArrayList<>();
+  private long matchValue;
+  private int matchCount;
+  private long elapsedNanos = 0;
+
+  public SimBus(String name, SimTiming timing, SimFaults faults) {
+    if ((name == null) || (timing == null) || (faults == null)) {
+      throw new IllegalArgumentException("name, timing and faults must be non-null");
+    }
+    this.name = name;
+    this.timing = timing;
+    this.faults = faults;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public SimTiming getTiming() {
+    return timing;
+  }
+
+  public SimFaults getFaults() {
+    return faults;
+  }
+
+  public synchronized SimBus add(SimDevice device) {
+    if (device == null) {
+      throw new IllegalArgumentException("device is null");
+    }
+    final long key = searchKey(device.getDSAddress());
+    if (devices.containsKey(key)) {
+      throw new IllegalArgumentException("duplicate device " + device.getDSAddress());
+    }
+    devices.put(key, device);
+    alarmRecheck.put(key, device);
+    return this;
+  }
+
+  public synchronized SimDevice remove(DSAddress dsAddress) {
+    final long key = searchKey(dsAddress);
+    alarmed.remove(key);
+    alarmRecheck.remove(key);
+    return devices.remove(key);
+  }
+
+  public synchronized SimDevice get(DSAddress dsAddress) {
+    return devices.get(searchKey(dsAddress));
+  }
+
+  public synchronized int size() {
+    return devices.size();
+  }
+
+  /**
+   * @return the devices in the order a search finds them.
+   */
+  public synchronized List<SimDevice> getDevices() {
+    return new ArrayList<>(devices.values());
+  }
+
+  /**
+   * @return the 1-Wire time taken since the last call, in simulated nanos.
+   */
+  public synchronized long takeElapsedNanos() {
+    final long n = elapsedNanos;
+    elapsedNanos = 0;
+    return n;
+  }
+
+  /**
+   * @return true if there was a presence pulse.
+   */
+  public synchronized boolean reset() {
+    elapsedNanos += SimTiming.RESET_NANOS;
+    for (SimDevice device : selected) {
+      device.reset();
+    }
+    selected.clear();
+
+    if (devices.isEmpty() || faults.noPresence()) {
+      state = State.idle;
+      return false;
+    }
+    state = State.romCommand;
+    return true;
+  }
+
+  /**
+   * Reset and Match ROM, as the HA7S Address Select does.
+   *
+   * @param value the address in the DSAddress.toLong() form, which need not pass its CRC8.
+   * @return true if there was a presence pulse.
+   */
+  public synchronized boolean select(long value) {
+    if (!reset()) {
+      return false;
+    }
+    touchByte(Command.MATCH_ROM & 0xff);
+    for (int i = 0; i < 8; i++) {
+      touchByte((int) (value >>> (8 * i)) & 0xff);
+    }
+    return true;
+  }
+
+  public synchronized int touchByte(int b) {
+    elapsedNanos += (8 * SimTiming.SLOT_NANOS);
+    b &= 0xff;
+
+    switch (state) {
+      case romCommand:
+        if ((byte) b == Command.MATCH_ROM) {
+          matchValue = 0;
+          matchCount = 0;
+          state = State.matchRom;
+        } else if ((byte) b == Command.SKIP_ROM) {
+          selected.addAll(devices.values());
+          alarmRecheckAll = true;
+          state = State.function;
+        } else {
+          // the searches are done by search(), anything else leaves nobody listening
+          state = State.idle;
+        }
+        return b;
+
+      case matchRom:
+        matchValue |= (((long) b) << (8 * matchCount++));
+        if (matchCount == 8) {
+          final long key = Long.reverse(matchValue);
+          final SimDevice device = devices.get(key);
+          if (device != null) {
+            selected.add(device);
+            alarmRecheck.put(key, device);
+          }
+          state = State.function;
+        }
+        return b;
+
+      case function:
+        int line = b;
+        for (SimDevice device : selected) {
+          line &= device.touchByte(b);
+        }
+        return line;
+
+      default:
+        return b;
+    }
+  }
+
+  public synchronized boolean touchBit(boolean bit) {
+    elapsedNanos += SimTiming.SLOT_NANOS;
+    if (state != State.function) {
+      return bit;
+    }
+    boolean line = bit;
+    for (SimDevice device : selected) {
+      line &= device.touchBit(bit);
+    }
+    return line;
+  }
+
+  /**
+   * One step of a ROM search, as the search firmware of a bus master runs it.
+   *
+   * @param after the device the last step found, null to start the search.
+   * @return the next device in search order, or null if there are no more.
+   */
+  public synchronized DSAddress search(SearchType type, short familyCode, DSAddress after) {
+    if (!reset()) {
+      return null;
+    }
+    state = State.idle;
+
+    NavigableMap<Long, SimDevice> range = devices;
+    if (type == SearchType.Alarm) {
+      recheckAlarms();
+      range = alarmed;
+    } else if (type == SearchType.Family) {
+      // the family is the low byte of the address, so the top byte of the key
+      final long first = Long.reverse(familyCode & 0xffL);
+      range = devices.subMap(first, true, (first | 0x00ffffffffffffffL), true);
+    }
+    if (after != null) {
+      range = range.tailMap(searchKey(after), false);
+    }
+
+    final Map.Entry<Long, SimDevice> next = range.firstEntry();
+    if (next != null) {
+      elapsedNanos += SEARCH_ONE_NANOS;
+      return next.getValue().getDSAddress();
+    }
+    elapsedNanos += SEARCH_NONE_NANOS;
+    return null;
+  }
+
+  /**
+   * @return all of the devices which match, in search order.
+   */
+  public synchronized List<SimDevice> getDevices(SearchType type, short familyCode) {
+    if (type == SearchType.Alarm) {
+      recheckAlarms();
+      return new ArrayList<>(alarmed.values());
+    }
+    List<SimDevice> list = new ArrayList<>();
+    for (SimDevice device : devices.values()) {
+      if ((type == SearchType.General) ||
+          ((type == SearchType.Family) &&
+              ((device.getDSAddress().getFamilyCode() & 0xff) == (familyCode & 0xff)))) {
+        list.add(device);
+      }
+    }
+    return list;
+  }
+
+  // Bring alarmed up to date. A device still busy is asked again next time.
+  private void recheckAlarms() {
+    if (alarmRecheckAll) {
+      alarmRecheckAll = false;
+      alarmRecheck.putAll(devices);
+    }
+    final Iterator<Map.Entry<Long, SimDevice>> it = alarmRecheck.entrySet().iterator();
+    while (it.hasNext()) {
+      final Map.Entry<Long, SimDevice> entry = it.next();
+      final SimDevice device = entry.getValue();
+      if (device.hasAlarm()) {
+        alarmed.put(entry.getKey(), device);
+      } else {
+        alarmed.remove(entry.getKey());
+      }
+      if (!device.isAlarmPending()) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * The order of a ROM search, which takes the 0 branch first at each bit starting from the LSB,
+   * is the unsigned order of the bit reversed address.
+   */
+  static long searchKey(DSAddress dsAddress) {
+    return Long.reverse(dsAddress.toLong());
+  }
+
+}
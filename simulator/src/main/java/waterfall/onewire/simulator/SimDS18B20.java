@@ -0,0 +1,190 @@
+package waterfall.onewire.simulator;
+
+import java.util.concurrent.TimeUnit;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmaster.Command;
+import waterfall.onewire.device.DS18B20Scratchpad;
+
+/**
+ * A DS18B20 on a SimBus. A ConvertT takes the time the datasheet gives for the resolution, from
+ * 93.75ms at 9 bits to 750ms at 12 bits. Until it is done a read slot reads 0 and the scratchpad
+ * still holds the previous temperature, after which the temperature set with setTempC() is latched
+ * and the alarm flag worked out from TH and TL.
+ *
+ * Called with the SimBus held, except for the setters which may be called from anywhere.
+ */
+public class SimDS18B20 implements SimDevice {
+
+  public static final long CONVERT_9_BIT_NANOS = TimeUnit.MICROSECONDS.toNanos(93750);
+
+  private final DSAddress dsAddress;
+  private final SimTiming timing;
+  private final DS18B20Scratchpad scratchpad = new DS18B20Scratchpad();
+
+  private volatile float tempC = 20.0f;
+  private volatile boolean parasitic = false;
+
+  private boolean alarm = false;
+  private int convertTCount = 0;
+  // wall clock nanoTime the conversion is done, valid while converting
+  private boolean converting = false;
+  private long convertDoneNanos;
+
+  private int command = -1;
+  private int byteIndex;
+
+  public SimDS18B20(DSAddress dsAddress, SimTiming timing) {
+    if ((dsAddress == null) || (timing == null)) {
+      throw new IllegalArgumentException("dsAddress and timing must be non-null");
+    }
+    this.dsAddress = dsAddress;
+    this.timing = timing;
+  }
+
+  /**
+   * @return the time a conversion takes at the resolution, 0 to 3 for 9 to 12 bits.
+   */
+  public static long getConvertNanos(byte resolution) {
+    return (CONVERT_9_BIT_NANOS << (resolution & 0x3));
+  }
+
+  /**
+   * The temperature the next conversion will measure.
+   */
+  public SimDS18B20 setTempC(float tempC) {
+    this.tempC = tempC;
+    return this;
+  }
+
+  public float getTempC() {
+    return tempC;
+  }
+
+  public SimDS18B20 setParasitic(boolean parasitic) {
+    this.parasitic = parasitic;
+    return this;
+  }
+
+  public synchronized int getConvertTCount() {
+    return convertTCount;
+  }
+
+  /**
+   * @return a copy of the scratchpad as it would be read now.
+   */
+  public synchronized DS18B20Scratchpad getScratchpad() {
+    checkConverted();
+    return new DS18B20Scratchpad(scratchpad.getRawBytes().clone());
+  }
+
+  /**
+   * The TH and TL alarm thresholds in whole degrees, as a Write Scratchpad would set them.
+   */
+  public synchronized SimDS18B20 setAlarms(byte tempHAlarm, byte tempLAlarm) {
+    scratchpad.setTempHAlarm(tempHAlarm);
+    scratchpad.setTempLAlarm(tempLAlarm);
+    return this;
+  }
+
+  public synchronized SimDS18B20 setResolution(byte resolution) {
+    scratchpad.setResolution(resolution);
+    return this;
+  }
+
+  @Override
+  public DSAddress getDSAddress() {
+    return dsAddress;
+  }
+
+  @Override
+  public synchronized boolean hasAlarm() {
+    checkConverted();
+    return alarm;
+  }
+
+  @Override
+  public synchronized boolean isAlarmPending() {
+    checkConverted();
+    return converting;
+  }
+
+  @Override
+  public synchronized void reset() {
+    command = -1;
+  }
+
+  @Override
+  public synchronized int touchByte(int b) {
+    checkConverted();
+    if (command < 0) {
+      command = (b & 0xff);
+      byteIndex = 0;
+      if ((byte) command == Command.CONVERT_T) {
+        convertT();
+      }
+      return b;
+    }
+
+    switch ((byte) command) {
+      case Command.READ_SCRATCHPAD:
+        if (byteIndex < 9) {
+          return (b & scratchpad.getRawBytes()[byteIndex++]);
+        }
+        return b;
+
+      case Command.WRITE_SCRATCHPAD:
+        // TH, TL and then the configuration
+        if (byteIndex == 0) {
+          scratchpad.setTempHAlarm((byte) b);
+        } else if (byteIndex == 1) {
+          scratchpad.setTempLAlarm((byte) b);
+        } else if (byteIndex == 2) {
+          scratchpad.setResolution((byte) ((b >> 5) & 0x3));
+        }
+        byteIndex++;
+        return b;
+
+      case Command.READ_POWER_SUPPLY:
+        // a parasite powered device holds every read slot low
+        return (parasitic ? 0 : b);
+
+      case Command.CONVERT_T:
+        return (converting ? 0 : b);
+
+      default:
+        return b;
+    }
+  }
+
+  @Override
+  public synchronized boolean touchBit(boolean bit) {
+    checkConverted();
+    switch ((byte) command) {
+      case Command.READ_POWER_SUPPLY:
+        return (bit && !parasitic);
+      case Command.CONVERT_T:
+        return (bit && !converting);
+      default:
+        return bit;
+    }
+  }
+
+  private void convertT() {
+    convertTCount++;
+    converting = true;
+    convertDoneNanos = System.nanoTime() + timing.wallNanos(getConvertNanos(
+        scratchpad.getResolution()));
+    checkConverted();
+  }
+
+  private void checkConverted() {
+    if (converting && ((System.nanoTime() - convertDoneNanos) >= 0)) {
+      converting = false;
+      scratchpad.setTempC(tempC);
+      // the alarm compares the whole degrees, rounded down, against TH and TL
+      final int t = (int) Math.floor(scratchpad.getTempC());
+      alarm = ((t >= scratchpad.getTempHAlarm()) || (t <= scratchpad.getTempLAlarm()));
+    }
+  }
+
+}
@@ -0,0 +1,47 @@
+package waterfall.onewire.simulator;
+
+import waterfall.onewire.DSAddress;
+
+/**
+ * A device on a SimBus. The bus handles the ROM layer, the device only sees its function layer:
+ * the bytes and bits after a reset and a Match ROM or Skip ROM has selected it.
+ */
+public interface SimDevice {
+
+  public DSAddress getDSAddress();
+
+  /**
+   * @return true if the device answers an Alarm Search.
+   */
+  public boolean hasAlarm();
+
+  /**
+   * The bus only asks hasAlarm() again after it has selected the device, or while this is true.
+   *
+   * @return true if the device is busy with something, such as a conversion, which can change
+   * hasAlarm() without the bus touching it again.
+   */
+  public default boolean isAlarmPending() {
+    return false;
+  }
+
+  /**
+   * A 1-Wire reset, after which the next byte written is a function command.
+   */
+  public void reset();
+
+  /**
+   * Exchange a byte, LSB first. A read is a write of 0xFF, where the device holds low the bits it
+   * wants to read as 0.
+   *
+   * @return the byte as the device left the bus, the bus ANDs together what every selected device
+   * returns.
+   */
+  public int touchByte(int b);
+
+  /**
+   * Exchange a single bit, a read being a write of true.
+   */
+  public boolean touchBit(boolean bit);
+
+}
@@ -0,0 +1,125 @@
+package waterfall.onewire.simulator;
+
+import java.util.Random;
+
+/**
+ * The faults to inject on a SimBus, and on the serial link to it. Each is a probability checked per
+ * frame, so a long run sees them spread out the way a noisy bus does. The Random is seeded so a run
+ * can be repeated.
+ */
+public class SimFaults {
+
+  private final Random random;
+
+  private volatile double dropResponseProbability = 0.0;
+  private volatile double corruptResponseProbability = 0.0;
+  private volatile double noPresenceProbability = 0.0;
+  private volatile long extraLatencyNanos = 0;
+  private volatile boolean disconnected = false;
+
+  private long droppedCount = 0;
+  private long corruptedCount = 0;
+  private long noPresenceCount = 0;
+
+  public SimFaults(long seed) {
+    random = new Random(seed);
+  }
+
+  /**
+   * The response to a frame never arrives, so the reader times out.
+   */
+  public SimFaults setDropResponseProbability(double p) {
+    dropResponseProbability = checkProbability(p);
+    return this;
+  }
+
+  /**
+   * One char of the response to a frame is changed to one which is not upper case hex.
+   */
+  public SimFaults setCorruptResponseProbability(double p) {
+    corruptResponseProbability = checkProbability(p);
+    return this;
+  }
+
+  /**
+   * A 1-Wire reset sees no presence pulse, as with a bad connection.
+   */
+  public SimFaults setNoPresenceProbability(double p) {
+    noPresenceProbability = checkProbability(p);
+    return this;
+  }
+
+  /**
+   * Added to the turnaround of every frame, in simulated nanos.
+   */
+  public SimFaults setExtraLatencyNanos(long extraLatencyNanos) {
+    if (extraLatencyNanos < 0) {
+      throw new IllegalArgumentException("extraLatencyNanos must not be negative");
+    }
+    this.extraLatencyNanos = extraLatencyNanos;
+    return this;
+  }
+
+  /**
+   * The whole bus is cut off, every reset sees no presence.
+   */
+  public SimFaults setDisconnected(boolean disconnected) {
+    this.disconnected = disconnected;
+    return this;
+  }
+
+  public long getExtraLatencyNanos() {
+    return extraLatencyNanos;
+  }
+
+  public synchronized long getDroppedCount() {
+    return droppedCount;
+  }
+
+  public synchronized long getCorruptedCount() {
+    return corruptedCount;
+  }
+
+  public synchronized long getNoPresenceCount() {
+    return noPresenceCount;
+  }
+
+  public synchronized boolean dropResponse() {
+    if (chance(dropResponseProbability)) {
+      droppedCount++;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the index of the char to corrupt, or -1 for none.
+   */
+  public synchronized int corruptResponse(int length) {
+    if ((length > 0) && chance(corruptResponseProbability)) {
+      corruptedCount++;
+      return random.nextInt(length);
+    }
+    return -1;
+  }
+
+  public synchronized boolean noPresence() {
+    if (disconnected || chance(noPresenceProbability)) {
+      noPresenceCount++;
+      return true;
+    }
+    return false;
+  }
+
+  private boolean chance(double p) {
+    return ((p > 0.0) && (random.nextDouble() < p));
+  }
+
+  private static double checkProbability(double p) {
+    if (!((p >= 0.0) && (p <= 1.0))) {
+      throw new IllegalArgumentException("probability must be 0 to 1");
+    }
+    return p;
+  }
+
+}
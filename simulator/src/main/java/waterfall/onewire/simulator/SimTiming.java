@@ -0,0 +1,72 @@
+package waterfall.onewire.simulator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How long things take on a simulated bus, and how much faster than real time the simulation runs.
+ * Every duration here is in simulated nanoseconds, and is divided by the speedup to get the wall
+ * clock time actually waited. A speedup of 1 is real time, NO_DELAY never waits at all.
+ */
+public class SimTiming {
+
+  public static final SimTiming REAL_TIME = new SimTiming(1.0);
+  public static final SimTiming NO_DELAY = new SimTiming(Double.POSITIVE_INFINITY);
+
+  /**
+   * One char at 9600 baud 8N1, which is 10 bits.
+   */
+  public static final long CHAR_NANOS = (TimeUnit.SECONDS.toNanos(10) / 9600);
+
+  /**
+   * A standard speed 1-Wire reset, the 480us low and the 480us presence window.
+   */
+  public static final long RESET_NANOS = TimeUnit.MICROSECONDS.toNanos(960);
+
+  /**
+   * A standard speed 1-Wire time slot, including recovery.
+   */
+  public static final long SLOT_NANOS = TimeUnit.MICROSECONDS.toNanos(70);
+
+  /**
+   * How long the HA7S firmware takes to start on a cmd once its last char has arrived.
+   */
+  public static final long HA7S_TURNAROUND_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+
+  private final double speedup;
+
+  /**
+   * @param speedup how many times faster than real time, POSITIVE_INFINITY to never wait.
+   */
+  public SimTiming(double speedup) {
+    if (!(speedup > 0.0)) {
+      throw new IllegalArgumentException("speedup must be positive");
+    }
+    this.speedup = speedup;
+  }
+
+  public double getSpeedup() {
+    return speedup;
+  }
+
+  /**
+   * @return the wall clock nanos which simNanos takes.
+   */
+  public long wallNanos(long simNanos) {
+    if (Double.isInfinite(speedup)) {
+      return 0;
+    }
+    return (long) (simNanos / speedup);
+  }
+
+  /**
+   * Wait until a wall clock System.nanoTime() deadline.
+   */
+  public static void waitUntil(long deadlineNanos) {
+    long left;
+    while ((left = (deadlineNanos - System.nanoTime())) > 0) {
+      LockSupport.parkNanos(left);
+    }
+  }
+
+}
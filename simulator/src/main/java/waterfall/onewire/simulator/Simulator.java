@@ -0,0 +1,178 @@
+package waterfall.onewire.simulator;
+
+import com.dalsemi.onewire.utils.CRC8;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.device.DS18B20Scratchpad;
+
+/**
+ * A set of SimBuses populated with SimDS18B20s, for running the bus masters against a production
+ * sized installation without the hardware. Everything random about it comes from the seed, so the
+ * same builder settings give the same addresses and the same faults.
+ *
+ * <pre>
+ * Simulator sim = Simulator.builder().busCount(4).devicesPerBus(2000)
+ *     .timing(new SimTiming(10.0)).build();
+ * SimHA7SSerial serial = new SimHA7SSerial(sim.getBus(0));
+ * serial.start();
+ * HA7S ha7s = new HA7S(serial);
+ * </pre>
+ */
+public class Simulator {
+
+  public static final short DS18B20_FAMILY_CODE = 0x28;
+
+  private final List<SimBus> buses;
+
+  private Simulator(List<SimBus> buses) {
+    this.buses = Collections.unmodifiableList(buses);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public List<SimBus> getBuses() {
+    return buses;
+  }
+
+  public SimBus getBus(int index) {
+    return buses.get(index);
+  }
+
+  /**
+   * @return every SimDS18B20 on every bus.
+   */
+  public List<SimDS18B20> getDS18B20s() {
+    List<SimDS18B20> list = new ArrayList<>();
+    for (SimBus bus : buses) {
+      for (SimDevice device : bus.getDevices()) {
+        if (device instanceof SimDS18B20) {
+          list.add((SimDS18B20) device);
+        }
+      }
+    }
+    return list;
+  }
+
+  /**
+   * @param familyCode the low byte of the address
+   * @param serial the 48 bit serial number
+   * @return the address with its CRC8 filled in.
+   */
+  public static DSAddress makeAddress(short familyCode, long serial) {
+    final byte[] raw = new byte[8];
+    raw[0] = (byte) familyCode;
+    for (int i = 0; i < 6; i++) {
+      raw[1 + i] = (byte) (serial >>> (8 * i));
+    }
+    raw[7] = (byte) CRC8.compute(raw, 0, 7);
+    long value = 0;
+    for (int i = 0; i < 8; i++) {
+      value |= (((long) raw[i] & 0xff) << (8 * i));
+    }
+    return DSAddress.fromLong(value);
+  }
+
+  public static class Builder {
+
+    private int busCount = 1;
+    private int devicesPerBus = 0;
+    private SimTiming timing = SimTiming.REAL_TIME;
+    private long seed = 0;
+    private byte resolution = DS18B20Scratchpad.DEFAULT_RESOLUTION;
+    private float tempC = 20.0f;
+    // wide enough that nothing alarms unless asked to
+    private byte tempHAlarm = 125;
+    private byte tempLAlarm = -55;
+    private String namePrefix = "sim";
+
+    private Builder() {
+    }
+
+    public Builder busCount(int busCount) {
+      if (busCount < 1) {
+        throw new IllegalArgumentException("busCount must be positive");
+      }
+      this.busCount = busCount;
+      return this;
+    }
+
+    public Builder devicesPerBus(int devicesPerBus) {
+      if (devicesPerBus < 0) {
+        throw new IllegalArgumentException("devicesPerBus must not be negative");
+      }
+      this.devicesPerBus = devicesPerBus;
+      return this;
+    }
+
+    public Builder timing(SimTiming timing) {
+      if (timing == null) {
+        throw new IllegalArgumentException("timing must be non-null");
+      }
+      this.timing = timing;
+      return this;
+    }
+
+    public Builder seed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public Builder resolution(byte resolution) {
+      if ((resolution < 0) || (resolution > 3)) {
+        throw new IllegalArgumentException("resolution not valid");
+      }
+      this.resolution = resolution;
+      return this;
+    }
+
+    public Builder tempC(float tempC) {
+      this.tempC = tempC;
+      return this;
+    }
+
+    public Builder alarms(byte tempHAlarm, byte tempLAlarm) {
+      this.tempHAlarm = tempHAlarm;
+      this.tempLAlarm = tempLAlarm;
+      return this;
+    }
+
+    public Builder namePrefix(String namePrefix) {
+      if ((namePrefix == null) || namePrefix.isEmpty()) {
+        throw new IllegalArgumentException("namePrefix must not be empty");
+      }
+      this.namePrefix = namePrefix;
+      return this;
+    }
+
+    public Simulator build() {
+      final Random random = new Random(seed);
+      // unique across all of the buses, so a device can be looked for everywhere
+      final Set<Long> serials = new HashSet<>();
+
+      List<SimBus> buses = new ArrayList<>(busCount);
+      for (int b = 0; b < busCount; b++) {
+        SimBus bus = new SimBus(namePrefix + b, timing, new SimFaults(seed + b));
+        for (int d = 0; d < devicesPerBus; d++) {
+          long serial;
+          do {
+            serial = (random.nextLong() & 0xffffffffffffL);
+          } while (!serials.add(serial));
+          bus.add(new SimDS18B20(makeAddress(DS18B20_FAMILY_CODE, serial), timing)
+              .setResolution(resolution)
+              .setAlarms(tempHAlarm, tempLAlarm)
+              .setTempC(tempC));
+        }
+        buses.add(bus);
+      }
+      return new Simulator(buses);
+    }
+  }
+
+}
@@ -0,0 +1,182 @@
+package waterfall.onewire.busmasters.HA7S;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmaster.ConvertTAllCmd;
+import waterfall.onewire.busmaster.ConvertTCmd;
+import waterfall.onewire.busmaster.ReadPowerSupplyCmd;
+import waterfall.onewire.busmaster.ReadScratchpadCmd;
+import waterfall.onewire.busmaster.SearchBusCmd;
+import waterfall.onewire.busmasters.HA7S.HA7SSerial.ReadResult;
+import waterfall.onewire.device.DS18B20Scratchpad;
+import waterfall.onewire.simulator.SimBus;
+import waterfall.onewire.simulator.SimDS18B20;
+import waterfall.onewire.simulator.SimDevice;
+import waterfall.onewire.simulator.SimTiming;
+import waterfall.onewire.simulator.Simulator;
+
+public class SimHA7SSerialTests {
+
+  private static SimHA7SSerial startedSerial(SimBus bus) {
+    SimHA7SSerial serial = new SimHA7SSerial(bus);
+    Assert.assertEquals(serial.start(), HA7SSerial.StartResult.SR_Success);
+    return serial;
+  }
+
+  @Test
+  public void testSearchThousands() {
+    Simulator sim = Simulator.builder().busCount(2).devicesPerBus(2000)
+        .timing(SimTiming.NO_DELAY).build();
+    HA7S ha7s = new HA7S(startedSerial(sim.getBus(1)));
+
+    SearchBusCmd cmd = ha7s.querySearchBusCmd();
+    Assert.assertEquals(cmd.execute(), SearchBusCmd.Result.success);
+
+    List<DSAddress> expected = new ArrayList<>();
+    for (SimDevice device : sim.getBus(1).getDevices()) {
+      expected.add(device.getDSAddress());
+    }
+    Assert.assertEquals(cmd.getResultData().getList(), expected);
+
+    cmd = ha7s.querySearchBusByFamilyCmd(Simulator.DS18B20_FAMILY_CODE);
+    Assert.assertEquals(cmd.execute(), SearchBusCmd.Result.success);
+    Assert.assertEquals(cmd.getResultData().getList().size(), 2000);
+
+    cmd = ha7s.querySearchBusByAlarmCmd();
+    Assert.assertEquals(cmd.execute(), SearchBusCmd.Result.success);
+    Assert.assertEquals(cmd.getResultData().getList().size(), 0);
+    ha7s.stopBus();
+  }
+
+  @Test
+  public void testConvertAndRead() throws InterruptedException {
+    // 100 times faster, 9 bits converts in under a millisecond
+    Simulator sim = Simulator.builder().devicesPerBus(50)
+        .timing(new SimTiming(100.0)).resolution(DS18B20Scratchpad.RESOLUTION_9).build();
+    HA7S ha7s = new HA7S(startedSerial(sim.getBus(0)));
+    List<SimDS18B20> ds18b20s = sim.getDS18B20s();
+    ds18b20s.get(7).setTempC(33.5f).setParasitic(true);
+
+    ConvertTAllCmd convertTAllCmd = ha7s.queryConvertTAllCmd();
+    Assert.assertEquals(convertTAllCmd.execute(), ConvertTAllCmd.Result.success);
+    for (SimDS18B20 d : ds18b20s) {
+      Assert.assertEquals(d.getConvertTCount(), 1);
+    }
+    Thread.sleep(5);
+
+    DSAddress dsAddress = ds18b20s.get(7).getDSAddress();
+    ReadScratchpadCmd cmd = ha7s.queryReadScratchpadCmd(dsAddress, (short) 9);
+    Assert.assertEquals(cmd.execute(), ReadScratchpadCmd.Result.success);
+    DS18B20Scratchpad scratchpad = new DS18B20Scratchpad(cmd.getResultData());
+    Assert.assertTrue(scratchpad.checkValid());
+    Assert.assertEquals(scratchpad.getTempC(), 33.5f);
+
+    ReadPowerSupplyCmd powerCmd = ha7s.queryReadPowerSupplyCmd(dsAddress);
+    Assert.assertEquals(powerCmd.execute(), ReadPowerSupplyCmd.Result.success);
+    Assert.assertTrue(powerCmd.getResultIsParasitic());
+
+    ConvertTCmd convertTCmd = ha7s.queryConvertTCmd(dsAddress);
+    Assert.assertEquals(convertTCmd.execute(), ConvertTCmd.Result.success);
+    Assert.assertEquals(ds18b20s.get(7).getConvertTCount(), 2);
+    Assert.assertEquals(ds18b20s.get(8).getConvertTCount(), 1);
+    ha7s.stopBus();
+  }
+
+  @Test
+  public void testCharTiming() {
+    Simulator sim = Simulator.builder().devicesPerBus(10).timing(new SimTiming(10.0)).build();
+    SimHA7SSerial serial = startedSerial(sim.getBus(0));
+
+    // S takes one char out, a device worth of search, then 16 chars and the CR back
+    final long searchOneNanos = (SimTiming.RESET_NANOS + (200 * SimTiming.SLOT_NANOS));
+    final long expectedNanos = (SimTiming.CHAR_NANOS + SimTiming.HA7S_TURNAROUND_NANOS +
+        searchOneNanos + (17 * SimTiming.CHAR_NANOS));
+
+    byte[] rBuf = new byte[16];
+    long start = System.nanoTime();
+    ReadResult readResult = serial.writeReadTilCR(new byte[]{'S'}, rBuf);
+    long elapsed = (System.nanoTime() - start);
+
+    Assert.assertEquals(readResult.getError(), ReadResult.ErrorCode.RR_Success);
+    Assert.assertEquals(readResult.getReadCount(), 16);
+    Assert.assertTrue(elapsed >= (expectedNanos / 10), "elapsed:" + elapsed);
+    Assert.assertTrue(elapsed < TimeUnit.SECONDS.toNanos(1), "elapsed:" + elapsed);
+  }
+
+  @Test
+  public void testPipeline() {
+    Simulator sim = Simulator.builder().devicesPerBus(3).timing(SimTiming.NO_DELAY).build();
+    SimHA7SSerial serial = startedSerial(sim.getBus(0));
+    DSAddress dsAddress = sim.getBus(0).getDevices().get(1).getDSAddress();
+
+    byte[] select = new byte[18];
+    select[0] = 'A';
+    dsAddress.copyHexBytesTo(select, 1);
+    select[17] = '\r';
+
+    byte[][] wBufs = {select, "W02B4FF\r".getBytes(), {'R'}};
+    byte[][] rBufs = {new byte[16], new byte[4], new byte[16]};
+    ReadResult[] results = serial.pipelineWriteReadTilCR(wBufs, rBufs);
+
+    for (ReadResult r : results) {
+      Assert.assertEquals(r.getError(), ReadResult.ErrorCode.RR_Success);
+    }
+    Assert.assertEquals(results[0].getReadCount(), 16);
+    Assert.assertEquals(new String(rBufs[0]), dsAddress.toString());
+    Assert.assertEquals(new String(rBufs[1]), "B4FF");
+    Assert.assertEquals(results[2].getReadCount(), 0);
+    Assert.assertEquals(serial.getFrameCount(), 3);
+  }
+
+  @Test
+  public void testOverrunAndNotStarted() {
+    Simulator sim = Simulator.builder().devicesPerBus(3).timing(SimTiming.NO_DELAY).build();
+    SimHA7SSerial serial = new SimHA7SSerial(sim.getBus(0));
+
+    Assert.assertEquals(serial.writeReadTilCR(new byte[]{'S'}, new byte[16]).getError(),
+        ReadResult.ErrorCode.RR_Error);
+
+    serial.start();
+    Assert.assertEquals(serial.writeReadTilCR(new byte[]{'S'}, new byte[8]).getError(),
+        ReadResult.ErrorCode.RR_ReadOverrun);
+
+    // nothing malformed throws, it just gets a bare CR
+    ReadResult readResult = serial.writeReadTilCR("W0Z\r".getBytes(), new byte[8]);
+    Assert.assertEquals(readResult.getError(), ReadResult.ErrorCode.RR_Success);
+    Assert.assertEquals(readResult.getReadCount(), 0);
+
+    serial.stop();
+    Assert.assertFalse(serial.isStarted());
+  }
+
+  @Test
+  public void testFaults() {
+    Simulator sim = Simulator.builder().devicesPerBus(3).timing(new SimTiming(1000.0)).build();
+    SimBus bus = sim.getBus(0);
+    SimHA7SSerial serial = startedSerial(bus);
+    HA7S ha7s = new HA7S(serial);
+    DSAddress dsAddress = bus.getDevices().get(0).getDSAddress();
+
+    bus.getFaults().setCorruptResponseProbability(1.0);
+    ConvertTCmd convertTCmd = ha7s.queryConvertTCmd(dsAddress);
+    Assert.assertEquals(convertTCmd.execute(), ConvertTCmd.Result.busFault);
+    Assert.assertTrue(bus.getFaults().getCorruptedCount() > 0);
+    bus.getFaults().setCorruptResponseProbability(0.0);
+
+    bus.getFaults().setDropResponseProbability(1.0);
+    serial.setMaxTimeoutMSec(500);
+    ReadResult readResult = serial.writeReadTilCR(new byte[]{'S'}, new byte[16]);
+    Assert.assertEquals(readResult.getError(), ReadResult.ErrorCode.RR_ReadTimeout);
+    Assert.assertEquals(bus.getFaults().getDroppedCount(), 1);
+    bus.getFaults().setDropResponseProbability(0.0);
+
+    convertTCmd = ha7s.queryConvertTCmd(dsAddress);
+    Assert.assertEquals(convertTCmd.execute(), ConvertTCmd.Result.success);
+    ha7s.stopBus();
+  }
+
+}
@@ -0,0 +1,214 @@
+package waterfall.onewire.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import waterfall.onewire.DSAddress;
+import waterfall.onewire.busmaster.Command;
+import waterfall.onewire.device.DS18B20Scratchpad;
+import waterfall.onewire.simulator.SimBus.SearchType;
+
+public class SimBusTests {
+
+  private static List<DSAddress> searchAll(SimBus bus, SearchType type, short familyCode) {
+    List<DSAddress> list = new ArrayList<>();
+    DSAddress found = null;
+    while ((found = bus.search(type, familyCode, found)) != null) {
+      list.add(found);
+    }
+    return list;
+  }
+
+  @Test
+  public void testSearchOrder() {
+    Simulator sim = Simulator.builder().devicesPerBus(500).seed(7)
+        .timing(SimTiming.NO_DELAY).build();
+    SimBus bus = sim.getBus(0);
+
+    // the order has to be the one a real bit by bit search finds them in
+    List<DSAddress> expected = new ArrayList<>();
+    List<Long> sorted = new ArrayList<>();
+    for (SimDevice device : bus.getDevices()) {
+      sorted.add(device.getDSAddress().toLong());
+    }
+    sorted.sort((a, b) -> Long.compareUnsigned(Long.reverse(a), Long.reverse(b)));
+    for (long value : sorted) {
+      expected.add(DSAddress.fromLong(value));
+    }
+
+    List<DSAddress> found = searchAll(bus, SearchType.General, (short) 0);
+    Assert.assertEquals(found.size(), 500);
+    Assert.assertEquals(found, expected);
+  }
+
+  @Test
+  public void testSearchFamilyAndAlarm() {
+    SimBus bus = new SimBus("b", SimTiming.NO_DELAY, new SimFaults(0));
+    List<SimDS18B20> ds18b20s = new ArrayList<>();
+    for (int i = 1; i <= 20; i++) {
+      SimDS18B20 d = new SimDS18B20(Simulator.makeAddress((short) 0x28, i), SimTiming.NO_DELAY);
+      ds18b20s.add(d);
+      bus.add(d);
+    }
+    for (int i = 1; i <= 5; i++) {
+      bus.add(new SimDS18B20(Simulator.makeAddress((short) 0x10, i), SimTiming.NO_DELAY));
+      bus.add(new SimDS18B20(Simulator.makeAddress((short) 0xA2, i), SimTiming.NO_DELAY));
+    }
+
+    Assert.assertEquals(searchAll(bus, SearchType.Family, (short) 0x28).size(), 20);
+    Assert.assertEquals(searchAll(bus, SearchType.Family, (short) 0x10).size(), 5);
+    Assert.assertEquals(searchAll(bus, SearchType.Family, (short) 0xA2).size(), 5);
+    Assert.assertEquals(searchAll(bus, SearchType.Family, (short) 0x12).size(), 0);
+    Assert.assertEquals(searchAll(bus, SearchType.General, (short) 0).size(), 30);
+
+    Assert.assertEquals(searchAll(bus, SearchType.Alarm, (short) 0).size(), 0);
+    for (SimDevice device : bus.getDevices()) {
+      ((SimDS18B20) device).setAlarms((byte) 40, (byte) 0);
+    }
+    ds18b20s.get(3).setTempC(90.0f);
+    ds18b20s.get(11).setTempC(-10.0f);
+    bus.reset();
+    bus.touchByte(Command.SKIP_ROM & 0xff);
+    bus.touchByte(Command.CONVERT_T & 0xff);
+    List<DSAddress> alarmed = searchAll(bus, SearchType.Alarm, (short) 0);
+    Assert.assertEquals(alarmed.size(), 2);
+    Assert.assertTrue(alarmed.contains(ds18b20s.get(3).getDSAddress()));
+    Assert.assertTrue(alarmed.contains(ds18b20s.get(11).getDSAddress()));
+    Assert.assertEquals(bus.getDevices(SearchType.Alarm, (short) 0).size(), 2);
+  }
+
+  @Test
+  public void testAlarmFollowsConversions() throws InterruptedException {
+    // 100 times faster, so a 12 bit conversion is 7.5ms
+    SimTiming timing = new SimTiming(100.0);
+    SimBus bus = new SimBus("b", timing, new SimFaults(0));
+    List<SimDS18B20> ds18b20s = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      SimDS18B20 d = new SimDS18B20(Simulator.makeAddress((short) 0x28, i), timing);
+      d.setAlarms((byte) 40, (byte) 0);
+      ds18b20s.add(d);
+      bus.add(d);
+    }
+    final SimDS18B20 hot = ds18b20s.get(50);
+    hot.setTempC(90.0f);
+
+    // still converting when the search starts, and done by the next one without being touched
+    Assert.assertTrue(bus.select(hot.getDSAddress().toLong()));
+    bus.touchByte(Command.CONVERT_T & 0xff);
+    Assert.assertEquals(searchAll(bus, SearchType.Alarm, (short) 0).size(), 0);
+    Thread.sleep(20);
+    List<DSAddress> alarmed = searchAll(bus, SearchType.Alarm, (short) 0);
+    Assert.assertEquals(alarmed.size(), 1);
+    Assert.assertEquals(alarmed.get(0), hot.getDSAddress());
+
+    // a Skip ROM conversion can clear it
+    hot.setTempC(20.0f);
+    ds18b20s.get(7).setTempC(-5.0f);
+    bus.reset();
+    bus.touchByte(Command.SKIP_ROM & 0xff);
+    bus.touchByte(Command.CONVERT_T & 0xff);
+    Thread.sleep(20);
+    alarmed = searchAll(bus, SearchType.Alarm, (short) 0);
+    Assert.assertEquals(alarmed.size(), 1);
+    Assert.assertEquals(alarmed.get(0), ds18b20s.get(7).getDSAddress());
+
+    // and a device taken off the bus is not found
+    bus.remove(ds18b20s.get(7).getDSAddress());
+    Assert.assertEquals(searchAll(bus, SearchType.Alarm, (short) 0).size(), 0);
+    Assert.assertEquals(bus.getDevices(SearchType.Alarm, (short) 0).size(), 0);
+  }
+
+  @Test
+  public void testSelectAndReadScratchpad() {
+    SimBus bus = new SimBus("b", SimTiming.NO_DELAY, new SimFaults(0));
+    SimDS18B20 a = new SimDS18B20(Simulator.makeAddress((short) 0x28, 1), SimTiming.NO_DELAY);
+    SimDS18B20 b = new SimDS18B20(Simulator.makeAddress((short) 0x28, 2), SimTiming.NO_DELAY);
+    bus.add(a).add(b);
+    a.setTempC(-12.5f);
+    b.setTempC(30.0f);
+
+    Assert.assertTrue(bus.reset());
+    bus.touchByte(Command.SKIP_ROM & 0xff);
+    bus.touchByte(Command.CONVERT_T & 0xff);
+
+    Assert.assertTrue(bus.select(a.getDSAddress().toLong()));
+    bus.touchByte(Command.READ_SCRATCHPAD & 0xff);
+    byte[] data = new byte[9];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) bus.touchByte(0xff);
+    }
+    DS18B20Scratchpad scratchpad = new DS18B20Scratchpad(data);
+    Assert.assertTrue(scratchpad.checkValid());
+    Assert.assertEquals(scratchpad.getTempC(), -12.5f);
+
+    // nobody there
+    Assert.assertTrue(bus.select(Simulator.makeAddress((short) 0x28, 3).toLong()));
+    bus.touchByte(Command.READ_SCRATCHPAD & 0xff);
+    Assert.assertEquals(bus.touchByte(0xff), 0xff);
+  }
+
+  @Test
+  public void testConversionTime() throws InterruptedException {
+    // 100 times faster, so 12 bits is 7.5ms and 9 bits under 1ms
+    SimTiming timing = new SimTiming(100.0);
+    SimDS18B20 d = new SimDS18B20(Simulator.makeAddress((short) 0x28, 1), timing);
+    d.setTempC(25.0f);
+
+    Assert.assertEquals(SimDS18B20.getConvertNanos(DS18B20Scratchpad.RESOLUTION_12),
+        750000000L);
+    Assert.assertEquals(SimDS18B20.getConvertNanos(DS18B20Scratchpad.RESOLUTION_9), 93750000L);
+
+    d.reset();
+    d.touchByte(Command.CONVERT_T & 0xff);
+    // busy reads 0 and the old temperature is still there
+    Assert.assertFalse(d.touchBit(true));
+    Assert.assertNotEquals(d.getScratchpad().getTempC(), 25.0f);
+
+    Thread.sleep(20);
+    Assert.assertTrue(d.touchBit(true));
+    Assert.assertEquals(d.getScratchpad().getTempC(), 25.0f);
+    Assert.assertEquals(d.getConvertTCount(), 1);
+  }
+
+  @Test
+  public void testElapsedNanos() {
+    SimBus bus = new SimBus("b", SimTiming.NO_DELAY, new SimFaults(0));
+    bus.add(new SimDS18B20(Simulator.makeAddress((short) 0x28, 1), SimTiming.NO_DELAY));
+    bus.takeElapsedNanos();
+
+    bus.select(Simulator.makeAddress((short) 0x28, 1).toLong());
+    Assert.assertEquals(bus.takeElapsedNanos(),
+        SimTiming.RESET_NANOS + (9 * 8 * SimTiming.SLOT_NANOS));
+    Assert.assertEquals(bus.takeElapsedNanos(), 0);
+  }
+
+  @Test
+  public void testFaults() {
+    SimBus bus = new SimBus("b", SimTiming.NO_DELAY, new SimFaults(0));
+    bus.add(new SimDS18B20(Simulator.makeAddress((short) 0x28, 1), SimTiming.NO_DELAY));
+
+    Assert.assertTrue(bus.reset());
+    bus.getFaults().setDisconnected(true);
+    Assert.assertFalse(bus.reset());
+    Assert.assertNull(bus.search(SearchType.General, (short) 0, null));
+    bus.getFaults().setDisconnected(false);
+
+    bus.getFaults().setNoPresenceProbability(0.5);
+    int noPresence = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (!bus.reset()) {
+        noPresence++;
+      }
+    }
+    Assert.assertTrue((noPresence > 400) && (noPresence < 600));
+    Assert.assertEquals(bus.getFaults().getNoPresenceCount(), noPresence + 2);
+  }
+
+  @Test
+  public void testMakeAddress() {
+    Assert.assertEquals(Simulator.makeAddress((short) 0x28, 0x065BC0AEL),
+        DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28));
+  }
+
+}
@@ -1,12 +1,16 @@
 package waterfall.onewire;
 
 import java.util.Arrays;
+import java.util.Observable;
+import java.util.Observer;
 import java.util.concurrent.TimeUnit;
 import waterfall.onewire.busmaster.BusMaster;
+import waterfall.onewire.busmaster.CmdPriority;
 import waterfall.onewire.busmaster.ConvertTCmd;
 import waterfall.onewire.busmaster.ReadScratchpadCmd;
 import waterfall.onewire.busmaster.WriteScratchpadCmd;
 import waterfall.onewire.device.DS18B20Scratchpad;
+import waterfall.onewire.device.DS18B20ScratchpadView;
 
 /**
  * Created by dwaterfa on 10/19/17.
@@ -30,8 +34,18 @@ public class Temp18B20 {
   private final byte tempLAlarm;
   private BusMaster bm;
   private WaitForDeviceByAddress waitForDeviceByAddress;
+  // Where the device was last found and how it was configured, if setBusMasterRegistry() was given
+  // one. The bm may have come from it and not yet been confirmed by a search.
+  private DeviceLocationSnapshot snapshot;
+  private boolean snapshotConfigMatches;
+  private boolean snapshotRecorded;
+  // The BusMaster which convertTCmd and readScratchpadCmd were made for.
+  private BusMaster cmdBM;
+  private CmdPriority priority;
   private ConvertTCmd convertTCmd;
   private ReadScratchpadCmd readScratchpadCmd;
+  // Pointed at each scratchpad read rather than copying it, guarded by this.
+  private final DS18B20ScratchpadView scratchpadView = new DS18B20ScratchpadView();
   private InitializationState initState;
   private Reading lastReading;
   private Thread pushingThread;
@@ -55,7 +69,12 @@ public class Temp18B20 {
 
     this.waitForDeviceByAddress = null;
     this.bm = null;
+    this.snapshot = null;
+    this.snapshotConfigMatches = false;
+    this.snapshotRecorded = false;
+    this.cmdBM = null;
 
+    this.priority = CmdPriority.INTERACTIVE;
     this.convertTCmd = null;
     this.readScratchpadCmd = null;
 
@@ -113,6 +132,29 @@ public class Temp18B20 {
     return bm;
   }
 
+  /**
+   * The class of work the cmds to the device are, which decides where they wait for the bus
+   * behind the cmds of others. INTERACTIVE unless set, PERIODIC for something which samples the
+   * device on a schedule rather than for someone waiting on the answer.
+   *
+   * @return this
+   */
+  public synchronized Temp18B20 setPriority(CmdPriority priority) {
+    if (priority == null) {
+      throw new IllegalArgumentException("priority");
+    }
+    this.priority = priority;
+    if (convertTCmd != null) {
+      convertTCmd.setPriority(priority);
+      readScratchpadCmd.setPriority(priority);
+    }
+    return this;
+  }
+
+  public synchronized CmdPriority getPriority() {
+    return priority;
+  }
+
   /**
    * This is one of the two ways for the instance to find which BusMaster is exists on - here we
    * explicitly set it.
@@ -136,16 +178,54 @@ public class Temp18B20 {
    * @param bMR The BusMasterRegistry where the busmasters may be found
    * @return this
    */
-  public synchronized Temp18B20 setBusMasterRegistry(BusMasterRegistry bMR) {
-    if (this.waitForDeviceByAddress != null) {
-      throw new IllegalArgumentException("dup bMR");
+  public Temp18B20 setBusMasterRegistry(BusMasterRegistry bMR) {
+    final WaitForDeviceByAddress wfdba;
+    synchronized (this) {
+      if (this.waitForDeviceByAddress != null) {
+        throw new IllegalArgumentException("dup bMR");
+      }
+      wfdba = new WaitForDeviceByAddress(bMR, false, (TimeUnit.SECONDS.toMillis(15)));
+      this.waitForDeviceByAddress = wfdba;
     }
-    this.waitForDeviceByAddress = new WaitForDeviceByAddress(bMR, false,
-        (TimeUnit.SECONDS.toMillis(15)));
-    this.waitForDeviceByAddress.addAddress(new myWFDBAC(this), new DSAddress[]{dsAddress});
+    // Not holding this, as the first search may find the device and call setBusMaster() from the
+    // searching thread while it holds the WaitForDeviceByAddress we would be waiting on.
+    wfdba.addAddress(new myWFDBAC(this), new DSAddress[]{dsAddress});
     return this;
   }
 
+  /**
+   * The same as setBusMasterRegistry(bMR), except that if the snapshot knows where the device was
+   * last found it is bound to that BusMaster as soon as the registry has it, rather than after the
+   * first search. The search still goes on in the background to confirm it, and moves the device to
+   * the BusMaster it is actually found on if that is a different one. If the snapshot also has the
+   * configuration wanted the first reading does not read the scratchpad to check it beforehand, the
+   * check after the convert will still put it right.
+   *
+   * The snapshot is updated with where the device is once a reading has been taken from it.
+   *
+   * @param bMR The BusMasterRegistry where the busmasters may be found
+   * @param snapshot where the devices were when it was last saved
+   * @return this
+   */
+  public Temp18B20 setBusMasterRegistry(BusMasterRegistry bMR, DeviceLocationSnapshot snapshot) {
+    if (snapshot == null) {
+      throw new IllegalArgumentException("snapshot");
+    }
+    final String busName = snapshot.getBusName(dsAddress);
+    synchronized (this) {
+      if (this.waitForDeviceByAddress != null) {
+        throw new IllegalArgumentException("dup bMR");
+      }
+      this.snapshot = snapshot;
+      this.snapshotConfigMatches = Arrays.equals(snapshot.getConfig(dsAddress), getConfig());
+    }
+    if (busName != null) {
+      // straight away if the BusMaster is already in the registry, otherwise when it is added
+      bMR.addObserver(new SnapshotBinder(this, busName));
+    }
+    return setBusMasterRegistry(bMR);
+  }
+
   /**
    * Read the temperature of the device. The device will only actually be sampled if the time
    * request, if specified, is
@@ -182,6 +262,11 @@ public class Temp18B20 {
         // this call will handle initialization if required.
         lastReading = pushRead();
 
+        if ((snapshot != null) && (!snapshotRecorded) && (lastReading instanceof ReadingData)) {
+          snapshot.put(dsAddress, bm.getName(), getConfig());
+          snapshotRecorded = true;
+        }
+
       } finally {
         pushingThread = null;
       }
@@ -212,14 +297,24 @@ public class Temp18B20 {
 
     boolean wasReInitalize = false;
 
+    if (cmdBM != bm) {
+      // a search found the device somewhere other than where the snapshot said
+      initState = InitializationState.WaitingForBusMaster;
+    }
+
     if (initState == InitializationState.WaitingForBusMaster) {
       if (bm == null) {
         return new ReadingError(ERR_NO_BUSMASTER);
       }
 
+      cmdBM = bm;
       convertTCmd = bm.queryConvertTCmd(dsAddress);
       readScratchpadCmd = bm.queryReadScratchpadCmd(dsAddress, (short) 9);
-      initState = InitializationState.Initialize;
+      convertTCmd.setPriority(priority);
+      readScratchpadCmd.setPriority(priority);
+      initState = (snapshotConfigMatches ? InitializationState.Ready :
+          InitializationState.Initialize);
+      snapshotConfigMatches = false;
     }
 
     if (initState == InitializationState.ReInitialize) {
@@ -238,7 +333,7 @@ public class Temp18B20 {
 
       // If the device is present it will pull at least some of the bits low to return data.
       // So we if get back all FFs then we know the device is not there.
-      DS18B20Scratchpad scratchpadData = new DS18B20Scratchpad(readScratchpadCmd.getResultData());
+      DS18B20ScratchpadView scratchpadData = wrapScratchpad();
       if (scratchpadData.checkAllFFs()) {
         initState = InitializationState.Initialize;
         return new ReadingError(ERR_DEVICE_NOT_FOUND);
@@ -295,7 +390,7 @@ public class Temp18B20 {
     }
     while (System.currentTimeMillis() < waitUntilMSec);
 
-    DS18B20Scratchpad data = null;
+    DS18B20ScratchpadView data = null;
 
     for (int retryCount = 0; retryCount < 5; retryCount++) {
       // Read out the temp.
@@ -304,7 +399,7 @@ public class Temp18B20 {
         return new ReadingError(ERR_READSCRATCHPAD_RESULT + rResult.name());
       }
 
-      data = new DS18B20Scratchpad(readScratchpadCmd.getResultData());
+      data = wrapScratchpad();
 
       if (data.checkAllFFs()) {
         // The device did not respond
@@ -346,7 +441,7 @@ public class Temp18B20 {
         return new ReadingError(ERR_READSCRATCHPAD_RESULT + rResult.name());
       }
 
-      data = new DS18B20Scratchpad(readScratchpadCmd.getResultData());
+      data = wrapScratchpad();
       if ((data.getResolution() != resolution) ||
           (data.getTempHAlarm() != tempHAlarm) ||
           (data.getTempLAlarm() != tempLAlarm)) {
@@ -386,6 +481,7 @@ public class Temp18B20 {
     // write scratchpad cmd
     WriteScratchpadCmd writeScratchpadCmd = bm.queryWriteScratchpadCmd(dsAddress,
         Arrays.copyOfRange(scratchpadData.getRawBytes(), 2, 5));
+    writeScratchpadCmd.setPriority(priority);
 
     WriteScratchpadCmd.Result rResult = writeScratchpadCmd.execute();
     if (rResult != WriteScratchpadCmd.Result.success) {
@@ -396,6 +492,36 @@ public class Temp18B20 {
     return null;
   }
 
+  // Read the hex where the bus master left it when it can, rather than having it decoded.
+  private DS18B20ScratchpadView wrapScratchpad() {
+    final byte[] hexBuf = readScratchpadCmd.getResultHexBuf();
+    if (hexBuf != null) {
+      return scratchpadView.wrapHex(hexBuf, readScratchpadCmd.getResultHexOffset());
+    }
+    return scratchpadView.wrap(readScratchpadCmd.getResultData());
+  }
+
+  // What is kept in the DeviceLocationSnapshot as the configuration of the device.
+  private byte[] getConfig() {
+    return new byte[]{resolution, tempHAlarm, tempLAlarm};
+  }
+
+  // From the search, which has the final say over the snapshot.
+  private synchronized void deviceFound(BusMaster bm) {
+    if (snapshot == null) {
+      setBusMaster(bm);
+    } else if (this.bm != bm) {
+      this.bm = bm;
+      snapshotRecorded = false;
+    }
+  }
+
+  private synchronized void snapshotBusMasterAdded(BusMaster bm) {
+    if (this.bm == null) {
+      this.bm = bm;
+    }
+  }
+
   /**
    * The time in MS we need to wait is dependent on the precision we are asking for.
    */
@@ -449,11 +575,37 @@ public class Temp18B20 {
 
     @Override
     public boolean deviceFound(BusMaster bm, DSAddress dsAddress, boolean typeByAlarm) {
-      _this.setBusMaster(bm);
+      _this.deviceFound(bm);
       return true; // cancel the search
     }
   }
 
+  /**
+   * Binds the instance to the BusMaster the DeviceLocationSnapshot names once it is in the
+   * registry. If it never is this stays registered, doing nothing, for the life of the registry.
+   */
+  private static class SnapshotBinder implements Observer {
+
+    private final Temp18B20 _this;
+    private final String busName;
+
+    public SnapshotBinder(Temp18B20 _this, String busName) {
+      this._this = _this;
+      this.busName = busName;
+    }
+
+    @Override
+    public void update(Observable o, Object arg) {
+      if (arg instanceof BusMasterRegistry.BusMasterAdded) {
+        BusMaster bm = ((BusMasterRegistry.BusMasterAdded) arg).getBusMaster();
+        if (busName.equals(bm.getName())) {
+          _this.snapshotBusMasterAdded(bm);
+          o.deleteObserver(this);
+        }
+      }
+    }
+  }
+
   public static abstract class Reading {
 
     protected final long timeMSec;
@@ -9,6 +9,8 @@ import static org.mockito.Mockito.anyShort;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import org.testng.Assert;
@@ -18,6 +20,7 @@ import waterfall.onewire.Temp18B20.Reading;
 import waterfall.onewire.Temp18B20.ReadingData;
 import waterfall.onewire.Temp18B20.ReadingError;
 import waterfall.onewire.busmaster.BusMaster;
+import waterfall.onewire.busmaster.CmdPriority;
 import waterfall.onewire.busmaster.ConvertTCmd;
 import waterfall.onewire.busmaster.ReadScratchpadCmd;
 import waterfall.onewire.busmasters.HA7S.HA7S;
@@ -137,6 +140,71 @@ public class Temp18B20Test {
     t.setBusMasterRegistry(bmR);
   }
 
+  @Test
+  public void testSetBusMasterRegistryWithSnapshot() throws IOException {
+    DSAddress dsAddress = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+
+    // the config is already right, so there is no read of the scratchpad before the convert
+    BusMaster bm = getStartedHA7S(new HA7SSerialDummy("port")
+        .addDevice(new DS18B20(dsAddress).setScratchPadData(new byte[][]{
+            new DS18B20Scratchpad().setTempC((float) 21.5).getRawBytes(),
+            new DS18B20Scratchpad().setTempC((float) 99.0).getRawBytes()})));
+    BusMasterRegistry bmR = new BusMasterRegistry();
+    bmR.addBusMaster(bm);
+
+    DeviceLocationSnapshot snapshot = new DeviceLocationSnapshot();
+    snapshot.put(dsAddress, bm.getName(), new byte[]{DS18B20Scratchpad.DEFAULT_RESOLUTION,
+        DS18B20Scratchpad.DEFAULT_HALARM, DS18B20Scratchpad.DEFAULT_LALARM});
+    // as if it had just been loaded
+    snapshot.write(new ByteArrayOutputStream());
+
+    Temp18B20 t = new Temp18B20(dsAddress, DS18B20Scratchpad.DEFAULT_RESOLUTION,
+        DS18B20Scratchpad.DEFAULT_HALARM, DS18B20Scratchpad.DEFAULT_LALARM)
+        .setBusMasterRegistry(bmR, snapshot);
+    Assert.assertEquals(t.getBusMaster(), bm);
+
+    Temp18B20.Reading r = t.getTemperature(0L);
+    Assert.assertTrue(r instanceof ReadingData);
+    Assert.assertEquals(r.getTempC(), (float) 21.5);
+    Assert.assertFalse(snapshot.isChanged());
+  }
+
+  @Test
+  public void testPeriodicPriority() {
+    DSAddress dsAddress = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+    HA7S ha7s = (HA7S) getStartedHA7S(new HA7SSerialDummy("port")
+        .addDevice(new DS18B20(dsAddress).setScratchPadData(new byte[][]{
+            new DS18B20Scratchpad().setTempC((float) 21.5).getRawBytes()})));
+
+    Temp18B20 t = new Temp18B20(dsAddress, DS18B20Scratchpad.DEFAULT_RESOLUTION,
+        DS18B20Scratchpad.DEFAULT_HALARM, DS18B20Scratchpad.DEFAULT_LALARM)
+        .setPriority(CmdPriority.PERIODIC)
+        .setBusMaster(ha7s);
+    Assert.assertEquals(t.getPriority(), CmdPriority.PERIODIC);
+
+    Assert.assertTrue(t.getTemperature(0L) instanceof ReadingData);
+    Assert.assertTrue(ha7s.getCmdScheduler().getStats(CmdPriority.PERIODIC).getGrantedCount() > 0);
+    Assert.assertEquals(
+        ha7s.getCmdScheduler().getStats(CmdPriority.INTERACTIVE).getGrantedCount(), 0);
+  }
+
+  @Test
+  public void testSnapshotBusMasterAddedLater() {
+    DSAddress dsAddress = DSAddress.fromUncheckedHex(DSAddress._EE0000065BC0AE28);
+    BusMaster bm = getStartedHA7S(new HA7SSerialDummy("port"));
+    BusMasterRegistry bmR = new BusMasterRegistry();
+
+    DeviceLocationSnapshot snapshot = new DeviceLocationSnapshot();
+    snapshot.put(dsAddress, bm.getName(), new byte[0]);
+
+    Temp18B20 t = new Temp18B20(dsAddress, (byte) 2, Byte.MIN_VALUE, Byte.MAX_VALUE)
+        .setBusMasterRegistry(bmR, snapshot);
+    Assert.assertNull(t.getBusMaster());
+
+    bmR.addBusMaster(bm);
+    Assert.assertEquals(t.getBusMaster(), bm);
+  }
+
   /*
   * Tests
   * Get temperature, device needs to be initialized
@@ -11,9 +11,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import waterfall.onewire.BusMasterRegistry;
 import waterfall.onewire.DSAddress;
+import waterfall.onewire.DeviceLocationSnapshot;
 import waterfall.onewire.Temp18B20;
 import waterfall.onewire.Temp18B20.Reading;
 import waterfall.onewire.Temp18B20.ReadingError;
+import waterfall.onewire.busmaster.CmdPriority;
 import waterfall.onewire.device.DS18B20Scratchpad;
 
 
@@ -55,9 +57,11 @@ public class WaterHeater implements Runnable {
    * @param sampleTimeSec How often we sample.
    * @param windowSize The number of samples we take in order to compare the oldest with the most recent. A window of 5 gives us (5 + 1) sample range to compare to.
    * @param dsAddress The DSAddress of the sensor clipped to the burner housing.
+   * @param snapshot Where the sensor was last found, so it can be read before the first search.
    */
-  public WaterHeater(BusMasterRegistry bmRegistry, float triggerTemp, int sampleTimeSec,
-                     int windowSize, String dsAddress, StateChangeNotifier stateChangeNotifier) {
+  public WaterHeater(BusMasterRegistry bmRegistry, DeviceLocationSnapshot snapshot,
+                     float triggerTemp, int sampleTimeSec, int windowSize, String dsAddress,
+                     StateChangeNotifier stateChangeNotifier) {
     this.triggerTemp = triggerTemp;
     this.sampleTimeSec = sampleTimeSec;
     this.window = new float[windowSize];
@@ -71,7 +75,8 @@ public class WaterHeater implements Runnable {
     this.stateChangeNotifier = stateChangeNotifier;
     this.temp18B20 = new Temp18B20(whAddress, (byte) 1, DS18B20Scratchpad.DEFAULT_HALARM,
         DS18B20Scratchpad.DEFAULT_LALARM)
-        .setBusMasterRegistry(bmRegistry);
+        .setPriority(CmdPriority.PERIODIC)
+        .setBusMasterRegistry(bmRegistry, snapshot);
     this.pushThread = new Thread(this);
     this.pushThread.setDaemon(true);
     this.pushThread.start();